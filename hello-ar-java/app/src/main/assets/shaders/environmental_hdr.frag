@@ -52,18 +52,34 @@ const int kNumberOfRoughnessLevels = NUMBER_OF_MIPMAP_LEVELS;
 uniform sampler2D u_AlbedoTexture;
 uniform sampler2D u_RoughnessMetallicAmbientOcclusionTexture;
 
-// The intensity of the main directional light.
-uniform vec3 u_LightIntensity;
-
-// The direction of the main directional light in view space.
-uniform vec4 u_ViewLightDirection;
+// Camera and lighting state of the current frame. Must match the declaration in
+// FrameUniforms.java.
+layout(std140) uniform FrameUniforms {
+  highp mat4 u_View;
+  highp mat4 u_Projection;
+  highp mat4 u_ViewProjection;
+  highp mat4 u_ViewInverse;
+  highp vec4 u_ViewLightDirection;
+  highp vec3 u_LightIntensity;
+  bool u_LightEstimateIsValid;
+  highp vec3 u_SphericalHarmonicsCoefficients[9];
+};
 
-// The coefficients for the spherical harmonic function which models the diffuse
-// irradiance of a distant environmental light for a given surface normal in
-// world space. These coefficients must be premultiplied with their
-// corresponding spherical harmonics constants. See
-// HelloArActivity.updateSphericalHarmonicsCoefficients for more information.
-uniform vec3 u_SphericalHarmonicsCoefficients[9];
+// u_LightIntensity is the intensity of the main directional light, and
+// u_ViewLightDirection its direction in view space.
+//
+// u_SphericalHarmonicsCoefficients are the coefficients for the spherical
+// harmonic function which models the diffuse irradiance of a distant
+// environmental light for a given surface normal in world space. These
+// coefficients must be premultiplied with their corresponding spherical
+// harmonics constants. See HelloArActivity.updateSphericalHarmonicsCoefficients
+// for more information.
+//
+// u_ViewInverse is used for converting normals back into world space for
+// environmental radiance calculations.
+//
+// u_LightEstimateIsValid is used to short circuit the entire shader when the
+// light estimate is not valid.
 
 // The filtered cubemap texture which models the LD term (i.e. radiance (L)
 // times distribution function (D)) of the environmental specular calculation as
@@ -75,14 +91,6 @@ uniform samplerCube u_Cubemap;
 // perceptual roughness.
 uniform sampler2D u_DfgTexture;
 
-// Inverse view matrix. Used for converting normals back into world space for
-// environmental radiance calculations.
-uniform mat4 u_ViewInverse;
-
-// If the current light estimate is valid. Used to short circuit the entire
-// shader when the light estimate is not valid.
-uniform bool u_LightEstimateIsValid;
-
 struct MaterialParameters {
   vec3 diffuse;
   float perceptualRoughness;  // perceptually linear roughness
@@ -15,8 +15,20 @@
  * limitations under the License.
  */
 
+// Camera and lighting state of the current frame. Must match the declaration in
+// FrameUniforms.java.
+layout(std140) uniform FrameUniforms {
+  highp mat4 u_View;
+  highp mat4 u_Projection;
+  highp mat4 u_ViewProjection;
+  highp mat4 u_ViewInverse;
+  highp vec4 u_ViewLightDirection;
+  highp vec3 u_LightIntensity;
+  bool u_LightEstimateIsValid;
+  highp vec3 u_SphericalHarmonicsCoefficients[9];
+};
+
 uniform mat4 u_Model;
-uniform mat4 u_ModelViewProjection;
 uniform mat2 u_PlaneUvMatrix;
 uniform vec3 u_Normal;
 
@@ -38,5 +50,5 @@ void main() {
    // Project vertices in world frame onto vec_u and vec_v.
    vec2 uv = vec2(dot(world_pos.xyz, vec_u), dot(world_pos.xyz, vec_v));
    v_TexCoordAlpha = vec3(u_PlaneUvMatrix * uv, a_XZPositionAlpha.z);
-   gl_Position = u_ModelViewProjection * local_pos;
+   gl_Position = u_ViewProjection * world_pos;
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.helpers;
+
+import android.view.View;
+import android.widget.TextView;
+import com.google.ar.core.examples.java.common.samplerender.FrameProfiler;
+
+/** Shows the pass timings of a {@link FrameProfiler} in a text view over the camera image. */
+public final class ProfilerOverlay implements Runnable {
+  private static final long REFRESH_INTERVAL_MS = 500;
+
+  private final TextView view;
+  private final FrameProfiler profiler;
+
+  public ProfilerOverlay(TextView view, FrameProfiler profiler) {
+    this.view = view;
+    this.profiler = profiler;
+  }
+
+  /** Shows the overlay and starts refreshing it. Must be called on the UI thread. */
+  public void start() {
+    view.setVisibility(View.VISIBLE);
+    view.removeCallbacks(this);
+    view.post(this);
+  }
+
+  /** Stops refreshing the overlay. Must be called on the UI thread. */
+  public void stop() {
+    view.removeCallbacks(this);
+  }
+
+  @Override
+  public void run() {
+    view.setText(profiler.getSummary());
+    view.postDelayed(this, REFRESH_INTERVAL_MS);
+  }
+}
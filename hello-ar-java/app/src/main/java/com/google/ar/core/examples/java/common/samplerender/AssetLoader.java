@@ -0,0 +1,264 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.content.res.AssetManager;
+import android.os.Process;
+import android.util.Log;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Loads assets without blocking the OpenGL thread.
+ *
+ * <p>File reads, image decoding and mesh parsing run on background threads and return futures.
+ * Only the final step that needs the OpenGL context, such as {@code glTexImage2D} or {@code
+ * glBufferData}, is queued and run by {@link #runUploads(long)} once per frame within a time
+ * budget, so that the camera image keeps updating while content streams in.
+ *
+ * <p>The futures of uploads complete on the OpenGL thread, so that stages added to them with the
+ * non-async {@link CompletableFuture} methods, such as {@code thenAccept}, run there too.
+ *
+ * <p>A loader belongs to one OpenGL context: when the context is lost, {@link #shutdown()} the
+ * loader and start over with a new one.
+ */
+public class AssetLoader {
+  private static final String TAG = AssetLoader.class.getSimpleName();
+
+  // Decoding is mostly I/O and memory bound; more threads mainly compete with ARCore.
+  private static final int THREAD_COUNT = 2;
+
+  private final SampleRender render;
+  private final AssetManager assets;
+  private final boolean astcSupported;
+  private final ExecutorService executorService;
+  private final Executor executor;
+  private final ConcurrentLinkedQueue<Runnable> uploads = new ConcurrentLinkedQueue<>();
+  private volatile boolean shutdown;
+
+  /** A background task that may fail with an I/O error. */
+  private interface Task<T> {
+    T run() throws IOException;
+  }
+
+  /**
+   * Creates a loader for the current OpenGL context of {@code render}. Must be called on the OpenGL
+   * thread.
+   */
+  public AssetLoader(SampleRender render) {
+    this(
+        render,
+        render.getAssets(),
+        Texture.isAstcSupported(),
+        Executors.newFixedThreadPool(
+            THREAD_COUNT,
+            runnable ->
+                new Thread(
+                    () -> {
+                      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                      runnable.run();
+                    },
+                    TAG)));
+  }
+
+  /** Creates a loader running its background tasks on {@code executor}, for tests. */
+  /* package-private */
+  AssetLoader(
+      SampleRender render, AssetManager assets, boolean astcSupported, Executor executor) {
+    this.render = render;
+    this.assets = assets;
+    this.astcSupported = astcSupported;
+    this.executorService = executor instanceof ExecutorService ? (ExecutorService) executor : null;
+    this.executor = executor;
+  }
+
+  /**
+   * Reads or decodes an image asset in the background, then creates the texture on the OpenGL
+   * thread. See {@link Texture#createFromAsset}.
+   */
+  public CompletableFuture<Texture> loadTexture(
+      String assetFileName, Texture.WrapMode wrapMode, Texture.ColorFormat colorFormat) {
+    return uploadOnGlThread(
+        supply(
+            () -> Texture.decodeAsset(assets, assetFileName, astcSupported)),
+        image -> Texture.createFromImage(render, image, wrapMode, colorFormat));
+  }
+
+  /**
+   * Reads or parses a model in the background, then creates the mesh on the OpenGL thread. See
+   * {@link Mesh#createFromAsset(SampleRender, String, VertexBuffer[])}.
+   *
+   * @param instanceBuffers Per-instance buffers, created on the OpenGL thread beforehand
+   */
+  public CompletableFuture<Mesh> loadMesh(String assetFileName, VertexBuffer[] instanceBuffers) {
+    return uploadOnGlThread(
+        supply(() -> Mesh.readAsset(assets, assetFileName)),
+        geometry -> Mesh.create(render, geometry, instanceBuffers));
+  }
+
+  /**
+   * Reads or parses a model and simplifies its levels of detail in the background, then creates the
+   * mesh on the OpenGL thread. See {@link Mesh#createFromAsset(SampleRender, String,
+   * VertexBuffer[], LevelsOfDetail)}.
+   *
+   * @param instanceBuffers Per-instance buffers, created on the OpenGL thread beforehand
+   */
+  public CompletableFuture<Mesh> loadMesh(
+      String assetFileName, VertexBuffer[] instanceBuffers, LevelsOfDetail levelsOfDetail) {
+    return uploadOnGlThread(
+        supply(
+            () ->
+                Mesh.generateLevelsOfDetail(
+                    Mesh.readAsset(assets, assetFileName), levelsOfDetail, assetFileName)),
+        geometry -> Mesh.create(render, geometry, instanceBuffers));
+  }
+
+  /**
+   * Reads shader sources in the background, then compiles them on the OpenGL thread. See {@link
+   * Shader#createFromAssets}.
+   */
+  public CompletableFuture<Shader> loadShader(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines) {
+    return uploadOnGlThread(
+        readShaderSources(vertexShaderFileName, fragmentShaderFileName),
+        sources -> new Shader(render, sources[0], sources[1], defines));
+  }
+
+  /**
+   * Reads shader sources in the background, then compiles them into the {@link ShaderCache} of the
+   * render on the OpenGL thread, unless that variant is already there. See {@link
+   * ShaderCache#prewarm}.
+   */
+  public CompletableFuture<Shader> prewarmShader(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines) {
+    ShaderCache shaderCache = render.getShaderCache();
+    return uploadOnGlThread(
+        readShaderSources(vertexShaderFileName, fragmentShaderFileName),
+        sources ->
+            shaderCache.getShader(
+                vertexShaderFileName, fragmentShaderFileName, defines, sources[0], sources[1]));
+  }
+
+  /**
+   * Reads an asset in the background into a direct buffer in native order, mapped into memory if
+   * the asset is stored uncompressed in the APK. Upload it with {@link #uploadOnGlThread}, then
+   * pass it to {@link DirectBufferPool#release}.
+   */
+  public CompletableFuture<ByteBuffer> loadBuffer(String assetFileName) {
+    return supply(
+        () -> {
+          ByteBuffer data = Assets.read(assets, assetFileName);
+          if (data == null) {
+            throw new FileNotFoundException(assetFileName);
+          }
+          return data;
+        });
+  }
+
+  /**
+   * Queues {@code upload} to run on the OpenGL thread once {@code data} is available.
+   *
+   * @return A future of the result of {@code upload}, completed on the OpenGL thread, or
+   *     exceptionally if loading or uploading failed.
+   */
+  public <T, R> CompletableFuture<R> uploadOnGlThread(
+      CompletableFuture<T> data, Function<? super T, ? extends R> upload) {
+    CompletableFuture<R> uploaded = new CompletableFuture<>();
+    data.whenComplete(
+        (value, error) -> {
+          if (error != null) {
+            uploaded.completeExceptionally(error);
+            return;
+          }
+          uploads.add(
+              () -> {
+                R result;
+                try {
+                  result = upload.apply(value);
+                } catch (RuntimeException e) {
+                  Log.e(TAG, "Upload failed", e);
+                  uploaded.completeExceptionally(e);
+                  return;
+                }
+                uploaded.complete(result);
+              });
+        });
+    return uploaded;
+  }
+
+  /**
+   * Runs queued uploads until {@code budgetNanos} has been spent. At least one upload runs per
+   * call, so that loading always progresses. Must be called on the OpenGL thread, typically at the
+   * start of {@link SampleRender.Renderer#onDrawFrame}.
+   */
+  public void runUploads(long budgetNanos) {
+    long startNanos = System.nanoTime();
+    Runnable upload;
+    do {
+      upload = uploads.poll();
+      if (upload == null || shutdown) {
+        return;
+      }
+      upload.run();
+    } while (System.nanoTime() - startNanos < budgetNanos);
+  }
+
+  /** Returns the number of uploads waiting for {@link #runUploads(long)}. */
+  public int getPendingUploadCount() {
+    return uploads.size();
+  }
+
+  /** Cancels loads in progress and drops queued uploads. May be called on any thread. */
+  public void shutdown() {
+    shutdown = true;
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+    uploads.clear();
+  }
+
+  private CompletableFuture<String[]> readShaderSources(
+      String vertexShaderFileName, String fragmentShaderFileName) {
+    return supply(
+        () ->
+            new String[] {
+              Shader.readSource(assets, vertexShaderFileName),
+              Shader.readSource(assets, fragmentShaderFileName)
+            });
+  }
+
+  private <T> CompletableFuture<T> supply(Task<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    executor.execute(
+        () -> {
+          try {
+            result.complete(task.run());
+          } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to read an asset file", e);
+            result.completeExceptionally(e);
+          }
+        });
+    return result;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Reads assets into direct buffers, for parsers working on bytes rather than streams. */
+/* package-private */
+final class Assets {
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Returns the contents of an asset, positioned at zero. Assets stored uncompressed in the APK,
+   * see {@code noCompress}, are mapped into memory; others are copied into a buffer of the {@link
+   * DirectBufferPool}. Either way, pass the result to {@link DirectBufferPool#release} once its
+   * contents have been consumed.
+   *
+   * @return The contents, or null if there is no such asset.
+   */
+  public static ByteBuffer read(AssetManager assets, String assetFileName) throws IOException {
+    try (AssetFileDescriptor descriptor = assets.openFd(assetFileName);
+        FileInputStream input = descriptor.createInputStream()) {
+      return input
+          .getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+    } catch (FileNotFoundException e) {
+      // Either missing, or compressed in the APK, in which case it has no file descriptor.
+    }
+    try (InputStream input = assets.open(assetFileName)) {
+      // Asset streams report the remaining uncompressed length, so this rarely needs to grow.
+      return readFully(input, input.available());
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads {@code input} to its end into a direct buffer of the {@link DirectBufferPool} in native
+   * order, positioned at zero.
+   *
+   * @param expectedLength The initial capacity, ideally the length of the stream
+   */
+  public static ByteBuffer readFully(InputStream input, int expectedLength) throws IOException {
+    ByteBuffer buffer = DirectBufferPool.acquire(Math.max(expectedLength, CHUNK_SIZE));
+    byte[] chunk = new byte[CHUNK_SIZE];
+    int read;
+    while ((read = input.read(chunk)) != -1) {
+      if (buffer.remaining() < read) {
+        buffer.flip();
+        ByteBuffer grown = DirectBufferPool.acquire(2 * (buffer.limit() + read)).put(buffer);
+        DirectBufferPool.release(buffer);
+        buffer = grown;
+      }
+      buffer.put(chunk, 0, read);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private Assets() {}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.content.res.AssetManager;
+import android.opengl.GLES30;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A mesh in the binary {@code .mesh} format written at build time by the {@code convertMeshes}
+ * Gradle task, whose vertex and index data can be uploaded without parsing or copying.
+ *
+ * <p>The file is little-endian. All offsets are in bytes from the start of the file:
+ *
+ * <pre>
+ *   0   magic "MESH"
+ *   4   version, currently 1
+ *   8   number of vertices
+ *   12  number of indices
+ *   16  index type: GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+ *   20  vertex stride
+ *   24  offset of the vertex data
+ *   28  offset of the index data
+ *   32  bounding box: min x, y, z then max x, y, z, as floats
+ *   56  number of attributes, then for each attribute its component type (GL_FLOAT, GL_HALF_FLOAT
+ *       or GL_BYTE for normalized bytes), number of components and offset within the vertex
+ * </pre>
+ *
+ * The vertex and index data start at multiples of 16 bytes, and attributes follow the alignment
+ * rules of {@link VertexLayout}.
+ */
+/* package-private */
+final class BinaryMesh {
+  /* package-private */ static final int MAGIC = 0x4853454D; // "MESH" read as a little-endian int
+  /* package-private */ static final int VERSION = 1;
+  /* package-private */ static final int ATTRIBUTES_OFFSET = 56;
+
+  final VertexLayout layout;
+  final ByteBuffer vertexData;
+  final ByteBuffer indexData;
+  final int indexType;
+  final int numberOfVertices;
+  final int numberOfIndices;
+  /** The model space bounding box: min x, y, z then max x, y, z. */
+  final float[] bounds;
+
+  private BinaryMesh(
+      VertexLayout layout,
+      ByteBuffer vertexData,
+      ByteBuffer indexData,
+      int indexType,
+      int numberOfVertices,
+      int numberOfIndices,
+      float[] bounds) {
+    this.layout = layout;
+    this.vertexData = vertexData;
+    this.indexData = indexData;
+    this.indexType = indexType;
+    this.numberOfVertices = numberOfVertices;
+    this.numberOfIndices = numberOfIndices;
+    this.bounds = bounds;
+  }
+
+  /**
+   * Reads the given asset, mapping it into memory if it is stored uncompressed in the APK.
+   *
+   * @return The mesh, or null if there is no such asset.
+   */
+  public static BinaryMesh readAsset(AssetManager assets, String assetFileName)
+      throws IOException {
+    ByteBuffer data = Assets.read(assets, assetFileName);
+    return data == null ? null : parse(data, assetFileName);
+  }
+
+  /**
+   * Wraps the contents of a {@code .mesh} file. The vertex and index data of the returned mesh are
+   * views of {@code data}, which is not copied.
+   */
+  public static BinaryMesh parse(ByteBuffer data, String name) throws IOException {
+    data.order(ByteOrder.LITTLE_ENDIAN);
+    if (data.limit() < ATTRIBUTES_OFFSET + 4 || data.getInt(0) != MAGIC) {
+      throw new IOException(name + " is not a binary mesh");
+    }
+    if (data.getInt(4) != VERSION) {
+      throw new IOException(name + " has unsupported version " + data.getInt(4));
+    }
+    int numberOfVertices = data.getInt(8);
+    int numberOfIndices = data.getInt(12);
+    int indexType = data.getInt(16);
+    int stride = data.getInt(20);
+    int vertexDataOffset = data.getInt(24);
+    int indexDataOffset = data.getInt(28);
+    float[] bounds = new float[6];
+    for (int i = 0; i < bounds.length; ++i) {
+      bounds[i] = data.getFloat(32 + 4 * i);
+    }
+
+    VertexLayout layout = new VertexLayout();
+    int numberOfAttributes = data.getInt(ATTRIBUTES_OFFSET);
+    int attributesEnd = ATTRIBUTES_OFFSET + 4 + numberOfAttributes * 12;
+    if (numberOfAttributes < 1 || attributesEnd > Math.min(vertexDataOffset, data.limit())) {
+      throw new IOException(name + " has a malformed attribute table");
+    }
+    for (int i = 0; i < numberOfAttributes; ++i) {
+      int position = ATTRIBUTES_OFFSET + 4 + i * 12;
+      int numberOfComponents = data.getInt(position + 4);
+      try {
+        layout.addAttribute(toFormat(data.getInt(position)), numberOfComponents);
+      } catch (IllegalArgumentException e) {
+        throw new IOException(name + " has an unsupported attribute", e);
+      }
+      if (layout.getOffset(i) != data.getInt(position + 8)) {
+        throw new IOException(name + " has a vertex layout this version cannot read");
+      }
+    }
+    if (layout.getStride() != stride) {
+      throw new IOException(name + " has stride " + stride + ", expected " + layout.getStride());
+    }
+    int indexSize;
+    try {
+      indexSize = IndexType.sizeOf(indexType);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(name + " has an unsupported index type", e);
+    }
+
+    return new BinaryMesh(
+        layout,
+        slice(data, vertexDataOffset, (long) numberOfVertices * stride, name),
+        slice(data, indexDataOffset, (long) numberOfIndices * indexSize, name),
+        indexType,
+        numberOfVertices,
+        numberOfIndices,
+        bounds);
+  }
+
+  private static VertexLayout.Format toFormat(int componentType) {
+    switch (componentType) {
+      case GLES30.GL_FLOAT:
+        return VertexLayout.Format.FLOAT;
+      case GLES30.GL_HALF_FLOAT:
+        return VertexLayout.Format.HALF_FLOAT;
+      case GLES30.GL_BYTE:
+        return VertexLayout.Format.SNORM8;
+      default:
+        throw new IllegalArgumentException("Unsupported component type: " + componentType);
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int offset, long length, String name)
+      throws IOException {
+    if (offset < 0 || length < 0 || offset + length > data.limit()) {
+      throw new IOException(name + " is truncated");
+    }
+    ByteBuffer view = data.duplicate();
+    view.position(offset);
+    view.limit(offset + (int) length);
+    return view.slice().order(ByteOrder.nativeOrder());
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recycles the direct buffers used to stage data on its way to OpenGL, such as decoded image
+ * pixels, packed vertices and narrowed indices.
+ *
+ * <p>Direct buffers are expensive to allocate, and their native memory is only freed once the
+ * garbage collector gets to them. Buffers are therefore rounded up to power-of-two size classes
+ * and, once {@link #release released}, kept for the next {@link #acquire} of the same class, up to
+ * {@link #MAX_POOLED_BYTES} in total. Requests above the largest class are allocated exactly and
+ * not kept. A buffer that is never released is simply garbage collected.
+ *
+ * <p>The methods may be called on any thread.
+ */
+public final class DirectBufferPool {
+  private static final int MIN_CLASS_SHIFT = 8;
+  private static final int MAX_CLASS_SHIFT = 24;
+
+  /** The most memory kept in released buffers; buffers released beyond it are dropped. */
+  public static final long MAX_POOLED_BYTES = 16L << 20;
+
+  private static final List<ArrayDeque<ByteBuffer>> freeBuffers = new ArrayList<>();
+  // The buffers acquired and not yet released, by identity hash code since buffers compare by
+  // contents. They are held weakly, so that buffers never released can still be collected.
+  private static final Map<Integer, List<AcquiredBuffer>> acquiredBuffers = new HashMap<>();
+  private static final ReferenceQueue<ByteBuffer> collectedBuffers = new ReferenceQueue<>();
+
+  static {
+    for (int shift = MIN_CLASS_SHIFT; shift <= MAX_CLASS_SHIFT; ++shift) {
+      freeBuffers.add(new ArrayDeque<>());
+    }
+  }
+
+  private static long inUseBytes;
+  private static long pooledBytes;
+  private static long highWaterBytes;
+  private static int allocationCount;
+  private static int reuseCount;
+
+  /**
+   * Returns a direct buffer in native order with position zero and a limit of {@code bytes}. Its
+   * capacity may be larger. Pass the buffer itself, not a view or slice of it, to {@link #release}
+   * once its contents have been consumed.
+   */
+  public static synchronized ByteBuffer acquire(int bytes) {
+    int shift = classShift(bytes);
+    ByteBuffer buffer = null;
+    if (shift <= MAX_CLASS_SHIFT) {
+      buffer = freeBuffers.get(shift - MIN_CLASS_SHIFT).poll();
+    }
+    if (buffer != null) {
+      pooledBytes -= buffer.capacity();
+      reuseCount++;
+    } else {
+      buffer = ByteBuffer.allocateDirect(shift <= MAX_CLASS_SHIFT ? 1 << shift : bytes);
+      allocationCount++;
+    }
+    addAcquired(buffer);
+    inUseBytes += buffer.capacity();
+    highWaterBytes = Math.max(highWaterBytes, inUseBytes + pooledBytes);
+    buffer.clear();
+    buffer.limit(bytes);
+    return buffer.order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Returns a buffer from {@link #acquire} to the pool. It must not be used afterwards. Read-only
+   * buffers, such as assets mapped by {@code Assets.read}, never come from the pool and are
+   * ignored, so that loaders can release whatever they were given.
+   *
+   * @throws IllegalArgumentException if the buffer was already released, or is a writable buffer
+   *     that was not acquired from the pool, such as a view or slice of one. Pooling it would hand
+   *     the same memory to two later callers.
+   */
+  public static synchronized void release(ByteBuffer buffer) {
+    if (buffer == null || buffer.isReadOnly()) {
+      return;
+    }
+    if (!removeAcquired(buffer)) {
+      throw new IllegalArgumentException(
+          "Buffer was not acquired from the pool, or was already released");
+    }
+    int capacity = buffer.capacity();
+    inUseBytes -= capacity;
+    int shift = classShift(capacity);
+    if (shift > MAX_CLASS_SHIFT
+        || capacity != 1 << shift
+        || pooledBytes + capacity > MAX_POOLED_BYTES) {
+      return;
+    }
+    freeBuffers.get(shift - MIN_CLASS_SHIFT).push(buffer);
+    pooledBytes += capacity;
+  }
+
+  /** Drops all pooled buffers, for example when the app is asked to trim its memory. */
+  public static synchronized void trim() {
+    for (ArrayDeque<ByteBuffer> buffers : freeBuffers) {
+      buffers.clear();
+    }
+    pooledBytes = 0;
+  }
+
+  /** Returns the capacity of the buffers acquired and not yet released. */
+  public static synchronized long getInUseBytes() {
+    return inUseBytes;
+  }
+
+  /** Returns the capacity of the released buffers waiting to be reused. */
+  public static synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /** Returns the highest sum of the in-use and pooled bytes so far. */
+  public static synchronized long getHighWaterBytes() {
+    return highWaterBytes;
+  }
+
+  /** Returns the number of buffers allocated because no pooled buffer was available. */
+  public static synchronized int getAllocationCount() {
+    return allocationCount;
+  }
+
+  /** Returns the number of acquisitions served by a pooled buffer. */
+  public static synchronized int getReuseCount() {
+    return reuseCount;
+  }
+
+  private static void addAcquired(ByteBuffer buffer) {
+    // Forget the buffers collected without being released.
+    Reference<? extends ByteBuffer> collected;
+    while ((collected = collectedBuffers.poll()) != null) {
+      AcquiredBuffer acquired = (AcquiredBuffer) collected;
+      List<AcquiredBuffer> bucket = acquiredBuffers.get(acquired.hash);
+      bucket.remove(acquired);
+      if (bucket.isEmpty()) {
+        acquiredBuffers.remove(acquired.hash);
+      }
+    }
+    int hash = System.identityHashCode(buffer);
+    List<AcquiredBuffer> bucket = acquiredBuffers.get(hash);
+    if (bucket == null) {
+      bucket = new ArrayList<>(1);
+      acquiredBuffers.put(hash, bucket);
+    }
+    bucket.add(new AcquiredBuffer(buffer, hash));
+  }
+
+  private static boolean removeAcquired(ByteBuffer buffer) {
+    int hash = System.identityHashCode(buffer);
+    List<AcquiredBuffer> bucket = acquiredBuffers.get(hash);
+    if (bucket == null) {
+      return false;
+    }
+    for (int i = 0; i < bucket.size(); ++i) {
+      if (bucket.get(i).get() == buffer) {
+        // Cleared so that the reference is not queued once the buffer is collected.
+        bucket.remove(i).clear();
+        if (bucket.isEmpty()) {
+          acquiredBuffers.remove(hash);
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int classShift(int bytes) {
+    return Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1));
+  }
+
+  private DirectBufferPool() {}
+
+  private static final class AcquiredBuffer extends WeakReference<ByteBuffer> {
+    final int hash;
+
+    AcquiredBuffer(ByteBuffer buffer, int hash) {
+      super(buffer, collectedBuffers);
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.util.Log;
+
+/**
+ * Chooses the resolution of an offscreen {@link Framebuffer}, such as the one the virtual scene is
+ * drawn to, from the measured GPU time of each frame.
+ *
+ * <p>When the smoothed GPU time stays above the target, the scale shrinks, and the framebuffer is
+ * expected to be resized to {@link #scale} of its full size and upsampled when composited. Since
+ * rendering time is mostly proportional to the number of pixels, the scale follows the square root
+ * of the ratio between the target and the measured time. It only grows back once the time is well
+ * below the target, and never changes again before the measurements at the new size have settled,
+ * so that it does not oscillate. The scale stays within the bounds given to the constructor.
+ *
+ * <p>Without measurements, such as when {@link GpuTimer} is not supported, the scale stays at its
+ * maximum.
+ */
+public class DynamicResolution {
+  private static final String TAG = DynamicResolution.class.getSimpleName();
+
+  // Weight of a new measurement in the smoothed frame time.
+  private static final float SMOOTHING = 0.1f;
+  // Measurements to take at a new scale before adjusting it again.
+  /* package-private */ static final int SETTLE_FRAMES = 30;
+  // Below this fraction of the target, the scale grows.
+  private static final float RAISE_THRESHOLD = 0.7f;
+  private static final float MAX_RAISE_STEP = 0.1f;
+  private static final float SCALE_GRANULARITY = 0.05f;
+
+  private final float minScale;
+  private final float maxScale;
+  private final long targetGpuNanos;
+
+  private float scale;
+  private float smoothedNanos;
+  private int settleFrames = SETTLE_FRAMES;
+
+  /**
+   * Constructs a {@link DynamicResolution} starting at the maximum scale.
+   *
+   * @param minScale The smallest fraction of the full size to render at, per dimension
+   * @param maxScale The largest fraction, usually 1
+   * @param targetGpuNanos The GPU time a frame should take
+   */
+  public DynamicResolution(float minScale, float maxScale, long targetGpuNanos) {
+    if (minScale <= 0 || minScale > maxScale) {
+      throw new IllegalArgumentException("Invalid scale bounds " + minScale + ", " + maxScale);
+    }
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+    this.targetGpuNanos = targetGpuNanos;
+    this.scale = maxScale;
+  }
+
+  /**
+   * Adjusts the scale to a GPU time measurement. Should be called once per frame.
+   *
+   * @param gpuFrameNanos The GPU time of a recent frame, as returned by {@link GpuTimer#poll}, or
+   *     -1 if there is no new measurement
+   * @return Whether the scale changed, in which case the framebuffer should be resized
+   */
+  public boolean update(long gpuFrameNanos) {
+    if (gpuFrameNanos < 0) {
+      return false;
+    }
+    smoothedNanos =
+        smoothedNanos == 0
+            ? gpuFrameNanos
+            : smoothedNanos + SMOOTHING * (gpuFrameNanos - smoothedNanos);
+    if (settleFrames > 0) {
+      settleFrames--;
+      return false;
+    }
+
+    float newScale = scale;
+    float idealScale = scale * (float) Math.sqrt(targetGpuNanos / smoothedNanos);
+    if (smoothedNanos > targetGpuNanos) {
+      newScale = idealScale;
+    } else if (smoothedNanos < targetGpuNanos * RAISE_THRESHOLD) {
+      newScale = Math.min(scale + MAX_RAISE_STEP, idealScale);
+    }
+    newScale = Math.round(newScale / SCALE_GRANULARITY) * SCALE_GRANULARITY;
+    newScale = Math.max(minScale, Math.min(maxScale, newScale));
+    if (Math.abs(newScale - scale) < SCALE_GRANULARITY / 2) {
+      return false;
+    }
+    Log.i(TAG, "GPU time " + smoothedNanos / 1e6f + " ms, scale " + scale + " -> " + newScale);
+    scale = newScale;
+    smoothedNanos = 0;
+    settleFrames = SETTLE_FRAMES;
+    return true;
+  }
+
+  /** Returns the current fraction of the full size to render at, per dimension. */
+  public float getScale() {
+    return scale;
+  }
+
+  /** Returns {@code fullSize} at the current scale, at least one pixel. */
+  public int scale(int fullSize) {
+    return Math.max(1, Math.round(fullSize * scale));
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.util.Log;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the CPU and GPU time of each named pass of a frame, such as drawing the background or
+ * the planes, over a rolling window of frames.
+ *
+ * <p>{@link SampleRender} begins and ends the frames; renderers bracket their passes with {@link
+ * #beginPass} and {@link #endPass}, which may not nest. CPU time is the wall time between the two
+ * calls. GPU time is measured with a {@link GpuTimer} per pass where timer queries are supported,
+ * and arrives a few frames late. The percentiles of both are available through {@link #getStats},
+ * and as a text {@link #getSummary summary} for an on-screen overlay.
+ *
+ * <p>Per-frame counts, such as the number of culled objects, can be reported alongside with {@link
+ * #setCounter}.
+ *
+ * <p>All methods but {@link #getSummary} must be called on the GL thread.
+ */
+public class FrameProfiler implements Closeable {
+  private static final String TAG = FrameProfiler.class.getSimpleName();
+
+  private static final int WINDOW_SIZE = 120;
+  // Timer results in flight per pass, more than the frames the GPU may lag behind.
+  private static final int TIMER_LATENCY = 4;
+  /* package-private */ static final int SUMMARY_INTERVAL_FRAMES = 30;
+
+  /** The rolling measurements of one pass. */
+  public static final class PassStats {
+    private final long[] cpuNanos;
+    private final long[] gpuNanos;
+    private final long[] sorted;
+    private int cpuCount;
+    private int gpuCount;
+    private GpuTimer timer;
+    private long cpuStartNanos;
+    private long latestGpuNanos = -1;
+    private long lastFrame = -1;
+
+    /* package-private */
+    PassStats(int windowSize) {
+      cpuNanos = new long[windowSize];
+      gpuNanos = new long[windowSize];
+      sorted = new long[windowSize];
+    }
+
+    /** Returns the CPU time below which {@code percentile} (0 to 100) of the samples fall. */
+    public long getCpuNanos(float percentile) {
+      return percentile(cpuNanos, cpuCount, percentile);
+    }
+
+    /**
+     * Returns the GPU time below which {@code percentile} (0 to 100) of the samples fall, or -1
+     * without timer query support.
+     */
+    public long getGpuNanos(float percentile) {
+      return percentile(gpuNanos, gpuCount, percentile);
+    }
+
+    /* package-private */
+    void addCpu(long nanos) {
+      cpuNanos[cpuCount++ % cpuNanos.length] = nanos;
+    }
+
+    /* package-private */
+    void addGpu(long nanos) {
+      gpuNanos[gpuCount++ % gpuNanos.length] = nanos;
+      latestGpuNanos = nanos;
+    }
+
+    private long percentile(long[] samples, int count, float percentile) {
+      int size = Math.min(count, samples.length);
+      if (size == 0) {
+        return -1;
+      }
+      System.arraycopy(samples, 0, sorted, 0, size);
+      Arrays.sort(sorted, 0, size);
+      int index = Math.round(percentile / 100f * (size - 1));
+      return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+  }
+
+  private final Map<String, PassStats> passes = new LinkedHashMap<>();
+  // Values are single-element arrays, so that setting a counter does not box.
+  private final Map<String, long[]> counters = new LinkedHashMap<>();
+  private boolean gpuSupported;
+  private PassStats currentPass;
+  private long gpuFrameNanos = -1;
+  private long frame;
+  private volatile String summary = "";
+
+  /* package-private */
+  FrameProfiler() {}
+
+  /**
+   * Starts over for a new context, whose timer queries are created as passes begin. The queries of
+   * a lost context are gone with it.
+   */
+  /* package-private */
+  void onContextCreated() {
+    gpuSupported = GpuTimer.isSupported();
+    if (!gpuSupported) {
+      Log.i(TAG, "Timer queries are not supported, only CPU times are measured.");
+    }
+    passes.clear();
+    counters.clear();
+    currentPass = null;
+    gpuFrameNanos = -1;
+  }
+
+  /** Returns whether GPU times are measured. */
+  public boolean isGpuSupported() {
+    return gpuSupported;
+  }
+
+  /**
+   * Collects the GPU times that became available since the previous frame, and zeroes the
+   * counters.
+   */
+  /* package-private */
+  void beginFrame() {
+    for (long[] counter : counters.values()) {
+      counter[0] = 0;
+    }
+    boolean updated = false;
+    for (PassStats pass : passes.values()) {
+      if (pass.timer == null) {
+        continue;
+      }
+      long nanos = pass.timer.poll();
+      if (nanos >= 0) {
+        pass.addGpu(nanos);
+        updated = true;
+      }
+    }
+    gpuFrameNanos = -1;
+    if (updated) {
+      // Passes that were skipped in the previous frame no longer add to it.
+      gpuFrameNanos = 0;
+      for (PassStats pass : passes.values()) {
+        if (pass.lastFrame == frame - 1) {
+          gpuFrameNanos += Math.max(0, pass.latestGpuNanos);
+        }
+      }
+    }
+  }
+
+  /** Starts measuring the pass called {@code name}, ending the current one if any. */
+  public void beginPass(String name) {
+    endPass();
+    PassStats pass = passes.get(name);
+    if (pass == null) {
+      pass = new PassStats(WINDOW_SIZE);
+      if (gpuSupported) {
+        pass.timer = new GpuTimer(TIMER_LATENCY);
+      }
+      passes.put(name, pass);
+    }
+    currentPass = pass;
+    pass.lastFrame = frame;
+    if (pass.timer != null) {
+      pass.timer.begin();
+    }
+    pass.cpuStartNanos = System.nanoTime();
+  }
+
+  /** Stops measuring the current pass. Does nothing if there is none. */
+  public void endPass() {
+    if (currentPass == null) {
+      return;
+    }
+    currentPass.addCpu(System.nanoTime() - currentPass.cpuStartNanos);
+    if (currentPass.timer != null) {
+      currentPass.timer.end();
+    }
+    currentPass = null;
+  }
+
+  /** Ends the current pass, and refreshes the summary every so often. */
+  /* package-private */
+  void endFrame() {
+    endPass();
+    if (++frame % SUMMARY_INTERVAL_FRAMES == 0) {
+      summary = formatSummary();
+    }
+  }
+
+  /** Sets the counter called {@code name} for the current frame. */
+  public void setCounter(String name, long value) {
+    long[] counter = counters.get(name);
+    if (counter == null) {
+      counter = new long[1];
+      counters.put(name, counter);
+    }
+    counter[0] = value;
+  }
+
+  /** Returns the value of the counter called {@code name} in the current frame, 0 if unset. */
+  public long getCounter(String name) {
+    long[] counter = counters.get(name);
+    return counter == null ? 0 : counter[0];
+  }
+
+  /**
+   * Returns the GPU time of a whole frame, summing the latest time of each pass that ran in the
+   * previous frame, if any of them got a new measurement this frame; -1 otherwise.
+   */
+  public long getGpuFrameNanos() {
+    return gpuFrameNanos;
+  }
+
+  /** Returns the names of the passes measured so far, in the order they were first begun. */
+  public List<String> getPassNames() {
+    return Collections.unmodifiableList(new ArrayList<>(passes.keySet()));
+  }
+
+  /** Returns the measurements of the pass called {@code name}, or null if it never ran. */
+  public PassStats getStats(String name) {
+    return passes.get(name);
+  }
+
+  /**
+   * Returns the median and 95th percentile of each pass, in milliseconds, one pass per line,
+   * followed by the counters of the last frame. May be called on any thread; refreshed every
+   * {@value #SUMMARY_INTERVAL_FRAMES} frames.
+   */
+  public String getSummary() {
+    return summary;
+  }
+
+  /** Frees the timer queries. The profiler starts over when the next context is created. */
+  @Override
+  public void close() {
+    for (PassStats pass : passes.values()) {
+      if (pass.timer != null) {
+        pass.timer.close();
+      }
+    }
+    passes.clear();
+    currentPass = null;
+  }
+
+  private String formatSummary() {
+    StringBuilder builder = new StringBuilder("pass         cpu p50/p95     gpu p50/p95 ms");
+    for (Map.Entry<String, PassStats> entry : passes.entrySet()) {
+      PassStats pass = entry.getValue();
+      builder
+          .append(String.format(Locale.US, "\n%-10s", entry.getKey()))
+          .append(formatMillis(pass.getCpuNanos(50)))
+          .append('/')
+          .append(formatMillis(pass.getCpuNanos(95)))
+          .append("  ")
+          .append(formatMillis(pass.getGpuNanos(50)))
+          .append('/')
+          .append(formatMillis(pass.getGpuNanos(95)));
+    }
+    for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+      builder.append('\n').append(entry.getKey()).append(": ").append(entry.getValue()[0]);
+    }
+    return builder.toString();
+  }
+
+  private static String formatMillis(long nanos) {
+    return nanos < 0 ? "     -" : String.format(Locale.US, "%6.2f", nanos / 1e6f);
+  }
+}
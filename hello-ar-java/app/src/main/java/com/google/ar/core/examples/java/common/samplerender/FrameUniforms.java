@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.io.Closeable;
+
+/**
+ * The camera and lighting state of the current frame, written once per frame and shared by every
+ * {@link Shader} declaring the {@code FrameUniforms} block:
+ *
+ * <pre>
+ * layout(std140) uniform FrameUniforms {
+ *   mat4 u_View;
+ *   mat4 u_Projection;
+ *   mat4 u_ViewProjection;
+ *   mat4 u_ViewInverse;
+ *   vec4 u_ViewLightDirection;
+ *   vec3 u_LightIntensity;
+ *   bool u_LightEstimateIsValid;
+ *   vec3 u_SphericalHarmonicsCoefficients[9];
+ * };
+ * </pre>
+ *
+ * <p>Shaders need not use every member, but must declare all of them in this order.
+ */
+public class FrameUniforms implements Closeable {
+  /** The name of the uniform block in shader code. */
+  public static final String BLOCK_NAME = "FrameUniforms";
+
+  /* package-private */
+  static final int BINDING_POINT = 0;
+
+  // Byte offsets of the block members, following the std140 layout rules.
+  /* package-private */ static final int VIEW_OFFSET = 0;
+  /* package-private */ static final int PROJECTION_OFFSET = 64;
+  /* package-private */ static final int VIEW_PROJECTION_OFFSET = 128;
+  /* package-private */ static final int VIEW_INVERSE_OFFSET = 192;
+  /* package-private */ static final int VIEW_LIGHT_DIRECTION_OFFSET = 256;
+  /* package-private */ static final int LIGHT_INTENSITY_OFFSET = 272;
+  /* package-private */ static final int LIGHT_ESTIMATE_IS_VALID_OFFSET = 284;
+  /* package-private */ static final int SPHERICAL_HARMONICS_COEFFICIENTS_OFFSET = 288;
+  /* package-private */ static final int SIZE = 432;
+
+  private final UniformBuffer buffer;
+
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final Frustum frustum = new Frustum();
+  // Temporary matrices allocated here to reduce number of allocations for each frame.
+  private final float[] viewProjectionMatrix = new float[16];
+  private final float[] viewInverseMatrix = new float[16];
+
+  /* package-private */
+  FrameUniforms(GpuResourceRegistry resourceRegistry) {
+    buffer = new UniformBuffer(resourceRegistry, BINDING_POINT, SIZE);
+  }
+
+  @Override
+  public void close() {
+    buffer.close();
+  }
+
+  /**
+   * Sets the camera matrices of the current frame. The view-projection and inverse view matrices,
+   * and the {@link Frustum} used for culling, are derived from them.
+   *
+   * @param viewMatrix The view matrix, as returned by {@link
+   *     com.google.ar.core.Camera#getViewMatrix(float[], int)}
+   * @param projectionMatrix The projection matrix, as returned by {@link
+   *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}
+   */
+  public FrameUniforms setCamera(float[] viewMatrix, float[] projectionMatrix) {
+    System.arraycopy(viewMatrix, 0, this.viewMatrix, 0, 16);
+    System.arraycopy(projectionMatrix, 0, this.projectionMatrix, 0, 16);
+    MatrixMath.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+    MatrixMath.invertM(viewInverseMatrix, 0, viewMatrix, 0);
+    frustum.update(viewProjectionMatrix);
+    buffer
+        .setMat4(VIEW_OFFSET, viewMatrix)
+        .setMat4(PROJECTION_OFFSET, projectionMatrix)
+        .setMat4(VIEW_PROJECTION_OFFSET, viewProjectionMatrix)
+        .setMat4(VIEW_INVERSE_OFFSET, viewInverseMatrix);
+    return this;
+  }
+
+  /**
+   * Sets the main directional light.
+   *
+   * @param viewLightDirection The direction of the light in view space, with 0 as the fourth
+   *     component
+   * @param intensity The RGB intensity of the light
+   */
+  public FrameUniforms setMainLight(float[] viewLightDirection, float[] intensity) {
+    buffer
+        .setVec4(VIEW_LIGHT_DIRECTION_OFFSET, viewLightDirection)
+        .setVec3(LIGHT_INTENSITY_OFFSET, intensity);
+    return this;
+  }
+
+  /**
+   * Sets the 9 RGB spherical harmonics coefficients of the ambient light, premultiplied with their
+   * spherical harmonics constants.
+   */
+  public FrameUniforms setSphericalHarmonicsCoefficients(float[] coefficients) {
+    if (coefficients.length != 9 * 3) {
+      throw new IllegalArgumentException("Value array length must be 27 (3 components x 9)");
+    }
+    buffer.setVec3Array(SPHERICAL_HARMONICS_COEFFICIENTS_OFFSET, coefficients);
+    return this;
+  }
+
+  /** Sets whether the light estimate of the current frame is valid. */
+  public FrameUniforms setLightEstimateIsValid(boolean lightEstimateIsValid) {
+    buffer.setBool(LIGHT_ESTIMATE_IS_VALID_OFFSET, lightEstimateIsValid);
+    return this;
+  }
+
+  /** Returns the view matrix last passed to {@link #setCamera}. The array must not be modified. */
+  /* package-private */
+  float[] getViewMatrix() {
+    return viewMatrix;
+  }
+
+  /**
+   * Returns the projection matrix last passed to {@link #setCamera}. The array must not be
+   * modified.
+   */
+  /* package-private */
+  float[] getProjectionMatrix() {
+    return projectionMatrix;
+  }
+
+  /**
+   * Returns the view frustum of the matrices last passed to {@link #setCamera}, for culling. Until
+   * then, everything is inside.
+   */
+  public Frustum getFrustum() {
+    return frustum;
+  }
+
+  /* package-private */
+  UniformBuffer getUniformBuffer() {
+    return buffer;
+  }
+}
@@ -23,6 +23,8 @@ import java.io.Closeable;
 public class Framebuffer implements Closeable {
   private static final String TAG = Framebuffer.class.getSimpleName();
 
+  private final GlState glState;
+  private final GpuResourceRegistry resourceRegistry;
   private final int[] framebufferId = {0};
   private final Texture colorTexture;
   private final Texture depthTexture;
@@ -36,6 +38,8 @@ public class Framebuffer implements Closeable {
    * Framebuffer)}.
    */
   public Framebuffer(SampleRender render, int width, int height) {
+    glState = render.getGlState();
+    resourceRegistry = render.getResourceRegistry();
     try {
       colorTexture =
           new Texture(
@@ -51,24 +55,25 @@ public class Framebuffer implements Closeable {
               /*useMipmaps=*/ false);
 
       // Set parameters of the depth texture so that it's readable by shaders.
-      GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind depth texture", "glBindTexture");
-      GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_COMPARE_MODE, GLES30.GL_NONE);
+      glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
+      GlBackend.get()
+          .glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_COMPARE_MODE, GLES30.GL_NONE);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
-      GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_NEAREST);
+      GlBackend.get()
+          .glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_NEAREST);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
-      GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_NEAREST);
+      GlBackend.get()
+          .glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_NEAREST);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
 
       // Set initial dimensions.
       resize(width, height);
 
       // Create framebuffer object and bind to the color and depth textures.
-      GLES30.glGenFramebuffers(1, framebufferId, 0);
+      GlBackend.get().glGenFramebuffers(1, framebufferId, 0);
       GLError.maybeThrowGLException("Framebuffer creation failed", "glGenFramebuffers");
-      GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId[0]);
-      GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
-      GLES30.glFramebufferTexture2D(
+      glState.bindFramebuffer(framebufferId[0]);
+      GlBackend.get().glFramebufferTexture2D(
           GLES30.GL_FRAMEBUFFER,
           GLES30.GL_COLOR_ATTACHMENT0,
           GLES30.GL_TEXTURE_2D,
@@ -76,7 +81,7 @@ public class Framebuffer implements Closeable {
           /*level=*/ 0);
       GLError.maybeThrowGLException(
           "Failed to bind color texture to framebuffer", "glFramebufferTexture2D");
-      GLES30.glFramebufferTexture2D(
+      GlBackend.get().glFramebufferTexture2D(
           GLES30.GL_FRAMEBUFFER,
           GLES30.GL_DEPTH_ATTACHMENT,
           GLES30.GL_TEXTURE_2D,
@@ -85,7 +90,7 @@ public class Framebuffer implements Closeable {
       GLError.maybeThrowGLException(
           "Failed to bind depth texture to framebuffer", "glFramebufferTexture2D");
 
-      int status = GLES30.glCheckFramebufferStatus(GLES30.GL_FRAMEBUFFER);
+      int status = GlBackend.get().glCheckFramebufferStatus(GLES30.GL_FRAMEBUFFER);
       if (status != GLES30.GL_FRAMEBUFFER_COMPLETE) {
         throw new IllegalStateException("Framebuffer construction not complete: code " + status);
       }
@@ -98,7 +103,8 @@ public class Framebuffer implements Closeable {
   @Override
   public void close() {
     if (framebufferId[0] != 0) {
-      GLES30.glDeleteFramebuffers(1, framebufferId, 0);
+      glState.onFramebufferDeleted(framebufferId[0]);
+      GlBackend.get().glDeleteFramebuffers(1, framebufferId, 0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free framebuffer", "glDeleteFramebuffers");
       framebufferId[0] = 0;
     }
@@ -115,9 +121,8 @@ public class Framebuffer implements Closeable {
     this.height = height;
 
     // Color texture
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, colorTexture.getTextureId());
-    GLError.maybeThrowGLException("Failed to bind color texture", "glBindTexture");
-    GLES30.glTexImage2D(
+    glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, colorTexture.getTextureId());
+    GlBackend.get().glTexImage2D(
         GLES30.GL_TEXTURE_2D,
         /*level=*/ 0,
         GLES30.GL_RGBA,
@@ -130,9 +135,8 @@ public class Framebuffer implements Closeable {
     GLError.maybeThrowGLException("Failed to specify color texture format", "glTexImage2D");
 
     // Depth texture
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
-    GLError.maybeThrowGLException("Failed to bind depth texture", "glBindTexture");
-    GLES30.glTexImage2D(
+    glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
+    GlBackend.get().glTexImage2D(
         GLES30.GL_TEXTURE_2D,
         /*level=*/ 0,
         GLES30.GL_DEPTH_COMPONENT32F,
@@ -143,6 +147,15 @@ public class Framebuffer implements Closeable {
         GLES30.GL_FLOAT,
         /*pixels=*/ null);
     GLError.maybeThrowGLException("Failed to specify depth texture format", "glTexImage2D");
+
+    resourceRegistry.setBytes(
+        colorTexture,
+        GpuResourceRegistry.estimateTextureBytes(
+            GLES30.GL_RGBA8, width, height, /*mipmapped=*/ false));
+    resourceRegistry.setBytes(
+        depthTexture,
+        GpuResourceRegistry.estimateTextureBytes(
+            GLES30.GL_DEPTH_COMPONENT32F, width, height, /*mipmapped=*/ false));
   }
 
   /** Returns the color texture associated with this framebuffer. */
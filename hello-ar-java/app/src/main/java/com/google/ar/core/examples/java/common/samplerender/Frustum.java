@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+/**
+ * The six planes bounding what the camera sees, used to skip objects that are entirely off-screen
+ * or behind the camera before issuing their draws.
+ *
+ * <p>The planes are extracted from a view-projection matrix, so they are in world space. Tests are
+ * conservative: an object reported as outside is certainly not visible, while one reported as
+ * inside may still be hidden, for example by lying beyond a corner of the frustum.
+ */
+public class Frustum {
+  private static final int PLANE_COUNT = 6;
+
+  // Each plane as a, b, c, d with a unit normal pointing inside: a * x + b * y + c * z + d >= 0.
+  private final float[] planes = new float[PLANE_COUNT * 4];
+
+  public Frustum() {}
+
+  /**
+   * Extracts the planes of {@code viewProjection}.
+   *
+   * @param viewProjection A 4x4 view-projection matrix, in column-major order
+   */
+  public void update(float[] viewProjection) {
+    // A point is inside when -w <= x, y, z <= w in clip space, which gives one plane per bound:
+    // row 3 plus or minus row 0, 1 and 2 of the matrix.
+    for (int axis = 0; axis < 3; ++axis) {
+      setPlane(2 * axis, viewProjection, axis, 1f);
+      setPlane(2 * axis + 1, viewProjection, axis, -1f);
+    }
+  }
+
+  /**
+   * Returns whether an axis-aligned box, placed in the world by a model matrix, may be visible.
+   *
+   * @param modelMatrix A 4x4 affine model-to-world matrix, in column-major order
+   * @param modelOffset The index of the matrix in {@code modelMatrix}
+   * @param bounds The box in model space: min x, y, z then max x, y, z, as returned by {@link
+   *     Mesh#getBounds()}
+   */
+  public boolean intersectsBox(float[] modelMatrix, int modelOffset, float[] bounds) {
+    float[] m = modelMatrix;
+    int o = modelOffset;
+    float cx = (bounds[0] + bounds[3]) * 0.5f;
+    float cy = (bounds[1] + bounds[4]) * 0.5f;
+    float cz = (bounds[2] + bounds[5]) * 0.5f;
+    float hx = (bounds[3] - bounds[0]) * 0.5f;
+    float hy = (bounds[4] - bounds[1]) * 0.5f;
+    float hz = (bounds[5] - bounds[2]) * 0.5f;
+    // World-space center of the box.
+    float x = m[o] * cx + m[o + 4] * cy + m[o + 8] * cz + m[o + 12];
+    float y = m[o + 1] * cx + m[o + 5] * cy + m[o + 9] * cz + m[o + 13];
+    float z = m[o + 2] * cx + m[o + 6] * cy + m[o + 10] * cz + m[o + 14];
+    for (int p = 0; p < planes.length; p += 4) {
+      float a = planes[p];
+      float b = planes[p + 1];
+      float c = planes[p + 2];
+      // Half the extent of the transformed box along the plane normal.
+      float radius =
+          Math.abs(a * m[o] + b * m[o + 1] + c * m[o + 2]) * hx
+              + Math.abs(a * m[o + 4] + b * m[o + 5] + c * m[o + 6]) * hy
+              + Math.abs(a * m[o + 8] + b * m[o + 9] + c * m[o + 10]) * hz;
+      if (a * x + b * y + c * z + planes[p + 3] < -radius) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void setPlane(int plane, float[] m, int row, float sign) {
+    float a = m[3] + sign * m[row];
+    float b = m[7] + sign * m[4 + row];
+    float c = m[11] + sign * m[8 + row];
+    float d = m[15] + sign * m[12 + row];
+    float length = (float) Math.sqrt(a * a + b * b + c * c);
+    int p = plane * 4;
+    planes[p] = a / length;
+    planes[p + 1] = b / length;
+    planes[p + 2] = c / length;
+    planes[p + 3] = d / length;
+  }
+}
@@ -19,57 +19,134 @@ import android.opengl.GLES30;
 import android.opengl.GLException;
 import android.opengl.GLU;
 import android.util.Log;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-/** Module for handling OpenGL errors. */
+/**
+ * Module for handling OpenGL errors.
+ *
+ * <p>Querying {@code glGetError} after each call may force the CPU to wait for the GPU on some
+ * drivers, so how often errors are checked is selected process-wide with {@link #setCheckMode}.
+ * Errors found are counted per call site in every mode, see {@link #getErrorCounts}.
+ */
 public class GLError {
+  private static final String TAG = GLError.class.getSimpleName();
+  // Call site of errors raised on frames that were not sampled.
+  private static final String UNSAMPLED_CALL_SITE = "(unsampled frames)";
+
+  /** How errors are checked by {@link #maybeThrowGLException} and {@link #maybeLogGLError}. */
+  public enum CheckMode {
+    /** Check after every call, and throw a {@link GLException} on error. */
+    FULL,
+    /** Check only on every Nth frame, and log errors instead of throwing. */
+    SAMPLED,
+    /** Never check. */
+    OFF
+  }
+
+  private static CheckMode checkMode = CheckMode.FULL;
+  private static int samplingInterval = 1;
+  private static long frameNumber;
+  private static boolean checkingThisFrame = true;
+  // Number of errors seen per call site, keyed by "reason: api". Only touched when an error occurs.
+  private static final Map<String, Integer> errorCounts = new HashMap<>();
+
+  /**
+   * Selects how errors are checked. Must be called on the GL thread.
+   *
+   * <p>{@code KHR_debug} message callbacks are not offered, since the Android Java bindings of
+   * {@code glDebugMessageCallbackKHR} are not implemented.
+   *
+   * @param samplingInterval For {@link CheckMode#SAMPLED}, check every this many frames
+   */
+  public static void setCheckMode(CheckMode mode, int samplingInterval) {
+    if (samplingInterval < 1) {
+      throw new IllegalArgumentException("Sampling interval must be positive: " + samplingInterval);
+    }
+    checkMode = mode;
+    GLError.samplingInterval = samplingInterval;
+    checkingThisFrame = mode == CheckMode.FULL;
+  }
+
+  public static CheckMode getCheckMode() {
+    return checkMode;
+  }
+
+  /** Returns a snapshot of the number of errors seen per call site, keyed by "reason: api". */
+  public static synchronized Map<String, Integer> getErrorCounts() {
+    return new HashMap<>(errorCounts);
+  }
+
   /** Throws a {@link GLException} if a GL error occurred. */
   public static void maybeThrowGLException(String reason, String api) {
-    List<Integer> errorCodes = getGlErrors();
-    if (errorCodes != null) {
-      throw new GLException(errorCodes.get(0), formatErrorMessage(reason, api, errorCodes));
+    if (!checkingThisFrame) {
+      return;
+    }
+    int errorCode = GlBackend.get().glGetError();
+    // Shortcut for no errors
+    if (errorCode == GLES30.GL_NO_ERROR) {
+      return;
     }
+    String message = drainErrors(reason, api, errorCode);
+    if (checkMode == CheckMode.FULL) {
+      throw new GLException(errorCode, message);
+    }
+    Log.e(TAG, message);
   }
 
   /** Logs a message with the given logcat priority if a GL error occurred. */
   public static void maybeLogGLError(int priority, String tag, String reason, String api) {
-    List<Integer> errorCodes = getGlErrors();
-    if (errorCodes != null) {
-      Log.println(priority, tag, formatErrorMessage(reason, api, errorCodes));
+    if (!checkingThisFrame) {
+      return;
+    }
+    int errorCode = GlBackend.get().glGetError();
+    if (errorCode != GLES30.GL_NO_ERROR) {
+      Log.println(priority, tag, drainErrors(reason, api, errorCode));
     }
   }
 
-  private static String formatErrorMessage(String reason, String api, List<Integer> errorCodes) {
-    StringBuilder builder = new StringBuilder(String.format("%s: %s: ", reason, api));
-    Iterator<Integer> iterator = errorCodes.iterator();
-    while (iterator.hasNext()) {
-      int errorCode = iterator.next();
-      builder.append(String.format("%s (%d)", GLU.gluErrorString(errorCode), errorCode));
-      if (iterator.hasNext()) {
+  /** Advances the frame counter of {@link CheckMode#SAMPLED}. Called once per frame. */
+  /* package-private */
+  static void onFrameStarted() {
+    frameNumber++;
+    if (checkMode != CheckMode.SAMPLED) {
+      return;
+    }
+    checkingThisFrame = frameNumber % samplingInterval == 0;
+    if (checkingThisFrame) {
+      // The error flags are sticky, so anything still pending was raised on an unsampled frame.
+      // Report it here so it is not blamed on the first call site checked this frame.
+      maybeLogGLError(Log.WARN, TAG, UNSAMPLED_CALL_SITE, "glGetError");
+    }
+  }
+
+  /* package-private */
+  static boolean isCheckingThisFrame() {
+    return checkingThisFrame;
+  }
+
+  /**
+   * Counts the given error and any further pending ones against the call site, and returns the
+   * message describing them.
+   */
+  private static String drainErrors(String reason, String api, int errorCode) {
+    StringBuilder builder = new StringBuilder(reason).append(": ").append(api).append(": ");
+    int count = 0;
+    while (errorCode != GLES30.GL_NO_ERROR) {
+      if (count > 0) {
         builder.append(", ");
       }
+      builder.append(String.format("%s (%d)", GLU.gluErrorString(errorCode), errorCode));
+      count++;
+      errorCode = GlBackend.get().glGetError();
     }
+    countErrors(reason + ": " + api, count);
     return builder.toString();
   }
 
-  private static List<Integer> getGlErrors() {
-    int errorCode = GLES30.glGetError();
-    // Shortcut for no errors
-    if (errorCode == GLES30.GL_NO_ERROR) {
-      return null;
-    }
-    List<Integer> errorCodes = new ArrayList<>();
-    errorCodes.add(errorCode);
-    while (true) {
-      errorCode = GLES30.glGetError();
-      if (errorCode == GLES30.GL_NO_ERROR) {
-        break;
-      }
-      errorCodes.add(errorCode);
-    }
-    return errorCodes;
+  private static synchronized void countErrors(String callSite, int count) {
+    Integer total = errorCounts.get(callSite);
+    errorCounts.put(callSite, total == null ? count : total + count);
   }
 
   private GLError() {}
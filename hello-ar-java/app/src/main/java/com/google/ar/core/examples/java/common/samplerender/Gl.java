@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES entry points used by samplerender, which calls them through {@link
+ * GlBackend#get()} instead of the {@code android.opengl.GLES30} statics.
+ *
+ * <p>Each method has the signature and meaning of the method of the same name in {@code GLES30}.
+ * {@link AndroidGl} forwards them to the driver, and {@link RecordingGl} records them without a
+ * driver, so that render paths can run and be measured on a plain JVM.
+ */
+public interface Gl {
+
+  // State.
+
+  void glUseProgram(int program);
+
+  void glBindFramebuffer(int target, int framebuffer);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindBufferBase(int target, int index, int buffer);
+
+  void glBindVertexArray(int array);
+
+  void glActiveTexture(int texture);
+
+  void glBindTexture(int target, int texture);
+
+  void glViewport(int x, int y, int width, int height);
+
+  void glEnable(int cap);
+
+  void glDisable(int cap);
+
+  void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha);
+
+  void glDepthMask(boolean flag);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glClear(int mask);
+
+  void glInvalidateFramebuffer(int target, int numAttachments, int[] attachments, int offset);
+
+  // Framebuffers.
+
+  void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+  int glCheckFramebufferStatus(int target);
+
+  void glDrawBuffers(int n, int[] bufs, int offset);
+
+  // Vertex arrays.
+
+  void glGenVertexArrays(int n, int[] arrays, int offset);
+
+  void glDeleteVertexArrays(int n, int[] arrays, int offset);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset);
+
+  void glVertexAttribDivisor(int index, int divisor);
+
+  // Draws.
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawArraysInstanced(int mode, int first, int count, int instanceCount);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+  // Uniforms.
+
+  int glGetUniformLocation(int program, String name);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform1iv(int location, int count, int[] values, int offset);
+
+  void glUniform1fv(int location, int count, float[] values, int offset);
+
+  void glUniform2fv(int location, int count, float[] values, int offset);
+
+  void glUniform3fv(int location, int count, float[] values, int offset);
+
+  void glUniform4fv(int location, int count, float[] values, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] values, int offset);
+
+  void glUniformMatrix3fv(int location, int count, boolean transpose, float[] values, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] values, int offset);
+
+  int glGetUniformBlockIndex(int program, String uniformBlockName);
+
+  void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding);
+
+  // Buffers.
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  Buffer glMapBufferRange(int target, int offset, int length, int access);
+
+  boolean glUnmapBuffer(int target);
+
+  // Textures.
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glTexImage2D(
+      int target,
+      int level,
+      int internalFormat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels);
+
+  void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalFormat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data);
+
+  void glGenerateMipmap(int target);
+
+  // Shaders and programs.
+
+  int glCreateShader(int type);
+
+  void glShaderSource(int shader, String source);
+
+  void glCompileShader(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glDeleteShader(int shader);
+
+  int glCreateProgram();
+
+  void glAttachShader(int program, int shader);
+
+  void glLinkProgram(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetProgramInfoLog(int program);
+
+  void glDeleteProgram(int program);
+
+  void glProgramParameteri(int program, int pname, int value);
+
+  void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+  void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary);
+
+  // Synchronization and queries.
+
+  long glFenceSync(int condition, int flags);
+
+  int glClientWaitSync(long sync, int flags, long timeout);
+
+  void glDeleteSync(long sync);
+
+  void glGenQueries(int n, int[] ids, int offset);
+
+  void glDeleteQueries(int n, int[] ids, int offset);
+
+  void glBeginQuery(int target, int id);
+
+  void glEndQuery(int target);
+
+  void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+  int glGetError();
+
+  String glGetString(int name);
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+/**
+ * Holds the {@link Gl} samplerender issues its OpenGL calls to. This is the device's {@link
+ * AndroidGl} unless replaced, for example by a {@link RecordingGl} to benchmark a render path
+ * without a device.
+ */
+public final class GlBackend {
+  private static Gl gl = new AndroidGl();
+
+  private GlBackend() {}
+
+  public static Gl get() {
+    return gl;
+  }
+
+  /**
+   * Makes samplerender call {@code backend} from now on. Must be called before the {@link
+   * SampleRender} and its objects are created, since object names from one backend mean nothing to
+   * another.
+   */
+  public static void set(Gl backend) {
+    gl = backend;
+  }
+}
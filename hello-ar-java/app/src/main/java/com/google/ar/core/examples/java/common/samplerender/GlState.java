@@ -0,0 +1,300 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES30;
+import java.util.Arrays;
+
+/**
+ * A shadow copy of the OpenGL state changed by {@link SampleRender}, used to skip calls which would
+ * not change anything.
+ *
+ * <p>The bound program, framebuffer, viewport, blend functions, depth state, texture bindings and
+ * uniform buffer bindings must only be changed through this class, on the GL thread. Call {@link
+ * #invalidate()} after code outside of {@link SampleRender} may have changed them.
+ */
+public class GlState {
+  private static final int UNKNOWN = -1;
+  // Bindings of higher texture units and binding points are not cached, but still issued.
+  private static final int MAX_TEXTURE_UNITS = 16;
+  private static final int MAX_UNIFORM_BUFFER_BINDINGS = 8;
+  private static final int[] TEXTURE_TARGETS = {
+    GLES30.GL_TEXTURE_2D, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES30.GL_TEXTURE_CUBE_MAP
+  };
+
+  private int program;
+  private int framebuffer;
+  private int activeTextureUnit;
+  // Indexed by texture target, then by texture unit.
+  private final int[][] textureBindings = new int[TEXTURE_TARGETS.length][MAX_TEXTURE_UNITS];
+  private final int[] uniformBufferBindings = new int[MAX_UNIFORM_BUFFER_BINDINGS];
+  private final int[] viewport = new int[4];
+  private final int[] blendFunc = new int[4];
+  // Tri-state flags: UNKNOWN, 0 (false) or 1 (true).
+  private int depthTest;
+  private int depthMask;
+
+  private long issuedCallCount;
+  private long skippedCallCount;
+
+  /* package-private */
+  GlState() {
+    invalidate();
+  }
+
+  /** Forgets all cached state, so that the next change of every kind is issued. */
+  public void invalidate() {
+    program = UNKNOWN;
+    framebuffer = UNKNOWN;
+    invalidateTextureBindings();
+    Arrays.fill(uniformBufferBindings, UNKNOWN);
+    viewport[0] = UNKNOWN;
+    blendFunc[0] = UNKNOWN;
+    depthTest = UNKNOWN;
+    depthMask = UNKNOWN;
+  }
+
+  /**
+   * Forgets the active texture unit and texture bindings only, for example after updating a {@link
+   * android.graphics.SurfaceTexture}, which binds its texture to the active unit.
+   */
+  public void invalidateTextureBindings() {
+    activeTextureUnit = UNKNOWN;
+    for (int[] bindings : textureBindings) {
+      Arrays.fill(bindings, UNKNOWN);
+    }
+  }
+
+  /** Returns the number of state changes forwarded to OpenGL since the last reset. */
+  public long getIssuedCallCount() {
+    return issuedCallCount;
+  }
+
+  /** Returns the number of redundant state changes skipped since the last reset. */
+  public long getSkippedCallCount() {
+    return skippedCallCount;
+  }
+
+  /** Resets the issued and skipped call counters. */
+  public void resetCallCounts() {
+    issuedCallCount = 0;
+    skippedCallCount = 0;
+  }
+
+  /** Makes a program current, unless it already is. */
+  public void useProgram(int newProgram) {
+    if (program == newProgram) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glUseProgram(newProgram);
+    GLError.maybeThrowGLException("Failed to use shader program", "glUseProgram");
+    program = newProgram;
+  }
+
+  /** Binds a framebuffer to {@code GL_FRAMEBUFFER}, unless it already is. */
+  public void bindFramebuffer(int newFramebuffer) {
+    if (framebuffer == newFramebuffer) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glBindFramebuffer(GLES30.GL_FRAMEBUFFER, newFramebuffer);
+    GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
+    framebuffer = newFramebuffer;
+  }
+
+  /** Sets the viewport, unless it is already set to the given rectangle. */
+  public void setViewport(int x, int y, int width, int height) {
+    if (viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glViewport(x, y, width, height);
+    GLError.maybeThrowGLException("Failed to set viewport dimensions", "glViewport");
+    viewport[0] = x;
+    viewport[1] = y;
+    viewport[2] = width;
+    viewport[3] = height;
+  }
+
+  /** Sets the blend functions for the RGB and alpha channels, unless they are already set. */
+  public void setBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+    if (blendFunc[0] == srcRgb
+        && blendFunc[1] == dstRgb
+        && blendFunc[2] == srcAlpha
+        && blendFunc[3] == dstAlpha) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glBlendFuncSeparate(srcRgb, dstRgb, srcAlpha, dstAlpha);
+    GLError.maybeThrowGLException("Failed to set blend mode", "glBlendFuncSeparate");
+    blendFunc[0] = srcRgb;
+    blendFunc[1] = dstRgb;
+    blendFunc[2] = srcAlpha;
+    blendFunc[3] = dstAlpha;
+  }
+
+  /** Enables or disables {@code GL_DEPTH_TEST}, unless it already is. */
+  public void setDepthTest(boolean enabled) {
+    int value = enabled ? 1 : 0;
+    if (depthTest == value) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    if (enabled) {
+      GlBackend.get().glEnable(GLES30.GL_DEPTH_TEST);
+      GLError.maybeThrowGLException("Failed to enable depth test", "glEnable");
+    } else {
+      GlBackend.get().glDisable(GLES30.GL_DEPTH_TEST);
+      GLError.maybeThrowGLException("Failed to disable depth test", "glDisable");
+    }
+    depthTest = value;
+  }
+
+  /** Sets the depth write mask, unless it is already set. */
+  public void setDepthMask(boolean enabled) {
+    int value = enabled ? 1 : 0;
+    if (depthMask == value) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glDepthMask(enabled);
+    GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
+    depthMask = value;
+  }
+
+  /**
+   * Binds a texture to a texture unit for sampling, selecting the unit first if the texture is not
+   * bound to it yet. The active texture unit is unspecified afterwards; use {@link
+   * #bindTextureForUpdate} before changing the texture with {@code glTex*} calls.
+   *
+   * @param unit The zero-based texture unit index, not the {@code GL_TEXTURE0 + n} enum
+   * @param target The texture target, such as {@code GL_TEXTURE_2D}
+   */
+  public void bindTexture(int unit, int target, int texture) {
+    int[] bindings = getTextureBindings(target);
+    if (bindings != null && unit < MAX_TEXTURE_UNITS && bindings[unit] == texture) {
+      skippedCallCount++;
+      return;
+    }
+    activeTexture(unit);
+    issueBindTexture(bindings, unit, target, texture);
+  }
+
+  /**
+   * Binds a texture to the active texture unit, so that following {@code glTex*} calls apply to
+   * it.
+   *
+   * @param target The texture target, such as {@code GL_TEXTURE_2D}
+   */
+  public void bindTextureForUpdate(int target, int texture) {
+    int unit = activeTextureUnit == UNKNOWN ? 0 : activeTextureUnit;
+    activeTexture(unit);
+    int[] bindings = getTextureBindings(target);
+    if (bindings != null && unit < MAX_TEXTURE_UNITS && bindings[unit] == texture) {
+      skippedCallCount++;
+      return;
+    }
+    issueBindTexture(bindings, unit, target, texture);
+  }
+
+  /** Binds a buffer to an indexed {@code GL_UNIFORM_BUFFER} binding point, unless it already is. */
+  public void bindUniformBufferBase(int index, int buffer) {
+    if (index < MAX_UNIFORM_BUFFER_BINDINGS && uniformBufferBindings[index] == buffer) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glBindBufferBase(GLES30.GL_UNIFORM_BUFFER, index, buffer);
+    GLError.maybeThrowGLException("Failed to bind uniform buffer base", "glBindBufferBase");
+    if (index < MAX_UNIFORM_BUFFER_BINDINGS) {
+      uniformBufferBindings[index] = buffer;
+    }
+  }
+
+  /**
+   * Forgets a texture about to be deleted. Deleting a texture unbinds it, and its name may be
+   * reused by a new texture which would otherwise appear bound already.
+   */
+  public void onTextureDeleted(int texture) {
+    for (int[] bindings : textureBindings) {
+      for (int unit = 0; unit < MAX_TEXTURE_UNITS; ++unit) {
+        if (bindings[unit] == texture) {
+          bindings[unit] = UNKNOWN;
+        }
+      }
+    }
+  }
+
+  /** Forgets a framebuffer about to be deleted. See {@link #onTextureDeleted}. */
+  public void onFramebufferDeleted(int deletedFramebuffer) {
+    if (framebuffer == deletedFramebuffer) {
+      framebuffer = UNKNOWN;
+    }
+  }
+
+  /** Forgets a program about to be deleted. See {@link #onTextureDeleted}. */
+  public void onProgramDeleted(int deletedProgram) {
+    if (program == deletedProgram) {
+      program = UNKNOWN;
+    }
+  }
+
+  /** Forgets a buffer about to be deleted. See {@link #onTextureDeleted}. */
+  public void onBufferDeleted(int buffer) {
+    for (int i = 0; i < MAX_UNIFORM_BUFFER_BINDINGS; ++i) {
+      if (uniformBufferBindings[i] == buffer) {
+        uniformBufferBindings[i] = UNKNOWN;
+      }
+    }
+  }
+
+  private void activeTexture(int unit) {
+    if (activeTextureUnit == unit) {
+      skippedCallCount++;
+      return;
+    }
+    issuedCallCount++;
+    GlBackend.get().glActiveTexture(GLES30.GL_TEXTURE0 + unit);
+    GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
+    activeTextureUnit = unit;
+  }
+
+  private void issueBindTexture(int[] bindings, int unit, int target, int texture) {
+    issuedCallCount++;
+    GlBackend.get().glBindTexture(target, texture);
+    GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
+    if (bindings != null && unit < MAX_TEXTURE_UNITS) {
+      bindings[unit] = texture;
+    }
+  }
+
+  private int[] getTextureBindings(int target) {
+    for (int i = 0; i < TEXTURE_TARGETS.length; ++i) {
+      if (TEXTURE_TARGETS[i] == target) {
+        return textureBindings[i];
+      }
+    }
+    return null;
+  }
+}
@@ -57,18 +57,18 @@ class GpuBuffer {
 
     try {
       // Clear VAO to prevent unintended state change.
-      GLES30.glBindVertexArray(0);
+      GlBackend.get().glBindVertexArray(0);
       GLError.maybeThrowGLException("Failed to unbind vertex array", "glBindVertexArray");
 
-      GLES30.glGenBuffers(1, bufferId, 0);
+      GlBackend.get().glGenBuffers(1, bufferId, 0);
       GLError.maybeThrowGLException("Failed to generate buffers", "glGenBuffers");
 
-      GLES30.glBindBuffer(target, bufferId[0]);
+      GlBackend.get().glBindBuffer(target, bufferId[0]);
       GLError.maybeThrowGLException("Failed to bind buffer object", "glBindBuffer");
 
       if (entries != null) {
         entries.rewind();
-        GLES30.glBufferData(
+        GlBackend.get().glBufferData(
             target, entries.limit() * numberOfBytesPerEntry, entries, GLES30.GL_DYNAMIC_DRAW);
       }
       GLError.maybeThrowGLException("Failed to populate buffer object", "glBufferData");
@@ -88,17 +88,17 @@ class GpuBuffer {
     if (!entries.isDirect()) {
       throw new IllegalArgumentException("If non-null, entries buffer must be a direct buffer");
     }
-    GLES30.glBindBuffer(target, bufferId[0]);
+    GlBackend.get().glBindBuffer(target, bufferId[0]);
     GLError.maybeThrowGLException("Failed to bind vertex buffer object", "glBindBuffer");
 
     entries.rewind();
 
     if (entries.limit() <= capacity) {
-      GLES30.glBufferSubData(target, 0, entries.limit() * numberOfBytesPerEntry, entries);
+      GlBackend.get().glBufferSubData(target, 0, entries.limit() * numberOfBytesPerEntry, entries);
       GLError.maybeThrowGLException("Failed to populate vertex buffer object", "glBufferSubData");
       size = entries.limit();
     } else {
-      GLES30.glBufferData(
+      GlBackend.get().glBufferData(
           target, entries.limit() * numberOfBytesPerEntry, entries, GLES30.GL_DYNAMIC_DRAW);
       GLError.maybeThrowGLException("Failed to populate vertex buffer object", "glBufferData");
       size = entries.limit();
@@ -108,7 +108,7 @@ class GpuBuffer {
 
   public void free() {
     if (bufferId[0] != 0) {
-      GLES30.glDeleteBuffers(1, bufferId, 0);
+      GlBackend.get().glDeleteBuffers(1, bufferId, 0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free buffer object", "glDeleteBuffers");
       bufferId[0] = 0;
     }
@@ -121,4 +121,22 @@ class GpuBuffer {
   public int getSize() {
     return size;
   }
+
+  /** Returns the byte offset of the data last set, from the start of the buffer object. */
+  public int getOffset() {
+    return 0;
+  }
+
+  public int getTarget() {
+    return target;
+  }
+
+  public int getNumberOfBytesPerEntry() {
+    return numberOfBytesPerEntry;
+  }
+
+  /** Returns the size of the storage of the buffer object, for {@link GpuResourceRegistry}. */
+  public long getAllocatedBytes() {
+    return (long) capacity * numberOfBytesPerEntry;
+  }
 }
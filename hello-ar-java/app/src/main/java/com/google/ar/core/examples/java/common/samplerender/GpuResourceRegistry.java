@@ -0,0 +1,303 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.util.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of the GPU objects of a {@link SampleRender}, such as {@link Texture}s, {@link
+ * VertexBuffer}s and {@link IndexBuffer}s, and of how much GPU memory they hold.
+ *
+ * <p>Objects {@link #register} themselves when created, report the size of their storage with
+ * {@link #setBytes} whenever it is reallocated, and {@link #unregister} themselves when closed, so
+ * that the totals per {@link Category} stay accurate. Low level code that allocates storage for an
+ * object itself, such as with {@code glTexImage2D}, must report it the same way.
+ *
+ * <p>Objects whose contents can be loaded again, such as textures read from assets, may be made
+ * {@link #setEvictable evictable}: when the evictable ones exceed the {@link #setEvictableBudget
+ * budget}, those drawn least recently are closed when the next frame begins, and their owner is
+ * told so that it loads them again when needed.
+ *
+ * <p>When the surface is destroyed, objects still registered after the renderer has closed its own
+ * were leaked, see {@link #reportLeaks}. When the context is lost instead, its objects are gone
+ * with it and are simply forgotten. All methods must be called on the GL thread.
+ */
+public class GpuResourceRegistry {
+  private static final String TAG = GpuResourceRegistry.class.getSimpleName();
+
+  /** The kinds of GPU objects that hold memory. */
+  public enum Category {
+    TEXTURE,
+    BUFFER
+  }
+
+  private static final class Entry {
+    final Closeable object;
+    final Category category;
+    long bytes;
+    long lastUsedFrame;
+    Runnable onEvicted;
+
+    Entry(Closeable object, Category category, long bytes, long frame) {
+      this.object = object;
+      this.category = category;
+      this.bytes = bytes;
+      this.lastUsedFrame = frame;
+    }
+  }
+
+  // Objects are told apart by identity, since their equality may depend on their contents.
+  private final Map<Closeable, Entry> entries = new IdentityHashMap<>();
+  private final long[] bytesByCategory = new long[Category.values().length];
+  private long evictableBytes;
+  private long evictableBudget = Long.MAX_VALUE;
+  private long frame;
+  private int evictionCount;
+
+  /* package-private */
+  GpuResourceRegistry() {}
+
+  /**
+   * Registers an object that was just created.
+   *
+   * @param bytes The estimated size of its storage, see {@link #estimateTextureBytes}
+   */
+  public void register(Closeable object, Category category, long bytes) {
+    Entry entry = new Entry(object, category, bytes, frame);
+    Entry previous = entries.put(object, entry);
+    if (previous != null) {
+      add(previous, -1);
+    }
+    add(entry, 1);
+  }
+
+  /** Updates the size of an object after its storage was reallocated. */
+  public void setBytes(Closeable object, long bytes) {
+    Entry entry = entries.get(object);
+    if (entry == null || entry.bytes == bytes) {
+      return;
+    }
+    add(entry, -1);
+    entry.bytes = bytes;
+    add(entry, 1);
+  }
+
+  /** Forgets an object that was closed. Does nothing if it is not registered. */
+  public void unregister(Closeable object) {
+    Entry entry = entries.remove(object);
+    if (entry != null) {
+      add(entry, -1);
+    }
+  }
+
+  /** Marks an object as drawn in the current frame, which protects it from eviction. */
+  /* package-private */
+  void touch(Closeable object) {
+    Entry entry = entries.get(object);
+    if (entry != null) {
+      entry.lastUsedFrame = frame;
+    }
+  }
+
+  /**
+   * Allows a registered object to be closed when evictable objects exceed the budget. {@code
+   * onEvicted} runs after it was closed, and should close any other object that is only useful
+   * together with it, and arrange for loading them again. Pass null to keep the object resident.
+   */
+  public void setEvictable(Closeable object, Runnable onEvicted) {
+    Entry entry = entries.get(object);
+    if (entry == null) {
+      return;
+    }
+    add(entry, -1);
+    entry.onEvicted = onEvicted;
+    add(entry, 1);
+  }
+
+  /** Sets the most memory evictable objects may hold before the least recently used are closed. */
+  public void setEvictableBudget(long bytes) {
+    evictableBudget = bytes;
+  }
+
+  /**
+   * Starts a new frame. If evictable objects exceed the budget, first closes those not drawn in the
+   * previous frame, least recently used first, until back under budget.
+   */
+  /* package-private */
+  void beginFrame() {
+    if (evictableBytes > evictableBudget) {
+      List<Entry> candidates = new ArrayList<>();
+      for (Entry entry : entries.values()) {
+        if (entry.onEvicted != null && entry.lastUsedFrame < frame) {
+          candidates.add(entry);
+        }
+      }
+      candidates.sort(Comparator.comparingLong(entry -> entry.lastUsedFrame));
+      for (Entry entry : candidates) {
+        if (evictableBytes <= evictableBudget) {
+          break;
+        }
+        // An earlier callback may already have closed it along with its own object.
+        if (entries.get(entry.object) != entry) {
+          continue;
+        }
+        Runnable onEvicted = entry.onEvicted;
+        close(entry.object);
+        // Objects closing themselves unregister, but make sure the budget sees the memory go.
+        unregister(entry.object);
+        evictionCount++;
+        Log.i(TAG, "Evicted " + describe(entry.object) + ", " + entry.bytes + " bytes");
+        onEvicted.run();
+      }
+    }
+    frame++;
+  }
+
+  /**
+   * Logs the objects still registered, as the leaks of a renderer that was supposed to close all of
+   * its objects, and forgets them. Called by {@link SampleRender#destroySurface} after {@link
+   * SampleRender.Renderer#onSurfaceDestroyed}.
+   *
+   * @return The number of leaked objects
+   */
+  public int reportLeaks() {
+    int leakCount = entries.size();
+    if (leakCount != 0) {
+      Map<String, long[]> leaks = new TreeMap<>();
+      for (Entry entry : entries.values()) {
+        long[] leak = leaks.computeIfAbsent(describe(entry.object), unused -> new long[2]);
+        leak[0]++;
+        leak[1] += entry.bytes;
+      }
+      for (Map.Entry<String, long[]> leak : leaks.entrySet()) {
+        Log.w(
+            TAG,
+            "Leaked "
+                + leak.getValue()[0]
+                + " "
+                + leak.getKey()
+                + " objects, "
+                + leak.getValue()[1]
+                + " bytes");
+      }
+    }
+    onContextLost();
+    return leakCount;
+  }
+
+  /**
+   * Forgets all objects without reporting them, since they were deleted along with their context.
+   */
+  /* package-private */
+  void onContextLost() {
+    entries.clear();
+    for (int i = 0; i < bytesByCategory.length; ++i) {
+      bytesByCategory[i] = 0;
+    }
+    evictableBytes = 0;
+  }
+
+  /** Returns the memory held by all registered objects. */
+  public long getTotalBytes() {
+    long total = 0;
+    for (long bytes : bytesByCategory) {
+      total += bytes;
+    }
+    return total;
+  }
+
+  /** Returns the memory held by registered objects of {@code category}. */
+  public long getBytes(Category category) {
+    return bytesByCategory[category.ordinal()];
+  }
+
+  /** Returns the memory held by evictable objects. */
+  public long getEvictableBytes() {
+    return evictableBytes;
+  }
+
+  public int getResourceCount() {
+    return entries.size();
+  }
+
+  /** Returns the number of objects closed to stay within the budget. */
+  public int getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Estimates the memory of a 2D texture or cubemap face, including its smaller mip levels when
+   * {@code mipmapped}. Formats not listed here count four bytes per pixel, which is what drivers
+   * allocate for most of them.
+   */
+  public static long estimateTextureBytes(
+      int internalFormat, int width, int height, boolean mipmapped) {
+    long bytes = 0;
+    while (true) {
+      bytes += (long) width * height * bytesPerPixel(internalFormat);
+      if (!mipmapped || (width == 1 && height == 1)) {
+        return bytes;
+      }
+      width = Math.max(1, width / 2);
+      height = Math.max(1, height / 2);
+    }
+  }
+
+  private static int bytesPerPixel(int internalFormat) {
+    switch (internalFormat) {
+      case GLES30.GL_R8:
+        return 1;
+      case GLES30.GL_RG8:
+      case GLES30.GL_R16F:
+      case GLES30.GL_DEPTH_COMPONENT16:
+        return 2;
+      case GLES30.GL_RGB16F:
+        return 6;
+      case GLES30.GL_RGBA16F:
+        return 8;
+      default:
+        return 4;
+    }
+  }
+
+  private static String describe(Closeable object) {
+    return object.getClass().getSimpleName();
+  }
+
+  private static void close(Closeable object) {
+    try {
+      object.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to close " + describe(object), e);
+    }
+  }
+
+  private void add(Entry entry, int sign) {
+    bytesByCategory[entry.category.ordinal()] += sign * entry.bytes;
+    if (entry.onEvicted != null) {
+      evictableBytes += sign * entry.bytes;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.util.Log;
+import java.io.Closeable;
+
+/**
+ * Measures how long the GPU takes to execute the commands issued between {@link #begin} and {@link
+ * #end}, using {@code GL_EXT_disjoint_timer_query}.
+ *
+ * <p>The GPU runs a few frames behind, so results are read without waiting: {@link #poll} returns
+ * the latest measurement that has become available, typically from two or three frames earlier.
+ * Only one timer may be running at a time. Must be used on the GL thread.
+ */
+public class GpuTimer implements Closeable {
+  private static final String TAG = GpuTimer.class.getSimpleName();
+
+  private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+  // From GL_EXT_disjoint_timer_query, which android.opengl does not define.
+  private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+  private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+  private final int[] queries;
+  private final boolean[] pending;
+  private final int[] result = {0};
+  private int next;
+  private int oldest;
+  private boolean running;
+
+  /** Returns whether the context supports timer queries. Must be called on the GL thread. */
+  public static boolean isSupported() {
+    String extensions = GlBackend.get().glGetString(GLES30.GL_EXTENSIONS);
+    GLError.maybeThrowGLException("Failed to query extensions", "glGetString");
+    return extensions != null && extensions.contains(EXTENSION);
+  }
+
+  /**
+   * Constructs a {@link GpuTimer}. Check {@link #isSupported} first.
+   *
+   * @param latency The number of measurements that may be in flight, at least the number of frames
+   *     the GPU may lag behind. Older ones are dropped.
+   */
+  public GpuTimer(int latency) {
+    queries = new int[latency];
+    pending = new boolean[latency];
+    GlBackend.get().glGenQueries(latency, queries, 0);
+    GLError.maybeThrowGLException("Failed to generate queries", "glGenQueries");
+  }
+
+  /** Starts measuring. */
+  public void begin() {
+    GlBackend.get().glBeginQuery(GL_TIME_ELAPSED_EXT, queries[next]);
+    GLError.maybeThrowGLException("Failed to begin timer query", "glBeginQuery");
+    running = true;
+  }
+
+  /** Ends the measurement started by {@link #begin}. Does nothing if none was started. */
+  public void end() {
+    if (!running) {
+      return;
+    }
+    GlBackend.get().glEndQuery(GL_TIME_ELAPSED_EXT);
+    GLError.maybeThrowGLException("Failed to end timer query", "glEndQuery");
+    running = false;
+    // Beginning a query again discards a result that was never read.
+    if (pending[next]) {
+      oldest = (oldest + 1) % queries.length;
+    }
+    pending[next] = true;
+    next = (next + 1) % queries.length;
+  }
+
+  /**
+   * Returns the GPU time in nanoseconds of the most recent measurement that became available since
+   * the last call, or -1 if there is none.
+   */
+  public long poll() {
+    long nanos = -1;
+    while (pending[oldest]) {
+      GlBackend.get()
+          .glGetQueryObjectuiv(queries[oldest], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+      GLError.maybeThrowGLException("Failed to query timer availability", "glGetQueryObjectuiv");
+      if (result[0] == 0) {
+        break;
+      }
+      GlBackend.get().glGetQueryObjectuiv(queries[oldest], GLES30.GL_QUERY_RESULT, result, 0);
+      GLError.maybeThrowGLException("Failed to query timer result", "glGetQueryObjectuiv");
+      // The result is 32 bits wide here, which covers measurements up to four seconds.
+      nanos = result[0] & 0xffffffffL;
+      pending[oldest] = false;
+      oldest = (oldest + 1) % queries.length;
+    }
+    // A disjoint event, such as a GPU frequency change, makes the results in flight meaningless.
+    GlBackend.get().glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+    GLError.maybeThrowGLException("Failed to query timer disjoint state", "glGetIntegerv");
+    return result[0] != 0 ? -1 : nanos;
+  }
+
+  @Override
+  public void close() {
+    if (queries[0] != 0) {
+      GlBackend.get().glDeleteQueries(queries.length, queries, 0);
+      GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free queries", "glDeleteQueries");
+      queries[0] = 0;
+    }
+  }
+}
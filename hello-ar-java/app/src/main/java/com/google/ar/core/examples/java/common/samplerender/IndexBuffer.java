@@ -17,6 +17,7 @@ package com.google.ar.core.examples.java.common.samplerender;
 
 import android.opengl.GLES30;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 /**
@@ -25,11 +26,16 @@ import java.nio.IntBuffer;
  * <p>When constructing a {@link Mesh}, an {@link IndexBuffer} may be passed to describe the
  * ordering of vertices when drawing each primitive.
  *
+ * <p>Indices are stored GPU-side as unsigned bytes, shorts or ints, whichever is the narrowest type
+ * able to hold the largest index of the data last set.
+ *
  * @see <a
  *     href="https://www.khronos.org/registry/OpenGL-Refpages/es3.0/html/glDrawElements.xhtml">glDrawElements</a>
  */
 public class IndexBuffer implements Closeable {
   private final GpuBuffer buffer;
+  private final GpuResourceRegistry resourceRegistry;
+  private int type = GLES30.GL_UNSIGNED_BYTE;
 
   /**
    * Construct an {@link IndexBuffer} populated with initial data.
@@ -42,7 +48,42 @@ public class IndexBuffer implements Closeable {
    * instead.
    */
   public IndexBuffer(SampleRender render, IntBuffer entries) {
-    buffer = new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, GpuBuffer.INT_SIZE, entries);
+    ByteBuffer packedEntries = pack(entries);
+    buffer =
+        new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, /*numberOfBytesPerEntry=*/ 1, packedEntries);
+    DirectBufferPool.release(packedEntries);
+    resourceRegistry = render.getResourceRegistry();
+    resourceRegistry.register(
+        this, GpuResourceRegistry.Category.BUFFER, buffer.getAllocatedBytes());
+  }
+
+  /**
+   * Construct an {@link IndexBuffer} from indices already narrowed to {@code type}, such as the
+   * index data of a {@link BinaryMesh}, which is uploaded as is.
+   */
+  /* package-private */
+  IndexBuffer(SampleRender render, int type, ByteBuffer entries) {
+    this(
+        render, new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, /*numberOfBytesPerEntry=*/ 1, entries));
+    this.type = type;
+  }
+
+  private IndexBuffer(SampleRender render, GpuBuffer buffer) {
+    this.buffer = buffer;
+    resourceRegistry = render.getResourceRegistry();
+    resourceRegistry.register(
+        this, GpuResourceRegistry.Category.BUFFER, buffer.getAllocatedBytes());
+  }
+
+  /**
+   * Construct an empty {@link IndexBuffer} for data rewritten every frame. See {@link
+   * VertexBuffer#createStreaming}.
+   */
+  public static IndexBuffer createStreaming(SampleRender render) {
+    return new IndexBuffer(
+        render,
+        new StreamingGpuBuffer(
+            render, GLES30.GL_ELEMENT_ARRAY_BUFFER, /*numberOfBytesPerEntry=*/ 1));
   }
 
   /**
@@ -55,14 +96,28 @@ public class IndexBuffer implements Closeable {
    * <p>The GPU buffer is reallocated automatically if necessary.
    *
    * <p>The {@code entries} buffer may be null, in which case the buffer will become empty.
+   *
+   * @return The byte offset of the data in the GPU buffer, which is 0 unless the buffer was created
+   *     with {@link #createStreaming}
    */
-  public void set(IntBuffer entries) {
-    buffer.set(entries);
+  public int set(IntBuffer entries) {
+    ByteBuffer packedEntries = pack(entries);
+    buffer.set(packedEntries);
+    DirectBufferPool.release(packedEntries);
+    resourceRegistry.setBytes(this, buffer.getAllocatedBytes());
+    return buffer.getOffset();
   }
 
   @Override
   public void close() {
     buffer.free();
+    resourceRegistry.unregister(this);
+  }
+
+  /** Marks the buffer as drawn from in the current frame, see {@link GpuResourceRegistry}. */
+  /* package-private */
+  void onUsed() {
+    resourceRegistry.touch(this);
   }
 
   /* package-private */
@@ -70,8 +125,34 @@ public class IndexBuffer implements Closeable {
     return buffer.getBufferId();
   }
 
+  /* package-private */
+  int getOffset() {
+    return buffer.getOffset();
+  }
+
   /* package-private */
   int getSize() {
-    return buffer.getSize();
+    return buffer.getSize() / IndexType.sizeOf(type);
+  }
+
+  /** Returns {@code GL_UNSIGNED_BYTE}, {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}. */
+  /* package-private */
+  int getType() {
+    return type;
+  }
+
+  /**
+   * Narrows {@code entries} to the narrowest index type holding them, and selects that type. The
+   * result comes from the {@link DirectBufferPool}; release it once uploaded.
+   */
+  private ByteBuffer pack(IntBuffer entries) {
+    if (entries == null) {
+      return null;
+    }
+    type = IndexType.forMaxIndex(IndexType.maxIndex(entries));
+    ByteBuffer packedEntries = DirectBufferPool.acquire(entries.limit() * IndexType.sizeOf(type));
+    IndexType.put(packedEntries, type, entries);
+    packedEntries.flip();
+    return packedEntries;
   }
 }
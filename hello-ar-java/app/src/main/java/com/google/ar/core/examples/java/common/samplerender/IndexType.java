@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Chooses the narrowest {@code glDrawElements} index type for a list of indices, so that small
+ * meshes spend one or two bytes per index instead of four.
+ */
+/* package-private */
+final class IndexType {
+  /**
+   * Returns {@code GL_UNSIGNED_BYTE}, {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}, the
+   * narrowest type able to hold {@code maxIndex}.
+   */
+  public static int forMaxIndex(int maxIndex) {
+    if (maxIndex <= 0xFF) {
+      return GLES30.GL_UNSIGNED_BYTE;
+    }
+    if (maxIndex <= 0xFFFF) {
+      return GLES30.GL_UNSIGNED_SHORT;
+    }
+    return GLES30.GL_UNSIGNED_INT;
+  }
+
+  /** Returns the size in bytes of one index of the given type. */
+  public static int sizeOf(int type) {
+    switch (type) {
+      case GLES30.GL_UNSIGNED_BYTE:
+        return 1;
+      case GLES30.GL_UNSIGNED_SHORT:
+        return 2;
+      case GLES30.GL_UNSIGNED_INT:
+        return 4;
+      default:
+        throw new IllegalArgumentException("Not an index type: " + type);
+    }
+  }
+
+  /** Returns the largest value in {@code indices} up to its limit, or -1 if it is empty. */
+  public static int maxIndex(IntBuffer indices) {
+    int max = -1;
+    for (int i = 0; i < indices.limit(); ++i) {
+      max = Math.max(max, indices.get(i));
+    }
+    return max;
+  }
+
+  /**
+   * Writes {@code indices} up to their limit to {@code target} as the given type, from the position
+   * of {@code target} onwards.
+   */
+  public static void put(ByteBuffer target, int type, IntBuffer indices) {
+    for (int i = 0; i < indices.limit(); ++i) {
+      int index = indices.get(i);
+      switch (type) {
+        case GLES30.GL_UNSIGNED_BYTE:
+          target.put((byte) index);
+          break;
+        case GLES30.GL_UNSIGNED_SHORT:
+          target.putShort((short) index);
+          break;
+        default:
+          target.putInt(index);
+          break;
+      }
+    }
+  }
+
+  /** Reads the {@code index}-th index of the given type from {@code source}. */
+  public static int get(ByteBuffer source, int type, int index) {
+    switch (type) {
+      case GLES30.GL_UNSIGNED_BYTE:
+        return source.get(index) & 0xFF;
+      case GLES30.GL_UNSIGNED_SHORT:
+        return source.getShort(index * 2) & 0xFFFF;
+      default:
+        return source.getInt(index * 4);
+    }
+  }
+
+  private IndexType() {}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.opengl.GLES32;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads GPU-compressed textures from KTX files, as written at build time by the {@code
+ * compressTextures} Gradle task.
+ *
+ * <p>Files are read in version 1 of the format, with one face, no array elements and a compressed
+ * internal format such as ETC2 or ASTC. The mip levels are views of the file, which is not copied.
+ */
+/* package-private */
+final class Ktx {
+  private static final byte[] IDENTIFIER = {
+    (byte) 0xab, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xbb, '\r', '\n', 0x1a, '\n'
+  };
+  private static final int ENDIANNESS = 0x04030201;
+  /* package-private */ static final int HEADER_SIZE = 64;
+
+  /** Splits a KTX file into its mip levels. */
+  public static Texture.Image parse(ByteBuffer file, String name) throws IOException {
+    if (file.limit() < HEADER_SIZE) {
+      throw new IOException(name + " is not a KTX 1 file");
+    }
+    for (int i = 0; i < IDENTIFIER.length; ++i) {
+      if (file.get(i) != IDENTIFIER[i]) {
+        throw new IOException(name + " is not a KTX 1 file");
+      }
+    }
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.getInt(12) != ENDIANNESS) {
+      file.order(ByteOrder.BIG_ENDIAN);
+    }
+    int glType = file.getInt(16);
+    int internalFormat = file.getInt(28);
+    int width = file.getInt(36);
+    int height = file.getInt(40);
+    int arrayElements = file.getInt(48);
+    int faces = file.getInt(52);
+    int levelCount = Math.max(1, file.getInt(56));
+    int keyValueBytes = file.getInt(60);
+    if (glType != 0 || arrayElements > 1 || faces != 1) {
+      throw new IOException(name + " is not a compressed 2D texture");
+    }
+
+    List<ByteBuffer> levels = new ArrayList<>(levelCount);
+    int offset = HEADER_SIZE + keyValueBytes;
+    for (int level = 0; level < levelCount; ++level) {
+      if (offset < HEADER_SIZE || offset + 4 > file.limit()) {
+        throw new IOException(name + " is truncated");
+      }
+      int imageSize = file.getInt(offset);
+      offset += 4;
+      if (imageSize < 0 || offset + imageSize > file.limit()) {
+        throw new IOException(name + " is truncated");
+      }
+      ByteBuffer view = file.duplicate();
+      view.limit(offset + imageSize).position(offset);
+      levels.add(view.slice());
+      // Levels are padded to four bytes.
+      offset = (offset + imageSize + 3) & ~3;
+    }
+    return new Texture.Image(width, height, internalFormat, levels, file);
+  }
+
+  /**
+   * Returns the sRGB form of a compressed format, which decodes the same blocks as sRGB-encoded
+   * colors, or the format itself if it has none or already is one.
+   */
+  public static int toSrgb(int internalFormat) {
+    switch (internalFormat) {
+      case GLES30.GL_COMPRESSED_RGB8_ETC2:
+        return GLES30.GL_COMPRESSED_SRGB8_ETC2;
+      case GLES30.GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2:
+        return GLES30.GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2;
+      case GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC:
+        return GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC;
+      default:
+        break;
+    }
+    // The sRGB ASTC formats follow the linear ones in the same order of block sizes.
+    if (internalFormat >= GLES32.GL_COMPRESSED_RGBA_ASTC_4x4
+        && internalFormat <= GLES32.GL_COMPRESSED_RGBA_ASTC_12x12) {
+      return internalFormat
+          - GLES32.GL_COMPRESSED_RGBA_ASTC_4x4
+          + GLES32.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4;
+    }
+    return internalFormat;
+  }
+
+  private Ktx() {}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.util.Arrays;
+
+/**
+ * The simplified levels of detail of a {@link Mesh}, generated by {@link MeshSimplifier} when the
+ * mesh is loaded, and the projected sizes below which {@link RenderQueue} draws them.
+ *
+ * <p>Level 0 is the full mesh. Each level added with {@link #addLevel} keeps a fraction of the
+ * triangles of the full mesh, and is drawn once the model covers less than a fraction of the
+ * viewport height. The size of a model is the height of the bounding sphere of its {@link
+ * Mesh#getBounds}.
+ *
+ * <p>Levels switch with some hysteresis: a draw keeping a {@link State} across frames only changes
+ * level once its size is clearly past a threshold, so that a model near one does not flicker.
+ */
+public class LevelsOfDetail {
+  /** The most levels a mesh may have, including the full mesh. */
+  public static final int MAX_LEVELS = 8;
+
+  // Relative margin around each screen size threshold.
+  /* package-private */ static final float HYSTERESIS = 0.15f;
+
+  /**
+   * The level last drawn for one model, such as one anchor, kept by the caller across frames and
+   * passed to {@link RenderQueue#submit(Mesh, Shader, Framebuffer, float[], Shader.TextureUniform,
+   * Texture, State)}.
+   */
+  public static final class State {
+    /* package-private */ int level = -1;
+
+    /** Returns the level drawn in the last frame, 0 being the full mesh, or -1 if none yet. */
+    public int getLevel() {
+      return level;
+    }
+  }
+
+  private float[] triangleRatios = new float[0];
+  private float[] screenSizes = new float[0];
+
+  /**
+   * Adds a coarser level.
+   *
+   * @param triangleRatio The number of triangles of the level relative to the full mesh, less than
+   *     that of the previous level
+   * @param screenSize The projected size below which the level is drawn, as a fraction of the
+   *     viewport height, less than that of the previous level
+   */
+  public LevelsOfDetail addLevel(float triangleRatio, float screenSize) {
+    int count = triangleRatios.length;
+    if (count + 1 >= MAX_LEVELS) {
+      throw new IllegalStateException("At most " + (MAX_LEVELS - 1) + " levels of detail");
+    }
+    float previousRatio = count == 0 ? 1f : triangleRatios[count - 1];
+    if (!(triangleRatio > 0f && triangleRatio < previousRatio)) {
+      throw new IllegalArgumentException(
+          "Triangle ratio must be in (0, " + previousRatio + "): " + triangleRatio);
+    }
+    if (count > 0 && !(screenSize < screenSizes[count - 1]) || !(screenSize > 0f)) {
+      throw new IllegalArgumentException(
+          "Screen size must be positive and less than that of the previous level: " + screenSize);
+    }
+    triangleRatios = Arrays.copyOf(triangleRatios, count + 1);
+    screenSizes = Arrays.copyOf(screenSizes, count + 1);
+    triangleRatios[count] = triangleRatio;
+    screenSizes[count] = screenSize;
+    return this;
+  }
+
+  /** Returns the number of levels, including the full mesh. */
+  public int getLevelCount() {
+    return triangleRatios.length + 1;
+  }
+
+  /** Returns the number of triangles of a level relative to the full mesh. */
+  public float getTriangleRatio(int level) {
+    return level == 0 ? 1f : triangleRatios[level - 1];
+  }
+
+  /**
+   * Returns the level to draw at a projected size.
+   *
+   * @param screenSize The size of the model as a fraction of the viewport height, see {@link
+   *     #computeScreenSize}
+   * @param previousLevel The level drawn in the previous frame, or -1. It is kept while the size
+   *     stays within the hysteresis margin of the thresholds around it.
+   * @param levelCount The number of levels the mesh actually has, which may be less than {@link
+   *     #getLevelCount} if simplification stopped early
+   */
+  /* package-private */
+  int selectLevel(float screenSize, int previousLevel, int levelCount) {
+    int level = levelForScreenSize(screenSize, levelCount);
+    if (previousLevel < 0) {
+      return level;
+    }
+    int finest = levelForScreenSize(screenSize * (1f + HYSTERESIS), levelCount);
+    int coarsest = levelForScreenSize(screenSize * (1f - HYSTERESIS), levelCount);
+    return Math.max(finest, Math.min(coarsest, previousLevel));
+  }
+
+  private int levelForScreenSize(float screenSize, int levelCount) {
+    int level = 0;
+    while (level + 1 < levelCount && screenSize < screenSizes[level]) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Returns the height of the bounding sphere of a box placed in the world by a model matrix, as a
+   * fraction of the viewport height, or infinity if the camera is inside the sphere.
+   *
+   * @param bounds The box in model space: min x, y, z then max x, y, z
+   * @param modelMatrix A 4x4 model-to-world matrix, in column-major order
+   * @param modelOffset The index of the matrix in {@code modelMatrix}
+   * @param viewMatrix The view matrix of the camera
+   * @param projectionMatrix The perspective projection matrix of the camera
+   */
+  /* package-private */
+  static float computeScreenSize(
+      float[] bounds,
+      float[] modelMatrix,
+      int modelOffset,
+      float[] viewMatrix,
+      float[] projectionMatrix) {
+    float[] m = modelMatrix;
+    int o = modelOffset;
+    float cx = (bounds[0] + bounds[3]) * 0.5f;
+    float cy = (bounds[1] + bounds[4]) * 0.5f;
+    float cz = (bounds[2] + bounds[5]) * 0.5f;
+    float x = m[o] * cx + m[o + 4] * cy + m[o + 8] * cz + m[o + 12];
+    float y = m[o + 1] * cx + m[o + 5] * cy + m[o + 9] * cz + m[o + 13];
+    float z = m[o + 2] * cx + m[o + 6] * cy + m[o + 10] * cz + m[o + 14];
+    float[] v = viewMatrix;
+    float depth = -(v[2] * x + v[6] * y + v[10] * z + v[14]);
+
+    // Bounding sphere of the box, scaled by the largest axis of the model matrix.
+    float scale =
+        Math.max(
+            MatrixMath.length(m[o], m[o + 1], m[o + 2]),
+            Math.max(
+                MatrixMath.length(m[o + 4], m[o + 5], m[o + 6]),
+                MatrixMath.length(m[o + 8], m[o + 9], m[o + 10])));
+    float diagonal =
+        MatrixMath.length(bounds[3] - bounds[0], bounds[4] - bounds[1], bounds[5] - bounds[2]);
+    float radius = 0.5f * scale * diagonal;
+    if (depth <= radius) {
+      return Float.POSITIVE_INFINITY;
+    }
+    // The projection maps a height h at depth d to h * p[5] / d in normalized device coordinates,
+    // which span twice the viewport height; the sphere is 2 * radius high.
+    return radius * projectionMatrix[5] / depth;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+/**
+ * The {@code android.opengl.Matrix} operations used by the render paths, on column-major 4x4
+ * matrices, with the same signatures and results.
+ *
+ * <p>They are plain Java, so that the matrices a render path uploads are the same in JVM unit
+ * tests, where {@code android.opengl.Matrix} is a stub that leaves its results unset.
+ */
+public final class MatrixMath {
+  private MatrixMath() {}
+
+  /** Computes {@code lhs * rhs} into {@code result}, which may not overlap either of them. */
+  public static void multiplyMM(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 4; ++column) {
+      for (int row = 0; row < 4; ++row) {
+        float sum = 0f;
+        for (int k = 0; k < 4; ++k) {
+          sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + column * 4 + k];
+        }
+        result[resultOffset + column * 4 + row] = sum;
+      }
+    }
+  }
+
+  /** Computes {@code lhsMat * rhsVec} into {@code resultVec}, which may not overlap either. */
+  public static void multiplyMV(
+      float[] resultVec,
+      int resultVecOffset,
+      float[] lhsMat,
+      int lhsMatOffset,
+      float[] rhsVec,
+      int rhsVecOffset) {
+    for (int row = 0; row < 4; ++row) {
+      float sum = 0f;
+      for (int k = 0; k < 4; ++k) {
+        sum += lhsMat[lhsMatOffset + k * 4 + row] * rhsVec[rhsVecOffset + k];
+      }
+      resultVec[resultVecOffset + row] = sum;
+    }
+  }
+
+  /** Returns the length of the vector {@code (x, y, z)}. */
+  public static float length(float x, float y, float z) {
+    return (float) Math.sqrt(x * x + y * y + z * z);
+  }
+
+  /**
+   * Inverts {@code m} into {@code mInv}, which may not overlap it. Returns false, leaving {@code
+   * mInv} unchanged, if {@code m} is singular.
+   */
+  public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+    // Cofactor expansion along 2x2 sub-determinants of the first two and last two columns.
+    float a00 = m[mOffset];
+    float a01 = m[mOffset + 1];
+    float a02 = m[mOffset + 2];
+    float a03 = m[mOffset + 3];
+    float a10 = m[mOffset + 4];
+    float a11 = m[mOffset + 5];
+    float a12 = m[mOffset + 6];
+    float a13 = m[mOffset + 7];
+    float a20 = m[mOffset + 8];
+    float a21 = m[mOffset + 9];
+    float a22 = m[mOffset + 10];
+    float a23 = m[mOffset + 11];
+    float a30 = m[mOffset + 12];
+    float a31 = m[mOffset + 13];
+    float a32 = m[mOffset + 14];
+    float a33 = m[mOffset + 15];
+
+    float b00 = a00 * a11 - a01 * a10;
+    float b01 = a00 * a12 - a02 * a10;
+    float b02 = a00 * a13 - a03 * a10;
+    float b03 = a01 * a12 - a02 * a11;
+    float b04 = a01 * a13 - a03 * a11;
+    float b05 = a02 * a13 - a03 * a12;
+    float b06 = a20 * a31 - a21 * a30;
+    float b07 = a20 * a32 - a22 * a30;
+    float b08 = a20 * a33 - a23 * a30;
+    float b09 = a21 * a32 - a22 * a31;
+    float b10 = a21 * a33 - a23 * a31;
+    float b11 = a22 * a33 - a23 * a32;
+
+    float determinant = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+    if (determinant == 0f) {
+      return false;
+    }
+    float inverse = 1f / determinant;
+
+    mInv[mInvOffset] = (a11 * b11 - a12 * b10 + a13 * b09) * inverse;
+    mInv[mInvOffset + 1] = (a02 * b10 - a01 * b11 - a03 * b09) * inverse;
+    mInv[mInvOffset + 2] = (a31 * b05 - a32 * b04 + a33 * b03) * inverse;
+    mInv[mInvOffset + 3] = (a22 * b04 - a21 * b05 - a23 * b03) * inverse;
+    mInv[mInvOffset + 4] = (a12 * b08 - a10 * b11 - a13 * b07) * inverse;
+    mInv[mInvOffset + 5] = (a00 * b11 - a02 * b08 + a03 * b07) * inverse;
+    mInv[mInvOffset + 6] = (a32 * b02 - a30 * b05 - a33 * b01) * inverse;
+    mInv[mInvOffset + 7] = (a20 * b05 - a22 * b02 + a23 * b01) * inverse;
+    mInv[mInvOffset + 8] = (a10 * b10 - a11 * b08 + a13 * b06) * inverse;
+    mInv[mInvOffset + 9] = (a01 * b08 - a00 * b10 - a03 * b06) * inverse;
+    mInv[mInvOffset + 10] = (a30 * b04 - a31 * b02 + a33 * b00) * inverse;
+    mInv[mInvOffset + 11] = (a21 * b02 - a20 * b04 - a23 * b00) * inverse;
+    mInv[mInvOffset + 12] = (a11 * b07 - a10 * b09 - a12 * b06) * inverse;
+    mInv[mInvOffset + 13] = (a00 * b09 - a01 * b07 + a02 * b06) * inverse;
+    mInv[mInvOffset + 14] = (a31 * b01 - a30 * b03 - a32 * b00) * inverse;
+    mInv[mInvOffset + 15] = (a20 * b03 - a21 * b01 + a22 * b00) * inverse;
+    return true;
+  }
+}
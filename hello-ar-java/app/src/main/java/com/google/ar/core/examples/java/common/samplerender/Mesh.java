@@ -15,17 +15,16 @@
  */
 package com.google.ar.core.examples.java.common.samplerender;
 
+import android.content.res.AssetManager;
 import android.opengl.GLES30;
 import android.util.Log;
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
  * A collection of vertices, faces, and other attributes that define how to render a 3D object.
@@ -35,6 +34,18 @@ import java.nio.IntBuffer;
 public class Mesh implements Closeable {
   private static final String TAG = Mesh.class.getSimpleName();
 
+  /**
+   * The vertex layout of meshes read by {@link #createFromAsset}: half float positions and texture
+   * coordinates, and normalized signed byte normals.
+   */
+  private static final VertexLayout COMPACT_LAYOUT =
+      new VertexLayout()
+          .addAttribute(VertexLayout.Format.HALF_FLOAT, 3)
+          .addAttribute(VertexLayout.Format.HALF_FLOAT, 2)
+          .addAttribute(VertexLayout.Format.SNORM8, 3);
+
+  private static volatile boolean optimizeOnLoad = true;
+
   /**
    * The kind of primitive to render.
    *
@@ -63,6 +74,21 @@ public class Mesh implements Closeable {
   private final PrimitiveMode primitiveMode;
   private final IndexBuffer indexBuffer;
   private final VertexBuffer[] vertexBuffers;
+  private final VertexBuffer modelMatrixInstanceBuffer;
+  // First attribute location of each vertex buffer.
+  private final int[] attributeLocations;
+  // Byte offset each vertex buffer is currently read from, which changes for streaming buffers.
+  private final int[] attributeOffsets;
+  // Buffers created along with the mesh from a file, which are closed with it.
+  private VertexBuffer ownedVertexBuffer;
+  private IndexBuffer ownedIndexBuffer;
+  // Model space bounding box of meshes created from a file, null for others.
+  private float[] bounds;
+  // Set for meshes created with simplified levels of detail, along with the index count and byte
+  // offset of each level in the index buffer.
+  private LevelsOfDetail levelsOfDetail;
+  private int[] levelIndexCounts;
+  private int[] levelIndexOffsets;
 
   /**
    * Construct a {@link Mesh}.
@@ -74,7 +100,15 @@ public class Mesh implements Closeable {
    * <p>The ordering of the {@code vertexBuffers} is significant. Their array indices will
    * correspond to their attribute locations, which must be taken into account in shader code. The
    * <a href="https://www.khronos.org/opengl/wiki/Layout_Qualifier_(GLSL)">layout qualifier</a> must
-   * be used in the vertex shader code to explicitly associate attributes with these indices.
+   * be used in the vertex shader code to explicitly associate attributes with these indices. A
+   * buffer holding several attributes takes one location per attribute, shifting the locations of
+   * the buffers after it. These are buffers with a {@link VertexLayout} of several attributes, and
+   * buffers with more than 4 entries per vertex, such as a {@code mat4} attribute, read as one
+   * attribute per 4 entries.
+   *
+   * <p>Buffers with a non-zero divisor hold per-instance data, see {@link
+   * SampleRender#drawInstanced}. The first per-instance buffer with 16 entries and a divisor of 1
+   * receives the model matrices of instanced {@link RenderQueue} draws.
    */
   public Mesh(
       SampleRender render,
@@ -88,31 +122,50 @@ public class Mesh implements Closeable {
     this.primitiveMode = primitiveMode;
     this.indexBuffer = indexBuffer;
     this.vertexBuffers = vertexBuffers;
+    VertexBuffer modelMatrixInstanceBuffer = null;
+    for (VertexBuffer vertexBuffer : vertexBuffers) {
+      if (vertexBuffer.getDivisor() == 1
+          && vertexBuffer.isFloat()
+          && vertexBuffer.getNumberOfEntriesPerVertex() == 16) {
+        modelMatrixInstanceBuffer = vertexBuffer;
+        break;
+      }
+    }
+    this.modelMatrixInstanceBuffer = modelMatrixInstanceBuffer;
+    this.attributeLocations = new int[vertexBuffers.length];
+    this.attributeOffsets = new int[vertexBuffers.length];
 
     try {
       // Create vertex array
-      GLES30.glGenVertexArrays(1, vertexArrayId, 0);
+      GlBackend.get().glGenVertexArrays(1, vertexArrayId, 0);
       GLError.maybeThrowGLException("Failed to generate a vertex array", "glGenVertexArrays");
 
       // Bind vertex array
-      GLES30.glBindVertexArray(vertexArrayId[0]);
+      GlBackend.get().glBindVertexArray(vertexArrayId[0]);
       GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
 
       if (indexBuffer != null) {
-        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, indexBuffer.getBufferId());
+        GlBackend.get().glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, indexBuffer.getBufferId());
       }
 
+      int location = 0;
       for (int i = 0; i < vertexBuffers.length; ++i) {
+        VertexBuffer vertexBuffer = vertexBuffers[i];
+        attributeLocations[i] = location;
+        attributeOffsets[i] = vertexBuffer.getOffset();
         // Bind each vertex buffer to vertex array
-        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, vertexBuffers[i].getBufferId());
-        GLError.maybeThrowGLException("Failed to bind vertex buffer", "glBindBuffer");
-        GLES30.glVertexAttribPointer(
-            i, vertexBuffers[i].getNumberOfEntriesPerVertex(), GLES30.GL_FLOAT, false, 0, 0);
-        GLError.maybeThrowGLException(
-            "Failed to associate vertex buffer with vertex array", "glVertexAttribPointer");
-        GLES30.glEnableVertexAttribArray(i);
-        GLError.maybeThrowGLException(
-            "Failed to enable vertex buffer", "glEnableVertexAttribArray");
+        setAttributePointers(i);
+        int attributeCount = vertexBuffer.getLayout().getAttributeCount();
+        for (int attribute = 0; attribute < attributeCount; ++attribute, ++location) {
+          GlBackend.get().glEnableVertexAttribArray(location);
+          GLError.maybeThrowGLException(
+              "Failed to enable vertex buffer", "glEnableVertexAttribArray");
+          if (vertexBuffer.getDivisor() != 0) {
+            GlBackend.get().glVertexAttribDivisor(location, vertexBuffer.getDivisor());
+            GLError.maybeThrowGLException(
+                "Failed to set vertex attribute divisor", "glVertexAttribDivisor");
+          }
+        }
       }
     } catch (Throwable t) {
       close();
@@ -126,64 +179,526 @@ public class Mesh implements Closeable {
    * <p>The {@link Mesh} will be constructed with three attributes, indexed in the order of local
    * coordinates (location 0, vec3), texture coordinates (location 1, vec2), and vertex normals
    * (location 2, vec3).
+   *
+   * <p>The attributes are interleaved in one {@link VertexBuffer}, as half float coordinates and
+   * normalized signed byte normals, which is 16 bytes per vertex instead of 32 bytes as floats.
+   * Half floats keep about 3 significant digits, which is under 0.1 mm for the coordinates of a
+   * model 20 cm across. Texture coordinates and normals missing from the file are zero.
+   *
+   * <p>Unless disabled with {@link #setOptimizeOnLoad}, triangles and vertices are reordered with
+   * {@link MeshOptimizer} for the post-transform vertex cache, overdraw and vertex fetch, and the
+   * average cache miss ratio before and after is logged.
+   *
+   * <p>If the assets contain a {@code .mesh} file of the same name, as converted from the OBJ file
+   * at build time by the {@code convertMeshes} Gradle task, it is read instead. Its geometry is
+   * already in this layout and optimized, so it is mapped and uploaded without parsing.
+   *
+   * <p>The buffers read from the file are closed along with the {@link Mesh}. Per-instance buffers
+   * passed in stay with the caller.
    */
   public static Mesh createFromAsset(SampleRender render, String assetFileName) throws IOException {
-    try (InputStream inputStream = render.getAssets().open(assetFileName)) {
-      Obj obj = ObjUtils.convertToRenderable(ObjReader.read(inputStream));
+    return createFromAsset(render, assetFileName, /*instanceBuffers=*/ new VertexBuffer[0]);
+  }
+
+  /**
+   * Constructs a {@link Mesh} from the given Wavefront OBJ file, with the given per-instance
+   * buffers following the three attributes read from the file, starting at location 3.
+   */
+  public static Mesh createFromAsset(
+      SampleRender render, String assetFileName, VertexBuffer[] instanceBuffers)
+      throws IOException {
+    return create(render, readAsset(render.getAssets(), assetFileName), instanceBuffers);
+  }
+
+  /**
+   * Constructs a {@link Mesh} from the given Wavefront OBJ file in the same way as {@link
+   * #createFromAsset(SampleRender, String, VertexBuffer[])}, along with the simplified levels of
+   * {@code levelsOfDetail}. Simplification takes a while for large meshes; {@link
+   * AssetLoader#loadMesh(String, VertexBuffer[], LevelsOfDetail)} runs it in the background.
+   */
+  public static Mesh createFromAsset(
+      SampleRender render,
+      String assetFileName,
+      VertexBuffer[] instanceBuffers,
+      LevelsOfDetail levelsOfDetail)
+      throws IOException {
+    Geometry geometry = readAsset(render.getAssets(), assetFileName);
+    return create(
+        render,
+        generateLevelsOfDetail(geometry, levelsOfDetail, assetFileName),
+        instanceBuffers);
+  }
+
+  /**
+   * Constructs a {@link Mesh} from Wavefront OBJ data, such as a model downloaded at runtime, in
+   * the same way as {@link #createFromAsset}. The data is parsed in parallel with {@link
+   * ObjParser}.
+   *
+   * @param objData The contents of the OBJ file, from its position to its limit
+   * @param name A name for the data, used in log and error messages
+   */
+  public static Mesh createFromObj(
+      SampleRender render, ByteBuffer objData, String name, VertexBuffer[] instanceBuffers)
+      throws IOException {
+    return create(render, parseObj(objData, name), instanceBuffers);
+  }
+
+  /**
+   * The vertex and index data of a mesh, ready for {@link #create}. Reading and parsing it does not
+   * need the OpenGL context, so may run on any thread.
+   */
+  /* package-private */
+  static final class Geometry {
+    final VertexLayout layout;
+    final ByteBuffer vertexData;
+    final int indexType;
+    final ByteBuffer indexData;
+    // Min x, y, z then max x, y, z of the positions.
+    final float[] bounds;
+    // Set by generateLevelsOfDetail, along with the index count of each level, whose indices
+    // follow those of the previous level in indexData.
+    final LevelsOfDetail levelsOfDetail;
+    final int[] levelIndexCounts;
+    // The buffers holding the data, returned to the DirectBufferPool once uploaded.
+    final ByteBuffer[] stagingBuffers;
+
+    private Geometry(
+        VertexLayout layout,
+        ByteBuffer vertexData,
+        int indexType,
+        ByteBuffer indexData,
+        float[] bounds,
+        ByteBuffer... stagingBuffers) {
+      this(
+          layout,
+          vertexData,
+          indexType,
+          indexData,
+          bounds,
+          /*levelsOfDetail=*/ null,
+          /*levelIndexCounts=*/ null,
+          stagingBuffers);
+    }
+
+    private Geometry(
+        VertexLayout layout,
+        ByteBuffer vertexData,
+        int indexType,
+        ByteBuffer indexData,
+        float[] bounds,
+        LevelsOfDetail levelsOfDetail,
+        int[] levelIndexCounts,
+        ByteBuffer[] stagingBuffers) {
+      this.layout = layout;
+      this.vertexData = vertexData;
+      this.indexType = indexType;
+      this.indexData = indexData;
+      this.bounds = bounds;
+      this.levelsOfDetail = levelsOfDetail;
+      this.levelIndexCounts = levelIndexCounts;
+      this.stagingBuffers = stagingBuffers;
+    }
+  }
 
-      // Obtain the data from the OBJ, as direct buffers:
-      IntBuffer vertexIndices = ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 4);
-      FloatBuffer localCoordinates = ObjData.getVertices(obj);
-      FloatBuffer textureCoordinates = ObjData.getTexCoords(obj, /*dimensions=*/ 2);
-      FloatBuffer normals = ObjData.getNormals(obj);
+  /** Reads the geometry of {@link #createFromAsset}. */
+  /* package-private */
+  static Geometry readAsset(AssetManager assets, String assetFileName) throws IOException {
+    String binaryFileName = assetFileName.replaceFirst("\\.obj$", "") + ".mesh";
+    ByteBuffer binaryData = Assets.read(assets, binaryFileName);
+    if (binaryData != null) {
+      BinaryMesh binaryMesh = BinaryMesh.parse(binaryData, binaryFileName);
+      return new Geometry(
+          binaryMesh.layout,
+          binaryMesh.vertexData,
+          binaryMesh.indexType,
+          binaryMesh.indexData,
+          binaryMesh.bounds,
+          binaryData);
+    }
 
-      VertexBuffer[] vertexBuffers = {
-        new VertexBuffer(render, 3, localCoordinates),
-        new VertexBuffer(render, 2, textureCoordinates),
-        new VertexBuffer(render, 3, normals),
-      };
+    ByteBuffer objData = Assets.read(assets, assetFileName);
+    if (objData == null) {
+      throw new FileNotFoundException(assetFileName);
+    }
+    try {
+      return parseObj(objData, assetFileName);
+    } finally {
+      DirectBufferPool.release(objData);
+    }
+  }
 
-      IndexBuffer indexBuffer = new IndexBuffer(render, vertexIndices);
+  /** Parses the geometry of {@link #createFromObj}. */
+  /* package-private */
+  static Geometry parseObj(ByteBuffer objData, String name) throws IOException {
+    long startNanos = System.nanoTime();
+    ObjParser.Result obj = ObjParser.parse(objData);
+    Log.d(
+        TAG,
+        String.format(
+            "%s: parsed %d vertices in %d ms",
+            name, obj.numberOfVertices, (System.nanoTime() - startNanos) / 1000000));
 
-      return new Mesh(render, Mesh.PrimitiveMode.TRIANGLES, indexBuffer, vertexBuffers);
+    IntBuffer vertexIndices = obj.indices;
+    FloatBuffer localCoordinates = obj.positions;
+    FloatBuffer textureCoordinates = obj.texCoords;
+    FloatBuffer normals = obj.normals;
+    int numberOfVertices = obj.numberOfVertices;
+
+    if (optimizeOnLoad) {
+      int[] indices = new int[vertexIndices.limit()];
+      vertexIndices.get(indices);
+      float acmrBefore =
+          MeshOptimizer.computeAcmr(indices, numberOfVertices, MeshOptimizer.CACHE_SIZE);
+      indices = MeshOptimizer.optimizeTriangleOrder(indices, localCoordinates, numberOfVertices);
+      int[] remap = MeshOptimizer.optimizeVertexFetch(indices, numberOfVertices);
+      float acmrAfter =
+          MeshOptimizer.computeAcmr(indices, numberOfVertices, MeshOptimizer.CACHE_SIZE);
+      Log.d(
+          TAG,
+          String.format(
+              "%s: vertex cache miss ratio %.3f before optimization, %.3f after",
+              name, acmrBefore, acmrAfter));
+
+      vertexIndices = IntBuffer.wrap(indices);
+      localCoordinates = MeshOptimizer.remapVertices(localCoordinates, 3, remap);
+      textureCoordinates = MeshOptimizer.remapVertices(textureCoordinates, 2, remap);
+      normals = MeshOptimizer.remapVertices(normals, 3, remap);
     }
+
+    int indexType = IndexType.forMaxIndex(IndexType.maxIndex(vertexIndices));
+    ByteBuffer indexData =
+        DirectBufferPool.acquire(vertexIndices.limit() * IndexType.sizeOf(indexType));
+    IndexType.put(indexData, indexType, vertexIndices);
+    indexData.flip();
+    ByteBuffer vertexData = COMPACT_LAYOUT.pack(localCoordinates, textureCoordinates, normals);
+    return new Geometry(
+        COMPACT_LAYOUT,
+        vertexData,
+        indexType,
+        indexData,
+        computeBounds(localCoordinates),
+        vertexData,
+        indexData);
+  }
+
+  /**
+   * Appends the simplified levels of {@code levelsOfDetail}, built with {@link MeshSimplifier}, to
+   * the index data of {@code geometry}. They index the same vertices as the full mesh, so that
+   * drawing a level only changes the range of indices drawn. Generation stops early once a level
+   * cannot be simplified further.
+   *
+   * <p>Like reading, this does not need the OpenGL context, so may run on any thread.
+   *
+   * @param name A name for the geometry, used in log messages
+   */
+  /* package-private */
+  static Geometry generateLevelsOfDetail(
+      Geometry geometry, LevelsOfDetail levelsOfDetail, String name) {
+    if (levelsOfDetail.getLevelCount() == 1) {
+      return geometry;
+    }
+    long startNanos = System.nanoTime();
+    FloatBuffer positions = FloatBuffer.wrap(geometry.layout.unpack(geometry.vertexData, 0));
+    int numberOfVertices = positions.limit() / 3;
+    int indexType = geometry.indexType;
+    int numberOfIndices = geometry.indexData.limit() / IndexType.sizeOf(indexType);
+    int[][] levels = new int[levelsOfDetail.getLevelCount()][];
+    levels[0] = new int[numberOfIndices];
+    for (int i = 0; i < numberOfIndices; ++i) {
+      levels[0][i] = IndexType.get(geometry.indexData, indexType, i);
+    }
+
+    int levelCount = 1;
+    int totalIndices = numberOfIndices;
+    StringBuilder summary = new StringBuilder().append(numberOfIndices / 3);
+    while (levelCount < levels.length) {
+      int[] previous = levels[levelCount - 1];
+      int targetTriangleCount =
+          (int) (numberOfIndices / 3 * levelsOfDetail.getTriangleRatio(levelCount));
+      int[] level =
+          MeshSimplifier.simplify(previous, positions, numberOfVertices, targetTriangleCount);
+      if (level.length == previous.length) {
+        break;
+      }
+      levels[levelCount++] =
+          MeshOptimizer.optimizeTriangleOrder(level, positions, numberOfVertices);
+      totalIndices += level.length;
+      summary.append(" -> ").append(level.length / 3);
+    }
+    if (levelCount == 1) {
+      return geometry;
+    }
+
+    int[] levelIndexCounts = new int[levelCount];
+    ByteBuffer indexData = DirectBufferPool.acquire(totalIndices * IndexType.sizeOf(indexType));
+    for (int level = 0; level < levelCount; ++level) {
+      levelIndexCounts[level] = levels[level].length;
+      IndexType.put(indexData, indexType, IntBuffer.wrap(levels[level]));
+    }
+    indexData.flip();
+    Log.d(
+        TAG,
+        String.format(
+            "%s: levels of detail of %s triangles in %d ms",
+            name, summary, (System.nanoTime() - startNanos) / 1000000));
+
+    ByteBuffer[] stagingBuffers =
+        Arrays.copyOf(geometry.stagingBuffers, geometry.stagingBuffers.length + 1);
+    stagingBuffers[stagingBuffers.length - 1] = indexData;
+    return new Geometry(
+        geometry.layout,
+        geometry.vertexData,
+        indexType,
+        indexData,
+        geometry.bounds,
+        levelsOfDetail,
+        levelIndexCounts,
+        stagingBuffers);
+  }
+
+  /**
+   * Returns the bounding box of {@code positions}, read as x, y, z triples up to its limit: min x,
+   * y, z then max x, y, z. A buffer without positions gives an empty box at the origin.
+   */
+  /* package-private */
+  static float[] computeBounds(FloatBuffer positions) {
+    int count = positions.limit() / 3;
+    if (count == 0) {
+      return new float[6];
+    }
+    float[] bounds = {
+      Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE,
+      -Float.MAX_VALUE
+    };
+    for (int i = 0; i < count * 3; i += 3) {
+      for (int axis = 0; axis < 3; ++axis) {
+        float value = positions.get(i + axis);
+        bounds[axis] = Math.min(bounds[axis], value);
+        bounds[3 + axis] = Math.max(bounds[3 + axis], value);
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * Uploads geometry read by {@link #readAsset} or {@link #parseObj}, followed by the given
+   * per-instance buffers.
+   */
+  /* package-private */
+  static Mesh create(SampleRender render, Geometry geometry, VertexBuffer[] instanceBuffers) {
+    try {
+      VertexBuffer[] vertexBuffers = new VertexBuffer[1 + instanceBuffers.length];
+      vertexBuffers[0] = new VertexBuffer(render, geometry.layout, geometry.vertexData);
+      System.arraycopy(instanceBuffers, 0, vertexBuffers, 1, instanceBuffers.length);
+      IndexBuffer indexBuffer = new IndexBuffer(render, geometry.indexType, geometry.indexData);
+      Mesh mesh = new Mesh(render, Mesh.PrimitiveMode.TRIANGLES, indexBuffer, vertexBuffers);
+      mesh.ownedVertexBuffer = vertexBuffers[0];
+      mesh.ownedIndexBuffer = indexBuffer;
+      mesh.bounds = geometry.bounds;
+      if (geometry.levelIndexCounts != null) {
+        int indexSize = IndexType.sizeOf(geometry.indexType);
+        mesh.levelsOfDetail = geometry.levelsOfDetail;
+        mesh.levelIndexCounts = geometry.levelIndexCounts;
+        mesh.levelIndexOffsets = new int[geometry.levelIndexCounts.length];
+        for (int level = 1; level < mesh.levelIndexOffsets.length; ++level) {
+          mesh.levelIndexOffsets[level] =
+              mesh.levelIndexOffsets[level - 1] + geometry.levelIndexCounts[level - 1] * indexSize;
+        }
+      }
+      return mesh;
+    } finally {
+      for (ByteBuffer stagingBuffer : geometry.stagingBuffers) {
+        DirectBufferPool.release(stagingBuffer);
+      }
+    }
+  }
+
+  /**
+   * Sets whether {@link #createFromAsset} reorders triangles and vertices for faster rendering,
+   * which is enabled by default. Disabling it shortens loading, and keeps the order of the file.
+   */
+  public static void setOptimizeOnLoad(boolean enabled) {
+    optimizeOnLoad = enabled;
   }
 
   @Override
   public void close() {
     if (vertexArrayId[0] != 0) {
-      GLES30.glDeleteVertexArrays(1, vertexArrayId, 0);
+      GlBackend.get().glDeleteVertexArrays(1, vertexArrayId, 0);
       GLError.maybeLogGLError(
           Log.WARN, TAG, "Failed to free vertex array object", "glDeleteVertexArrays");
+      vertexArrayId[0] = 0;
+    }
+    if (ownedVertexBuffer != null) {
+      ownedVertexBuffer.close();
+      ownedIndexBuffer.close();
+      ownedVertexBuffer = null;
+      ownedIndexBuffer = null;
     }
   }
 
+  /**
+   * Returns the model space bounding box of the mesh, as min x, y, z then max x, y, z, for culling
+   * with {@link Frustum}. The array must not be modified.
+   *
+   * <p>The bounds are known for meshes read from a file, and null for meshes constructed from
+   * buffers, which are never culled.
+   */
+  public float[] getBounds() {
+    return bounds;
+  }
+
+  /**
+   * Returns the number of levels of detail of the mesh, including the full mesh, which is 1 unless
+   * it was created with {@link LevelsOfDetail}. This may be fewer than requested, if the mesh could
+   * not be simplified as much.
+   */
+  public int getLevelCount() {
+    return levelIndexCounts == null ? 1 : levelIndexCounts.length;
+  }
+
+  /* package-private */
+  LevelsOfDetail getLevelsOfDetail() {
+    return levelsOfDetail;
+  }
+
+  /* package-private */
+  int getVertexArrayId() {
+    return vertexArrayId[0];
+  }
+
+  /* package-private */
+  VertexBuffer getModelMatrixInstanceBuffer() {
+    return modelMatrixInstanceBuffer;
+  }
+
   /**
    * Draws the mesh. Don't call this directly unless you are doing low level OpenGL code; instead,
    * prefer {@link SampleRender#draw}.
    */
   public void lowLevelDraw() {
+    lowLevelDraw(/*level=*/ 0);
+  }
+
+  /**
+   * Draws a level of detail of the mesh, 0 being the full mesh, see {@link #getLevelCount}. Don't
+   * call this directly unless you are doing low level OpenGL code; instead, prefer {@link
+   * SampleRender#draw}.
+   */
+  public void lowLevelDraw(int level) {
+    bindVertexArray();
+    if (indexBuffer == null) {
+      GlBackend.get().glDrawArrays(primitiveMode.glesEnum, 0, getNumberOfVertices());
+      GLError.maybeThrowGLException("Failed to draw vertex array object", "glDrawArrays");
+    } else {
+      GlBackend.get().glDrawElements(
+          primitiveMode.glesEnum,
+          getIndexCount(level),
+          indexBuffer.getType(),
+          getIndexOffset(level));
+      GLError.maybeThrowGLException(
+          "Failed to draw vertex array object with indices", "glDrawElements");
+    }
+  }
+
+  /**
+   * Draws {@code instanceCount} instances of the mesh, with the per-instance vertex buffers
+   * advancing once per instance according to their divisor.
+   *
+   * <p>Don't call this directly unless you are doing low level OpenGL code; instead, prefer {@link
+   * SampleRender#drawInstanced}.
+   */
+  public void lowLevelDrawInstanced(int instanceCount) {
+    lowLevelDrawInstanced(instanceCount, /*level=*/ 0);
+  }
+
+  /**
+   * Draws {@code instanceCount} instances of a level of detail of the mesh, see {@link
+   * #lowLevelDraw(int)} and {@link #lowLevelDrawInstanced(int)}.
+   */
+  public void lowLevelDrawInstanced(int instanceCount, int level) {
+    bindVertexArray();
+    if (indexBuffer == null) {
+      GlBackend.get().glDrawArraysInstanced(
+          primitiveMode.glesEnum, 0, getNumberOfVertices(), instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw instanced vertex array object", "glDrawArraysInstanced");
+    } else {
+      GlBackend.get().glDrawElementsInstanced(
+          primitiveMode.glesEnum,
+          getIndexCount(level),
+          indexBuffer.getType(),
+          getIndexOffset(level),
+          instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw instanced vertex array object with indices", "glDrawElementsInstanced");
+    }
+  }
+
+  private void bindVertexArray() {
     if (vertexArrayId[0] == 0) {
       throw new IllegalStateException("Tried to draw a freed Mesh");
     }
 
-    GLES30.glBindVertexArray(vertexArrayId[0]);
+    GlBackend.get().glBindVertexArray(vertexArrayId[0]);
     GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
-    if (indexBuffer == null) {
-      // Sanity check for debugging
-      int numberOfVertices = vertexBuffers[0].getNumberOfVertices();
-      for (int i = 1; i < vertexBuffers.length; ++i) {
-        if (vertexBuffers[i].getNumberOfVertices() != numberOfVertices) {
-          throw new IllegalStateException("Vertex buffers have mismatching numbers of vertices");
-        }
+
+    if (indexBuffer != null) {
+      indexBuffer.onUsed();
+    }
+    // Streaming vertex buffers move their data every frame, so point the attributes at it.
+    for (int i = 0; i < vertexBuffers.length; ++i) {
+      vertexBuffers[i].onUsed();
+      if (vertexBuffers[i].getOffset() != attributeOffsets[i]) {
+        attributeOffsets[i] = vertexBuffers[i].getOffset();
+        setAttributePointers(i);
       }
-      GLES30.glDrawArrays(primitiveMode.glesEnum, 0, numberOfVertices);
-      GLError.maybeThrowGLException("Failed to draw vertex array object", "glDrawArrays");
-    } else {
-      GLES30.glDrawElements(
-          primitiveMode.glesEnum, indexBuffer.getSize(), GLES30.GL_UNSIGNED_INT, 0);
+    }
+  }
+
+  /** Points the attributes of a vertex buffer at its data, with the vertex array bound. */
+  private void setAttributePointers(int index) {
+    VertexBuffer vertexBuffer = vertexBuffers[index];
+    GlBackend.get().glBindBuffer(GLES30.GL_ARRAY_BUFFER, vertexBuffer.getBufferId());
+    GLError.maybeThrowGLException("Failed to bind vertex buffer", "glBindBuffer");
+    VertexLayout layout = vertexBuffer.getLayout();
+    for (int attribute = 0; attribute < layout.getAttributeCount(); ++attribute) {
+      VertexLayout.Format format = layout.getFormat(attribute);
+      GlBackend.get().glVertexAttribPointer(
+          attributeLocations[index] + attribute,
+          layout.getNumberOfComponents(attribute),
+          format.glesEnum,
+          format.normalized,
+          layout.getStride(),
+          attributeOffsets[index] + layout.getOffset(attribute));
       GLError.maybeThrowGLException(
-          "Failed to draw vertex array object with indices", "glDrawElements");
+          "Failed to associate vertex buffer with vertex array", "glVertexAttribPointer");
     }
   }
+
+  private int getNumberOfVertices() {
+    // Sanity check for debugging. Per-instance buffers are sized by instance count instead.
+    int numberOfVertices = -1;
+    for (VertexBuffer vertexBuffer : vertexBuffers) {
+      if (vertexBuffer.getDivisor() != 0) {
+        continue;
+      }
+      if (numberOfVertices == -1) {
+        numberOfVertices = vertexBuffer.getNumberOfVertices();
+      } else if (vertexBuffer.getNumberOfVertices() != numberOfVertices) {
+        throw new IllegalStateException("Vertex buffers have mismatching numbers of vertices");
+      }
+    }
+    return Math.max(numberOfVertices, 0);
+  }
+
+  private int getIndexCount(int level) {
+    return levelIndexCounts == null ? indexBuffer.getSize() : levelIndexCounts[level];
+  }
+
+  private int getIndexOffset(int level) {
+    return levelIndexOffsets == null
+        ? indexBuffer.getOffset()
+        : indexBuffer.getOffset() + levelIndexOffsets[level];
+  }
 }
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Load-time reordering of indexed triangle lists for faster rendering.
+ *
+ * <p>{@link #optimizeTriangleOrder} follows "Fast Triangle Reordering for Vertex Locality and
+ * Reduced Overdraw" (Sander, Nehab and Barczak, 2007): triangles are first ordered with Tipsify to
+ * make good use of the post-transform vertex cache, then the resulting clusters are sorted so that
+ * outward facing parts of the mesh are drawn first and hide what is behind them. {@link
+ * #optimizeVertexFetch} then renumbers vertices in the order they are first used, so vertex fetch
+ * reads memory sequentially.
+ *
+ * <p>This class does not depend on Android, so that the {@code convertMeshes} Gradle task can
+ * optimize meshes at build time with the same code.
+ */
+public final class MeshOptimizer {
+  /** Cache size assumed by the optimizer, a conservative value for mobile GPUs. */
+  public static final int CACHE_SIZE = 16;
+
+  // Clusters whose cache efficiency is within this factor of the whole mesh may be split further.
+  private static final float OVERDRAW_THRESHOLD = 1.05f;
+  // Soft boundaries are only placed once a cluster is this large, so that the misses of warming up
+  // the cache again after it stay small compared to the cluster.
+  private static final int MIN_CLUSTER_TRIANGLES = 4 * CACHE_SIZE;
+
+  /**
+   * Returns the average cache miss ratio, the number of vertex shader invocations per triangle,
+   * of a FIFO post-transform cache of the given size. Lower is better; 0.5 is the ideal for large
+   * regular meshes and 3 the worst case.
+   */
+  public static float computeAcmr(int[] indices, int vertexCount, int cacheSize) {
+    int triangleCount = indices.length / 3;
+    if (triangleCount == 0) {
+      return 0f;
+    }
+    return (float) countCacheMisses(indices, 0, indices.length, vertexCount, cacheSize)
+        / triangleCount;
+  }
+
+  /**
+   * Reorders the triangles of {@code indices} for vertex cache locality and reduced overdraw.
+   *
+   * @param indices Triangle list indices. Not modified.
+   * @param positions Vertex positions, three floats per vertex.
+   * @param vertexCount Number of vertices referenced by {@code indices}.
+   * @return The reordered triangle list.
+   */
+  public static int[] optimizeTriangleOrder(int[] indices, FloatBuffer positions, int vertexCount) {
+    int triangleCount = indices.length / 3;
+    if (triangleCount == 0) {
+      return indices.clone();
+    }
+    // Hard cluster boundaries are where Tipsify had to jump to a vertex that was not in the cache.
+    boolean[] hardBoundaries = new boolean[triangleCount + 1];
+    int[] ordered = tipsify(indices, vertexCount, CACHE_SIZE, hardBoundaries);
+    int[] clusterStarts = splitClusters(ordered, vertexCount, hardBoundaries);
+    return sortClusters(ordered, positions, clusterStarts);
+  }
+
+  /**
+   * Renumbers vertices in order of first use and rewrites {@code indices} in place. Vertices that
+   * are never referenced are dropped.
+   *
+   * @return The map from old to new vertex index, -1 for dropped vertices. Apply it to every
+   *     attribute with {@link #remapVertices(FloatBuffer, int, int[])}.
+   */
+  public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+    int[] remap = new int[vertexCount];
+    Arrays.fill(remap, -1);
+    int next = 0;
+    for (int i = 0; i < indices.length; ++i) {
+      int vertex = indices[i];
+      if (remap[vertex] == -1) {
+        remap[vertex] = next++;
+      }
+      indices[i] = remap[vertex];
+    }
+    return remap;
+  }
+
+  /**
+   * Reorders one vertex attribute according to a map returned by {@link #optimizeVertexFetch}.
+   *
+   * @param source The attribute, {@code components} floats per vertex.
+   * @return A new direct buffer in native order, positioned at zero.
+   */
+  public static FloatBuffer remapVertices(FloatBuffer source, int components, int[] remap) {
+    int newVertexCount = 0;
+    for (int newIndex : remap) {
+      newVertexCount = Math.max(newVertexCount, newIndex + 1);
+    }
+    FloatBuffer target =
+        ByteBuffer.allocateDirect(newVertexCount * components * Float.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int vertex = 0; vertex < remap.length; ++vertex) {
+      if (remap[vertex] == -1) {
+        continue;
+      }
+      for (int c = 0; c < components; ++c) {
+        target.put(remap[vertex] * components + c, source.get(vertex * components + c));
+      }
+    }
+    return target;
+  }
+
+  /** Tipsify: fans around recently used vertices, preferring those that will stay in cache. */
+  private static int[] tipsify(
+      int[] indices, int vertexCount, int cacheSize, boolean[] hardBoundaries) {
+    int triangleCount = indices.length / 3;
+
+    // Vertex to triangle adjacency, in compressed rows.
+    int[] liveTriangles = new int[vertexCount];
+    for (int index : indices) {
+      liveTriangles[index]++;
+    }
+    int[] adjacencyOffsets = new int[vertexCount + 1];
+    for (int v = 0; v < vertexCount; ++v) {
+      adjacencyOffsets[v + 1] = adjacencyOffsets[v] + liveTriangles[v];
+    }
+    int[] adjacency = new int[indices.length];
+    int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+    for (int i = 0; i < indices.length; ++i) {
+      adjacency[fill[indices[i]]++] = i / 3;
+    }
+
+    int[] cacheTime = new int[vertexCount];
+    int time = cacheSize + 1;
+    boolean[] emitted = new boolean[triangleCount];
+    int[] deadEnd = new int[indices.length];
+    int deadEndSize = 0;
+    int[] candidates = new int[indices.length];
+    int[] output = new int[indices.length];
+    int outputSize = 0;
+    int scanCursor = 0;
+
+    int fanning = 0;
+    while (fanning >= 0) {
+      int candidateCount = 0;
+      for (int a = adjacencyOffsets[fanning]; a < adjacencyOffsets[fanning + 1]; ++a) {
+        int triangle = adjacency[a];
+        if (emitted[triangle]) {
+          continue;
+        }
+        emitted[triangle] = true;
+        for (int k = 0; k < 3; ++k) {
+          int v = indices[triangle * 3 + k];
+          output[outputSize++] = v;
+          deadEnd[deadEndSize++] = v;
+          candidates[candidateCount++] = v;
+          liveTriangles[v]--;
+          if (time - cacheTime[v] > cacheSize) {
+            cacheTime[v] = time++;
+          }
+        }
+      }
+
+      // Pick the candidate that is still in cache after fanning around it, oldest first.
+      int best = -1;
+      int bestPriority = -1;
+      for (int c = 0; c < candidateCount; ++c) {
+        int v = candidates[c];
+        if (liveTriangles[v] <= 0) {
+          continue;
+        }
+        int priority = 0;
+        if (time - cacheTime[v] + 2 * liveTriangles[v] <= cacheSize) {
+          priority = time - cacheTime[v];
+        }
+        if (priority > bestPriority) {
+          best = v;
+          bestPriority = priority;
+        }
+      }
+      if (best == -1) {
+        // Dead end: back up through recently used vertices, then scan for any remaining one.
+        while (deadEndSize > 0 && best == -1) {
+          int v = deadEnd[--deadEndSize];
+          if (liveTriangles[v] > 0) {
+            best = v;
+          }
+        }
+        while (best == -1 && scanCursor < vertexCount) {
+          if (liveTriangles[scanCursor] > 0) {
+            best = scanCursor;
+          }
+          scanCursor++;
+        }
+        // Only a jump to a vertex that has left the cache restarts it.
+        if (best != -1 && time - cacheTime[best] > cacheSize) {
+          hardBoundaries[outputSize / 3] = true;
+        }
+      }
+      fanning = best;
+    }
+    return output;
+  }
+
+  /**
+   * Splits the Tipsify output into clusters that can be reordered. Besides the hard boundaries, a
+   * cluster also ends wherever its cache efficiency has come close to that of the whole mesh, so
+   * that restarting the cache there costs little.
+   *
+   * @return The first triangle of every cluster, followed by the triangle count.
+   */
+  private static int[] splitClusters(int[] ordered, int vertexCount, boolean[] hardBoundaries) {
+    int triangleCount = ordered.length / 3;
+    float targetAcmr = computeAcmr(ordered, vertexCount, CACHE_SIZE);
+
+    int[] starts = new int[triangleCount + 1];
+    int clusterCount = 0;
+    int[] cacheTime = new int[vertexCount];
+    int time = 0;
+    int clusterStart = 0;
+    int clusterMisses = 0;
+    for (int t = 0; t < triangleCount; ++t) {
+      if (t == 0 || hardBoundaries[t]) {
+        starts[clusterCount++] = t;
+        clusterStart = t;
+        clusterMisses = 0;
+        time += CACHE_SIZE + 1; // Flush the simulated cache.
+      }
+      for (int k = 0; k < 3; ++k) {
+        int v = ordered[t * 3 + k];
+        if (time - cacheTime[v] > CACHE_SIZE) {
+          cacheTime[v] = ++time;
+          clusterMisses++;
+        }
+      }
+      int clusterTriangles = t + 1 - clusterStart;
+      if (t + 1 < triangleCount
+          && !hardBoundaries[t + 1]
+          && clusterTriangles >= MIN_CLUSTER_TRIANGLES
+          && clusterMisses <= OVERDRAW_THRESHOLD * targetAcmr * clusterTriangles) {
+        starts[clusterCount++] = t + 1;
+        clusterStart = t + 1;
+        clusterMisses = 0;
+        time += CACHE_SIZE + 1;
+      }
+    }
+    starts[clusterCount] = triangleCount;
+    return Arrays.copyOf(starts, clusterCount + 1);
+  }
+
+  /** Sorts clusters so that those facing away from the mesh center are drawn first. */
+  private static int[] sortClusters(int[] ordered, FloatBuffer positions, int[] clusterStarts) {
+    int clusterCount = clusterStarts.length - 1;
+
+    // Area weighted centroid of the whole mesh.
+    float[] meshCentroid = new float[3];
+    float meshArea = 0;
+    float[] triangle = new float[7]; // Centroid, normal and area.
+    for (int t = 0; t < ordered.length / 3; ++t) {
+      measureTriangle(ordered, t, positions, triangle);
+      for (int c = 0; c < 3; ++c) {
+        meshCentroid[c] += triangle[c] * triangle[6];
+      }
+      meshArea += triangle[6];
+    }
+    if (meshArea > 0) {
+      for (int c = 0; c < 3; ++c) {
+        meshCentroid[c] /= meshArea;
+      }
+    }
+
+    // Sort key: how far the cluster faces outward, negated so larger values sort first. The
+    // cluster index is packed into the low bits to keep the sort allocation free and stable.
+    long[] keys = new long[clusterCount];
+    for (int cluster = 0; cluster < clusterCount; ++cluster) {
+      float[] centroid = new float[3];
+      float[] normal = new float[3];
+      float area = 0;
+      for (int t = clusterStarts[cluster]; t < clusterStarts[cluster + 1]; ++t) {
+        measureTriangle(ordered, t, positions, triangle);
+        for (int c = 0; c < 3; ++c) {
+          centroid[c] += triangle[c] * triangle[6];
+          normal[c] += triangle[3 + c] * triangle[6];
+        }
+        area += triangle[6];
+      }
+      float dot = 0;
+      float normalLength =
+          (float) Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+      if (area > 0 && normalLength > 0) {
+        for (int c = 0; c < 3; ++c) {
+          dot += (centroid[c] / area - meshCentroid[c]) * normal[c] / normalLength;
+        }
+      }
+      // Adding zero turns -0 into +0, which would otherwise sort before every negative value.
+      float order = -dot + 0f;
+      keys[cluster] = ((long) Float.floatToIntBits(order) << 32) | cluster;
+      // Flip the bits of negative floats so that the signed long compares like the float.
+      if (order < 0) {
+        keys[cluster] ^= 0x7fffffff00000000L;
+      }
+    }
+    Arrays.sort(keys);
+
+    int[] result = new int[ordered.length];
+    int resultSize = 0;
+    for (long key : keys) {
+      int cluster = (int) key;
+      int from = clusterStarts[cluster] * 3;
+      int to = clusterStarts[cluster + 1] * 3;
+      System.arraycopy(ordered, from, result, resultSize, to - from);
+      resultSize += to - from;
+    }
+    return result;
+  }
+
+  /** Writes the centroid, unit normal and area of triangle {@code t} into {@code out}. */
+  private static void measureTriangle(int[] indices, int t, FloatBuffer positions, float[] out) {
+    int a = indices[t * 3] * 3;
+    int b = indices[t * 3 + 1] * 3;
+    int c = indices[t * 3 + 2] * 3;
+    float e1x = positions.get(b) - positions.get(a);
+    float e1y = positions.get(b + 1) - positions.get(a + 1);
+    float e1z = positions.get(b + 2) - positions.get(a + 2);
+    float e2x = positions.get(c) - positions.get(a);
+    float e2y = positions.get(c + 1) - positions.get(a + 1);
+    float e2z = positions.get(c + 2) - positions.get(a + 2);
+    float nx = e1y * e2z - e1z * e2y;
+    float ny = e1z * e2x - e1x * e2z;
+    float nz = e1x * e2y - e1y * e2x;
+    float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+    for (int k = 0; k < 3; ++k) {
+      out[k] = (positions.get(a + k) + positions.get(b + k) + positions.get(c + k)) / 3f;
+    }
+    out[3] = length > 0 ? nx / length : 0;
+    out[4] = length > 0 ? ny / length : 0;
+    out[5] = length > 0 ? nz / length : 0;
+    out[6] = length * 0.5f;
+  }
+
+  private static int countCacheMisses(
+      int[] indices, int from, int to, int vertexCount, int cacheSize) {
+    // A FIFO cache: a vertex is resident if fewer than cacheSize misses happened since it entered.
+    int[] cacheTime = new int[vertexCount];
+    int time = cacheSize + 1;
+    int misses = 0;
+    for (int i = from; i < to; ++i) {
+      int v = indices[i];
+      if (time - cacheTime[v] > cacheSize) {
+        cacheTime[v] = time++;
+        misses++;
+      }
+    }
+    return misses;
+  }
+
+  private MeshOptimizer() {}
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Load-time reduction of indexed triangle lists, used to build levels of detail.
+ *
+ * <p>{@link #simplify} follows "Surface Simplification Using Quadric Error Metrics" (Garland and
+ * Heckbert, 1997): every vertex accumulates the planes of its triangles, and edges are collapsed
+ * in order of the squared distance they move the surface away from those planes. Collapses only
+ * move a vertex onto one of its neighbors, so the result indexes a subset of the original
+ * vertices and can share their buffer.
+ *
+ * <p>Vertices that share their position with another, along texture or normal seams, and vertices
+ * on open borders are never moved, so that the simplified mesh does not tear. Collapses that
+ * would flip a triangle are skipped.
+ */
+public final class MeshSimplifier {
+  // Upper triangle of the symmetric 4x4 quadric: aa, ab, ac, ad, bb, bc, bd, cc, cd, dd.
+  private static final int QUADRIC_SIZE = 10;
+  // Collapses turning a triangle by more than about 75 degrees are rejected.
+  private static final float MIN_NORMAL_COSINE = 0.25f;
+
+  private MeshSimplifier() {}
+
+  /**
+   * Collapses edges of a triangle list until it has at most {@code targetTriangleCount} triangles,
+   * or no collapse is allowed.
+   *
+   * @param indices Triangle list indices. Not modified.
+   * @param positions Vertex positions, three floats per vertex.
+   * @param vertexCount Number of vertices referenced by {@code indices}.
+   * @return The simplified triangle list, indexing the same vertices.
+   */
+  public static int[] simplify(
+      int[] indices, FloatBuffer positions, int vertexCount, int targetTriangleCount) {
+    float[] vertexPositions = new float[vertexCount * 3];
+    for (int i = 0; i < vertexPositions.length; ++i) {
+      vertexPositions[i] = positions.get(i);
+    }
+    return simplify(indices, vertexPositions, vertexCount, targetTriangleCount);
+  }
+
+  private static int[] simplify(
+      int[] indices, float[] positions, int vertexCount, int targetTriangleCount) {
+    int[] current = indices.clone();
+    boolean[] locked = findLockedVertices(current, positions, vertexCount);
+    double[] quadrics = computeQuadrics(current, positions, vertexCount);
+    int[] remap = new int[vertexCount];
+    boolean[] touched = new boolean[vertexCount];
+    // Each pass collapses edges that do not share a vertex, whose costs therefore stay valid.
+    while (current.length / 3 > targetTriangleCount) {
+      int collapses =
+          collapseEdges(
+              current,
+              positions,
+              vertexCount,
+              locked,
+              quadrics,
+              remap,
+              touched,
+              current.length / 3 - targetTriangleCount);
+      if (collapses == 0) {
+        break;
+      }
+      current = remapTriangles(current, remap);
+    }
+    return current;
+  }
+
+  private static boolean[] findLockedVertices(int[] indices, float[] positions, int vertexCount) {
+    // Group vertices by position, by sorting them.
+    Integer[] order = new Integer[vertexCount];
+    for (int v = 0; v < vertexCount; ++v) {
+      order[v] = v;
+    }
+    Arrays.sort(order, (a, b) -> comparePositions(positions, a, b));
+    int[] canonical = new int[vertexCount];
+    boolean[] locked = new boolean[vertexCount];
+    for (int i = 0; i < vertexCount; ++i) {
+      int v = order[i];
+      if (i > 0 && comparePositions(positions, order[i - 1], v) == 0) {
+        canonical[v] = canonical[order[i - 1]];
+        locked[v] = true;
+        locked[canonical[v]] = true;
+      } else {
+        canonical[v] = v;
+      }
+    }
+
+    // Border edges are used by a single triangle, once positions are merged.
+    long[] edges = new long[indices.length];
+    for (int t = 0; t < indices.length; t += 3) {
+      for (int k = 0; k < 3; ++k) {
+        edges[t + k] =
+            edgeKey(canonical[indices[t + k]], canonical[indices[t + (k + 1) % 3]]);
+      }
+    }
+    Arrays.sort(edges);
+    boolean[] lockedCanonical = new boolean[vertexCount];
+    for (int i = 0; i < edges.length; ) {
+      int end = i + 1;
+      while (end < edges.length && edges[end] == edges[i]) {
+        end++;
+      }
+      if (end - i == 1) {
+        lockedCanonical[(int) (edges[i] >>> 32)] = true;
+        lockedCanonical[(int) edges[i]] = true;
+      }
+      i = end;
+    }
+    for (int v = 0; v < vertexCount; ++v) {
+      locked[v] |= lockedCanonical[canonical[v]];
+    }
+    return locked;
+  }
+
+  private static double[] computeQuadrics(int[] indices, float[] positions, int vertexCount) {
+    double[] quadrics = new double[vertexCount * QUADRIC_SIZE];
+    for (int t = 0; t < indices.length; t += 3) {
+      int i0 = indices[t] * 3;
+      int i1 = indices[t + 1] * 3;
+      int i2 = indices[t + 2] * 3;
+      double e1x = positions[i1] - positions[i0];
+      double e1y = positions[i1 + 1] - positions[i0 + 1];
+      double e1z = positions[i1 + 2] - positions[i0 + 2];
+      double e2x = positions[i2] - positions[i0];
+      double e2y = positions[i2 + 1] - positions[i0 + 1];
+      double e2z = positions[i2 + 2] - positions[i0 + 2];
+      double nx = e1y * e2z - e1z * e2y;
+      double ny = e1z * e2x - e1x * e2z;
+      double nz = e1x * e2y - e1y * e2x;
+      double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length == 0) {
+        continue;
+      }
+      // Weighted by area, which is half the length of the cross product.
+      double weight = length * 0.5;
+      double a = nx / length;
+      double b = ny / length;
+      double c = nz / length;
+      double d = -(a * positions[i0] + b * positions[i0 + 1] + c * positions[i0 + 2]);
+      for (int k = 0; k < 3; ++k) {
+        int q = indices[t + k] * QUADRIC_SIZE;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+      }
+    }
+    return quadrics;
+  }
+
+  /**
+   * Collapses the cheapest edges whose vertices were not changed yet in this pass, writing the
+   * new vertex of each vertex to {@code remap}.
+   *
+   * @return The number of collapses.
+   */
+  private static int collapseEdges(
+      int[] indices,
+      float[] positions,
+      int vertexCount,
+      boolean[] locked,
+      double[] quadrics,
+      int[] remap,
+      boolean[] touched,
+      int trianglesToRemove) {
+    // Vertex to triangle adjacency, in compressed rows.
+    int[] adjacencyOffsets = new int[vertexCount + 1];
+    for (int index : indices) {
+      adjacencyOffsets[index + 1]++;
+    }
+    for (int v = 0; v < vertexCount; ++v) {
+      adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+    }
+    int[] adjacency = new int[indices.length];
+    int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+    for (int i = 0; i < indices.length; ++i) {
+      adjacency[fill[indices[i]]++] = i / 3;
+    }
+
+    long[] edges = new long[indices.length];
+    for (int t = 0; t < indices.length; t += 3) {
+      for (int k = 0; k < 3; ++k) {
+        edges[t + k] = edgeKey(indices[t + k], indices[t + (k + 1) % 3]);
+      }
+    }
+    Arrays.sort(edges);
+
+    // Each edge collapses in its cheaper direction. Candidates are sorted by cost, held in the
+    // high bits of the key, as the bits of a non-negative float order the same as its value.
+    int[] from = new int[edges.length];
+    int[] to = new int[edges.length];
+    long[] candidates = new long[edges.length];
+    int candidateCount = 0;
+    for (int i = 0; i < edges.length; ++i) {
+      if (i > 0 && edges[i] == edges[i - 1]) {
+        continue;
+      }
+      int a = (int) (edges[i] >>> 32);
+      int b = (int) edges[i];
+      double costAb =
+          locked[a] ? Double.POSITIVE_INFINITY : collapseCost(quadrics, positions, a, b);
+      double costBa =
+          locked[b] ? Double.POSITIVE_INFINITY : collapseCost(quadrics, positions, b, a);
+      double cost = Math.min(costAb, costBa);
+      if (cost == Double.POSITIVE_INFINITY) {
+        continue;
+      }
+      from[candidateCount] = costAb <= costBa ? a : b;
+      to[candidateCount] = costAb <= costBa ? b : a;
+      long costBits = Float.floatToIntBits((float) Math.max(cost, 0));
+      candidates[candidateCount] = (costBits << 32) | candidateCount;
+      candidateCount++;
+    }
+    Arrays.sort(candidates, 0, candidateCount);
+
+    for (int v = 0; v < vertexCount; ++v) {
+      remap[v] = v;
+      touched[v] = false;
+    }
+    int removed = 0;
+    int collapses = 0;
+    for (int i = 0; i < candidateCount && removed < trianglesToRemove; ++i) {
+      int candidate = (int) candidates[i];
+      int source = from[candidate];
+      int target = to[candidate];
+      if (touched[source]
+          || touched[target]
+          || flipsTriangle(
+              indices, positions, adjacency, adjacencyOffsets, remap, source, target)) {
+        continue;
+      }
+      remap[source] = target;
+      touched[source] = true;
+      touched[target] = true;
+      for (int k = 0; k < QUADRIC_SIZE; ++k) {
+        quadrics[target * QUADRIC_SIZE + k] += quadrics[source * QUADRIC_SIZE + k];
+      }
+      // The triangles sharing the edge collapse away.
+      for (int j = adjacencyOffsets[source]; j < adjacencyOffsets[source + 1]; ++j) {
+        int t = adjacency[j] * 3;
+        if (indices[t] == target || indices[t + 1] == target || indices[t + 2] == target) {
+          removed++;
+        }
+      }
+      collapses++;
+    }
+    return collapses;
+  }
+
+  /** Returns the error of moving {@code source} onto {@code target}, by both their quadrics. */
+  private static double collapseCost(double[] quadrics, float[] positions, int source, int target) {
+    double x = positions[target * 3];
+    double y = positions[target * 3 + 1];
+    double z = positions[target * 3 + 2];
+    return evaluate(quadrics, source * QUADRIC_SIZE, x, y, z)
+        + evaluate(quadrics, target * QUADRIC_SIZE, x, y, z);
+  }
+
+  private static double evaluate(double[] quadrics, int q, double x, double y, double z) {
+    return quadrics[q] * x * x
+        + 2 * quadrics[q + 1] * x * y
+        + 2 * quadrics[q + 2] * x * z
+        + 2 * quadrics[q + 3] * x
+        + quadrics[q + 4] * y * y
+        + 2 * quadrics[q + 5] * y * z
+        + 2 * quadrics[q + 6] * y
+        + quadrics[q + 7] * z * z
+        + 2 * quadrics[q + 8] * z
+        + quadrics[q + 9];
+  }
+
+  /**
+   * Returns whether moving {@code source} onto {@code target} turns one of its triangles over or
+   * makes it degenerate, after the collapses already made in this pass.
+   */
+  private static boolean flipsTriangle(
+      int[] indices,
+      float[] positions,
+      int[] adjacency,
+      int[] adjacencyOffsets,
+      int[] remap,
+      int source,
+      int target) {
+    float[] before = new float[3];
+    float[] after = new float[3];
+    for (int j = adjacencyOffsets[source]; j < adjacencyOffsets[source + 1]; ++j) {
+      int t = adjacency[j] * 3;
+      int v0 = remap[indices[t]];
+      int v1 = remap[indices[t + 1]];
+      int v2 = remap[indices[t + 2]];
+      if (v0 == target || v1 == target || v2 == target || v0 == v1 || v1 == v2 || v2 == v0) {
+        continue;
+      }
+      normal(positions, v0, v1, v2, before);
+      normal(
+          positions,
+          v0 == source ? target : v0,
+          v1 == source ? target : v1,
+          v2 == source ? target : v2,
+          after);
+      float dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+      float lengths =
+          (float)
+              Math.sqrt(
+                  (before[0] * before[0] + before[1] * before[1] + before[2] * before[2])
+                      * (after[0] * after[0] + after[1] * after[1] + after[2] * after[2]));
+      if (lengths == 0 || dot < MIN_NORMAL_COSINE * lengths) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Unnormalized normal of a triangle.
+  private static void normal(float[] positions, int v0, int v1, int v2, float[] out) {
+    float e1x = positions[v1 * 3] - positions[v0 * 3];
+    float e1y = positions[v1 * 3 + 1] - positions[v0 * 3 + 1];
+    float e1z = positions[v1 * 3 + 2] - positions[v0 * 3 + 2];
+    float e2x = positions[v2 * 3] - positions[v0 * 3];
+    float e2y = positions[v2 * 3 + 1] - positions[v0 * 3 + 1];
+    float e2z = positions[v2 * 3 + 2] - positions[v0 * 3 + 2];
+    out[0] = e1y * e2z - e1z * e2y;
+    out[1] = e1z * e2x - e1x * e2z;
+    out[2] = e1x * e2y - e1y * e2x;
+  }
+
+  /** Applies {@code remap} and drops the triangles that became degenerate. */
+  private static int[] remapTriangles(int[] indices, int[] remap) {
+    int[] result = new int[indices.length];
+    int count = 0;
+    for (int t = 0; t < indices.length; t += 3) {
+      int v0 = remap[indices[t]];
+      int v1 = remap[indices[t + 1]];
+      int v2 = remap[indices[t + 2]];
+      if (v0 == v1 || v1 == v2 || v2 == v0) {
+        continue;
+      }
+      result[count++] = v0;
+      result[count++] = v1;
+      result[count++] = v2;
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  private static long edgeKey(int a, int b) {
+    return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+  }
+
+  private static int comparePositions(float[] positions, int a, int b) {
+    for (int c = 0; c < 3; ++c) {
+      int result = Float.compare(positions[a * 3 + c], positions[b * 3 + c]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses Wavefront OBJ geometry into single-indexed triangle lists, for models that cannot be
+ * converted at build time.
+ *
+ * <p>The file is parsed straight from bytes, without creating strings or per-vertex objects. It is
+ * split into chunks at line boundaries that are parsed in parallel: a counting pass first gives
+ * every chunk the global index of its first position, texture coordinate and normal, so that
+ * vertex data lands directly in its final place and relative indices can be resolved. Each chunk
+ * then de-duplicates its own position/texture/normal combinations, and only those unique
+ * combinations are merged into the global vertex list.
+ *
+ * <p>Only {@code v}, {@code vt}, {@code vn} and {@code f} statements are read; polygons are
+ * triangulated as fans. Missing texture coordinates and normals are zero. The triangles are the
+ * same as those of {@code de.javagl.obj.ObjReader} and {@code ObjUtils.convertToRenderable}, which
+ * however keep some identical vertices apart.
+ */
+public final class ObjParser {
+  // Chunks are at least this large, so that small files are parsed on one thread.
+  private static final int MIN_CHUNK_BYTES = 64 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  // Marks a missing texture coordinate or normal index.
+  private static final int NONE = -1;
+
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /** Parsed geometry. All buffers are direct, in native order and positioned at zero. */
+  public static final class Result {
+    /** Three floats per vertex. */
+    public final FloatBuffer positions;
+    /** Two floats per vertex. */
+    public final FloatBuffer texCoords;
+    /** Three floats per vertex. */
+    public final FloatBuffer normals;
+    /** Three indices per triangle. */
+    public final IntBuffer indices;
+
+    public final int numberOfVertices;
+
+    private Result(int numberOfVertices, int numberOfIndices) {
+      this.positions = allocate(numberOfVertices * 3 * GpuBuffer.FLOAT_SIZE).asFloatBuffer();
+      this.texCoords = allocate(numberOfVertices * 2 * GpuBuffer.FLOAT_SIZE).asFloatBuffer();
+      this.normals = allocate(numberOfVertices * 3 * GpuBuffer.FLOAT_SIZE).asFloatBuffer();
+      this.indices = allocate(numberOfIndices * GpuBuffer.INT_SIZE).asIntBuffer();
+      this.numberOfVertices = numberOfVertices;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+      return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+  }
+
+  /** Parses {@code data} from its position to its limit on the common fork-join pool. */
+  public static Result parse(ByteBuffer data) throws IOException {
+    return parse(data, ForkJoinPool.commonPool());
+  }
+
+  /** Parses {@code data} from its position to its limit on {@code pool}. */
+  public static Result parse(ByteBuffer data, ForkJoinPool pool) throws IOException {
+    Chunk[] chunks = split(data, pool.getParallelism() * CHUNKS_PER_THREAD);
+
+    // Pass 1: count vertex statements, to know where each chunk's vertex data goes.
+    runAll(pool, chunks, Chunk::count);
+    int positionCount = 0;
+    int texCoordCount = 0;
+    int normalCount = 0;
+    for (Chunk chunk : chunks) {
+      chunk.positionBase = positionCount;
+      chunk.texCoordBase = texCoordCount;
+      chunk.normalBase = normalCount;
+      positionCount += chunk.positionCount;
+      texCoordCount += chunk.texCoordCount;
+      normalCount += chunk.normalCount;
+    }
+    float[] objPositions = new float[positionCount * 3];
+    float[] objTexCoords = new float[texCoordCount * 2];
+    float[] objNormals = new float[normalCount * 3];
+
+    // Pass 2: parse, triangulate and de-duplicate within each chunk.
+    runAll(
+        pool,
+        chunks,
+        chunk -> {
+          chunk.parse(objPositions, objTexCoords, objNormals);
+          chunk.deduplicate(
+              objPositions.length / 3, objTexCoords.length / 2, objNormals.length / 3);
+        });
+    for (Chunk chunk : chunks) {
+      if (chunk.error != null) {
+        throw new IOException(chunk.error);
+      }
+    }
+
+    // Merge the unique vertices of every chunk into the global vertex list.
+    VertexTable globalTable = new VertexTable(chunks.length > 0 ? chunks[0].keys.size() : 16);
+    int indexCount = 0;
+    for (Chunk chunk : chunks) {
+      chunk.remap = new int[chunk.keys.size() / 3];
+      for (int i = 0; i < chunk.remap.length; ++i) {
+        chunk.remap[i] =
+            globalTable.add(
+                chunk.keys.get(3 * i), chunk.keys.get(3 * i + 1), chunk.keys.get(3 * i + 2));
+      }
+      chunk.indexBase = indexCount;
+      indexCount += chunk.triangles.size();
+    }
+    int vertexCount = globalTable.size();
+
+    Result result = new Result(vertexCount, indexCount);
+    FloatBuffer positions = result.positions;
+    FloatBuffer texCoords = result.texCoords;
+    FloatBuffer normals = result.normals;
+    IntBuffer indices = result.indices;
+
+    // Pass 3: write the final indices of each chunk, then the vertex attributes.
+    runAll(
+        pool,
+        chunks,
+        chunk -> {
+          for (int i = 0; i < chunk.triangles.size(); ++i) {
+            indices.put(chunk.indexBase + i, chunk.remap[chunk.triangles.get(i)]);
+          }
+        });
+    IntArray globalKeys = globalTable.keys;
+    for (int v = 0; v < vertexCount; ++v) {
+      int p = globalKeys.get(3 * v);
+      int t = globalKeys.get(3 * v + 1);
+      int n = globalKeys.get(3 * v + 2);
+      for (int c = 0; c < 3; ++c) {
+        positions.put(3 * v + c, objPositions[3 * p + c]);
+      }
+      for (int c = 0; c < 2; ++c) {
+        texCoords.put(2 * v + c, t != NONE ? objTexCoords[2 * t + c] : 0f);
+      }
+      for (int c = 0; c < 3; ++c) {
+        normals.put(3 * v + c, n != NONE ? objNormals[3 * n + c] : 0f);
+      }
+    }
+    return result;
+  }
+
+  private interface ChunkTask {
+    void run(Chunk chunk);
+  }
+
+  private static void runAll(ForkJoinPool pool, Chunk[] chunks, ChunkTask task) {
+    if (chunks.length == 1) {
+      task.run(chunks[0]);
+      return;
+    }
+    List<RecursiveAction> actions = new ArrayList<>(chunks.length);
+    for (Chunk chunk : chunks) {
+      actions.add(
+          new RecursiveAction() {
+            @Override
+            protected void compute() {
+              task.run(chunk);
+            }
+          });
+    }
+    pool.invoke(
+        new RecursiveAction() {
+          @Override
+          protected void compute() {
+            invokeAll(actions);
+          }
+        });
+  }
+
+  /** Splits {@code data} into up to {@code maxChunks} chunks that end at line boundaries. */
+  private static Chunk[] split(ByteBuffer data, int maxChunks) {
+    int start = data.position();
+    int end = data.limit();
+    int chunkCount = Math.max(1, Math.min(maxChunks, (end - start) / MIN_CHUNK_BYTES));
+    int chunkSize = (end - start) / chunkCount;
+    List<Chunk> chunks = new ArrayList<>(chunkCount);
+    int chunkStart = start;
+    while (chunkStart < end) {
+      int chunkEnd = Math.min(end, chunkStart + chunkSize);
+      while (chunkEnd < end && data.get(chunkEnd - 1) != '\n') {
+        chunkEnd++;
+      }
+      chunks.add(new Chunk(data, chunkStart, chunkEnd));
+      chunkStart = chunkEnd;
+    }
+    return chunks.toArray(new Chunk[0]);
+  }
+
+  /** A range of lines, and what was parsed from it. */
+  private static final class Chunk {
+    private final ByteBuffer data;
+    private final int start;
+    private final int end;
+    private int cursor;
+
+    int positionCount;
+    int texCoordCount;
+    int normalCount;
+    int positionBase;
+    int texCoordBase;
+    int normalBase;
+
+    // Face corners as (position, texture, normal) global indices, and corners per face.
+    private final IntArray corners = new IntArray();
+    private final IntArray faceSizes = new IntArray();
+
+    // Unique corners of this chunk, and triangles indexing into them.
+    final IntArray keys = new IntArray();
+    final IntArray triangles = new IntArray();
+    int[] remap;
+    int indexBase;
+    String error;
+
+    Chunk(ByteBuffer data, int start, int end) {
+      this.data = data;
+      this.start = start;
+      this.end = end;
+    }
+
+    void count() {
+      cursor = start;
+      while (cursor < end) {
+        skipSpaces();
+        if (cursor + 1 < end && data.get(cursor) == 'v') {
+          byte next = data.get(cursor + 1);
+          if (next == ' ' || next == '\t') {
+            positionCount++;
+          } else if (next == 't') {
+            texCoordCount++;
+          } else if (next == 'n') {
+            normalCount++;
+          }
+        }
+        skipLine();
+      }
+    }
+
+    void parse(float[] positions, float[] texCoords, float[] normals) {
+      int position = positionBase;
+      int texCoord = texCoordBase;
+      int normal = normalBase;
+      cursor = start;
+      try {
+        while (cursor < end) {
+          skipSpaces();
+          if (cursor + 1 >= end) {
+            break;
+          }
+          byte first = data.get(cursor);
+          byte second = data.get(cursor + 1);
+          if (first == 'v' && (second == ' ' || second == '\t')) {
+            cursor += 1;
+            positions[3 * position] = parseFloat();
+            positions[3 * position + 1] = parseFloat();
+            positions[3 * position + 2] = parseFloat();
+            position++;
+          } else if (first == 'v' && second == 't') {
+            cursor += 2;
+            texCoords[2 * texCoord] = parseFloat();
+            texCoords[2 * texCoord + 1] = atLineEnd() ? 0 : parseFloat();
+            texCoord++;
+          } else if (first == 'v' && second == 'n') {
+            cursor += 2;
+            normals[3 * normal] = parseFloat();
+            normals[3 * normal + 1] = parseFloat();
+            normals[3 * normal + 2] = parseFloat();
+            normal++;
+          } else if (first == 'f' && (second == ' ' || second == '\t')) {
+            cursor += 1;
+            parseFace(position, texCoord, normal);
+          }
+          skipLine();
+        }
+      } catch (RuntimeException e) {
+        error = "Malformed OBJ data near byte " + cursor + ": " + e.getMessage();
+      }
+    }
+
+    private void parseFace(int positionCount, int texCoordCount, int normalCount) {
+      int cornerCount = 0;
+      while (!atLineEnd()) {
+        int p = resolve(parseInt(), positionCount);
+        int t = NONE;
+        int n = NONE;
+        if (cursor < end && data.get(cursor) == '/') {
+          cursor++;
+          if (cursor < end && data.get(cursor) != '/') {
+            t = resolve(parseInt(), texCoordCount);
+          }
+          if (cursor < end && data.get(cursor) == '/') {
+            cursor++;
+            n = resolve(parseInt(), normalCount);
+          }
+        }
+        corners.add(p);
+        corners.add(t);
+        corners.add(n);
+        cornerCount++;
+      }
+      if (cornerCount < 3) {
+        throw new IllegalStateException("face with " + cornerCount + " vertices");
+      }
+      faceSizes.add(cornerCount);
+    }
+
+    /** Converts a one-based or negative relative OBJ index to a zero-based global index. */
+    private static int resolve(int index, int countSoFar) {
+      if (index > 0) {
+        return index - 1;
+      }
+      if (index < 0 && countSoFar + index >= 0) {
+        return countSoFar + index;
+      }
+      throw new IllegalStateException("index " + index + " out of range");
+    }
+
+    void deduplicate(int positionCount, int texCoordCount, int normalCount) {
+      if (error != null) {
+        return;
+      }
+      VertexTable table = new VertexTable(corners.size() / 3);
+      int corner = 0;
+      for (int f = 0; f < faceSizes.size(); ++f) {
+        int faceSize = faceSizes.get(f);
+        int first = -1;
+        int previous = -1;
+        for (int k = 0; k < faceSize; ++k, ++corner) {
+          int p = corners.get(3 * corner);
+          int t = corners.get(3 * corner + 1);
+          int n = corners.get(3 * corner + 2);
+          if (p >= positionCount || t >= texCoordCount || n >= normalCount) {
+            error = "Face index out of range";
+            return;
+          }
+          int vertex = table.add(p, t, n);
+          if (k == 0) {
+            first = vertex;
+          } else if (k >= 2) {
+            triangles.add(first);
+            triangles.add(previous);
+            triangles.add(vertex);
+          }
+          previous = vertex;
+        }
+      }
+      keys.addAll(table.keys);
+    }
+
+    private boolean atLineEnd() {
+      skipSpaces();
+      return cursor >= end || data.get(cursor) == '\n' || data.get(cursor) == '\r'
+          || data.get(cursor) == '#';
+    }
+
+    private void skipSpaces() {
+      while (cursor < end && (data.get(cursor) == ' ' || data.get(cursor) == '\t')) {
+        cursor++;
+      }
+    }
+
+    private void skipLine() {
+      while (cursor < end && data.get(cursor) != '\n') {
+        cursor++;
+      }
+      cursor++;
+    }
+
+    private int parseInt() {
+      boolean negative = false;
+      if (cursor < end && data.get(cursor) == '-') {
+        negative = true;
+        cursor++;
+      }
+      int value = 0;
+      int digits = 0;
+      byte b;
+      while (cursor < end && (b = data.get(cursor)) >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+        cursor++;
+        digits++;
+      }
+      if (digits == 0) {
+        throw new IllegalStateException("expected an index");
+      }
+      return negative ? -value : value;
+    }
+
+    private float parseFloat() {
+      skipSpaces();
+      boolean negative = false;
+      if (cursor < end && (data.get(cursor) == '-' || data.get(cursor) == '+')) {
+        negative = data.get(cursor) == '-';
+        cursor++;
+      }
+      long mantissa = 0;
+      int exponent = 0;
+      int digits = 0;
+      byte b;
+      while (cursor < end && (b = data.get(cursor)) >= '0' && b <= '9') {
+        if (mantissa < 100_000_000_000_000_000L) {
+          mantissa = mantissa * 10 + (b - '0');
+        } else {
+          exponent++;
+        }
+        cursor++;
+        digits++;
+      }
+      if (cursor < end && data.get(cursor) == '.') {
+        cursor++;
+        while (cursor < end && (b = data.get(cursor)) >= '0' && b <= '9') {
+          if (mantissa < 100_000_000_000_000_000L) {
+            mantissa = mantissa * 10 + (b - '0');
+            exponent--;
+          }
+          cursor++;
+          digits++;
+        }
+      }
+      if (digits == 0) {
+        throw new IllegalStateException("expected a number");
+      }
+      if (cursor < end && (data.get(cursor) == 'e' || data.get(cursor) == 'E')) {
+        cursor++;
+        boolean negativeExponent = false;
+        if (cursor < end && (data.get(cursor) == '-' || data.get(cursor) == '+')) {
+          negativeExponent = data.get(cursor) == '-';
+          cursor++;
+        }
+        int explicitExponent = 0;
+        while (cursor < end && (b = data.get(cursor)) >= '0' && b <= '9') {
+          explicitExponent = Math.min(explicitExponent * 10 + (b - '0'), 1000);
+          cursor++;
+        }
+        exponent += negativeExponent ? -explicitExponent : explicitExponent;
+      }
+      double value = mantissa;
+      if (exponent < 0) {
+        value = -exponent < POWERS_OF_TEN.length
+            ? value / POWERS_OF_TEN[-exponent]
+            : value / Math.pow(10, -exponent);
+      } else if (exponent > 0) {
+        value = exponent < POWERS_OF_TEN.length
+            ? value * POWERS_OF_TEN[exponent]
+            : value * Math.pow(10, exponent);
+      }
+      return (float) (negative ? -value : value);
+    }
+  }
+
+  /** Open-addressing map from (position, texture, normal) to a dense vertex index. */
+  private static final class VertexTable {
+    final IntArray keys = new IntArray();
+    private int[] slots;
+    private int size;
+
+    VertexTable(int expectedSize) {
+      int capacity = 16;
+      while (capacity < expectedSize * 2) {
+        capacity *= 2;
+      }
+      slots = new int[capacity];
+      Arrays.fill(slots, -1);
+    }
+
+    int size() {
+      return size;
+    }
+
+    int add(int p, int t, int n) {
+      int mask = slots.length - 1;
+      int slot = hash(p, t, n) & mask;
+      while (true) {
+        int vertex = slots[slot];
+        if (vertex == -1) {
+          break;
+        }
+        if (keys.get(3 * vertex) == p
+            && keys.get(3 * vertex + 1) == t
+            && keys.get(3 * vertex + 2) == n) {
+          return vertex;
+        }
+        slot = (slot + 1) & mask;
+      }
+      int vertex = size++;
+      slots[slot] = vertex;
+      keys.add(p);
+      keys.add(t);
+      keys.add(n);
+      if (size * 2 > slots.length) {
+        rehash();
+      }
+      return vertex;
+    }
+
+    private void rehash() {
+      slots = new int[slots.length * 2];
+      Arrays.fill(slots, -1);
+      int mask = slots.length - 1;
+      for (int vertex = 0; vertex < size; ++vertex) {
+        int slot = hash(keys.get(3 * vertex), keys.get(3 * vertex + 1), keys.get(3 * vertex + 2));
+        slot &= mask;
+        while (slots[slot] != -1) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = vertex;
+      }
+    }
+
+    private static int hash(int p, int t, int n) {
+      int h = p * 0x9E3779B1 + t * 0x85EBCA77 + n * 0xC2B2AE3D;
+      return h ^ (h >>> 16);
+    }
+  }
+
+  /** A growable array of ints. */
+  private static final class IntArray {
+    private int[] values = new int[64];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void addAll(IntArray other) {
+      if (size + other.size > values.length) {
+        values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+      }
+      System.arraycopy(other.values, 0, values, size, other.size);
+      size += other.size;
+    }
+
+    int get(int index) {
+      return values[index];
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  private ObjParser() {}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Saves the driver-specific binaries of linked shader programs, so that later runs skip compiling
+ * and linking GLSL, which is a large part of the startup time.
+ *
+ * <p>Binaries are stored under the SHA-256 of both shader sources, after the defines of the {@link
+ * Shader} were inserted, so that every define variant has its own binary. The binaries of each GPU
+ * driver are kept in a directory named after the hash of the {@code GL_RENDERER} and {@code
+ * GL_VERSION} strings, and directories of other drivers, such as one replaced by a system update,
+ * are deleted. A binary that the driver rejects anyway is deleted, and the program is compiled from
+ * source.
+ *
+ * <p>See {@link SampleRender#setProgramBinaryCacheDirectory}.
+ */
+/* package-private */
+final class ProgramBinaryCache {
+  private static final String TAG = ProgramBinaryCache.class.getSimpleName();
+  private static final String BINARY_SUFFIX = ".bin";
+  // Each file starts with the binary format returned by glGetProgramBinary.
+  private static final int HEADER_SIZE = 4;
+
+  private final File directory;
+  // The directory of the current driver, or null when binaries cannot be cached.
+  private File driverDirectory;
+  private int hitCount;
+  private int missCount;
+
+  ProgramBinaryCache(File directory) {
+    this.directory = directory;
+  }
+
+  /** Selects the binaries of the driver of the new context. Must be called on the GL thread. */
+  void onContextCreated() {
+    driverDirectory = null;
+    int[] formatCount = new int[1];
+    GlBackend.get().glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+    GLError.maybeThrowGLException("Failed to query program binary formats", "glGetIntegerv");
+    if (formatCount[0] == 0) {
+      Log.i(TAG, "The driver does not support program binaries");
+      return;
+    }
+
+    String driver =
+        GlBackend.get().glGetString(GLES30.GL_RENDERER)
+            + "\n"
+            + GlBackend.get().glGetString(GLES30.GL_VERSION);
+    GLError.maybeThrowGLException("Failed to query the driver", "glGetString");
+    driverDirectory = selectDriverDirectory(directory, sha256(driver));
+  }
+
+  /**
+   * Returns a program created from the binary saved for {@code key}, or 0 if there is none or the
+   * driver rejected it. Must be called on the GL thread.
+   */
+  int load(String key) {
+    if (driverDirectory == null) {
+      return 0;
+    }
+    File binaryFile = new File(driverDirectory, key + BINARY_SUFFIX);
+    ByteBuffer binary = readBinaryFile(binaryFile);
+    int programId = 0;
+    if (binary != null) {
+      int format = binary.getInt(0);
+      binary.position(HEADER_SIZE);
+      programId = GlBackend.get().glCreateProgram();
+      GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
+      GlBackend.get().glProgramBinary(programId, format, binary, binary.remaining());
+      // A rejected binary is reported through the link status, which is checked below.
+      GLError.maybeLogGLError(Log.DEBUG, TAG, "Program binary rejected", "glProgramBinary");
+      final int[] linkStatus = new int[1];
+      GlBackend.get().glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
+      GLError.maybeThrowGLException("Failed to query link status", "glGetProgramiv");
+      if (linkStatus[0] == GLES30.GL_FALSE) {
+        GlBackend.get().glDeleteProgram(programId);
+        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free shader program", "glDeleteProgram");
+        programId = 0;
+        Log.i(TAG, "Discarding incompatible program binary " + binaryFile.getName());
+        binaryFile.delete();
+      }
+    }
+    if (programId != 0) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return programId;
+  }
+
+  /** Returns whether {@link #save} will store binaries, so programs should be retrievable. */
+  boolean isEnabled() {
+    return driverDirectory != null;
+  }
+
+  /**
+   * Saves the binary of a linked program for {@code key}. The program must have been linked with
+   * {@code GL_PROGRAM_BINARY_RETRIEVABLE_HINT}. Must be called on the GL thread.
+   */
+  void save(String key, int programId) {
+    if (driverDirectory == null) {
+      return;
+    }
+    final int[] length = new int[1];
+    GlBackend.get().glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+    GLError.maybeThrowGLException("Failed to query program binary length", "glGetProgramiv");
+    if (length[0] == 0) {
+      return;
+    }
+    ByteBuffer binary =
+        ByteBuffer.allocateDirect(HEADER_SIZE + length[0]).order(ByteOrder.nativeOrder());
+    binary.position(HEADER_SIZE);
+    final int[] format = new int[1];
+    GlBackend.get().glGetProgramBinary(programId, length[0], length, 0, format, 0, binary.slice());
+    GLError.maybeThrowGLException("Failed to retrieve program binary", "glGetProgramBinary");
+    binary.putInt(0, format[0]);
+    binary.limit(HEADER_SIZE + length[0]).position(0);
+    writeBinaryFile(new File(driverDirectory, key + BINARY_SUFFIX), binary);
+  }
+
+  /** Returns the number of programs created from a saved binary. */
+  int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of programs that had to be compiled from source. */
+  int getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the key of the program linked from the given sources, with defines inserted. */
+  static String keyOf(String vertexShaderCode, String fragmentShaderCode) {
+    return sha256(vertexShaderCode + "\0" + fragmentShaderCode);
+  }
+
+  /**
+   * Returns the directory of the binaries of {@code driverName} within {@code directory}, creating
+   * it and deleting those of other drivers, or null if it cannot be created.
+   */
+  static File selectDriverDirectory(File directory, String driverName) {
+    File[] staleDirectories = directory.listFiles((dir, name) -> !name.equals(driverName));
+    if (staleDirectories != null) {
+      for (File staleDirectory : staleDirectories) {
+        deleteRecursively(staleDirectory);
+      }
+    }
+    File driverDirectory = new File(directory, driverName);
+    if (!driverDirectory.isDirectory() && !driverDirectory.mkdirs()) {
+      Log.w(TAG, "Cannot create " + driverDirectory);
+      return null;
+    }
+    return driverDirectory;
+  }
+
+  /**
+   * Reads a binary file into a direct buffer in native order, or returns null if it is missing,
+   * unreadable or too short to hold a binary.
+   */
+  static ByteBuffer readBinaryFile(File binaryFile) {
+    if (!binaryFile.isFile()) {
+      return null;
+    }
+    try (FileInputStream input = new FileInputStream(binaryFile)) {
+      FileChannel channel = input.getChannel();
+      ByteBuffer binary =
+          ByteBuffer.allocateDirect((int) channel.size()).order(ByteOrder.nativeOrder());
+      while (binary.hasRemaining() && channel.read(binary) != -1) {}
+      binary.flip();
+      return binary.limit() > HEADER_SIZE ? binary : null;
+    } catch (IOException e) {
+      Log.w(TAG, "Cannot read " + binaryFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes {@code binary} from its position to its limit to {@code binaryFile}, through a temporary
+   * file so that a crash cannot leave a truncated binary behind.
+   */
+  static void writeBinaryFile(File binaryFile, ByteBuffer binary) {
+    File temporaryFile = new File(binaryFile.getPath() + ".tmp");
+    try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+      FileChannel channel = output.getChannel();
+      while (binary.hasRemaining()) {
+        channel.write(binary);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Cannot write " + temporaryFile, e);
+      temporaryFile.delete();
+      return;
+    }
+    if (!temporaryFile.renameTo(binaryFile)) {
+      temporaryFile.delete();
+    }
+  }
+
+  private static String sha256(String text) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,759 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Gl} without a driver, which records every call with its arguments and counts draw
+ * calls, state changes and uploaded bytes, so that the cost of a render path can be checked on a
+ * plain JVM, for example that a frame with 50 anchors issues at most so many calls.
+ *
+ * <p>Nothing is rendered. Object names are handed out in sequence, compiles and links succeed,
+ * framebuffers are complete, no extension is reported, so that optional features such as timer
+ * queries and program binaries stay off, and queries return zero.
+ *
+ * <p>State changes are the calls that change bindings, fixed-function state, vertex attribute
+ * setup or texture parameters; setting uniforms is not counted as one. Uploaded bytes are the
+ * buffer and texture data passed to OpenGL. The contents of a mapped buffer range are recorded and
+ * counted when the buffer is unmapped, as that is when they are handed over.
+ */
+public class RecordingGl implements Gl {
+
+  /**
+   * One recorded call. Array arguments are copies, and data buffers are recorded as arrays of
+   * their element type.
+   */
+  public static final class Command {
+    private final String name;
+    private final Object[] args;
+
+    private Command(String name, Object[] args) {
+      this.name = name;
+      this.args = args;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Object[] getArgs() {
+      return args.clone();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder(name).append('(');
+      for (int i = 0; i < args.length; ++i) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(format(args[i]));
+      }
+      return builder.append(')').toString();
+    }
+
+    private static String format(Object arg) {
+      if (arg instanceof int[]) {
+        return Arrays.toString((int[]) arg);
+      }
+      if (arg instanceof float[]) {
+        return Arrays.toString((float[]) arg);
+      }
+      if (arg instanceof short[]) {
+        return ((short[]) arg).length + " shorts";
+      }
+      if (arg instanceof byte[]) {
+        return ((byte[]) arg).length + " bytes";
+      }
+      return String.valueOf(arg);
+    }
+  }
+
+  private final List<Command> commands = new ArrayList<>();
+  private final Map<String, Integer> callCounts = new HashMap<>();
+  private final Map<String, Integer> locations = new HashMap<>();
+  // The range handed out by glMapBufferRange for each buffer target, until it is unmapped.
+  private final Map<Integer, ByteBuffer> mappedRanges = new HashMap<>();
+  private long drawCalls;
+  private long stateChanges;
+  private long uploadedBytes;
+  private int nextName = 1;
+  private boolean recordCommands = true;
+
+  /**
+   * Sets whether calls are kept in {@link #getCommands()}, true by default. The counters are
+   * always updated, so long benchmarks may turn recording off to save memory.
+   */
+  public void setRecordCommands(boolean recordCommands) {
+    this.recordCommands = recordCommands;
+  }
+
+  /** Returns the calls recorded since the last {@link #reset()}, in order. */
+  public List<Command> getCommands() {
+    return Collections.unmodifiableList(commands);
+  }
+
+  /** Returns the number of calls since the last reset. */
+  public long getCallCount() {
+    long count = 0;
+    for (int calls : callCounts.values()) {
+      count += calls;
+    }
+    return count;
+  }
+
+  /** Returns the number of calls of the method called {@code name} since the last reset. */
+  public int getCallCount(String name) {
+    Integer count = callCounts.get(name);
+    return count == null ? 0 : count;
+  }
+
+  public long getDrawCallCount() {
+    return drawCalls;
+  }
+
+  public long getStateChangeCount() {
+    return stateChanges;
+  }
+
+  public long getUploadedBytes() {
+    return uploadedBytes;
+  }
+
+  /** Forgets the recorded calls and zeroes the counters, for example between frames. */
+  public void reset() {
+    commands.clear();
+    callCounts.clear();
+    drawCalls = 0;
+    stateChanges = 0;
+    uploadedBytes = 0;
+  }
+
+  // State.
+
+  @Override
+  public void glUseProgram(int program) {
+    stateChange("glUseProgram", program);
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    stateChange("glBindFramebuffer", target, framebuffer);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    stateChange("glBindBuffer", target, buffer);
+  }
+
+  @Override
+  public void glBindBufferBase(int target, int index, int buffer) {
+    stateChange("glBindBufferBase", target, index, buffer);
+  }
+
+  @Override
+  public void glBindVertexArray(int array) {
+    stateChange("glBindVertexArray", array);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    stateChange("glActiveTexture", texture);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    stateChange("glBindTexture", target, texture);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    stateChange("glViewport", x, y, width, height);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    stateChange("glEnable", cap);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    stateChange("glDisable", cap);
+  }
+
+  @Override
+  public void glBlendFuncSeparate(int srcRgb, int dstRgb, int srcAlpha, int dstAlpha) {
+    stateChange("glBlendFuncSeparate", srcRgb, dstRgb, srcAlpha, dstAlpha);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    stateChange("glDepthMask", flag);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    stateChange("glClearColor", red, green, blue, alpha);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    record("glClear", mask);
+  }
+
+  @Override
+  public void glInvalidateFramebuffer(
+      int target, int numAttachments, int[] attachments, int offset) {
+    record(
+        "glInvalidateFramebuffer",
+        target,
+        numAttachments,
+        Arrays.copyOfRange(attachments, offset, offset + numAttachments));
+  }
+
+  // Framebuffers.
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    generate("glGenFramebuffers", n, framebuffers, offset);
+  }
+
+  @Override
+  public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+    record("glDeleteFramebuffers", n, Arrays.copyOfRange(framebuffers, offset, offset + n));
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    stateChange("glFramebufferTexture2D", target, attachment, textarget, texture, level);
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    record("glCheckFramebufferStatus", target);
+    return GLES30.GL_FRAMEBUFFER_COMPLETE;
+  }
+
+  @Override
+  public void glDrawBuffers(int n, int[] bufs, int offset) {
+    stateChange("glDrawBuffers", n, Arrays.copyOfRange(bufs, offset, offset + n));
+  }
+
+  // Vertex arrays.
+
+  @Override
+  public void glGenVertexArrays(int n, int[] arrays, int offset) {
+    generate("glGenVertexArrays", n, arrays, offset);
+  }
+
+  @Override
+  public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+    record("glDeleteVertexArrays", n, Arrays.copyOfRange(arrays, offset, offset + n));
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    stateChange("glEnableVertexAttribArray", index);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    stateChange("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {
+    stateChange("glVertexAttribDivisor", index, divisor);
+  }
+
+  // Draws.
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    draw("glDrawArrays", mode, first, count);
+  }
+
+  @Override
+  public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+    draw("glDrawArraysInstanced", mode, first, count, instanceCount);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    draw("glDrawElements", mode, count, type, offset);
+  }
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    draw("glDrawElementsInstanced", mode, count, type, offset, instanceCount);
+  }
+
+  // Uniforms.
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    record("glGetUniformLocation", program, name);
+    return location(program, name);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    record("glUniform1i", location, x);
+  }
+
+  @Override
+  public void glUniform1iv(int location, int count, int[] values, int offset) {
+    record("glUniform1iv", location, count, Arrays.copyOfRange(values, offset, offset + count));
+  }
+
+  @Override
+  public void glUniform1fv(int location, int count, float[] values, int offset) {
+    record("glUniform1fv", location, count, Arrays.copyOfRange(values, offset, offset + count));
+  }
+
+  @Override
+  public void glUniform2fv(int location, int count, float[] values, int offset) {
+    record("glUniform2fv", location, count, Arrays.copyOfRange(values, offset, offset + 2 * count));
+  }
+
+  @Override
+  public void glUniform3fv(int location, int count, float[] values, int offset) {
+    record("glUniform3fv", location, count, Arrays.copyOfRange(values, offset, offset + 3 * count));
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] values, int offset) {
+    record("glUniform4fv", location, count, Arrays.copyOfRange(values, offset, offset + 4 * count));
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] values, int offset) {
+    record(
+        "glUniformMatrix2fv",
+        location,
+        count,
+        transpose,
+        Arrays.copyOfRange(values, offset, offset + 4 * count));
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] values, int offset) {
+    record(
+        "glUniformMatrix3fv",
+        location,
+        count,
+        transpose,
+        Arrays.copyOfRange(values, offset, offset + 9 * count));
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] values, int offset) {
+    record(
+        "glUniformMatrix4fv",
+        location,
+        count,
+        transpose,
+        Arrays.copyOfRange(values, offset, offset + 16 * count));
+  }
+
+  @Override
+  public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+    record("glGetUniformBlockIndex", program, uniformBlockName);
+    return 0;
+  }
+
+  @Override
+  public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+    record("glUniformBlockBinding", program, uniformBlockIndex, uniformBlockBinding);
+  }
+
+  // Buffers.
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    generate("glGenBuffers", n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    record("glDeleteBuffers", n, Arrays.copyOfRange(buffers, offset, offset + n));
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    if (data != null) {
+      uploadedBytes += size;
+    }
+    record("glBufferData", target, size, copy(data, size), usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    uploadedBytes += size;
+    record("glBufferSubData", target, offset, size, copy(data, size));
+  }
+
+  @Override
+  public Buffer glMapBufferRange(int target, int offset, int length, int access) {
+    record("glMapBufferRange", target, offset, length, access);
+    ByteBuffer range = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+    mappedRanges.put(target, range);
+    return range;
+  }
+
+  @Override
+  public boolean glUnmapBuffer(int target) {
+    // Whatever was written to the mapped range is uploaded now.
+    ByteBuffer range = mappedRanges.remove(target);
+    if (range == null) {
+      record("glUnmapBuffer", target);
+      return false;
+    }
+    uploadedBytes += range.capacity();
+    range.clear();
+    record("glUnmapBuffer", target, copy(range, range.capacity()));
+    return true;
+  }
+
+  // Textures.
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    generate("glGenTextures", n, textures, offset);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    record("glDeleteTextures", n, Arrays.copyOfRange(textures, offset, offset + n));
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    stateChange("glTexParameteri", target, pname, param);
+  }
+
+  @Override
+  public void glTexImage2D(
+      int target,
+      int level,
+      int internalFormat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {
+    int size = byteCount(pixels);
+    uploadedBytes += size;
+    record(
+        "glTexImage2D",
+        target,
+        level,
+        internalFormat,
+        width,
+        height,
+        border,
+        format,
+        type,
+        copy(pixels, size));
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalFormat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    uploadedBytes += imageSize;
+    record(
+        "glCompressedTexImage2D",
+        target,
+        level,
+        internalFormat,
+        width,
+        height,
+        border,
+        imageSize,
+        copy(data, imageSize));
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    record("glGenerateMipmap", target);
+  }
+
+  // Shaders and programs.
+
+  @Override
+  public int glCreateShader(int type) {
+    record("glCreateShader", type);
+    return nextName++;
+  }
+
+  @Override
+  public void glShaderSource(int shader, String source) {
+    record("glShaderSource", shader, source);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    record("glCompileShader", shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    record("glGetShaderiv", shader, pname);
+    params[offset] = GLES30.GL_TRUE;
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    record("glGetShaderInfoLog", shader);
+    return "";
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    record("glDeleteShader", shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    record("glCreateProgram");
+    return nextName++;
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    record("glAttachShader", program, shader);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    record("glLinkProgram", program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    record("glGetProgramiv", program, pname);
+    params[offset] = pname == GLES30.GL_PROGRAM_BINARY_LENGTH ? 0 : GLES30.GL_TRUE;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    record("glGetProgramInfoLog", program);
+    return "";
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    record("glDeleteProgram", program);
+  }
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {
+    record("glProgramParameteri", program, pname, value);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    record("glProgramBinary", program, binaryFormat, copy(binary, length), length);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    record("glGetProgramBinary", program, bufSize);
+    length[lengthOffset] = 0;
+    binaryFormat[binaryFormatOffset] = 0;
+  }
+
+  // Synchronization and queries.
+
+  @Override
+  public long glFenceSync(int condition, int flags) {
+    record("glFenceSync", condition, flags);
+    return nextName++;
+  }
+
+  @Override
+  public int glClientWaitSync(long sync, int flags, long timeout) {
+    record("glClientWaitSync", sync, flags, timeout);
+    return GLES30.GL_ALREADY_SIGNALED;
+  }
+
+  @Override
+  public void glDeleteSync(long sync) {
+    record("glDeleteSync", sync);
+  }
+
+  @Override
+  public void glGenQueries(int n, int[] ids, int offset) {
+    generate("glGenQueries", n, ids, offset);
+  }
+
+  @Override
+  public void glDeleteQueries(int n, int[] ids, int offset) {
+    record("glDeleteQueries", n, Arrays.copyOfRange(ids, offset, offset + n));
+  }
+
+  @Override
+  public void glBeginQuery(int target, int id) {
+    record("glBeginQuery", target, id);
+  }
+
+  @Override
+  public void glEndQuery(int target) {
+    record("glEndQuery", target);
+  }
+
+  @Override
+  public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+    record("glGetQueryObjectuiv", id, pname);
+    params[offset] = 0;
+  }
+
+  @Override
+  public int glGetError() {
+    record("glGetError");
+    return GLES30.GL_NO_ERROR;
+  }
+
+  @Override
+  public String glGetString(int name) {
+    record("glGetString", name);
+    return name == GLES30.GL_EXTENSIONS ? "" : RecordingGl.class.getSimpleName();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    record("glGetIntegerv", pname);
+    params[offset] = 0;
+  }
+
+  private void record(String name, Object... args) {
+    Integer count = callCounts.get(name);
+    callCounts.put(name, count == null ? 1 : count + 1);
+    if (recordCommands) {
+      commands.add(new Command(name, args));
+    }
+  }
+
+  private void stateChange(String name, Object... args) {
+    stateChanges++;
+    record(name, args);
+  }
+
+  private void draw(String name, Object... args) {
+    drawCalls++;
+    record(name, args);
+  }
+
+  private void generate(String name, int n, int[] names, int offset) {
+    for (int i = 0; i < n; ++i) {
+      names[offset + i] = nextName++;
+    }
+    record(name, n, Arrays.copyOfRange(names, offset, offset + n));
+  }
+
+  private int location(int program, String name) {
+    String key = program + "/" + name;
+    Integer location = locations.get(key);
+    if (location == null) {
+      location = locations.size();
+      locations.put(key, location);
+    }
+    return location;
+  }
+
+  /** Returns the number of bytes from the position to the limit of {@code data}, 0 if null. */
+  private static int byteCount(Buffer data) {
+    if (data == null) {
+      return 0;
+    }
+    int elementSize = 1;
+    if (data instanceof FloatBuffer || data instanceof IntBuffer) {
+      elementSize = 4;
+    } else if (data instanceof ShortBuffer) {
+      elementSize = 2;
+    }
+    return data.remaining() * elementSize;
+  }
+
+  /**
+   * Copies up to {@code size} bytes from the position of {@code data} into an array of its element
+   * type, leaving its position unchanged.
+   */
+  private Object copy(Buffer data, int size) {
+    if (!recordCommands || data == null) {
+      return data;
+    }
+    if (data instanceof ByteBuffer) {
+      ByteBuffer bytes = ((ByteBuffer) data).duplicate();
+      byte[] copy = new byte[Math.min(size, bytes.remaining())];
+      bytes.get(copy);
+      return copy;
+    }
+    if (data instanceof FloatBuffer) {
+      FloatBuffer floats = ((FloatBuffer) data).duplicate();
+      float[] copy = new float[Math.min(size / 4, floats.remaining())];
+      floats.get(copy);
+      return copy;
+    }
+    if (data instanceof IntBuffer) {
+      IntBuffer ints = ((IntBuffer) data).duplicate();
+      int[] copy = new int[Math.min(size / 4, ints.remaining())];
+      ints.get(copy);
+      return copy;
+    }
+    if (data instanceof ShortBuffer) {
+      ShortBuffer shorts = ((ShortBuffer) data).duplicate();
+      short[] copy = new short[Math.min(size / 2, shorts.remaining())];
+      shorts.get(copy);
+      return copy;
+    }
+    return data;
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The passes of a frame, with the framebuffers, textures and other resources each of them reads
+ * and writes, run in the order they were added and skipped when their work would go unused.
+ *
+ * <p>Every frame, {@link #execute} first decides which passes run:
+ *
+ * <ul>
+ *   <li>A pass whose condition, given with {@link Pass#onlyIf}, is false is culled.
+ *   <li>A pass reading a resource that no earlier running pass writes is culled, as its input is
+ *       missing.
+ *   <li>A pass whose writes are neither {@link #markOutput outputs} nor read by a later running
+ *       pass is culled, unless it {@link Pass#hasSideEffects() has side effects}.
+ * </ul>
+ *
+ * <p>The decision only depends on the declarations and on the conditions, so it is kept until
+ * either changes, and most frames only evaluate the conditions.
+ *
+ * <p>Transient targets, created with {@link #createTransientTarget}, are framebuffers whose
+ * contents only live from the pass that first writes them to the last pass that reads them. The
+ * graph creates their framebuffers, and targets whose lifetimes do not overlap share the same
+ * one. They all have the size given with {@link #setTargetSize}.
+ *
+ * <p>A pass declared with {@link Pass#renderTo} begins its {@link RenderPass}, ending the previous
+ * one. The following passes without one draw within it as long as they write its target, so that
+ * consecutive passes drawing to the surface load and store it once.
+ *
+ * @param <T> The per-frame data passed to the passes, such as the ARCore frame.
+ */
+public class RenderGraph<T> implements Closeable {
+  /** Creates the framebuffers of transient targets. */
+  public interface TargetFactory {
+    Framebuffer create(int width, int height);
+  }
+
+  /** Something passes produce and consume, such as a framebuffer or uniforms. */
+  public static final class Resource {
+    private final String name;
+    private final int index;
+    private final boolean transientTarget;
+    private boolean output;
+    // Index of the pooled framebuffer of a transient target in the current frame, or -1.
+    private int target = -1;
+    private int firstUse;
+    private int lastUse;
+    private Framebuffer framebuffer;
+
+    private Resource(String name, int index, boolean transientTarget) {
+      this.name = name;
+      this.index = index;
+      this.transientTarget = transientTarget;
+    }
+
+    /**
+     * Returns the framebuffer of a transient target, for the passes of the frame being executed.
+     * Other resources have no framebuffer, and return null.
+     */
+    public Framebuffer getFramebuffer() {
+      if (transientTarget && framebuffer == null) {
+        throw new IllegalStateException("Transient target " + name + " is not used this frame");
+      }
+      return framebuffer;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** One step of the frame. Its declaration methods return the pass, so they can be chained. */
+  public static final class Pass<T> {
+    private final RenderGraph<T> graph;
+    private final String name;
+    private final Consumer<T> body;
+    private final List<Resource> reads = new ArrayList<>();
+    private final List<Resource> writes = new ArrayList<>();
+    private Predicate<T> condition = unused -> true;
+    private boolean sideEffects;
+    private Resource renderTarget;
+    private Function<T, RenderPass> renderPass;
+    private boolean live;
+
+    private Pass(RenderGraph<T> graph, String name, Consumer<T> body) {
+      this.graph = graph;
+      this.name = name;
+      this.body = body;
+    }
+
+    public Pass<T> reads(Resource resource) {
+      reads.add(resource);
+      graph.compiled = false;
+      return this;
+    }
+
+    public Pass<T> writes(Resource resource) {
+      writes.add(resource);
+      graph.compiled = false;
+      return this;
+    }
+
+    /**
+     * Draws the pass within {@code renderPass}, which writes {@code target}. The framebuffer of a
+     * render pass to a transient target is set by the graph.
+     */
+    public Pass<T> renderTo(Resource target, RenderPass renderPass) {
+      return renderTo(target, unused -> renderPass);
+    }
+
+    /** Draws the pass within the render pass {@code selector} chooses for the frame. */
+    public Pass<T> renderTo(Resource target, Function<T, RenderPass> selector) {
+      renderTarget = target;
+      renderPass = selector;
+      return writes(target);
+    }
+
+    /** Culls the pass in frames where {@code condition} is false. */
+    public Pass<T> onlyIf(Predicate<T> condition) {
+      this.condition = condition;
+      return this;
+    }
+
+    /** Keeps the pass even when nothing reads what it writes, for example to upload assets. */
+    public Pass<T> hasSideEffects() {
+      sideEffects = true;
+      graph.compiled = false;
+      return this;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns whether the pass ran in the last {@link RenderGraph#execute}. */
+    public boolean isLive() {
+      return live;
+    }
+  }
+
+  private final TargetFactory targetFactory;
+  private final List<Pass<T>> passes = new ArrayList<>();
+  private final List<Resource> resources = new ArrayList<>();
+  private final List<Framebuffer> targets = new ArrayList<>();
+  private int targetWidth = 1;
+  private int targetHeight = 1;
+
+  // The conditions of the last compiled frame. The culling and target assignment are kept while
+  // the declarations and the conditions stay the same.
+  private boolean compiled;
+  private boolean[] conditions = new boolean[0];
+  private boolean[] compiledConditions = new boolean[0];
+  private boolean[] written = new boolean[0];
+  private boolean[] needed = new boolean[0];
+  private int[] targetLastUse = new int[0];
+  private int targetCount;
+  private int culledPassCount;
+  private int compileCount;
+
+  /**
+   * Constructs a {@link RenderGraph}, whose transient targets are created with {@code
+   * targetFactory} as the passes first use them.
+   */
+  public RenderGraph(TargetFactory targetFactory) {
+    this.targetFactory = targetFactory;
+  }
+
+  /** Creates a resource, such as the surface, whose contents the graph does not manage. */
+  public Resource createResource(String name) {
+    return addResource(name, /*transientTarget=*/ false);
+  }
+
+  /** Creates a framebuffer whose contents are only needed by the passes of a frame. */
+  public Resource createTransientTarget(String name) {
+    return addResource(name, /*transientTarget=*/ true);
+  }
+
+  /** Declares that {@code resource} is needed after the frame, such as the displayed surface. */
+  public void markOutput(Resource resource) {
+    resource.output = true;
+    compiled = false;
+  }
+
+  /** Adds a pass that runs after all passes added before it. */
+  public Pass<T> addPass(String name, Consumer<T> body) {
+    Pass<T> pass = new Pass<>(this, name, body);
+    passes.add(pass);
+    compiled = false;
+    return pass;
+  }
+
+  /** Resizes the transient targets, such as to follow the surface or a dynamic resolution. */
+  public void setTargetSize(int width, int height) {
+    targetWidth = width;
+    targetHeight = height;
+    for (Framebuffer target : targets) {
+      target.resize(width, height);
+    }
+  }
+
+  /**
+   * Culls the passes whose work would go unused and runs the others, each timed as a pass of the
+   * {@link FrameProfiler} of {@code render}.
+   */
+  public void execute(T frame, SampleRender render) {
+    cull(frame);
+    while (targets.size() < targetCount) {
+      targets.add(targetFactory.create(targetWidth, targetHeight));
+    }
+    for (int i = 0; i < resources.size(); ++i) {
+      Resource resource = resources.get(i);
+      resource.framebuffer = resource.target < 0 ? null : targets.get(resource.target);
+    }
+
+    FrameProfiler profiler = render.getProfiler();
+    Resource openTarget = null;
+    for (int i = 0; i < passes.size(); ++i) {
+      Pass<T> pass = passes.get(i);
+      if (!pass.live) {
+        continue;
+      }
+      if (pass.renderPass != null) {
+        if (openTarget != null) {
+          render.endRenderPass();
+        }
+        RenderPass renderPass = pass.renderPass.apply(frame);
+        if (pass.renderTarget.transientTarget) {
+          renderPass.setFramebuffer(pass.renderTarget.framebuffer);
+        }
+        render.beginRenderPass(renderPass);
+        openTarget = pass.renderTarget;
+      } else if (openTarget != null && !pass.writes.contains(openTarget)) {
+        render.endRenderPass();
+        openTarget = null;
+      }
+      profiler.beginPass(pass.name);
+      pass.body.accept(frame);
+      profiler.endPass();
+    }
+    if (openTarget != null) {
+      render.endRenderPass();
+    }
+  }
+
+  /** Returns the number of passes culled in the last {@link #execute}. */
+  public int getCulledPassCount() {
+    return culledPassCount;
+  }
+
+  /** Deletes the framebuffers of the transient targets. */
+  @Override
+  public void close() {
+    for (Framebuffer target : targets) {
+      target.close();
+    }
+    targets.clear();
+    for (Resource resource : resources) {
+      resource.framebuffer = null;
+    }
+  }
+
+  /**
+   * Decides which passes run for {@code frame} and which pooled framebuffer each transient target
+   * uses, unless the declarations and conditions are those of the previous frame.
+   */
+  /* package-private */
+  void cull(T frame) {
+    if (conditions.length != passes.size()) {
+      conditions = new boolean[passes.size()];
+    }
+    for (int i = 0; i < passes.size(); ++i) {
+      conditions[i] = passes.get(i).condition.test(frame);
+    }
+    if (compiled && Arrays.equals(conditions, compiledConditions)) {
+      return;
+    }
+    compiledConditions = conditions.clone();
+    compiled = true;
+    compileCount++;
+    if (written.length != resources.size()) {
+      written = new boolean[resources.size()];
+      needed = new boolean[resources.size()];
+    }
+
+    // Forward: drop passes whose condition fails or whose inputs are not produced.
+    Arrays.fill(written, false);
+    for (int i = 0; i < passes.size(); ++i) {
+      Pass<T> pass = passes.get(i);
+      pass.live = conditions[i] && all(written, pass.reads);
+      if (pass.live) {
+        mark(written, pass.writes);
+      }
+    }
+    // Backward: drop passes whose outputs nothing needs.
+    for (int i = 0; i < resources.size(); ++i) {
+      needed[i] = resources.get(i).output;
+    }
+    culledPassCount = 0;
+    for (int i = passes.size() - 1; i >= 0; --i) {
+      Pass<T> pass = passes.get(i);
+      if (pass.live && !pass.sideEffects && !any(needed, pass.writes)) {
+        pass.live = false;
+      }
+      if (pass.live) {
+        mark(needed, pass.reads);
+      } else {
+        culledPassCount++;
+      }
+    }
+    assignTargets();
+  }
+
+  /** Returns the number of times the passes were culled anew. */
+  /* package-private */
+  int getCompileCount() {
+    return compileCount;
+  }
+
+  /** Returns the number of framebuffers the transient targets share in the current frame. */
+  /* package-private */
+  int getTargetCount() {
+    return targetCount;
+  }
+
+  /** Returns the index of the pooled framebuffer of {@code target}, or -1 if it is unused. */
+  /* package-private */
+  static int getTargetIndex(Resource target) {
+    return target.target;
+  }
+
+  private Resource addResource(String name, boolean transientTarget) {
+    Resource resource = new Resource(name, resources.size(), transientTarget);
+    resources.add(resource);
+    compiled = false;
+    return resource;
+  }
+
+  /**
+   * Gives each used transient target a pooled framebuffer, reusing the framebuffer of a target
+   * whose last use comes before the first use of the new one.
+   */
+  private void assignTargets() {
+    for (int i = 0; i < resources.size(); ++i) {
+      Resource resource = resources.get(i);
+      resource.target = -1;
+      resource.firstUse = -1;
+    }
+    for (int i = 0; i < passes.size(); ++i) {
+      Pass<T> pass = passes.get(i);
+      if (pass.live) {
+        recordUse(pass.reads, i);
+        recordUse(pass.writes, i);
+      }
+    }
+    targetCount = 0;
+    for (int i = 0; i < passes.size(); ++i) {
+      Pass<T> pass = passes.get(i);
+      if (pass.live) {
+        assignFirstUses(pass.writes, i);
+        assignFirstUses(pass.reads, i);
+      }
+    }
+  }
+
+  private static void recordUse(List<Resource> used, int passIndex) {
+    for (int i = 0; i < used.size(); ++i) {
+      Resource resource = used.get(i);
+      if (resource.firstUse < 0) {
+        resource.firstUse = passIndex;
+      }
+      resource.lastUse = passIndex;
+    }
+  }
+
+  private void assignFirstUses(List<Resource> used, int passIndex) {
+    for (int i = 0; i < used.size(); ++i) {
+      Resource resource = used.get(i);
+      if (!resource.transientTarget || resource.firstUse != passIndex || resource.target >= 0) {
+        continue;
+      }
+      int target = 0;
+      while (target < targetCount && targetLastUse[target] >= passIndex) {
+        target++;
+      }
+      if (target == targetCount) {
+        if (targetLastUse.length == targetCount) {
+          targetLastUse = Arrays.copyOf(targetLastUse, targetCount * 2 + 1);
+        }
+        targetCount++;
+      }
+      targetLastUse[target] = resource.lastUse;
+      resource.target = target;
+    }
+  }
+
+  private static boolean all(boolean[] flags, List<Resource> resources) {
+    for (int i = 0; i < resources.size(); ++i) {
+      if (!flags[resources.get(i).index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean any(boolean[] flags, List<Resource> resources) {
+    for (int i = 0; i < resources.size(); ++i) {
+      if (flags[resources.get(i).index]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void mark(boolean[] flags, List<Resource> resources) {
+    for (int i = 0; i < resources.size(); ++i) {
+      flags[resources.get(i).index] = true;
+    }
+  }
+}
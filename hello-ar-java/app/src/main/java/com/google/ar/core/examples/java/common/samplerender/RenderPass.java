@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+
+/**
+ * A sequence of draws into one {@link Framebuffer}, or the surface, which declares what happens to
+ * the previous contents of each attachment when it begins and to the new contents when it ends.
+ *
+ * <p>Tile-based mobile GPUs render into on-chip memory. At the start of a pass, every attachment
+ * that is neither cleared nor invalidated is loaded from memory into the tiles, and at the end
+ * every attachment that is not invalidated is written back. Declaring which contents are not
+ * needed saves that bandwidth: clears and {@code glInvalidateFramebuffer} cost nothing on such
+ * GPUs, while a load or store of a full-screen buffer costs several megabytes per frame.
+ *
+ * <p>Begin a pass with {@link SampleRender#beginRenderPass}, draw into its framebuffer, and end it
+ * with {@link SampleRender#endRenderPass}.
+ */
+public class RenderPass {
+  /** What a pass does with the contents of an attachment when it begins. */
+  public enum LoadAction {
+    /** Clears the attachment. */
+    CLEAR,
+    /** Keeps the previous contents. */
+    LOAD,
+    /** Leaves the contents undefined, for attachments the pass overwrites entirely. */
+    DONT_CARE
+  }
+
+  /** What a pass does with the contents of an attachment when it ends. */
+  public enum StoreAction {
+    /** Keeps the contents for later passes or for display. */
+    STORE,
+    /** Drops the contents. */
+    DISCARD
+  }
+
+  private Framebuffer framebuffer;
+  private final LoadAction colorLoad;
+  private final StoreAction colorStore;
+  private final LoadAction depthLoad;
+  private final StoreAction depthStore;
+  private final float[] clearColor = {0f, 0f, 0f, 1f};
+  private final int[] attachments = new int[2];
+
+  /**
+   * Constructs a {@link RenderPass}.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the pass draws to the surface.
+   * A pass drawing to a transient target of a {@link RenderGraph} is given the framebuffer of the
+   * target by the graph.
+   */
+  public RenderPass(
+      Framebuffer framebuffer,
+      LoadAction colorLoad,
+      StoreAction colorStore,
+      LoadAction depthLoad,
+      StoreAction depthStore) {
+    this.framebuffer = framebuffer;
+    this.colorLoad = colorLoad;
+    this.colorStore = colorStore;
+    this.depthLoad = depthLoad;
+    this.depthStore = depthStore;
+  }
+
+  /** Sets the color used by {@link LoadAction#CLEAR}. Opaque black by default. */
+  public RenderPass setClearColor(float r, float g, float b, float a) {
+    clearColor[0] = r;
+    clearColor[1] = g;
+    clearColor[2] = b;
+    clearColor[3] = a;
+    return this;
+  }
+
+  /** Returns the framebuffer of the pass, or null for the surface. */
+  public Framebuffer getFramebuffer() {
+    return framebuffer;
+  }
+
+  /* package-private */
+  void setFramebuffer(Framebuffer framebuffer) {
+    this.framebuffer = framebuffer;
+  }
+
+  /** Applies the load actions. The framebuffer of the pass must be bound. */
+  /* package-private */
+  void begin(GlState glState) {
+    int clearMask = 0;
+    if (colorLoad == LoadAction.CLEAR) {
+      GlBackend.get().glClearColor(clearColor[0], clearColor[1], clearColor[2], clearColor[3]);
+      GLError.maybeThrowGLException("Failed to set clear color", "glClearColor");
+      clearMask |= GLES30.GL_COLOR_BUFFER_BIT;
+    }
+    if (depthLoad == LoadAction.CLEAR) {
+      glState.setDepthMask(true);
+      clearMask |= GLES30.GL_DEPTH_BUFFER_BIT;
+    }
+    if (clearMask != 0) {
+      GlBackend.get().glClear(clearMask);
+      GLError.maybeThrowGLException("Failed to clear framebuffer", "glClear");
+    }
+    invalidate(colorLoad == LoadAction.DONT_CARE, depthLoad == LoadAction.DONT_CARE);
+  }
+
+  /** Applies the store actions. The framebuffer of the pass must be bound. */
+  /* package-private */
+  void end() {
+    invalidate(colorStore == StoreAction.DISCARD, depthStore == StoreAction.DISCARD);
+  }
+
+  private void invalidate(boolean color, boolean depth) {
+    // Attachment names differ between the surface and framebuffer objects.
+    int count = 0;
+    if (color) {
+      attachments[count++] =
+          framebuffer == null ? GLES30.GL_COLOR : GLES30.GL_COLOR_ATTACHMENT0;
+    }
+    if (depth) {
+      attachments[count++] = framebuffer == null ? GLES30.GL_DEPTH : GLES30.GL_DEPTH_ATTACHMENT;
+    }
+    if (count > 0) {
+      GlBackend.get().glInvalidateFramebuffer(GLES30.GL_FRAMEBUFFER, count, attachments, 0);
+      GLError.maybeThrowGLException("Failed to invalidate framebuffer", "glInvalidateFramebuffer");
+    }
+  }
+}
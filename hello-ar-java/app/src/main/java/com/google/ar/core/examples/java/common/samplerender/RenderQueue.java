@@ -0,0 +1,376 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects the draws of a pass and issues them sorted by a 64-bit key, instead of in submission
+ * order.
+ *
+ * <p>Opaque draws are grouped by framebuffer, program, texture and mesh, so that {@link GlState}
+ * can skip the state they share, and ordered front-to-back within a group for early depth
+ * rejection. Blended draws follow, ordered back-to-front so that they composite correctly.
+ *
+ * <p>Draws share the uniform values of their {@link Shader}, except for the model matrix, which
+ * is stored per draw, and optionally one texture; draws without one sample whatever texture the
+ * uniform held last. Since all draws are issued at {@link #flush}, draws depending on the output of
+ * others, such as a composite of a framebuffer drawn to, belong to separate flushes.
+ *
+ * <p>If the {@link Mesh} has a per-instance model matrix buffer (see {@link Mesh#Mesh}), each run
+ * of sorted draws with the same mesh, shader, framebuffer and texture is issued as one {@link
+ * SampleRender#drawInstanced} call, with the model matrices uploaded to that buffer. Otherwise
+ * every draw is issued separately, with its model matrix written to the {@code mat4 u_Model}
+ * uniform.
+ *
+ * <p>Draws of a mesh with bounds (see {@link Mesh#getBounds}) whose box lies outside the {@link
+ * Frustum} of the frame are dropped before sorting. Draws of a mesh with levels of detail (see
+ * {@link Mesh#getLevelCount}) then draw the level matching their projected size, see {@link
+ * LevelsOfDetail}; draws of different levels are not batched together.
+ *
+ * <p>Key layout, most significant bit first:
+ *
+ * <pre>
+ *   opaque:  0 | 0 | framebuffer (4) | program (8) | texture (8) | mesh (8) | level (3) |
+ *            depth (15) | item (16)
+ *   blended: 0 | 1 | inverted depth (15) | framebuffer (4) | program (8) | texture (8) |
+ *            mesh (8) | level (3) | item (16)
+ * </pre>
+ *
+ * The framebuffer, program, texture and mesh fields hold the low bits of their OpenGL names. They
+ * only serve to group draws, so names sharing a field value only lose batching; what is drawn is
+ * stored per item. Submitting does not allocate once the queue has grown to its steady-state size.
+ */
+public class RenderQueue {
+  /** The name of the {@code mat4} uniform receiving the model matrix of each draw. */
+  public static final String MODEL_UNIFORM_NAME = "u_Model";
+
+  private static final int FLOATS_PER_MATRIX = 16;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int ITEM_BITS = 16;
+  private static final int DEPTH_BITS = 15;
+  private static final int LEVEL_BITS = 3;
+  private static final int MESH_BITS = 8;
+  private static final int TEXTURE_BITS = 8;
+  private static final int PROGRAM_BITS = 8;
+  private static final int FRAMEBUFFER_BITS = 4;
+  private static final int STATE_BITS =
+      FRAMEBUFFER_BITS + PROGRAM_BITS + TEXTURE_BITS + MESH_BITS + LEVEL_BITS;
+
+  /* package-private */ static final int MAX_ITEMS = 1 << ITEM_BITS;
+  /* package-private */ static final long BLENDED_BIT = 1L << 62;
+  private static final long ITEM_MASK = MAX_ITEMS - 1;
+  private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+  private Mesh[] itemMeshes = new Mesh[INITIAL_CAPACITY];
+  private Shader[] itemShaders = new Shader[INITIAL_CAPACITY];
+  private Framebuffer[] itemFramebuffers = new Framebuffer[INITIAL_CAPACITY];
+  private Shader.TextureUniform[] itemTextureUniforms = new Shader.TextureUniform[INITIAL_CAPACITY];
+  private Texture[] itemTextures = new Texture[INITIAL_CAPACITY];
+  private LevelsOfDetail.State[] itemLevelStates = new LevelsOfDetail.State[INITIAL_CAPACITY];
+  private int[] itemLevels = new int[INITIAL_CAPACITY];
+  private float[] itemModelMatrices = new float[INITIAL_CAPACITY * FLOATS_PER_MATRIX];
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private int itemCount;
+  private int culledCount;
+
+  // Temporary matrix allocated here to reduce number of allocations for each draw.
+  private final float[] modelMatrix = new float[FLOATS_PER_MATRIX];
+  // Model matrices of an instanced run, grown along with the queue.
+  private FloatBuffer instanceModelMatrices = createFloatBuffer(INITIAL_CAPACITY);
+
+  /** Queues one draw of {@code mesh} with {@code shader} to the given {@link Framebuffer}. */
+  public void submit(Mesh mesh, Shader shader, Framebuffer framebuffer, float[] modelMatrix) {
+    submit(mesh, shader, framebuffer, modelMatrix, /*textureUniform=*/ null, /*texture=*/ null);
+  }
+
+  /**
+   * Queues one draw of {@code mesh} with {@code shader} to the given {@link Framebuffer}, sampling
+   * {@code texture} through {@code textureUniform} for this draw only.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer is used.
+   *
+   * @param modelMatrix The model matrix of the draw, which is copied
+   */
+  public void submit(
+      Mesh mesh,
+      Shader shader,
+      Framebuffer framebuffer,
+      float[] modelMatrix,
+      Shader.TextureUniform textureUniform,
+      Texture texture) {
+    submit(mesh, shader, framebuffer, modelMatrix, textureUniform, texture, /*levelState=*/ null);
+  }
+
+  /**
+   * Queues one draw like {@link #submit(Mesh, Shader, Framebuffer, float[], Shader.TextureUniform,
+   * Texture)}, keeping the level of detail drawn in {@code levelState}, so that the level only
+   * changes once the projected size is clearly past a threshold.
+   *
+   * <p>The {@code levelState} argument may be null, in which case the level is chosen from the
+   * size of this frame alone.
+   */
+  public void submit(
+      Mesh mesh,
+      Shader shader,
+      Framebuffer framebuffer,
+      float[] modelMatrix,
+      Shader.TextureUniform textureUniform,
+      Texture texture,
+      LevelsOfDetail.State levelState) {
+    if (modelMatrix.length != FLOATS_PER_MATRIX) {
+      throw new IllegalArgumentException("Model matrix length must be 16 (4x4)");
+    }
+    if (itemCount == MAX_ITEMS) {
+      throw new IllegalStateException("Too many draws queued: " + MAX_ITEMS);
+    }
+    if (itemCount == itemMeshes.length) {
+      grow();
+    }
+    itemMeshes[itemCount] = mesh;
+    itemShaders[itemCount] = shader;
+    itemFramebuffers[itemCount] = framebuffer;
+    itemTextureUniforms[itemCount] = textureUniform;
+    itemTextures[itemCount] = texture;
+    itemLevelStates[itemCount] = levelState;
+    System.arraycopy(
+        modelMatrix, 0, itemModelMatrices, itemCount * FLOATS_PER_MATRIX, FLOATS_PER_MATRIX);
+    itemCount++;
+  }
+
+  /**
+   * Culls, sorts and draws everything queued since the last flush, then empties the queue. The
+   * frustum, the depth and the level of detail of each draw are taken from the camera last set on
+   * {@link SampleRender#getFrameUniforms}.
+   */
+  public void flush(SampleRender render) {
+    int submittedCount = itemCount;
+    FrameUniforms frameUniforms = render.getFrameUniforms();
+    cull(frameUniforms.getFrustum());
+
+    float[] view = frameUniforms.getViewMatrix();
+    selectLevels(view, frameUniforms.getProjectionMatrix());
+    for (int i = 0; i < itemCount; ++i) {
+      keys[i] = computeKey(i, view);
+    }
+    Arrays.sort(keys, 0, itemCount);
+
+    int runStart = 0;
+    while (runStart < itemCount) {
+      int first = getItem(keys[runStart]);
+      Mesh mesh = itemMeshes[first];
+      Shader shader = itemShaders[first];
+      if (itemTextureUniforms[first] != null) {
+        itemTextureUniforms[first].set(itemTextures[first]);
+      }
+
+      VertexBuffer instanceBuffer = mesh.getModelMatrixInstanceBuffer();
+      if (instanceBuffer == null) {
+        System.arraycopy(
+            itemModelMatrices, first * FLOATS_PER_MATRIX, modelMatrix, 0, FLOATS_PER_MATRIX);
+        shader.getModelUniform().set(modelMatrix);
+        render.draw(mesh, shader, itemFramebuffers[first], itemLevels[first]);
+        runStart++;
+        continue;
+      }
+
+      int runEnd = runStart + 1;
+      while (runEnd < itemCount && isSameBatch(first, getItem(keys[runEnd]))) {
+        runEnd++;
+      }
+      instanceModelMatrices.clear();
+      for (int i = runStart; i < runEnd; ++i) {
+        instanceModelMatrices.put(
+            itemModelMatrices, getItem(keys[i]) * FLOATS_PER_MATRIX, FLOATS_PER_MATRIX);
+      }
+      instanceModelMatrices.flip();
+      instanceBuffer.set(instanceModelMatrices);
+      render.drawInstanced(
+          mesh, shader, itemFramebuffers[first], runEnd - runStart, itemLevels[first]);
+      runStart = runEnd;
+    }
+
+    Arrays.fill(itemMeshes, 0, submittedCount, null);
+    Arrays.fill(itemShaders, 0, submittedCount, null);
+    Arrays.fill(itemFramebuffers, 0, submittedCount, null);
+    Arrays.fill(itemTextureUniforms, 0, submittedCount, null);
+    Arrays.fill(itemTextures, 0, submittedCount, null);
+    Arrays.fill(itemLevelStates, 0, submittedCount, null);
+    itemCount = 0;
+  }
+
+  /** Returns the number of draws dropped by the last flush because they were not in view. */
+  public int getCulledCount() {
+    return culledCount;
+  }
+
+  /** Returns the number of draws queued since the last flush. */
+  public int getSize() {
+    return itemCount;
+  }
+
+  // Drops the items outside the frustum, moving the others down to keep them contiguous.
+  private void cull(Frustum frustum) {
+    int kept = 0;
+    for (int i = 0; i < itemCount; ++i) {
+      float[] bounds = itemMeshes[i].getBounds();
+      if (bounds != null
+          && !frustum.intersectsBox(itemModelMatrices, i * FLOATS_PER_MATRIX, bounds)) {
+        continue;
+      }
+      if (kept != i) {
+        itemMeshes[kept] = itemMeshes[i];
+        itemShaders[kept] = itemShaders[i];
+        itemFramebuffers[kept] = itemFramebuffers[i];
+        itemTextureUniforms[kept] = itemTextureUniforms[i];
+        itemTextures[kept] = itemTextures[i];
+        itemLevelStates[kept] = itemLevelStates[i];
+        System.arraycopy(
+            itemModelMatrices,
+            i * FLOATS_PER_MATRIX,
+            itemModelMatrices,
+            kept * FLOATS_PER_MATRIX,
+            FLOATS_PER_MATRIX);
+      }
+      kept++;
+    }
+    culledCount = itemCount - kept;
+    itemCount = kept;
+  }
+
+  // Picks the level of detail of each item from the projected size of its bounds.
+  private void selectLevels(float[] view, float[] projection) {
+    for (int i = 0; i < itemCount; ++i) {
+      Mesh mesh = itemMeshes[i];
+      float[] bounds = mesh.getBounds();
+      if (mesh.getLevelCount() == 1 || bounds == null) {
+        itemLevels[i] = 0;
+        continue;
+      }
+      float screenSize =
+          LevelsOfDetail.computeScreenSize(
+              bounds, itemModelMatrices, i * FLOATS_PER_MATRIX, view, projection);
+      LevelsOfDetail.State state = itemLevelStates[i];
+      int level =
+          mesh.getLevelsOfDetail()
+              .selectLevel(screenSize, state == null ? -1 : state.level, mesh.getLevelCount());
+      if (state != null) {
+        state.level = level;
+      }
+      itemLevels[i] = level;
+    }
+  }
+
+  private boolean isSameBatch(int first, int item) {
+    return itemMeshes[item] == itemMeshes[first]
+        && itemShaders[item] == itemShaders[first]
+        && itemFramebuffers[item] == itemFramebuffers[first]
+        && itemTextureUniforms[item] == itemTextureUniforms[first]
+        && itemTextures[item] == itemTextures[first]
+        && itemLevels[item] == itemLevels[first];
+  }
+
+  private long computeKey(int item, float[] view) {
+    // View-space distance along the camera's forward axis (-z) of the model origin.
+    int m = item * FLOATS_PER_MATRIX;
+    float x = itemModelMatrices[m + 12];
+    float y = itemModelMatrices[m + 13];
+    float z = itemModelMatrices[m + 14];
+    float depth = -(view[2] * x + view[6] * y + view[10] * z + view[14]);
+
+    Framebuffer framebuffer = itemFramebuffers[item];
+    Texture texture = itemTextures[item];
+    Shader shader = itemShaders[item];
+    return computeKey(
+        shader.isBlended(),
+        framebuffer == null ? 0 : framebuffer.getFramebufferId(),
+        shader.getProgramId(),
+        texture == null ? 0 : texture.getTextureId(),
+        itemMeshes[item].getVertexArrayId(),
+        itemLevels[item],
+        depth,
+        item);
+  }
+
+  /**
+   * Returns the sort key of a draw. Only the low bits of the OpenGL names are kept, see the class
+   * documentation.
+   */
+  /* package-private */
+  static long computeKey(
+      boolean blended,
+      int framebuffer,
+      int program,
+      int texture,
+      int mesh,
+      int level,
+      float depth,
+      int item) {
+    if (item < 0 || item >= MAX_ITEMS) {
+      throw new IllegalArgumentException("Item index does not fit the sort key: " + item);
+    }
+    long state = field(framebuffer, FRAMEBUFFER_BITS);
+    state = state << PROGRAM_BITS | field(program, PROGRAM_BITS);
+    state = state << TEXTURE_BITS | field(texture, TEXTURE_BITS);
+    state = state << MESH_BITS | field(mesh, MESH_BITS);
+    state = state << LEVEL_BITS | field(level, LEVEL_BITS);
+
+    // The bit pattern of a non-negative float orders the same as its value. Keeping the exponent
+    // and the highest mantissa bits is plenty of precision for ordering.
+    long depthBits = (Float.floatToIntBits(Math.max(depth, 0f)) >>> (31 - DEPTH_BITS)) & DEPTH_MASK;
+
+    if (blended) {
+      return BLENDED_BIT
+          | (DEPTH_MASK - depthBits) << (STATE_BITS + ITEM_BITS)
+          | state << ITEM_BITS
+          | item;
+    }
+    return state << (DEPTH_BITS + ITEM_BITS) | depthBits << ITEM_BITS | item;
+  }
+
+  /* package-private */
+  static int getItem(long key) {
+    return (int) (key & ITEM_MASK);
+  }
+
+  private static FloatBuffer createFloatBuffer(int matrices) {
+    return ByteBuffer.allocateDirect(matrices * FLOATS_PER_MATRIX * GpuBuffer.FLOAT_SIZE)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+  }
+
+  private static long field(int name, int bits) {
+    return name & ((1L << bits) - 1);
+  }
+
+  private void grow() {
+    int capacity = Math.min(itemMeshes.length * 2, MAX_ITEMS);
+    itemMeshes = Arrays.copyOf(itemMeshes, capacity);
+    itemShaders = Arrays.copyOf(itemShaders, capacity);
+    itemFramebuffers = Arrays.copyOf(itemFramebuffers, capacity);
+    itemTextureUniforms = Arrays.copyOf(itemTextureUniforms, capacity);
+    itemTextures = Arrays.copyOf(itemTextures, capacity);
+    itemLevelStates = Arrays.copyOf(itemLevelStates, capacity);
+    itemLevels = Arrays.copyOf(itemLevels, capacity);
+    itemModelMatrices = Arrays.copyOf(itemModelMatrices, capacity * FLOATS_PER_MATRIX);
+    keys = Arrays.copyOf(keys, capacity);
+    instanceModelMatrices = createFloatBuffer(capacity);
+  }
+}
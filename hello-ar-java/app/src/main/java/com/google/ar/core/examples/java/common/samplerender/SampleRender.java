@@ -18,6 +18,7 @@ package com.google.ar.core.examples.java.common.samplerender;
 import android.content.res.AssetManager;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
+import java.io.File;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -25,10 +26,23 @@ import javax.microedition.khronos.opengles.GL10;
 public class SampleRender {
   private static final String TAG = SampleRender.class.getSimpleName();
 
+  private final GLSurfaceView glSurfaceView;
+  private final Renderer renderer;
   private final AssetManager assetManager;
+  private final GlState glState = new GlState();
+  private final ShaderCache shaderCache = new ShaderCache(this);
+  private final GpuResourceRegistry resourceRegistry = new GpuResourceRegistry();
+  private final FrameProfiler profiler = new FrameProfiler();
+  // Set on the UI thread, used on the GL thread.
+  private volatile ProgramBinaryCache programBinaryCache;
 
   private int viewportWidth = 1;
   private int viewportHeight = 1;
+  private FrameUniforms frameUniforms;
+  private RenderPass currentPass;
+  // Set once the renderer closed its objects, until a new surface is created.
+  private boolean surfaceDestroyed;
+  private long frameNumber;
 
   /**
    * Constructs a SampleRender object and instantiates GLSurfaceView parameters.
@@ -38,6 +52,8 @@ public class SampleRender {
    * @param assetManager AssetManager for loading Android resources
    */
   public SampleRender(GLSurfaceView glSurfaceView, Renderer renderer, AssetManager assetManager) {
+    this.glSurfaceView = glSurfaceView;
+    this.renderer = renderer;
     this.assetManager = assetManager;
     glSurfaceView.setPreserveEGLContextOnPause(true);
     glSurfaceView.setEGLContextClientVersion(3);
@@ -46,28 +62,110 @@ public class SampleRender {
         new GLSurfaceView.Renderer() {
           @Override
           public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-            GLES30.glEnable(GLES30.GL_BLEND);
-            GLError.maybeThrowGLException("Failed to enable blending", "glEnable");
-            renderer.onSurfaceCreated(SampleRender.this);
+            SampleRender.this.onSurfaceCreated();
           }
 
           @Override
           public void onSurfaceChanged(GL10 gl, int w, int h) {
-            viewportWidth = w;
-            viewportHeight = h;
-            renderer.onSurfaceChanged(SampleRender.this, w, h);
+            SampleRender.this.onSurfaceChanged(w, h);
           }
 
           @Override
           public void onDrawFrame(GL10 gl) {
-            clear(/*framebuffer=*/ null, 0f, 0f, 0f, 1f);
-            renderer.onDrawFrame(SampleRender.this);
+            SampleRender.this.onDrawFrame();
           }
         });
     glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
     glSurfaceView.setWillNotDraw(false);
   }
 
+  /**
+   * Constructs a SampleRender without a surface, whose callbacks are called directly, such as by a
+   * test issuing its OpenGL calls to a {@link RecordingGl}.
+   */
+  /* package-private */
+  SampleRender(Renderer renderer, AssetManager assetManager) {
+    this.glSurfaceView = null;
+    this.renderer = renderer;
+    this.assetManager = assetManager;
+  }
+
+  /* package-private */
+  void onSurfaceCreated() {
+    // A new context starts with the default state, regardless of what was cached before, and the
+    // objects of a lost context were deleted with it.
+    glState.invalidate();
+    resourceRegistry.onContextLost();
+    surfaceDestroyed = false;
+    GlBackend.get().glEnable(GLES30.GL_BLEND);
+    GLError.maybeThrowGLException("Failed to enable blending", "glEnable");
+    if (programBinaryCache != null) {
+      programBinaryCache.onContextCreated();
+    }
+    shaderCache.onContextCreated();
+    profiler.onContextCreated();
+    frameUniforms = new FrameUniforms(resourceRegistry);
+    renderer.onSurfaceCreated(this);
+  }
+
+  /* package-private */
+  void onSurfaceChanged(int width, int height) {
+    viewportWidth = width;
+    viewportHeight = height;
+    renderer.onSurfaceChanged(this, width, height);
+  }
+
+  /* package-private */
+  void onDrawFrame() {
+    if (surfaceDestroyed) {
+      // A frame may still be requested before the view is paused.
+      return;
+    }
+    GLError.onFrameStarted();
+    frameNumber++;
+    resourceRegistry.beginFrame();
+    // A pass left open by an exception in the previous frame is not ended anymore.
+    currentPass = null;
+    profiler.beginFrame();
+    try {
+      renderer.onDrawFrame(this);
+    } finally {
+      profiler.endFrame();
+    }
+  }
+
+  /* package-private */
+  void onSurfaceDestroyed() {
+    surfaceDestroyed = true;
+    renderer.onSurfaceDestroyed(this);
+    profiler.close();
+    if (frameUniforms != null) {
+      frameUniforms.close();
+    }
+    resourceRegistry.reportLeaks();
+  }
+
+  /**
+   * Keeps the binaries of the shader programs linked by {@link Shader} in {@code directory}, such
+   * as a subdirectory of {@link android.content.Context#getCacheDir}, so that later runs load them
+   * instead of compiling GLSL. Call before the surface is created.
+   *
+   * <p>The {@code directory} argument may be null, in which case programs are always compiled.
+   */
+  public void setProgramBinaryCacheDirectory(File directory) {
+    programBinaryCache = directory == null ? null : new ProgramBinaryCache(directory);
+  }
+
+  /**
+   * Lets the renderer close its objects through {@link Renderer#onSurfaceDestroyed} on the GL
+   * thread, then reports the objects it left open as leaks, see {@link
+   * GpuResourceRegistry#reportLeaks}. Call it before {@link GLSurfaceView#onPause} when the surface
+   * goes away for good, such as when the activity is finishing.
+   */
+  public void destroySurface() {
+    glSurfaceView.queueEvent(this::onSurfaceDestroyed);
+  }
+
   /** Draw a {@link Mesh} with the specified {@link Shader}. */
   public void draw(Mesh mesh, Shader shader) {
     draw(mesh, shader, /*framebuffer=*/ null);
@@ -79,9 +177,40 @@ public class SampleRender {
    * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer is used.
    */
   public void draw(Mesh mesh, Shader shader, Framebuffer framebuffer) {
+    draw(mesh, shader, framebuffer, /*level=*/ 0);
+  }
+
+  /**
+   * Draw a level of detail of a {@link Mesh}, 0 being the full mesh, with the specified {@link
+   * Shader} to the given {@link Framebuffer}. See {@link Mesh#getLevelCount}.
+   */
+  public void draw(Mesh mesh, Shader shader, Framebuffer framebuffer, int level) {
     useFramebuffer(framebuffer);
     shader.lowLevelUse();
-    mesh.lowLevelDraw();
+    mesh.lowLevelDraw(level);
+  }
+
+  /**
+   * Draw {@code instanceCount} instances of a {@link Mesh} with the specified {@link Shader} to the
+   * given {@link Framebuffer} in a single draw call. The per-instance data, such as model matrices,
+   * comes from the vertex buffers of the mesh created with a non-zero divisor.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer is used.
+   */
+  public void drawInstanced(Mesh mesh, Shader shader, Framebuffer framebuffer, int instanceCount) {
+    drawInstanced(mesh, shader, framebuffer, instanceCount, /*level=*/ 0);
+  }
+
+  /**
+   * Draw {@code instanceCount} instances of a level of detail of a {@link Mesh}, see {@link
+   * #drawInstanced(Mesh, Shader, Framebuffer, int)} and {@link #draw(Mesh, Shader, Framebuffer,
+   * int)}.
+   */
+  public void drawInstanced(
+      Mesh mesh, Shader shader, Framebuffer framebuffer, int instanceCount, int level) {
+    useFramebuffer(framebuffer);
+    shader.lowLevelUse();
+    mesh.lowLevelDrawInstanced(instanceCount, level);
   }
 
   /**
@@ -92,14 +221,71 @@ public class SampleRender {
    */
   public void clear(Framebuffer framebuffer, float r, float g, float b, float a) {
     useFramebuffer(framebuffer);
-    GLES30.glClearColor(r, g, b, a);
+    GlBackend.get().glClearColor(r, g, b, a);
     GLError.maybeThrowGLException("Failed to set clear color", "glClearColor");
-    GLES30.glDepthMask(true);
-    GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
-    GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
+    glState.setDepthMask(true);
+    GlBackend.get().glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
     GLError.maybeThrowGLException("Failed to clear framebuffer", "glClear");
   }
 
+  /**
+   * Begins a {@link RenderPass}: binds its framebuffer and applies its load actions. Draws until
+   * {@link #endRenderPass} should go to the same framebuffer.
+   */
+  public void beginRenderPass(RenderPass pass) {
+    if (currentPass != null) {
+      throw new IllegalStateException("Render pass already begun");
+    }
+    useFramebuffer(pass.getFramebuffer());
+    pass.begin(glState);
+    currentPass = pass;
+  }
+
+  /** Ends the current {@link RenderPass} and applies its store actions. */
+  public void endRenderPass() {
+    if (currentPass == null) {
+      throw new IllegalStateException("No render pass begun");
+    }
+    RenderPass pass = currentPass;
+    currentPass = null;
+    useFramebuffer(pass.getFramebuffer());
+    pass.end();
+  }
+
+  /**
+   * Returns the per-frame uniforms shared by every {@link Shader} declaring the {@code
+   * FrameUniforms} block. Set them once per frame before drawing.
+   */
+  public FrameUniforms getFrameUniforms() {
+    return frameUniforms;
+  }
+
+  /**
+   * Returns the cache of the OpenGL state set by this render, which skips redundant state changes
+   * and counts them. Low level OpenGL code must change the tracked state through it.
+   */
+  public GlState getGlState() {
+    return glState;
+  }
+
+  /**
+   * Returns the profiler of the render passes. Its frames begin and end around {@link
+   * Renderer#onDrawFrame}.
+   */
+  public FrameProfiler getProfiler() {
+    return profiler;
+  }
+
+  /** Returns the cache of the shader variants of the current context. */
+  public ShaderCache getShaderCache() {
+    return shaderCache;
+  }
+
+  /** Returns the registry of the GPU objects of the current context and of their memory. */
+  public GpuResourceRegistry getResourceRegistry() {
+    return resourceRegistry;
+  }
+
   /** Interface to be implemented for rendering callbacks. */
   public static interface Renderer {
     /**
@@ -119,9 +305,24 @@ public class SampleRender {
     /**
      * Called by {@link SampleRender} when a GL frame is to be rendered.
      *
+     * <p>The surface is not cleared beforehand. Draw every pixel, or begin a {@link RenderPass}
+     * which clears it.
+     *
      * <p>See {@link GLSurfaceView.Renderer#onDrawFrame}.
      */
     public void onDrawFrame(SampleRender render);
+
+    /**
+     * Called by {@link SampleRender#destroySurface} on the GL thread before the render surface goes
+     * away for good. Close every GPU object here; those left open are reported as leaks.
+     */
+    public default void onSurfaceDestroyed(SampleRender render) {}
+  }
+
+  /** Returns the program binary cache, or null if it is disabled. */
+  /* package-private */
+  ProgramBinaryCache getProgramBinaryCache() {
+    return programBinaryCache;
   }
 
   /* package-private */
@@ -129,6 +330,12 @@ public class SampleRender {
     return assetManager;
   }
 
+  /** Returns the number of frames drawn so far, used to tell frames apart. */
+  /* package-private */
+  long getFrameNumber() {
+    return frameNumber;
+  }
+
   private void useFramebuffer(Framebuffer framebuffer) {
     int framebufferId;
     int viewportWidth;
@@ -142,9 +349,7 @@ public class SampleRender {
       viewportWidth = framebuffer.getWidth();
       viewportHeight = framebuffer.getHeight();
     }
-    GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId);
-    GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
-    GLES30.glViewport(0, 0, viewportWidth, viewportHeight);
-    GLError.maybeThrowGLException("Failed to set viewport dimensions", "glViewport");
+    glState.bindFramebuffer(framebufferId);
+    glState.setViewport(0, 0, viewportWidth, viewportHeight);
   }
 }
@@ -27,7 +27,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 
 /**
@@ -66,12 +68,15 @@ public class Shader implements Closeable {
     }
   }
 
+  private final GlState glState;
   private int programId = 0;
-  private final Map<Integer, Uniform> uniforms = new HashMap<>();
   private int maxTextureUnit = 0;
 
-  private final Map<String, Integer> uniformLocations = new HashMap<>();
-  private final Map<Integer, String> uniformNames = new HashMap<>();
+  private final Map<String, Uniform> uniformsByName = new HashMap<>();
+  private final List<Uniform> uniforms = new ArrayList<>();
+  private final List<UniformBuffer> uniformBlocks = new ArrayList<>();
+  // The handle RenderQueue writes the model matrix of each draw to, resolved on first use.
+  private FloatUniform modelUniform;
 
   private boolean depthTest = true;
   private boolean depthWrite = true;
@@ -91,33 +96,57 @@ public class Shader implements Closeable {
       String vertexShaderCode,
       String fragmentShaderCode,
       Map<String, String> defines) {
+    glState = render.getGlState();
     int vertexShaderId = 0;
     int fragmentShaderId = 0;
     String definesCode = createShaderDefinesCode(defines);
+    vertexShaderCode = insertShaderDefinesCode(vertexShaderCode, definesCode);
+    fragmentShaderCode = insertShaderDefinesCode(fragmentShaderCode, definesCode);
+    ProgramBinaryCache programBinaryCache = render.getProgramBinaryCache();
+    String cacheKey =
+        programBinaryCache == null
+            ? null
+            : ProgramBinaryCache.keyOf(vertexShaderCode, fragmentShaderCode);
     try {
-      vertexShaderId =
-          createShader(
-              GLES30.GL_VERTEX_SHADER, insertShaderDefinesCode(vertexShaderCode, definesCode));
-      fragmentShaderId =
-          createShader(
-              GLES30.GL_FRAGMENT_SHADER, insertShaderDefinesCode(fragmentShaderCode, definesCode));
-
-      programId = GLES30.glCreateProgram();
-      GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
-      GLES30.glAttachShader(programId, vertexShaderId);
-      GLError.maybeThrowGLException("Failed to attach vertex shader", "glAttachShader");
-      GLES30.glAttachShader(programId, fragmentShaderId);
-      GLError.maybeThrowGLException("Failed to attach fragment shader", "glAttachShader");
-      GLES30.glLinkProgram(programId);
-      GLError.maybeThrowGLException("Failed to link shader program", "glLinkProgram");
-
-      final int[] linkStatus = new int[1];
-      GLES30.glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
-      if (linkStatus[0] == GLES30.GL_FALSE) {
-        String infoLog = GLES30.glGetProgramInfoLog(programId);
-        GLError.maybeLogGLError(
-            Log.WARN, TAG, "Failed to retrieve shader program info log", "glGetProgramInfoLog");
-        throw new GLException(0, "Shader link failed: " + infoLog);
+      if (programBinaryCache != null) {
+        programId = programBinaryCache.load(cacheKey);
+      }
+      if (programId == 0) {
+        vertexShaderId = createShader(GLES30.GL_VERTEX_SHADER, vertexShaderCode);
+        fragmentShaderId = createShader(GLES30.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        programId = GlBackend.get().glCreateProgram();
+        GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
+        GlBackend.get().glAttachShader(programId, vertexShaderId);
+        GLError.maybeThrowGLException("Failed to attach vertex shader", "glAttachShader");
+        GlBackend.get().glAttachShader(programId, fragmentShaderId);
+        GLError.maybeThrowGLException("Failed to attach fragment shader", "glAttachShader");
+        boolean saveBinary = programBinaryCache != null && programBinaryCache.isEnabled();
+        if (saveBinary) {
+          GlBackend.get().glProgramParameteri(
+              programId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES30.GL_TRUE);
+          GLError.maybeThrowGLException(
+              "Failed to set program binary hint", "glProgramParameteri");
+        }
+        GlBackend.get().glLinkProgram(programId);
+        GLError.maybeThrowGLException("Failed to link shader program", "glLinkProgram");
+
+        final int[] linkStatus = new int[1];
+        GlBackend.get().glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == GLES30.GL_FALSE) {
+          String infoLog = GlBackend.get().glGetProgramInfoLog(programId);
+          GLError.maybeLogGLError(
+              Log.WARN, TAG, "Failed to retrieve shader program info log", "glGetProgramInfoLog");
+          throw new GLException(0, "Shader link failed: " + infoLog);
+        }
+        if (saveBinary) {
+          programBinaryCache.save(cacheKey, programId);
+        }
+      }
+
+      // Shaders declaring the per-frame block read it from the buffer shared by the render.
+      if (getUniformBlockIndex(FrameUniforms.BLOCK_NAME) != GLES30.GL_INVALID_INDEX) {
+        setUniformBlock(FrameUniforms.BLOCK_NAME, render.getFrameUniforms().getUniformBuffer());
       }
     } catch (Throwable t) {
       close();
@@ -125,11 +154,11 @@ public class Shader implements Closeable {
     } finally {
       // Shader objects can be flagged for deletion immediately after program creation.
       if (vertexShaderId != 0) {
-        GLES30.glDeleteShader(vertexShaderId);
+        GlBackend.get().glDeleteShader(vertexShaderId);
         GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free vertex shader", "glDeleteShader");
       }
       if (fragmentShaderId != 0) {
-        GLES30.glDeleteShader(fragmentShaderId);
+        GlBackend.get().glDeleteShader(fragmentShaderId);
         GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free fragment shader", "glDeleteShader");
       }
     }
@@ -152,15 +181,22 @@ public class Shader implements Closeable {
     AssetManager assets = render.getAssets();
     return new Shader(
         render,
-        inputStreamToString(assets.open(vertexShaderFileName)),
-        inputStreamToString(assets.open(fragmentShaderFileName)),
+        readSource(assets, vertexShaderFileName),
+        readSource(assets, fragmentShaderFileName),
         defines);
   }
 
+  /** Reads a shader source file. This does not need the OpenGL context. */
+  /* package-private */
+  static String readSource(AssetManager assets, String fileName) throws IOException {
+    return inputStreamToString(assets.open(fileName));
+  }
+
   @Override
   public void close() {
     if (programId != 0) {
-      GLES30.glDeleteProgram(programId);
+      glState.onProgramDeleted(programId);
+      GlBackend.get().glDeleteProgram(programId);
       programId = 0;
     }
   }
@@ -221,39 +257,41 @@ public class Shader implements Closeable {
 
   /** Sets a texture uniform. */
   public Shader setTexture(String name, Texture texture) {
-    // Special handling for Textures. If replacing an existing texture uniform, reuse the texture
-    // unit.
-    int location = getUniformLocation(name);
-    Uniform uniform = uniforms.get(location);
-    int textureUnit;
-    if (!(uniform instanceof UniformTexture)) {
-      textureUnit = maxTextureUnit++;
-    } else {
-      UniformTexture uniformTexture = (UniformTexture) uniform;
-      textureUnit = uniformTexture.getTextureUnit();
-    }
-    uniforms.put(location, new UniformTexture(textureUnit, texture));
+    getUniformTexture(name).set(texture);
+    return this;
+  }
+
+  /**
+   * Sets the {@link UniformBuffer} backing a uniform block. The buffer is uploaded, if needed, and
+   * bound whenever this shader is used.
+   */
+  public Shader setUniformBlock(String name, UniformBuffer uniformBuffer) {
+    int blockIndex = getUniformBlockIndex(name);
+    if (blockIndex == GLES30.GL_INVALID_INDEX) {
+      throw new IllegalArgumentException("Shader uniform block does not exist: " + name);
+    }
+    GlBackend.get().glUniformBlockBinding(programId, blockIndex, uniformBuffer.getBindingPoint());
+    GLError.maybeThrowGLException("Failed to bind uniform block", "glUniformBlockBinding");
+    uniformBlocks.remove(uniformBuffer);
+    uniformBlocks.add(uniformBuffer);
     return this;
   }
 
   /** Sets a {@code bool} uniform. */
   public Shader setBool(String name, boolean v0) {
-    int[] values = {v0 ? 1 : 0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    getUniformBool(name).set(v0);
     return this;
   }
 
   /** Sets an {@code int} uniform. */
   public Shader setInt(String name, int v0) {
-    int[] values = {v0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    getUniformInt(name).set(v0);
     return this;
   }
 
   /** Sets a {@code float} uniform. */
   public Shader setFloat(String name, float v0) {
-    float[] values = {v0};
-    uniforms.put(getUniformLocation(name), new Uniform1f(values));
+    getUniformFloat(name).set(v0);
     return this;
   }
 
@@ -262,7 +300,7 @@ public class Shader implements Closeable {
     if (values.length != 2) {
       throw new IllegalArgumentException("Value array length must be 2");
     }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    getUniformVec2(name).set(values);
     return this;
   }
   /** Sets a {@code vec3} uniform. */
@@ -270,7 +308,7 @@ public class Shader implements Closeable {
     if (values.length != 3) {
       throw new IllegalArgumentException("Value array length must be 3");
     }
-    uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+    getUniformVec3(name).set(values);
     return this;
   }
 
@@ -279,7 +317,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4");
     }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    getUniformVec4(name).set(values);
     return this;
   }
 
@@ -288,7 +326,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4 (2x2)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    getUniformMat2(name).set(values);
     return this;
   }
 
@@ -297,7 +335,7 @@ public class Shader implements Closeable {
     if (values.length != 9) {
       throw new IllegalArgumentException("Value array length must be 9 (3x3)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    getUniformMat3(name).set(values);
     return this;
   }
 
@@ -306,85 +344,150 @@ public class Shader implements Closeable {
     if (values.length != 16) {
       throw new IllegalArgumentException("Value array length must be 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    getUniformMat4(name).set(values);
     return this;
   }
 
   /** Sets a {@code bool} array uniform. */
   public Shader setBoolArray(String name, boolean[] values) {
-    int[] intValues = new int[values.length];
-    for (int i = 0; i < values.length; ++i) {
-      intValues[i] = values[i] ? 1 : 0;
-    }
-    uniforms.put(getUniformLocation(name), new UniformInt(intValues));
+    getUniformBool(name).set(values);
     return this;
   }
 
   /** Sets an {@code int} array uniform. */
   public Shader setIntArray(String name, int[] values) {
-    uniforms.put(getUniformLocation(name), new UniformInt(values.clone()));
+    getUniformInt(name).set(values);
     return this;
   }
 
   /** Sets a {@code float} array uniform. */
   public Shader setFloatArray(String name, float[] values) {
-    uniforms.put(getUniformLocation(name), new Uniform1f(values.clone()));
+    getUniformFloat(name).set(values);
     return this;
   }
 
   /** Sets a {@code vec2} array uniform. */
   public Shader setVec2Array(String name, float[] values) {
-    if (values.length % 2 != 0) {
-      throw new IllegalArgumentException("Value array length must be divisible by 2");
-    }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    getUniformVec2(name).set(values);
     return this;
   }
   /** Sets a {@code vec3} array uniform. */
   public Shader setVec3Array(String name, float[] values) {
-    if (values.length % 3 != 0) {
-      throw new IllegalArgumentException("Value array length must be divisible by 3");
-    }
-    uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+    getUniformVec3(name).set(values);
     return this;
   }
 
   /** Sets a {@code vec4} array uniform. */
   public Shader setVec4Array(String name, float[] values) {
-    if (values.length % 4 != 0) {
-      throw new IllegalArgumentException("Value array length must be divisible by 4");
-    }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    getUniformVec4(name).set(values);
     return this;
   }
 
   /** Sets a {@code mat2} array uniform. */
   public Shader setMat2Array(String name, float[] values) {
-    if (values.length % 4 != 0) {
-      throw new IllegalArgumentException("Value array length must be divisible by 4 (2x2)");
-    }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    getUniformMat2(name).set(values);
     return this;
   }
 
   /** Sets a {@code mat3} array uniform. */
   public Shader setMat3Array(String name, float[] values) {
-    if (values.length % 9 != 0) {
-      throw new IllegalArgumentException("Values array length must be divisible by 9 (3x3)");
-    }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    getUniformMat3(name).set(values);
     return this;
   }
 
   /** Sets a {@code mat4} uniform. */
   public Shader setMat4Array(String name, float[] values) {
-    if (values.length % 16 != 0) {
-      throw new IllegalArgumentException("Value array length must be divisible by 16 (4x4)");
-    }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    getUniformMat4(name).set(values);
     return this;
   }
 
+  /**
+   * Returns a handle to a texture uniform. Handles are resolved once and can then be set without
+   * looking up the uniform by name or allocating memory, which suits values written every draw.
+   */
+  public TextureUniform getUniformTexture(String name) {
+    Uniform uniform = uniformsByName.get(name);
+    if (uniform == null) {
+      return addUniform(
+          new TextureUniform(name, getUniformLocation(name), maxTextureUnit++, glState));
+    }
+    if (!(uniform instanceof TextureUniform)) {
+      throw new IllegalArgumentException("Shader uniform is not a texture: " + name);
+    }
+    return (TextureUniform) uniform;
+  }
+
+  /** Returns a handle to a {@code bool} or {@code bool} array uniform. */
+  public IntUniform getUniformBool(String name) {
+    return getIntUniform(name);
+  }
+
+  /** Returns a handle to an {@code int} or {@code int} array uniform. */
+  public IntUniform getUniformInt(String name) {
+    return getIntUniform(name);
+  }
+
+  /** Returns a handle to a {@code float} or {@code float} array uniform. */
+  public FloatUniform getUniformFloat(String name) {
+    return getFloatUniform(name, FloatUniform.Type.FLOAT);
+  }
+
+  /** Returns a handle to a {@code vec2} or {@code vec2} array uniform. */
+  public FloatUniform getUniformVec2(String name) {
+    return getFloatUniform(name, FloatUniform.Type.VEC2);
+  }
+
+  /** Returns a handle to a {@code vec3} or {@code vec3} array uniform. */
+  public FloatUniform getUniformVec3(String name) {
+    return getFloatUniform(name, FloatUniform.Type.VEC3);
+  }
+
+  /** Returns a handle to a {@code vec4} or {@code vec4} array uniform. */
+  public FloatUniform getUniformVec4(String name) {
+    return getFloatUniform(name, FloatUniform.Type.VEC4);
+  }
+
+  /** Returns a handle to a {@code mat2} or {@code mat2} array uniform. */
+  public FloatUniform getUniformMat2(String name) {
+    return getFloatUniform(name, FloatUniform.Type.MAT2);
+  }
+
+  /** Returns a handle to a {@code mat3} or {@code mat3} array uniform. */
+  public FloatUniform getUniformMat3(String name) {
+    return getFloatUniform(name, FloatUniform.Type.MAT3);
+  }
+
+  /** Returns a handle to a {@code mat4} or {@code mat4} array uniform. */
+  public FloatUniform getUniformMat4(String name) {
+    return getFloatUniform(name, FloatUniform.Type.MAT4);
+  }
+
+  /**
+   * Returns the handle to the {@link RenderQueue#MODEL_UNIFORM_NAME} uniform, looked up by name
+   * only on the first call.
+   */
+  /* package-private */
+  FloatUniform getModelUniform() {
+    if (modelUniform == null) {
+      modelUniform = getUniformMat4(RenderQueue.MODEL_UNIFORM_NAME);
+    }
+    return modelUniform;
+  }
+
+  /* package-private */
+  int getProgramId() {
+    return programId;
+  }
+
+  /** Returns whether draws with this shader blend with the framebuffer contents. */
+  /* package-private */
+  boolean isBlended() {
+    return sourceRgbBlend != BlendFactor.ONE
+        || destRgbBlend != BlendFactor.ZERO
+        || sourceAlphaBlend != BlendFactor.ONE
+        || destAlphaBlend != BlendFactor.ZERO;
+  }
+
   /**
    * Activates the shader. Don't call this directly unless you are doing low level OpenGL code;
    * instead, prefer {@link SampleRender#draw}.
@@ -394,218 +497,334 @@ public class Shader implements Closeable {
     if (programId == 0) {
       throw new IllegalStateException("Attempted to use freed shader");
     }
-    GLES30.glUseProgram(programId);
-    GLError.maybeThrowGLException("Failed to use shader program", "glUseProgram");
-    GLES30.glBlendFuncSeparate(
+    // State already set by the previous draw call is skipped by the state cache.
+    glState.useProgram(programId);
+    glState.setBlendFuncSeparate(
         sourceRgbBlend.glesEnum,
         destRgbBlend.glesEnum,
         sourceAlphaBlend.glesEnum,
         destAlphaBlend.glesEnum);
-    GLError.maybeThrowGLException("Failed to set blend mode", "glBlendFuncSeparate");
-    GLES30.glDepthMask(depthWrite);
-    GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
-    if (depthTest) {
-      GLES30.glEnable(GLES30.GL_DEPTH_TEST);
-      GLError.maybeThrowGLException("Failed to enable depth test", "glEnable");
-    } else {
-      GLES30.glDisable(GLES30.GL_DEPTH_TEST);
-      GLError.maybeThrowGLException("Failed to disable depth test", "glDisable");
-    }
-    try {
-      // Remove all non-texture uniforms from the map after setting them, since they're stored as
-      // part of the program.
-      ArrayList<Integer> obsoleteEntries = new ArrayList<>(uniforms.size());
-      for (Map.Entry<Integer, Uniform> entry : uniforms.entrySet()) {
-        try {
-          entry.getValue().use(entry.getKey());
-          if (!(entry.getValue() instanceof UniformTexture)) {
-            obsoleteEntries.add(entry.getKey());
-          }
-        } catch (GLException e) {
-          String name = uniformNames.get(entry.getKey());
-          throw new IllegalArgumentException("Error setting uniform `" + name + "'", e);
-        }
+    glState.setDepthMask(depthWrite);
+    glState.setDepthTest(depthTest);
+    for (int i = 0; i < uniformBlocks.size(); ++i) {
+      uniformBlocks.get(i).lowLevelUse(glState);
+    }
+    // Only values set since the last use are uploaded, since the others are stored as part of the
+    // program. Texture bindings are checked every time, since texture units are shared by all
+    // programs.
+    for (int i = 0; i < uniforms.size(); ++i) {
+      Uniform uniform = uniforms.get(i);
+      try {
+        uniform.use();
+      } catch (GLException e) {
+        throw new IllegalArgumentException("Error setting uniform `" + uniform.name + "'", e);
       }
-      uniforms.keySet().removeAll(obsoleteEntries);
-    } finally {
-      GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
-      GLError.maybeLogGLError(Log.WARN, TAG, "Failed to set active texture", "glActiveTexture");
     }
   }
 
-  private static interface Uniform {
-    public void use(int location);
+  /**
+   * A handle to a uniform of a {@link Shader}, holding the value to upload the next time the shader
+   * is used.
+   */
+  public abstract static class Uniform {
+    /* package-private */ final String name;
+    /* package-private */ final int location;
+    /* package-private */ boolean dirty;
+
+    private Uniform(String name, int location) {
+      this.name = name;
+      this.location = location;
+    }
+
+    /* package-private */
+    abstract void use();
   }
 
-  private static class UniformTexture implements Uniform {
+  /** A handle to a texture uniform, returned by {@link Shader#getUniformTexture}. */
+  public static final class TextureUniform extends Uniform {
     private final int textureUnit;
-    private final Texture texture;
+    private final GlState glState;
+    private Texture texture;
 
-    public UniformTexture(int textureUnit, Texture texture) {
+    /* package-private */
+    TextureUniform(String name, int location, int textureUnit, GlState glState) {
+      super(name, location);
       this.textureUnit = textureUnit;
+      this.glState = glState;
+      // The texture unit never changes, so it is only uploaded on first use.
+      dirty = true;
+    }
+
+    /** Sets the texture to sample. */
+    public void set(Texture texture) {
       this.texture = texture;
     }
 
-    public int getTextureUnit() {
+    /* package-private */
+    int getTextureUnit() {
       return textureUnit;
     }
 
+    /* package-private */
+    Texture getTexture() {
+      return texture;
+    }
+
     @Override
-    public void use(int location) {
+    void use() {
+      if (texture == null) {
+        return;
+      }
       if (texture.getTextureId() == 0) {
         throw new IllegalStateException("Tried to draw with freed texture");
       }
-      GLES30.glActiveTexture(GLES30.GL_TEXTURE0 + textureUnit);
-      GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
-      GLES30.glBindTexture(texture.getTarget().glesEnum, texture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glUniform1i(location, textureUnit);
-      GLError.maybeThrowGLException("Failed to set shader texture uniform", "glUniform1i");
+      glState.bindTexture(textureUnit, texture.getTarget().glesEnum, texture.getTextureId());
+      texture.onUsed();
+      if (dirty) {
+        GlBackend.get().glUniform1i(location, textureUnit);
+        GLError.maybeThrowGLException("Failed to set shader texture uniform", "glUniform1i");
+        dirty = false;
+      }
     }
   }
 
-  private static class UniformInt implements Uniform {
-    private final int[] values;
+  /**
+   * A handle to an {@code int} or {@code bool} uniform or array, returned by {@link
+   * Shader#getUniformInt} and {@link Shader#getUniformBool}.
+   */
+  public static final class IntUniform extends Uniform {
+    private int[] values = new int[1];
 
-    public UniformInt(int[] values) {
-      this.values = values;
+    /* package-private */
+    IntUniform(String name, int location) {
+      super(name, location);
     }
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniform1iv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1i", "glUniform1iv");
+    /** Sets a single value. */
+    public void set(int v0) {
+      ensureLength(1);
+      values[0] = v0;
+      dirty = true;
     }
-  }
 
-  private static class Uniform1f implements Uniform {
-    private final float[] values;
+    /** Sets a single value. */
+    public void set(boolean v0) {
+      set(v0 ? 1 : 0);
+    }
 
-    public Uniform1f(float[] values) {
-      this.values = values;
+    /** Sets the values of an array uniform. The values are copied. */
+    public void set(int[] values) {
+      ensureLength(values.length);
+      System.arraycopy(values, 0, this.values, 0, values.length);
+      dirty = true;
     }
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniform1fv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1f", "glUniform1fv");
+    /** Sets the values of an array uniform. The values are copied. */
+    public void set(boolean[] values) {
+      ensureLength(values.length);
+      for (int i = 0; i < values.length; ++i) {
+        this.values[i] = values[i] ? 1 : 0;
+      }
+      dirty = true;
     }
-  }
 
-  private static class Uniform2f implements Uniform {
-    private final float[] values;
+    /* package-private */
+    int[] getValues() {
+      return values;
+    }
 
-    public Uniform2f(float[] values) {
-      this.values = values;
+    private void ensureLength(int length) {
+      if (values.length != length) {
+        values = new int[length];
+      }
     }
 
     @Override
-    public void use(int location) {
-      GLES30.glUniform2fv(location, values.length / 2, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 2f", "glUniform2fv");
+    void use() {
+      if (!dirty) {
+        return;
+      }
+      GlBackend.get().glUniform1iv(location, values.length, values, 0);
+      GLError.maybeThrowGLException("Failed to set shader uniform 1i", "glUniform1iv");
+      dirty = false;
     }
   }
 
-  private static class Uniform3f implements Uniform {
-    private final float[] values;
-
-    public Uniform3f(float[] values) {
-      this.values = values;
+  /**
+   * A handle to a floating point scalar, vector or matrix uniform or array, returned by the
+   * {@code getUniformFloat}, {@code getUniformVec*} and {@code getUniformMat*} methods of {@link
+   * Shader}.
+   */
+  public static final class FloatUniform extends Uniform {
+    /** The GLSL type of the uniform. */
+    /* package-private */ enum Type {
+      FLOAT(1),
+      VEC2(2),
+      VEC3(3),
+      VEC4(4),
+      MAT2(4),
+      MAT3(9),
+      MAT4(16);
+
+      final int size;
+
+      private Type(int size) {
+        this.size = size;
+      }
     }
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniform3fv(location, values.length / 3, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 3f", "glUniform3fv");
-    }
-  }
+    private final Type type;
+    private float[] values;
 
-  private static class Uniform4f implements Uniform {
-    private final float[] values;
+    /* package-private */
+    FloatUniform(String name, int location, Type type) {
+      super(name, location);
+      this.type = type;
+      this.values = new float[type.size];
+    }
 
-    public Uniform4f(float[] values) {
-      this.values = values;
+    /** Sets a {@code float} value. */
+    public void set(float v0) {
+      if (type != Type.FLOAT) {
+        throw new IllegalArgumentException("Uniform " + name + " is not a float");
+      }
+      ensureLength(1);
+      values[0] = v0;
+      dirty = true;
+    }
+
+    /**
+     * Sets the value, or the values of an array uniform. The values are copied, and storage is
+     * only reallocated if the number of array elements changes.
+     */
+    public void set(float[] values) {
+      if (values.length % type.size != 0) {
+        throw new IllegalArgumentException(
+            "Value array length must be divisible by " + type.size + " for uniform " + name);
+      }
+      ensureLength(values.length);
+      System.arraycopy(values, 0, this.values, 0, values.length);
+      dirty = true;
     }
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniform4fv(location, values.length / 4, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 4f", "glUniform4fv");
+    /* package-private */
+    Type getType() {
+      return type;
     }
-  }
 
-  private static class UniformMatrix2f implements Uniform {
-    private final float[] values;
+    /* package-private */
+    float[] getValues() {
+      return values;
+    }
 
-    public UniformMatrix2f(float[] values) {
-      this.values = values;
+    private void ensureLength(int length) {
+      if (values.length != length) {
+        values = new float[length];
+      }
     }
 
     @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix2fv(location, values.length / 4, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
+    void use() {
+      if (!dirty) {
+        return;
+      }
+      int count = values.length / type.size;
+      switch (type) {
+        case FLOAT:
+          GlBackend.get().glUniform1fv(location, count, values, 0);
+          GLError.maybeThrowGLException("Failed to set shader uniform 1f", "glUniform1fv");
+          break;
+        case VEC2:
+          GlBackend.get().glUniform2fv(location, count, values, 0);
+          GLError.maybeThrowGLException("Failed to set shader uniform 2f", "glUniform2fv");
+          break;
+        case VEC3:
+          GlBackend.get().glUniform3fv(location, count, values, 0);
+          GLError.maybeThrowGLException("Failed to set shader uniform 3f", "glUniform3fv");
+          break;
+        case VEC4:
+          GlBackend.get().glUniform4fv(location, count, values, 0);
+          GLError.maybeThrowGLException("Failed to set shader uniform 4f", "glUniform4fv");
+          break;
+        case MAT2:
+          GlBackend.get().glUniformMatrix2fv(location, count, /*transpose=*/ false, values, 0);
+          GLError.maybeThrowGLException(
+              "Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
+          break;
+        case MAT3:
+          GlBackend.get().glUniformMatrix3fv(location, count, /*transpose=*/ false, values, 0);
+          GLError.maybeThrowGLException(
+              "Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
+          break;
+        case MAT4:
+          GlBackend.get().glUniformMatrix4fv(location, count, /*transpose=*/ false, values, 0);
+          GLError.maybeThrowGLException(
+              "Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+          break;
+      }
+      dirty = false;
     }
   }
 
-  private static class UniformMatrix3f implements Uniform {
-    private final float[] values;
-
-    public UniformMatrix3f(float[] values) {
-      this.values = values;
+  private IntUniform getIntUniform(String name) {
+    Uniform uniform = uniformsByName.get(name);
+    if (uniform == null) {
+      return addUniform(new IntUniform(name, getUniformLocation(name)));
     }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix3fv(location, values.length / 9, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
+    if (!(uniform instanceof IntUniform)) {
+      throw new IllegalArgumentException("Shader uniform is not an int or bool: " + name);
     }
+    return (IntUniform) uniform;
   }
 
-  private static class UniformMatrix4f implements Uniform {
-    private final float[] values;
-
-    public UniformMatrix4f(float[] values) {
-      this.values = values;
+  private FloatUniform getFloatUniform(String name, FloatUniform.Type type) {
+    Uniform uniform = uniformsByName.get(name);
+    if (uniform == null) {
+      return addUniform(new FloatUniform(name, getUniformLocation(name), type));
     }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix4fv(location, values.length / 16, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+    if (!(uniform instanceof FloatUniform) || ((FloatUniform) uniform).getType() != type) {
+      throw new IllegalArgumentException(
+          "Shader uniform is not a " + type.name().toLowerCase() + ": " + name);
     }
+    return (FloatUniform) uniform;
+  }
+
+  private <T extends Uniform> T addUniform(T uniform) {
+    uniformsByName.put(uniform.name, uniform);
+    uniforms.add(uniform);
+    return uniform;
   }
 
   private int getUniformLocation(String name) {
-    Integer locationObject = uniformLocations.get(name);
-    if (locationObject != null) {
-      return locationObject;
-    }
-    int location = GLES30.glGetUniformLocation(programId, name);
+    int location = GlBackend.get().glGetUniformLocation(programId, name);
     GLError.maybeThrowGLException("Failed to find uniform", "glGetUniformLocation");
     if (location == -1) {
       throw new IllegalArgumentException("Shader uniform does not exist: " + name);
     }
-    uniformLocations.put(name, Integer.valueOf(location));
-    uniformNames.put(Integer.valueOf(location), name);
     return location;
   }
 
+  private int getUniformBlockIndex(String name) {
+    int blockIndex = GlBackend.get().glGetUniformBlockIndex(programId, name);
+    GLError.maybeThrowGLException("Failed to find uniform block", "glGetUniformBlockIndex");
+    return blockIndex;
+  }
+
   private static int createShader(int type, String code) {
-    int shaderId = GLES30.glCreateShader(type);
+    int shaderId = GlBackend.get().glCreateShader(type);
     GLError.maybeThrowGLException("Shader creation failed", "glCreateShader");
-    GLES30.glShaderSource(shaderId, code);
+    GlBackend.get().glShaderSource(shaderId, code);
     GLError.maybeThrowGLException("Shader source failed", "glShaderSource");
-    GLES30.glCompileShader(shaderId);
+    GlBackend.get().glCompileShader(shaderId);
     GLError.maybeThrowGLException("Shader compilation failed", "glCompileShader");
 
     final int[] compileStatus = new int[1];
-    GLES30.glGetShaderiv(shaderId, GLES30.GL_COMPILE_STATUS, compileStatus, 0);
+    GlBackend.get().glGetShaderiv(shaderId, GLES30.GL_COMPILE_STATUS, compileStatus, 0);
     if (compileStatus[0] == GLES30.GL_FALSE) {
-      String infoLog = GLES30.glGetShaderInfoLog(shaderId);
+      String infoLog = GlBackend.get().glGetShaderInfoLog(shaderId);
       GLError.maybeLogGLError(
           Log.WARN, TAG, "Failed to retrieve shader info log", "glGetShaderInfoLog");
-      GLES30.glDeleteShader(shaderId);
+      GlBackend.get().glDeleteShader(shaderId);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free shader", "glDeleteShader");
       throw new GLException(0, "Shader compilation failed: " + infoLog);
     }
@@ -618,7 +837,8 @@ public class Shader implements Closeable {
       return "";
     }
     StringBuilder builder = new StringBuilder();
-    for (Map.Entry<String, String> entry : defines.entrySet()) {
+    // Sorted, so that equal maps give the same code, and the same program binary.
+    for (Map.Entry<String, String> entry : new TreeMap<>(defines).entrySet()) {
       builder.append("#define " + entry.getKey() + " " + entry.getValue() + "\n");
     }
     return builder.toString();
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the {@link Shader} variants of the current context by vertex shader asset, fragment shader
+ * asset and define map, so that code switching between variants, such as the depth settings of
+ * {@link com.google.ar.core.examples.java.common.samplerender.arcore.BackgroundRenderer}, swaps a
+ * reference instead of compiling on the GL thread. Variants expected later can be compiled ahead of
+ * time with {@link #prewarm} or {@link AssetLoader#prewarmShader}.
+ *
+ * <p>Variants are shared by everyone asking for the same key, along with their uniform values and
+ * draw state. Set everything a draw depends on before drawing, and do not close them; the cache
+ * owns them. Get the cache of a context with {@link SampleRender#getShaderCache}.
+ */
+public class ShaderCache {
+  private final SampleRender render;
+  private final Map<String, Shader> variants = new HashMap<>();
+
+  /* package-private */
+  ShaderCache(SampleRender render) {
+    this.render = render;
+  }
+
+  /**
+   * Returns the variant of the shader assets with {@code defines}, reading and compiling it on
+   * first use. Must be called on the GL thread.
+   *
+   * @param defines A map of shader precompiler symbols, or null for none
+   */
+  public Shader getShader(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines)
+      throws IOException {
+    Shader shader = variants.get(keyOf(vertexShaderFileName, fragmentShaderFileName, defines));
+    if (shader != null) {
+      return shader;
+    }
+    return getShader(
+        vertexShaderFileName,
+        fragmentShaderFileName,
+        defines,
+        Shader.readSource(render.getAssets(), vertexShaderFileName),
+        Shader.readSource(render.getAssets(), fragmentShaderFileName));
+  }
+
+  /** Like {@link #getShader(String, String, Map)}, for sources that were already read. */
+  /* package-private */
+  Shader getShader(
+      String vertexShaderFileName,
+      String fragmentShaderFileName,
+      Map<String, String> defines,
+      String vertexShaderCode,
+      String fragmentShaderCode) {
+    String key = keyOf(vertexShaderFileName, fragmentShaderFileName, defines);
+    Shader shader = variants.get(key);
+    if (shader == null) {
+      shader = new Shader(render, vertexShaderCode, fragmentShaderCode, defines);
+      variants.put(key, shader);
+    }
+    return shader;
+  }
+
+  /**
+   * Compiles a variant ahead of time, typically while loading, so that a later {@link #getShader}
+   * for it returns immediately. Must be called on the GL thread.
+   */
+  public void prewarm(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines)
+      throws IOException {
+    getShader(vertexShaderFileName, fragmentShaderFileName, defines);
+  }
+
+  /** Returns whether the variant has been compiled in the current context. */
+  public boolean contains(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines) {
+    return variants.containsKey(keyOf(vertexShaderFileName, fragmentShaderFileName, defines));
+  }
+
+  /** Returns the number of variants compiled in the current context. */
+  public int getVariantCount() {
+    return variants.size();
+  }
+
+  /** Forgets the variants of a lost context, whose programs are gone with it. */
+  /* package-private */
+  void onContextCreated() {
+    variants.clear();
+  }
+
+  /* package-private */
+  static String keyOf(
+      String vertexShaderFileName, String fragmentShaderFileName, Map<String, String> defines) {
+    // Sorted, so that equal maps give equal keys.
+    return vertexShaderFileName
+        + "\n"
+        + fragmentShaderFileName
+        + "\n"
+        + new TreeMap<>(defines == null ? Collections.<String, String>emptyMap() : defines);
+  }
+}
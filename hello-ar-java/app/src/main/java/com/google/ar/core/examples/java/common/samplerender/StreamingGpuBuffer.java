@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.util.Log;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A {@link GpuBuffer} for data rewritten every frame, which never writes to memory the GPU may
+ * still be reading.
+ *
+ * <p>The buffer object is split into one segment per frame in flight. All writes of a frame are
+ * appended to the segment of that frame through {@code glMapBufferRange} with {@code
+ * GL_MAP_UNSYNCHRONIZED_BIT}, so the driver does not wait for earlier draws. A fence is inserted
+ * when a frame's segment is left, and waited on before the segment is written again, {@link
+ * #FRAMES_IN_FLIGHT} frames later. When a frame needs more room than its segment has left, the
+ * buffer object is orphaned and reallocated larger.
+ *
+ * <p>Each write is drawn from at the offset returned by {@link #getOffset()} after it.
+ */
+/* package-private */
+class StreamingGpuBuffer extends GpuBuffer {
+  private static final String TAG = StreamingGpuBuffer.class.getSimpleName();
+
+  /* package-private */ static final int FRAMES_IN_FLIGHT = 3;
+  // Offsets of writes are aligned so that any vertex attribute or index type may start at them.
+  private static final int ALIGNMENT = 16;
+  private static final long FENCE_TIMEOUT_NANOS = 100_000_000L;
+
+  private final SampleRender render;
+  private final long[] fences = new long[FRAMES_IN_FLIGHT];
+  private int segmentCapacity;
+  private int segment;
+  // Byte offset of the next write from the start of the current segment.
+  private int cursor;
+  private long frameNumber = -1;
+  private int size;
+  private int offset;
+
+  public StreamingGpuBuffer(SampleRender render, int target, int numberOfBytesPerEntry) {
+    super(target, numberOfBytesPerEntry, /*entries=*/ null);
+    this.render = render;
+  }
+
+  @Override
+  public void set(Buffer entries) {
+    // Some GPU drivers will fail with out of memory errors if glMapBufferRange is called with a
+    // size of 0, so avoid this case.
+    if (entries == null || entries.limit() == 0) {
+      size = 0;
+      return;
+    }
+    if (!entries.isDirect()) {
+      throw new IllegalArgumentException("If non-null, entries buffer must be a direct buffer");
+    }
+    int target = getTarget();
+    int bytes = entries.limit() * getNumberOfBytesPerEntry();
+
+    // Clear VAO, since binding an index buffer would otherwise change the vertex array last drawn.
+    GlBackend.get().glBindVertexArray(0);
+    GLError.maybeThrowGLException("Failed to unbind vertex array", "glBindVertexArray");
+    GlBackend.get().glBindBuffer(target, getBufferId());
+    GLError.maybeThrowGLException("Failed to bind buffer object", "glBindBuffer");
+
+    long currentFrameNumber = render.getFrameNumber();
+    if (currentFrameNumber != frameNumber) {
+      if (frameNumber != -1) {
+        nextSegment();
+      }
+      frameNumber = currentFrameNumber;
+    }
+    if (cursor + bytes > segmentCapacity) {
+      orphan(bytes);
+    }
+
+    offset = segment * segmentCapacity + cursor;
+    ByteBuffer mapped =
+        (ByteBuffer)
+            GlBackend.get().glMapBufferRange(
+                target,
+                offset,
+                bytes,
+                GLES30.GL_MAP_WRITE_BIT
+                    | GLES30.GL_MAP_INVALIDATE_RANGE_BIT
+                    | GLES30.GL_MAP_UNSYNCHRONIZED_BIT);
+    GLError.maybeThrowGLException("Failed to map buffer object", "glMapBufferRange");
+    copy(entries, mapped.order(ByteOrder.nativeOrder()));
+    if (!GlBackend.get().glUnmapBuffer(target)) {
+      // The contents became undefined, for example after a display mode change. The next frame
+      // writes them again.
+      Log.w(TAG, "Streamed buffer contents were lost");
+    }
+    GLError.maybeThrowGLException("Failed to unmap buffer object", "glUnmapBuffer");
+
+    size = entries.limit();
+    cursor += align(bytes);
+  }
+
+  @Override
+  public void free() {
+    deleteFences();
+    super.free();
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    return (long) segmentCapacity * FRAMES_IN_FLIGHT;
+  }
+
+  /**
+   * Fences the segment of the previous frame, whose draws have all been issued, and moves on to the
+   * next one once the GPU is done reading it.
+   */
+  private void nextSegment() {
+    fences[segment] = GlBackend.get().glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    GLError.maybeThrowGLException("Failed to insert fence", "glFenceSync");
+    segment = (segment + 1) % FRAMES_IN_FLIGHT;
+    cursor = 0;
+
+    long fence = fences[segment];
+    if (fence == 0) {
+      return;
+    }
+    int result;
+    do {
+      result =
+          GlBackend.get()
+              .glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+    } while (result == GLES30.GL_TIMEOUT_EXPIRED);
+    GLError.maybeThrowGLException("Failed to wait for fence", "glClientWaitSync");
+    GlBackend.get().glDeleteSync(fence);
+    GLError.maybeThrowGLException("Failed to delete fence", "glDeleteSync");
+    fences[segment] = 0;
+  }
+
+  /**
+   * Replaces the buffer storage with a larger one. Draws already issued keep reading the old
+   * storage, so none of the fences are needed anymore.
+   */
+  private void orphan(int bytes) {
+    segmentCapacity = Math.max(segmentCapacity * 2, align(bytes));
+    GlBackend.get().glBufferData(
+        getTarget(), segmentCapacity * FRAMES_IN_FLIGHT, /*data=*/ null, GLES30.GL_STREAM_DRAW);
+    GLError.maybeThrowGLException("Failed to orphan buffer object", "glBufferData");
+    deleteFences();
+    segment = 0;
+    cursor = 0;
+  }
+
+  private void deleteFences() {
+    for (int i = 0; i < FRAMES_IN_FLIGHT; ++i) {
+      if (fences[i] != 0) {
+        GlBackend.get().glDeleteSync(fences[i]);
+        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to delete fence", "glDeleteSync");
+        fences[i] = 0;
+      }
+    }
+  }
+
+  private static int align(int bytes) {
+    return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  private static void copy(Buffer entries, ByteBuffer mapped) {
+    entries.rewind();
+    if (entries instanceof FloatBuffer) {
+      mapped.asFloatBuffer().put((FloatBuffer) entries);
+    } else if (entries instanceof IntBuffer) {
+      mapped.asIntBuffer().put((IntBuffer) entries);
+    } else if (entries instanceof ShortBuffer) {
+      mapped.asShortBuffer().put((ShortBuffer) entries);
+    } else if (entries instanceof ByteBuffer) {
+      mapped.put((ByteBuffer) entries);
+    } else {
+      throw new IllegalArgumentException("Unsupported entries buffer type");
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.ar.core.examples.java.common.samplerender;
 
+import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES11Ext;
@@ -22,7 +23,9 @@ import android.opengl.GLES30;
 import android.util.Log;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 /** A GPU-side texture. */
 public class Texture implements Closeable {
@@ -30,6 +33,8 @@ public class Texture implements Closeable {
 
   private final int[] textureId = {0};
   private final Target target;
+  private final GlState glState;
+  private final GpuResourceRegistry resourceRegistry;
 
   /**
    * Describes the way the texture's edges are rendered.
@@ -98,23 +103,27 @@ public class Texture implements Closeable {
 
   public Texture(SampleRender render, Target target, WrapMode wrapMode, boolean useMipmaps) {
     this.target = target;
+    this.glState = render.getGlState();
+    this.resourceRegistry = render.getResourceRegistry();
 
-    GLES30.glGenTextures(1, textureId, 0);
+    GlBackend.get().glGenTextures(1, textureId, 0);
     GLError.maybeThrowGLException("Texture creation failed", "glGenTextures");
+    // Storage is reported once it is allocated; external textures have none of their own.
+    resourceRegistry.register(this, GpuResourceRegistry.Category.TEXTURE, /*bytes=*/ 0);
 
     int minFilter = useMipmaps ? GLES30.GL_LINEAR_MIPMAP_LINEAR : GLES30.GL_LINEAR;
 
     try {
-      GLES30.glBindTexture(target.glesEnum, textureId[0]);
-      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_MIN_FILTER, minFilter);
+      glState.bindTextureForUpdate(target.glesEnum, textureId[0]);
+      GlBackend.get().glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_MIN_FILTER, minFilter);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
-      GLES30.glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR);
+      GlBackend.get()
+          .glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
 
-      GLES30.glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_WRAP_S, wrapMode.glesEnum);
+      GlBackend.get().glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_WRAP_S, wrapMode.glesEnum);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
-      GLES30.glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_WRAP_T, wrapMode.glesEnum);
+      GlBackend.get().glTexParameteri(target.glesEnum, GLES30.GL_TEXTURE_WRAP_T, wrapMode.glesEnum);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
     } catch (Throwable t) {
       close();
@@ -122,58 +131,203 @@ public class Texture implements Closeable {
     }
   }
 
-  /** Create a texture from the given asset file name. */
+  /**
+   * Create a texture from the given asset file name.
+   *
+   * <p>If the build compressed the image into {@code <name>.astc.ktx} or {@code <name>.etc2.ktx}
+   * next to it, the ASTC file is used where the device supports ASTC, otherwise the ETC2 file,
+   * which every OpenGL ES 3.0 device supports. Those load with their own mip levels and take a
+   * quarter or less of the memory of the decoded image.
+   */
   public static Texture createFromAsset(
       SampleRender render, String assetFileName, WrapMode wrapMode, ColorFormat colorFormat)
       throws IOException {
-    Texture texture = new Texture(render, Target.TEXTURE_2D, wrapMode);
-    Bitmap bitmap = null;
+    return createFromImage(
+        render,
+        decodeAsset(render.getAssets(), assetFileName, isAstcSupported()),
+        wrapMode,
+        colorFormat);
+  }
+
+  /**
+   * Returns whether the current context decodes ASTC textures. Must be called on the GL thread.
+   */
+  public static boolean isAstcSupported() {
+    String extensions = GlBackend.get().glGetString(GLES30.GL_EXTENSIONS);
+    GLError.maybeThrowGLException("Failed to query extensions", "glGetString");
+    return extensions != null && extensions.contains("GL_KHR_texture_compression_astc_ldr");
+  }
+
+  /**
+   * An image ready for {@link #createFromImage}: either decoded RGBA pixels, or the mip levels of a
+   * compressed texture.
+   */
+  /* package-private */
+  static final class Image {
+    final int width;
+    final int height;
+    // The pixels of uncompressed images, null for compressed ones.
+    final ByteBuffer pixels;
+    // The internal format and mip levels of compressed images, 0 and null for uncompressed ones.
+    final int compressedFormat;
+    final List<ByteBuffer> levels;
+    // The buffer holding the data, returned to the DirectBufferPool once uploaded.
+    final ByteBuffer stagingBuffer;
+
+    private Image(int width, int height, ByteBuffer pixels) {
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+      this.compressedFormat = 0;
+      this.levels = null;
+      this.stagingBuffer = pixels;
+    }
+
+    /* package-private */
+    Image(
+        int width,
+        int height,
+        int compressedFormat,
+        List<ByteBuffer> levels,
+        ByteBuffer stagingBuffer) {
+      this.width = width;
+      this.height = height;
+      this.pixels = null;
+      this.compressedFormat = compressedFormat;
+      this.levels = levels;
+      this.stagingBuffer = stagingBuffer;
+    }
+
+    boolean isCompressed() {
+      return levels != null;
+    }
+  }
+
+  /**
+   * Reads an image asset, preferring its compressed forms as described in {@link
+   * #createFromAsset}. This does not need the OpenGL context, so may run on any thread.
+   */
+  /* package-private */
+  static Image decodeAsset(AssetManager assets, String assetFileName, boolean astcSupported)
+      throws IOException {
+    int extension = assetFileName.lastIndexOf('.');
+    String baseName = extension > 0 ? assetFileName.substring(0, extension) : assetFileName;
+    if (astcSupported) {
+      String astcFileName = baseName + ".astc.ktx";
+      ByteBuffer astc = Assets.read(assets, astcFileName);
+      if (astc != null) {
+        return Ktx.parse(astc, astcFileName);
+      }
+    }
+    String etc2FileName = baseName + ".etc2.ktx";
+    ByteBuffer etc2 = Assets.read(assets, etc2FileName);
+    if (etc2 != null) {
+      return Ktx.parse(etc2, etc2FileName);
+    }
+    return decodeAsset(assets, assetFileName);
+  }
+
+  /** Decodes an image asset into a direct buffer. May run on any thread. */
+  /* package-private */
+  static Image decodeAsset(AssetManager assets, String assetFileName) throws IOException {
+    // The following lines up to glTexImage2D could technically be replaced with
+    // GLUtils.texImage2d, but this method does not allow for loading sRGB images.
+
+    // Load and convert the bitmap and copy its contents to a direct ByteBuffer. Despite its name,
+    // the ARGB_8888 config is actually stored in RGBA order.
+    Bitmap bitmap;
+    try (InputStream input = assets.open(assetFileName)) {
+      bitmap = BitmapFactory.decodeStream(input);
+    }
+    if (bitmap == null) {
+      throw new IOException("Failed to decode " + assetFileName);
+    }
+    bitmap = convertBitmapToConfig(bitmap, Bitmap.Config.ARGB_8888);
     try {
-      // The following lines up to glTexImage2D could technically be replaced with
-      // GLUtils.texImage2d, but this method does not allow for loading sRGB images.
-
-      // Load and convert the bitmap and copy its contents to a direct ByteBuffer. Despite its name,
-      // the ARGB_8888 config is actually stored in RGBA order.
-      bitmap =
-          convertBitmapToConfig(
-              BitmapFactory.decodeStream(render.getAssets().open(assetFileName)),
-              Bitmap.Config.ARGB_8888);
-      ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.getByteCount());
+      ByteBuffer buffer = DirectBufferPool.acquire(bitmap.getByteCount());
       bitmap.copyPixelsToBuffer(buffer);
       buffer.rewind();
+      return new Image(bitmap.getWidth(), bitmap.getHeight(), buffer);
+    } finally {
+      bitmap.recycle();
+    }
+  }
 
-      GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glTexImage2D(
+  /** Create a texture from a read image, see {@link #decodeAsset}. */
+  /* package-private */
+  static Texture createFromImage(
+      SampleRender render, Image image, WrapMode wrapMode, ColorFormat colorFormat) {
+    Texture texture = new Texture(render, Target.TEXTURE_2D, wrapMode);
+    try {
+      texture.glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, texture.getTextureId());
+      if (image.isCompressed()) {
+        uploadCompressedLevels(image, colorFormat);
+        long bytes = 0;
+        for (ByteBuffer level : image.levels) {
+          bytes += level.remaining();
+        }
+        texture.resourceRegistry.setBytes(texture, bytes);
+        return texture;
+      }
+      GlBackend.get().glTexImage2D(
           GLES30.GL_TEXTURE_2D,
           /*level=*/ 0,
           colorFormat.glesEnum,
-          bitmap.getWidth(),
-          bitmap.getHeight(),
+          image.width,
+          image.height,
           /*border=*/ 0,
           GLES30.GL_RGBA,
           GLES30.GL_UNSIGNED_BYTE,
-          buffer);
+          image.pixels);
       GLError.maybeThrowGLException("Failed to populate texture data", "glTexImage2D");
-      GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_2D);
+      GlBackend.get().glGenerateMipmap(GLES30.GL_TEXTURE_2D);
       GLError.maybeThrowGLException("Failed to generate mipmaps", "glGenerateMipmap");
+      texture.resourceRegistry.setBytes(
+          texture,
+          GpuResourceRegistry.estimateTextureBytes(
+              colorFormat.glesEnum, image.width, image.height, /*mipmapped=*/ true));
     } catch (Throwable t) {
       texture.close();
       throw t;
     } finally {
-      if (bitmap != null) {
-        bitmap.recycle();
-      }
+      DirectBufferPool.release(image.stagingBuffer);
     }
     return texture;
   }
 
+  private static void uploadCompressedLevels(Image image, ColorFormat colorFormat) {
+    int internalFormat = image.compressedFormat;
+    if (colorFormat == ColorFormat.SRGB) {
+      internalFormat = Ktx.toSrgb(internalFormat);
+    }
+    int levelCount = image.levels.size();
+    for (int level = 0; level < levelCount; ++level) {
+      ByteBuffer data = image.levels.get(level);
+      GlBackend.get().glCompressedTexImage2D(
+          GLES30.GL_TEXTURE_2D,
+          level,
+          internalFormat,
+          Math.max(1, image.width >> level),
+          Math.max(1, image.height >> level),
+          /*border=*/ 0,
+          data.remaining(),
+          data);
+      GLError.maybeThrowGLException("Failed to populate texture data", "glCompressedTexImage2D");
+    }
+    // Files without a full chain stop sampling at their last level instead of being incomplete.
+    GlBackend.get()
+        .glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAX_LEVEL, levelCount - 1);
+    GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
+  }
+
   @Override
   public void close() {
     if (textureId[0] != 0) {
-      GLES30.glDeleteTextures(1, textureId, 0);
+      glState.onTextureDeleted(textureId[0]);
+      GlBackend.get().glDeleteTextures(1, textureId, 0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free texture", "glDeleteTextures");
       textureId[0] = 0;
+      resourceRegistry.unregister(this);
     }
   }
 
@@ -187,6 +341,12 @@ public class Texture implements Closeable {
     return target;
   }
 
+  /** Marks the texture as drawn with in the current frame, see {@link GpuResourceRegistry}. */
+  /* package-private */
+  void onUsed() {
+    resourceRegistry.touch(this);
+  }
+
   private static Bitmap convertBitmapToConfig(Bitmap bitmap, Bitmap.Config config) {
     // We use this method instead of BitmapFactory.Options.outConfig to support a minimum of Android
     // API level 24.
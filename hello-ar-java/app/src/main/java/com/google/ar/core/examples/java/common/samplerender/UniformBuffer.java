@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import android.util.Log;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A block of uniform values stored GPU-side, shared by every {@link Shader} that declares a
+ * matching uniform block.
+ *
+ * <p>Values are written into a CPU-side copy at the byte offsets given by the {@code std140}
+ * layout of the block, and uploaded with a single {@code glBufferSubData} the next time a shader
+ * using the block is drawn. Writing the same block from several shaders thus costs one upload
+ * instead of one {@code glUniform*} call per shader and value.
+ *
+ * @see <a
+ *     href="https://www.khronos.org/registry/OpenGL/specs/es/3.0/es_spec_3.0.pdf#page=69">std140
+ *     layout rules</a>
+ */
+public class UniformBuffer implements Closeable {
+  private static final String TAG = UniformBuffer.class.getSimpleName();
+
+  // std140 rounds up the stride of vec3 array elements to that of a vec4.
+  private static final int VEC3_ARRAY_STRIDE = 16;
+
+  private final int bindingPoint;
+  private final int[] bufferId = {0};
+  private final ByteBuffer data;
+  private final GpuResourceRegistry resourceRegistry;
+  private boolean dirty = true;
+  // The state cache this buffer was last bound through, which must forget it once deleted.
+  private GlState glState;
+
+  /**
+   * Constructs a zero-filled {@link UniformBuffer}.
+   *
+   * @param bindingPoint The uniform buffer binding point shaders use to find this buffer
+   * @param sizeInBytes The size of the uniform block, as laid out by {@code std140}
+   */
+  public UniformBuffer(SampleRender render, int bindingPoint, int sizeInBytes) {
+    this(render.getResourceRegistry(), bindingPoint, sizeInBytes);
+  }
+
+  /* package-private */
+  UniformBuffer(GpuResourceRegistry resourceRegistry, int bindingPoint, int sizeInBytes) {
+    this.bindingPoint = bindingPoint;
+    data = ByteBuffer.allocateDirect(sizeInBytes).order(ByteOrder.nativeOrder());
+    this.resourceRegistry = resourceRegistry;
+
+    try {
+      GlBackend.get().glGenBuffers(1, bufferId, 0);
+      GLError.maybeThrowGLException("Failed to generate buffers", "glGenBuffers");
+
+      GlBackend.get().glBindBuffer(GLES30.GL_UNIFORM_BUFFER, bufferId[0]);
+      GLError.maybeThrowGLException("Failed to bind uniform buffer", "glBindBuffer");
+
+      GlBackend.get()
+          .glBufferData(GLES30.GL_UNIFORM_BUFFER, sizeInBytes, data, GLES30.GL_DYNAMIC_DRAW);
+      GLError.maybeThrowGLException("Failed to populate uniform buffer", "glBufferData");
+      resourceRegistry.register(this, GpuResourceRegistry.Category.BUFFER, sizeInBytes);
+    } catch (Throwable t) {
+      close();
+      throw t;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (bufferId[0] != 0) {
+      if (glState != null) {
+        glState.onBufferDeleted(bufferId[0]);
+      }
+      GlBackend.get().glDeleteBuffers(1, bufferId, 0);
+      GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free uniform buffer", "glDeleteBuffers");
+      bufferId[0] = 0;
+      resourceRegistry.unregister(this);
+    }
+  }
+
+  /** Sets a {@code float} member at the given byte offset. */
+  public UniformBuffer setFloat(int offset, float v0) {
+    data.putFloat(offset, v0);
+    dirty = true;
+    return this;
+  }
+
+  /** Sets a {@code bool} member at the given byte offset. */
+  public UniformBuffer setBool(int offset, boolean v0) {
+    return setInt(offset, v0 ? 1 : 0);
+  }
+
+  /** Sets an {@code int} member at the given byte offset. */
+  public UniformBuffer setInt(int offset, int v0) {
+    data.putInt(offset, v0);
+    dirty = true;
+    return this;
+  }
+
+  /** Sets a {@code vec3} member at the given byte offset. */
+  public UniformBuffer setVec3(int offset, float[] values) {
+    if (values.length != 3) {
+      throw new IllegalArgumentException("Value array length must be 3");
+    }
+    return putFloats(offset, values, 0, 3);
+  }
+
+  /** Sets a {@code vec4} member at the given byte offset. */
+  public UniformBuffer setVec4(int offset, float[] values) {
+    if (values.length != 4) {
+      throw new IllegalArgumentException("Value array length must be 4");
+    }
+    return putFloats(offset, values, 0, 4);
+  }
+
+  /** Sets a {@code mat4} member at the given byte offset. */
+  public UniformBuffer setMat4(int offset, float[] values) {
+    if (values.length != 16) {
+      throw new IllegalArgumentException("Value array length must be 16 (4x4)");
+    }
+    return putFloats(offset, values, 0, 16);
+  }
+
+  /**
+   * Sets a {@code vec3} array member at the given byte offset. The values are tightly packed, and
+   * are padded to the {@code std140} array stride here.
+   */
+  public UniformBuffer setVec3Array(int offset, float[] values) {
+    if (values.length % 3 != 0) {
+      throw new IllegalArgumentException("Value array length must be divisible by 3");
+    }
+    for (int i = 0; i < values.length / 3; ++i) {
+      putFloats(offset + i * VEC3_ARRAY_STRIDE, values, i * 3, 3);
+    }
+    return this;
+  }
+
+  /* package-private */
+  int getBindingPoint() {
+    return bindingPoint;
+  }
+
+  /* package-private */
+  ByteBuffer getData() {
+    return data;
+  }
+
+  /**
+   * Uploads the values written since the last upload and binds the buffer to its binding point.
+   * Called by {@link Shader#lowLevelUse} for each of its uniform blocks.
+   */
+  /* package-private */
+  void lowLevelUse(GlState glState) {
+    if (bufferId[0] == 0) {
+      throw new IllegalStateException("Attempted to use freed uniform buffer");
+    }
+    if (dirty) {
+      GlBackend.get().glBindBuffer(GLES30.GL_UNIFORM_BUFFER, bufferId[0]);
+      GLError.maybeThrowGLException("Failed to bind uniform buffer", "glBindBuffer");
+      data.rewind();
+      GlBackend.get().glBufferSubData(GLES30.GL_UNIFORM_BUFFER, 0, data.capacity(), data);
+      GLError.maybeThrowGLException("Failed to populate uniform buffer", "glBufferSubData");
+      dirty = false;
+    }
+    this.glState = glState;
+    glState.bindUniformBufferBase(bindingPoint, bufferId[0]);
+  }
+
+  private UniformBuffer putFloats(int offset, float[] values, int start, int count) {
+    for (int i = 0; i < count; ++i) {
+      data.putFloat(offset + i * GpuBuffer.FLOAT_SIZE, values[start + i]);
+    }
+    dirty = true;
+    return this;
+  }
+}
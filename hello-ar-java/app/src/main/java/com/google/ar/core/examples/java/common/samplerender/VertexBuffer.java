@@ -17,6 +17,8 @@ package com.google.ar.core.examples.java.common.samplerender;
 
 import android.opengl.GLES30;
 import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
 /**
@@ -25,12 +27,22 @@ import java.nio.FloatBuffer;
  * <p>One or more {@link VertexBuffer}s are used when constructing a {@link Mesh} to describe vertex
  * attribute data; for example, local coordinates, texture coordinates, vertex normals, etc.
  *
+ * <p>A {@link VertexBuffer} constructed with a {@link VertexLayout} holds several interleaved
+ * attributes, possibly in compact formats such as half floats.
+ *
+ * <p>A {@link VertexBuffer} constructed with a non-zero divisor holds per-instance data instead,
+ * such as the model matrices of {@link SampleRender#drawInstanced}.
+ *
  * @see <a
  *     href="https://www.khronos.org/registry/OpenGL-Refpages/es3.0/html/glVertexAttribPointer.xhtml">glVertexAttribPointer</a>
  */
 public class VertexBuffer implements Closeable {
   private final GpuBuffer buffer;
+  private final GpuResourceRegistry resourceRegistry;
+  private final VertexLayout layout;
+  // Entries are floats, or bytes for buffers constructed with a layout.
   private final int numberOfEntriesPerVertex;
+  private final int divisor;
 
   /**
    * Construct a {@link VertexBuffer} populated with initial data.
@@ -47,14 +59,102 @@ public class VertexBuffer implements Closeable {
    * instead.
    */
   public VertexBuffer(SampleRender render, int numberOfEntriesPerVertex, FloatBuffer entries) {
+    this(render, numberOfEntriesPerVertex, entries, /*divisor=*/ 0);
+  }
+
+  /**
+   * Construct a {@link VertexBuffer} populated with initial data, advancing to its next entry once
+   * every {@code divisor} instances instead of once per vertex. A {@code divisor} of 0 advances per
+   * vertex, as with {@link #VertexBuffer(SampleRender, int, FloatBuffer)}.
+   *
+   * <p>Up to 4 entries per vertex are read as one attribute. Larger entries, such as {@code mat4}
+   * attributes with 16 entries, are read as consecutive attributes of 4 entries each.
+   *
+   * @see <a
+   *     href="https://www.khronos.org/registry/OpenGL-Refpages/es3.0/html/glVertexAttribDivisor.xhtml">glVertexAttribDivisor</a>
+   */
+  public VertexBuffer(
+      SampleRender render, int numberOfEntriesPerVertex, FloatBuffer entries, int divisor) {
+    this(
+        render,
+        createFloatLayout(numberOfEntriesPerVertex),
+        numberOfEntriesPerVertex,
+        GpuBuffer.FLOAT_SIZE,
+        entries,
+        divisor,
+        /*streaming=*/ false);
+  }
+
+  /**
+   * Construct a {@link VertexBuffer} of interleaved attributes populated with initial data, such as
+   * data packed by {@link VertexLayout#pack}. The attributes take consecutive locations in the
+   * order of the layout, which must not be changed afterwards.
+   *
+   * <p>The GPU buffer will be filled with the data in the <i>direct</i> buffer {@code entries},
+   * whose size must be divisible by {@link VertexLayout#getStride}. The {@code entries} buffer may
+   * be null, in which case an empty buffer is constructed instead.
+   */
+  public VertexBuffer(SampleRender render, VertexLayout layout, ByteBuffer entries) {
+    this(
+        render,
+        layout,
+        layout.getStride(),
+        /*entrySize=*/ 1,
+        entries,
+        /*divisor=*/ 0,
+        /*streaming=*/ false);
+  }
+
+  private VertexBuffer(
+      SampleRender render,
+      VertexLayout layout,
+      int numberOfEntriesPerVertex,
+      int entrySize,
+      Buffer entries,
+      int divisor,
+      boolean streaming) {
+    if (layout.getAttributeCount() == 0) {
+      throw new IllegalArgumentException("Vertex layout must have at least one attribute");
+    }
+    if (divisor < 0) {
+      throw new IllegalArgumentException("Divisor must not be negative");
+    }
     if (entries != null && entries.limit() % numberOfEntriesPerVertex != 0) {
       throw new IllegalArgumentException(
           "If non-null, vertex buffer data must be divisible by the number of data points per"
               + " vertex");
     }
 
+    this.layout = layout;
     this.numberOfEntriesPerVertex = numberOfEntriesPerVertex;
-    buffer = new GpuBuffer(GLES30.GL_ARRAY_BUFFER, GpuBuffer.FLOAT_SIZE, entries);
+    this.divisor = divisor;
+    if (streaming) {
+      buffer = new StreamingGpuBuffer(render, GLES30.GL_ARRAY_BUFFER, entrySize);
+    } else {
+      buffer = new GpuBuffer(GLES30.GL_ARRAY_BUFFER, entrySize, entries);
+    }
+    resourceRegistry = render.getResourceRegistry();
+    resourceRegistry.register(
+        this, GpuResourceRegistry.Category.BUFFER, buffer.getAllocatedBytes());
+  }
+
+  /**
+   * Construct an empty {@link VertexBuffer} for data rewritten every frame, such as a point cloud.
+   *
+   * <p>Unlike other buffers, {@link #set} does not overwrite data the GPU may still be reading
+   * from an earlier frame, and so does not wait for it. Each frame's data is appended to a region
+   * of the buffer reserved for that frame, and draws read the data last set. The buffer may be set
+   * several times per frame, as long as each set is followed by the draws using it.
+   */
+  public static VertexBuffer createStreaming(SampleRender render, int numberOfEntriesPerVertex) {
+    return new VertexBuffer(
+        render,
+        createFloatLayout(numberOfEntriesPerVertex),
+        numberOfEntriesPerVertex,
+        GpuBuffer.FLOAT_SIZE,
+        /*entries=*/ null,
+        /*divisor=*/ 0,
+        /*streaming=*/ true);
   }
 
   /**
@@ -69,19 +169,33 @@ public class VertexBuffer implements Closeable {
    * <p>The {@code entries} buffer may be null, in which case the buffer will become empty.
    * Otherwise, the size of {@code entries} must be divisible by the number of entries per vertex
    * specified during construction.
+   *
+   * @return The byte offset of the data in the GPU buffer, which is 0 unless the buffer was created
+   *     with {@link #createStreaming}
    */
-  public void set(FloatBuffer entries) {
-    if (entries != null && entries.limit() % numberOfEntriesPerVertex != 0) {
-      throw new IllegalArgumentException(
-          "If non-null, vertex buffer data must be divisible by the number of data points per"
-              + " vertex");
+  public int set(FloatBuffer entries) {
+    if (!isFloat()) {
+      throw new IllegalStateException("Vertex buffer with a VertexLayout must be set with bytes");
     }
-    buffer.set(entries);
+    return setEntries(entries);
+  }
+
+  /**
+   * Populate a {@link VertexBuffer} constructed with a {@link VertexLayout} with new data, whose
+   * size must be divisible by {@link VertexLayout#getStride}. See {@link #set(FloatBuffer)}.
+   */
+  public int set(ByteBuffer entries) {
+    if (isFloat()) {
+      throw new IllegalStateException(
+          "Vertex buffer without a VertexLayout must be set with floats");
+    }
+    return setEntries(entries);
   }
 
   @Override
   public void close() {
     buffer.free();
+    resourceRegistry.unregister(this);
   }
 
   /* package-private */
@@ -89,13 +203,72 @@ public class VertexBuffer implements Closeable {
     return buffer.getBufferId();
   }
 
+  /* package-private */
+  VertexLayout getLayout() {
+    return layout;
+  }
+
+  /** Returns whether the entries are floats rather than bytes in a {@link VertexLayout}. */
+  /* package-private */
+  boolean isFloat() {
+    return buffer.getNumberOfBytesPerEntry() == GpuBuffer.FLOAT_SIZE;
+  }
+
   /* package-private */
   int getNumberOfEntriesPerVertex() {
     return numberOfEntriesPerVertex;
   }
 
+  /* package-private */
+  int getDivisor() {
+    return divisor;
+  }
+
+  /* package-private */
+  int getOffset() {
+    return buffer.getOffset();
+  }
+
   /* package-private */
   int getNumberOfVertices() {
     return buffer.getSize() / numberOfEntriesPerVertex;
   }
+
+  private int setEntries(Buffer entries) {
+    if (entries != null && entries.limit() % numberOfEntriesPerVertex != 0) {
+      throw new IllegalArgumentException(
+          "If non-null, vertex buffer data must be divisible by the number of data points per"
+              + " vertex");
+    }
+    buffer.set(entries);
+    resourceRegistry.setBytes(this, buffer.getAllocatedBytes());
+    return buffer.getOffset();
+  }
+
+  /** Marks the buffer as drawn from in the current frame, see {@link GpuResourceRegistry}. */
+  /* package-private */
+  void onUsed() {
+    resourceRegistry.touch(this);
+  }
+
+  /**
+   * Returns the layout of float vertex data, which is one attribute for up to 4 entries per vertex,
+   * or one attribute per 4 entries for matrices.
+   */
+  private static VertexLayout createFloatLayout(int numberOfEntriesPerVertex) {
+    if (numberOfEntriesPerVertex < 1
+        || (numberOfEntriesPerVertex > 4
+            && (numberOfEntriesPerVertex % 4 != 0 || numberOfEntriesPerVertex > 16))) {
+      throw new IllegalArgumentException(
+          "Number of entries per vertex must be at most 4, or a multiple of 4 up to 16");
+    }
+    VertexLayout layout = new VertexLayout();
+    if (numberOfEntriesPerVertex <= 4) {
+      return layout.addAttribute(VertexLayout.Format.FLOAT, numberOfEntriesPerVertex);
+    }
+    for (int column = 0; column < numberOfEntriesPerVertex / 4; ++column) {
+      layout.addAttribute(VertexLayout.Format.FLOAT, 4);
+    }
+    return layout;
+  }
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import android.opengl.GLES30;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the vertex attributes stored interleaved in one {@link VertexBuffer}, and their
+ * storage formats.
+ *
+ * <p>Attributes take consecutive attribute locations in the order they are added. Each attribute
+ * starts at a multiple of 4 bytes within the vertex, as recommended for OpenGL ES. Compact formats
+ * are converted to floats by the GPU, so shaders declare them as {@code float}, {@code vec2},
+ * etc. regardless of their storage format.
+ *
+ * @see <a
+ *     href="https://www.khronos.org/registry/OpenGL-Refpages/es3.0/html/glVertexAttribPointer.xhtml">glVertexAttribPointer</a>
+ */
+public class VertexLayout {
+  private static final int ALIGNMENT = 4;
+
+  /** The storage format of the components of an attribute. */
+  public enum Format {
+    /** 32-bit floats. */
+    FLOAT(GLES30.GL_FLOAT, 4, false),
+    /** 16-bit floats, with about 3 significant decimal digits. */
+    HALF_FLOAT(GLES30.GL_HALF_FLOAT, 2, false),
+    /** Signed bytes, normalized so that values in [-1, 1] map to [-127, 127]. */
+    SNORM8(GLES30.GL_BYTE, 1, true);
+
+    /* package-private */
+    final int glesEnum;
+
+    /* package-private */
+    final int size;
+
+    /* package-private */
+    final boolean normalized;
+
+    private Format(int glesEnum, int size, boolean normalized) {
+      this.glesEnum = glesEnum;
+      this.size = size;
+      this.normalized = normalized;
+    }
+  }
+
+  private final List<Format> formats = new ArrayList<>();
+  private final List<Integer> components = new ArrayList<>();
+  private final List<Integer> offsets = new ArrayList<>();
+  private int stride;
+
+  /**
+   * Appends an attribute of {@code numberOfComponents} components, between 1 and 4, stored in the
+   * given format.
+   */
+  public VertexLayout addAttribute(Format format, int numberOfComponents) {
+    if (numberOfComponents < 1 || numberOfComponents > 4) {
+      throw new IllegalArgumentException("Attributes must have between 1 and 4 components");
+    }
+    formats.add(format);
+    components.add(numberOfComponents);
+    offsets.add(stride);
+    stride += align(format.size * numberOfComponents);
+    return this;
+  }
+
+  /** Returns the number of bytes per vertex. */
+  public int getStride() {
+    return stride;
+  }
+
+  /**
+   * Interleaves per-attribute float data into a direct buffer in this layout, converting each
+   * component to its storage format. The buffer comes from the {@link DirectBufferPool}; release it
+   * once uploaded.
+   *
+   * @param attributes One buffer per attribute, in the order they were added, each holding {@code
+   *     numberOfComponents} floats per vertex
+   */
+  public ByteBuffer pack(FloatBuffer... attributes) {
+    if (attributes.length != formats.size()) {
+      throw new IllegalArgumentException(
+          "Expected " + formats.size() + " attributes, got " + attributes.length);
+    }
+    int numberOfVertices = attributes.length == 0 ? 0 : attributes[0].limit() / components.get(0);
+    for (int i = 0; i < attributes.length; ++i) {
+      if (attributes[i].limit() != numberOfVertices * components.get(i)) {
+        throw new IllegalArgumentException("Attributes have mismatching numbers of vertices");
+      }
+    }
+
+    ByteBuffer packed = DirectBufferPool.acquire(numberOfVertices * stride);
+    for (int vertex = 0; vertex < numberOfVertices; ++vertex) {
+      for (int i = 0; i < attributes.length; ++i) {
+        int position = vertex * stride + offsets.get(i);
+        int numberOfComponents = components.get(i);
+        for (int c = 0; c < numberOfComponents; ++c) {
+          float value = attributes[i].get(vertex * numberOfComponents + c);
+          switch (formats.get(i)) {
+            case FLOAT:
+              packed.putFloat(position, value);
+              position += 4;
+              break;
+            case HALF_FLOAT:
+              packed.putShort(position, toHalf(value));
+              position += 2;
+              break;
+            case SNORM8:
+              packed.put(position, toSnorm8(value));
+              position += 1;
+              break;
+          }
+        }
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Reads one attribute of the vertices packed in {@code packed} back to floats, such as the
+   * positions of a mesh read from a file. The buffer holds whole vertices from position 0 to its
+   * limit.
+   */
+  /* package-private */
+  float[] unpack(ByteBuffer packed, int attribute) {
+    int numberOfVertices = packed.limit() / stride;
+    int numberOfComponents = components.get(attribute);
+    Format format = formats.get(attribute);
+    float[] values = new float[numberOfVertices * numberOfComponents];
+    for (int vertex = 0; vertex < numberOfVertices; ++vertex) {
+      int position = vertex * stride + offsets.get(attribute);
+      for (int c = 0; c < numberOfComponents; ++c) {
+        float value = 0f;
+        switch (format) {
+          case FLOAT:
+            value = packed.getFloat(position);
+            position += 4;
+            break;
+          case HALF_FLOAT:
+            value = fromHalf(packed.getShort(position));
+            position += 2;
+            break;
+          case SNORM8:
+            value = Math.max(-1f, packed.get(position) / 127f);
+            position += 1;
+            break;
+        }
+        values[vertex * numberOfComponents + c] = value;
+      }
+    }
+    return values;
+  }
+
+  /* package-private */
+  int getAttributeCount() {
+    return formats.size();
+  }
+
+  /* package-private */
+  Format getFormat(int attribute) {
+    return formats.get(attribute);
+  }
+
+  /* package-private */
+  int getNumberOfComponents(int attribute) {
+    return components.get(attribute);
+  }
+
+  /* package-private */
+  int getOffset(int attribute) {
+    return offsets.get(attribute);
+  }
+
+  /**
+   * Converts a float to the bits of the nearest IEEE 754 half-precision float. Values too large
+   * become infinity, and values too small for a normal half become subnormal or zero.
+   */
+  /* package-private */
+  static short toHalf(float value) {
+    int bits = Float.floatToIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+    int mantissa = bits & 0x7FFFFF;
+
+    if (exponent >= 0x1F) {
+      // Overflow, infinity or NaN. NaN keeps a mantissa bit so that it stays NaN.
+      boolean isNaN = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+      return (short) (sign | 0x7C00 | (isNaN ? 0x200 : 0));
+    }
+    if (exponent <= 0) {
+      if (exponent < -10) {
+        return (short) sign;
+      }
+      // Subnormal half: shift in the implicit leading bit, then round to nearest.
+      mantissa |= 0x800000;
+      int shift = 14 - exponent;
+      int half = mantissa >> shift;
+      if (((mantissa >> (shift - 1)) & 1) != 0) {
+        half++;
+      }
+      return (short) (sign | half);
+    }
+    // Round to nearest; a carry out of the mantissa correctly increments the exponent.
+    int half = sign | (exponent << 10) | (mantissa >> 13);
+    if ((mantissa & 0x1000) != 0) {
+      half++;
+    }
+    return (short) half;
+  }
+
+  /** Converts the bits of an IEEE 754 half-precision float to a float. */
+  /* package-private */
+  static float fromHalf(short half) {
+    int sign = (half & 0x8000) << 16;
+    int exponent = (half >>> 10) & 0x1F;
+    int mantissa = half & 0x3FF;
+    if (exponent == 0x1F) {
+      // Infinity or NaN.
+      return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+    }
+    if (exponent == 0) {
+      // Zero or subnormal, whose value is the mantissa times 2^-24.
+      float value = mantissa * (1f / (1 << 24));
+      return sign == 0 ? value : -value;
+    }
+    return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+  }
+
+  /* package-private */
+  static byte toSnorm8(float value) {
+    return (byte) Math.round(Math.max(-1f, Math.min(1f, value)) * 127f);
+  }
+
+  private static int align(int bytes) {
+    return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+}
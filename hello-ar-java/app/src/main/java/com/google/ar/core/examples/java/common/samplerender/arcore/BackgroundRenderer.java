@@ -19,26 +19,46 @@ import android.media.Image;
 import android.opengl.GLES30;
 import com.google.ar.core.Coordinates2d;
 import com.google.ar.core.Frame;
+import com.google.ar.core.examples.java.common.samplerender.AssetLoader;
 import com.google.ar.core.examples.java.common.samplerender.Framebuffer;
+import com.google.ar.core.examples.java.common.samplerender.GlBackend;
+import com.google.ar.core.examples.java.common.samplerender.GlState;
+import com.google.ar.core.examples.java.common.samplerender.GpuResourceRegistry;
 import com.google.ar.core.examples.java.common.samplerender.Mesh;
 import com.google.ar.core.examples.java.common.samplerender.SampleRender;
 import com.google.ar.core.examples.java.common.samplerender.Shader;
+import com.google.ar.core.examples.java.common.samplerender.ShaderCache;
 import com.google.ar.core.examples.java.common.samplerender.Texture;
 import com.google.ar.core.examples.java.common.samplerender.VertexBuffer;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * This class both renders the AR camera background and composes the a scene foreground. The camera
  * background can be rendered as either camera image data or camera depth data. The virtual scene
  * can be composited with or without depth occlusion.
  */
-public class BackgroundRenderer {
+public class BackgroundRenderer implements Closeable {
   private static final String TAG = BackgroundRenderer.class.getSimpleName();
 
+  private static final String CAMERA_VERTEX_SHADER = "shaders/background_show_camera.vert";
+  private static final String CAMERA_FRAGMENT_SHADER = "shaders/background_show_camera.frag";
+  private static final String DEPTH_VERTEX_SHADER =
+      "shaders/background_show_depth_color_visualization.vert";
+  private static final String DEPTH_FRAGMENT_SHADER =
+      "shaders/background_show_depth_color_visualization.frag";
+  private static final String OCCLUSION_VERTEX_SHADER = "shaders/occlusion.vert";
+  private static final String OCCLUSION_FRAGMENT_SHADER = "shaders/occlusion.frag";
+  private static final Map<String, String> OCCLUSION_DEFINES =
+      Collections.singletonMap("USE_OCCLUSION", "1");
+  private static final Map<String, String> NO_OCCLUSION_DEFINES =
+      Collections.singletonMap("USE_OCCLUSION", "0");
+
   // components_per_vertex * number_of_vertices * float_size
   private static final int COORDS_BUFFER_SIZE = 2 * 4 * 4;
 
@@ -62,7 +82,10 @@ public class BackgroundRenderer {
   private final FloatBuffer cameraTexCoords =
       ByteBuffer.allocateDirect(COORDS_BUFFER_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
 
+  private final GlState glState;
+  private final GpuResourceRegistry resourceRegistry;
   private final Mesh mesh;
+  private final VertexBuffer[] vertexBuffers;
   private final VertexBuffer cameraTexCoordsVertexBuffer;
   private Shader backgroundShader;
   private Shader occlusionShader;
@@ -79,6 +102,8 @@ public class BackgroundRenderer {
    * SampleRender.Renderer#onSurfaceCreated()}.
    */
   public BackgroundRenderer(SampleRender render) {
+    glState = render.getGlState();
+    resourceRegistry = render.getResourceRegistry();
     cameraColorTexture =
         new Texture(
             render,
@@ -101,75 +126,68 @@ public class BackgroundRenderer {
         new VertexBuffer(render, /*numberOfEntriesPerVertex=*/ 2, /*entries=*/ null);
     VertexBuffer virtualSceneTexCoordsVertexBuffer =
         new VertexBuffer(render, /* numberOfEntriesPerVertex=*/ 2, VIRTUAL_SCENE_TEX_COORDS_BUFFER);
-    VertexBuffer[] vertexBuffers = {
-      screenCoordsVertexBuffer, cameraTexCoordsVertexBuffer, virtualSceneTexCoordsVertexBuffer,
-    };
+    vertexBuffers =
+        new VertexBuffer[] {
+          screenCoordsVertexBuffer, cameraTexCoordsVertexBuffer, virtualSceneTexCoordsVertexBuffer,
+        };
     mesh =
         new Mesh(render, Mesh.PrimitiveMode.TRIANGLE_STRIP, /*indexBuffer=*/ null, vertexBuffers);
   }
 
+  /**
+   * Compiles the shader variants of both depth settings on the background threads of {@code
+   * loader}, so that changing them later does not stall the GL thread. Must be called on the GL
+   * thread.
+   */
+  public void prewarmShaders(AssetLoader loader) {
+    loader.prewarmShader(CAMERA_VERTEX_SHADER, CAMERA_FRAGMENT_SHADER, /*defines=*/ null);
+    loader.prewarmShader(DEPTH_VERTEX_SHADER, DEPTH_FRAGMENT_SHADER, /*defines=*/ null);
+    loader.prewarmShader(OCCLUSION_VERTEX_SHADER, OCCLUSION_FRAGMENT_SHADER, OCCLUSION_DEFINES);
+    loader.prewarmShader(OCCLUSION_VERTEX_SHADER, OCCLUSION_FRAGMENT_SHADER, NO_OCCLUSION_DEFINES);
+  }
+
   /**
    * Sets whether the background camera image should be replaced with a depth visualization instead.
-   * This reloads the corresponding shader code, and must be called on the GL thread.
+   * This selects the corresponding shader variant from the {@link ShaderCache}, compiling it unless
+   * it was prewarmed, and must be called on the GL thread.
    */
   public void setUseDepthVisualization(SampleRender render, boolean useDepthVisualization)
       throws IOException {
-    if (backgroundShader != null) {
-      if (this.useDepthVisualization == useDepthVisualization) {
-        return;
-      }
-      backgroundShader.close();
-      backgroundShader = null;
-      this.useDepthVisualization = useDepthVisualization;
+    if (backgroundShader != null && this.useDepthVisualization == useDepthVisualization) {
+      return;
     }
+    ShaderCache shaderCache = render.getShaderCache();
     if (useDepthVisualization) {
       backgroundShader =
-          Shader.createFromAssets(
-                  render,
-                  "shaders/background_show_depth_color_visualization.vert",
-                  "shaders/background_show_depth_color_visualization.frag",
-                  /*defines=*/ null)
-              .setTexture("u_CameraDepthTexture", cameraDepthTexture)
-              .setDepthTest(false)
-              .setDepthWrite(false);
+          shaderCache.getShader(DEPTH_VERTEX_SHADER, DEPTH_FRAGMENT_SHADER, /*defines=*/ null);
     } else {
       backgroundShader =
-          Shader.createFromAssets(
-                  render,
-                  "shaders/background_show_camera.vert",
-                  "shaders/background_show_camera.frag",
-                  /*defines=*/ null)
-              .setTexture("u_CameraColorTexture", cameraColorTexture)
-              .setDepthTest(false)
-              .setDepthWrite(false);
+          shaderCache.getShader(CAMERA_VERTEX_SHADER, CAMERA_FRAGMENT_SHADER, /*defines=*/ null);
     }
+    backgroundShader.setDepthTest(false).setDepthWrite(false);
+    this.useDepthVisualization = useDepthVisualization;
   }
 
   /**
-   * Sets whether to use depth for occlusion. This reloads the shader code with new {@code
-   * #define}s, and must be called on the GL thread.
+   * Sets whether to use depth for occlusion. This selects the shader variant with the
+   * corresponding {@code #define}s from the {@link ShaderCache}, compiling it unless it was
+   * prewarmed, and must be called on the GL thread.
    */
   public void setUseOcclusion(SampleRender render, boolean useOcclusion) throws IOException {
-    if (occlusionShader != null) {
-      if (this.useOcclusion == useOcclusion) {
-        return;
-      }
-      occlusionShader.close();
-      occlusionShader = null;
-      this.useOcclusion = useOcclusion;
+    if (occlusionShader != null && this.useOcclusion == useOcclusion) {
+      return;
     }
-    HashMap<String, String> defines = new HashMap<>();
-    defines.put("USE_OCCLUSION", useOcclusion ? "1" : "0");
     occlusionShader =
-        Shader.createFromAssets(render, "shaders/occlusion.vert", "shaders/occlusion.frag", defines)
+        render
+            .getShaderCache()
+            .getShader(
+                OCCLUSION_VERTEX_SHADER,
+                OCCLUSION_FRAGMENT_SHADER,
+                useOcclusion ? OCCLUSION_DEFINES : NO_OCCLUSION_DEFINES)
             .setDepthTest(false)
             .setDepthWrite(false)
             .setBlend(Shader.BlendFactor.SRC_ALPHA, Shader.BlendFactor.ONE_MINUS_SRC_ALPHA);
-    if (useOcclusion) {
-      occlusionShader
-          .setTexture("u_CameraDepthTexture", cameraDepthTexture)
-          .setFloat("u_DepthAspectRatio", aspectRatio);
-    }
+    this.useOcclusion = useOcclusion;
   }
 
   /**
@@ -194,8 +212,8 @@ public class BackgroundRenderer {
   /** Update depth texture with Image contents. */
   public void updateCameraDepthTexture(Image image) {
     // SampleRender abstraction leaks here
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, cameraDepthTexture.getTextureId());
-    GLES30.glTexImage2D(
+    glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, cameraDepthTexture.getTextureId());
+    GlBackend.get().glTexImage2D(
         GLES30.GL_TEXTURE_2D,
         0,
         GLES30.GL_RG8,
@@ -205,10 +223,11 @@ public class BackgroundRenderer {
         GLES30.GL_RG,
         GLES30.GL_UNSIGNED_BYTE,
         image.getPlanes()[0].getBuffer());
-    if (useOcclusion) {
-      aspectRatio = (float) image.getWidth() / (float) image.getHeight();
-      occlusionShader.setFloat("u_DepthAspectRatio", aspectRatio);
-    }
+    resourceRegistry.setBytes(
+        cameraDepthTexture,
+        GpuResourceRegistry.estimateTextureBytes(
+            GLES30.GL_RG8, image.getWidth(), image.getHeight(), /*mipmapped=*/ false));
+    aspectRatio = (float) image.getWidth() / (float) image.getHeight();
   }
 
   /**
@@ -218,6 +237,12 @@ public class BackgroundRenderer {
    * accurately follow static physical objects.
    */
   public void drawBackground(SampleRender render) {
+    // The variants are shared through the shader cache, so their textures are set on every draw.
+    if (useDepthVisualization) {
+      backgroundShader.setTexture("u_CameraDepthTexture", cameraDepthTexture);
+    } else {
+      backgroundShader.setTexture("u_CameraColorTexture", cameraColorTexture);
+    }
     render.draw(mesh, backgroundShader);
   }
 
@@ -228,6 +253,11 @@ public class BackgroundRenderer {
    * <p>Virtual content should be rendered using the matrices provided by {@link
    * com.google.ar.core.Camera#getViewMatrix(float[], int)} and {@link
    * com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
+   *
+   * <p>The framebuffer may be smaller than the surface, such as when its size follows {@link
+   * com.google.ar.core.examples.java.common.samplerender.DynamicResolution}. Its color is then
+   * upsampled with bilinear filtering, while its depth is read from the nearest texel, since
+   * interpolated depth would place object edges between the object and what lies behind it.
    */
   public void drawVirtualScene(
       SampleRender render, Framebuffer virtualSceneFramebuffer, float zNear, float zFar) {
@@ -235,6 +265,8 @@ public class BackgroundRenderer {
         "u_VirtualSceneColorTexture", virtualSceneFramebuffer.getColorTexture());
     if (useOcclusion) {
       occlusionShader
+          .setTexture("u_CameraDepthTexture", cameraDepthTexture)
+          .setFloat("u_DepthAspectRatio", aspectRatio)
           .setTexture("u_VirtualSceneDepthTexture", virtualSceneFramebuffer.getDepthTexture())
           .setFloat("u_ZNear", zNear)
           .setFloat("u_ZFar", zFar);
@@ -251,4 +283,18 @@ public class BackgroundRenderer {
   public Texture getCameraDepthTexture() {
     return cameraDepthTexture;
   }
+
+  /**
+   * Frees the objects of the renderer. The shader variants belong to the {@link ShaderCache} and
+   * stay with it.
+   */
+  @Override
+  public void close() {
+    mesh.close();
+    for (VertexBuffer vertexBuffer : vertexBuffers) {
+      vertexBuffer.close();
+    }
+    cameraDepthTexture.close();
+    cameraColorTexture.close();
+  }
 }
@@ -15,11 +15,12 @@
  */
 package com.google.ar.core.examples.java.common.samplerender.arcore;
 
-import android.opengl.Matrix;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Plane;
 import com.google.ar.core.Pose;
 import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.samplerender.DirectBufferPool;
+import com.google.ar.core.examples.java.common.samplerender.Frustum;
 import com.google.ar.core.examples.java.common.samplerender.IndexBuffer;
 import com.google.ar.core.examples.java.common.samplerender.Mesh;
 import com.google.ar.core.examples.java.common.samplerender.SampleRender;
@@ -27,9 +28,9 @@ import com.google.ar.core.examples.java.common.samplerender.Shader;
 import com.google.ar.core.examples.java.common.samplerender.Shader.BlendFactor;
 import com.google.ar.core.examples.java.common.samplerender.Texture;
 import com.google.ar.core.examples.java.common.samplerender.VertexBuffer;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -41,7 +42,7 @@ import java.util.List;
 import java.util.Map;
 
 /** Renders the detected AR planes. */
-public class PlaneRenderer {
+public class PlaneRenderer implements Closeable {
   private static final String TAG = PlaneRenderer.class.getSimpleName();
 
   // Shader names.
@@ -80,27 +81,28 @@ public class PlaneRenderer {
   private final Mesh mesh;
   private final IndexBuffer indexBufferObject;
   private final VertexBuffer vertexBufferObject;
+  private final Texture texture;
   private final Shader shader;
+  private final Shader.FloatUniform modelUniform;
+  private final Shader.FloatUniform planeUvMatrixUniform;
+  private final Shader.FloatUniform normalUniform;
 
-  private FloatBuffer vertexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
-          .order(ByteOrder.nativeOrder())
-          .asFloatBuffer();
-  private IntBuffer indexBuffer =
-      ByteBuffer.allocateDirect(INITIAL_INDEX_BUFFER_SIZE_BYTES)
-          .order(ByteOrder.nativeOrder())
-          .asIntBuffer();
+  // Staging buffers from the DirectBufferPool, returned to it when they grow.
+  private ByteBuffer vertexStaging = DirectBufferPool.acquire(INITIAL_VERTEX_BUFFER_SIZE_BYTES);
+  private ByteBuffer indexStaging = DirectBufferPool.acquire(INITIAL_INDEX_BUFFER_SIZE_BYTES);
+  private FloatBuffer vertexBuffer = vertexStaging.asFloatBuffer();
+  private IntBuffer indexBuffer = indexStaging.asIntBuffer();
 
   // Temporary lists/matrices allocated here to reduce number of allocations for each frame.
-  private final float[] viewMatrix = new float[16];
   private final float[] modelMatrix = new float[16];
-  private final float[] modelViewMatrix = new float[16];
-  private final float[] modelViewProjectionMatrix = new float[16];
+  // Box around the center pose holding the polygon: min x, y, z then max x, y, z.
+  private final float[] planeBounds = new float[6];
   private final float[] planeAngleUvMatrix =
       new float[4]; // 2x2 rotation matrix applied to uv coords.
   private final float[] normalVector = new float[3];
 
   private final Map<Plane, Integer> planeIndexMap = new HashMap<>();
+  private int culledPlaneCount;
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called during
@@ -108,7 +110,7 @@ public class PlaneRenderer {
    * SampleRender.Renderer#onSurfaceCreated}.
    */
   public PlaneRenderer(SampleRender render) throws IOException {
-    Texture texture =
+    texture =
         Texture.createFromAsset(
             render, TEXTURE_NAME, Texture.WrapMode.REPEAT, Texture.ColorFormat.LINEAR);
     shader =
@@ -121,17 +123,19 @@ public class PlaneRenderer {
                 BlendFactor.ZERO, // ALPHA (src)
                 BlendFactor.ONE_MINUS_SRC_ALPHA) // ALPHA (dest)
             .setDepthWrite(false);
+    modelUniform = shader.getUniformMat4("u_Model");
+    planeUvMatrixUniform = shader.getUniformMat2("u_PlaneUvMatrix");
+    normalUniform = shader.getUniformVec3("u_Normal");
 
-    indexBufferObject = new IndexBuffer(render, /*entries=*/ null);
-    vertexBufferObject = new VertexBuffer(render, COORDS_PER_VERTEX, /*entries=*/ null);
+    // Every plane is rewritten every frame, so the buffers are streamed.
+    indexBufferObject = IndexBuffer.createStreaming(render);
+    vertexBufferObject = VertexBuffer.createStreaming(render, COORDS_PER_VERTEX);
     VertexBuffer[] vertexBuffers = {vertexBufferObject};
     mesh = new Mesh(render, Mesh.PrimitiveMode.TRIANGLE_STRIP, indexBufferObject, vertexBuffers);
   }
 
   /** Updates the plane model transform matrix and extents. */
-  private void updatePlaneParameters(
-      float[] planeMatrix, float extentX, float extentZ, FloatBuffer boundary) {
-    System.arraycopy(planeMatrix, 0, modelMatrix, 0, 16);
+  private void updatePlaneParameters(float extentX, float extentZ, FloatBuffer boundary) {
     if (boundary == null) {
       vertexBuffer.limit(0);
       indexBuffer.limit(0);
@@ -156,10 +160,9 @@ public class PlaneRenderer {
       while (size < numVertices * COORDS_PER_VERTEX) {
         size *= 2;
       }
-      vertexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_FLOAT * size)
-              .order(ByteOrder.nativeOrder())
-              .asFloatBuffer();
+      DirectBufferPool.release(vertexStaging);
+      vertexStaging = DirectBufferPool.acquire(BYTES_PER_FLOAT * size);
+      vertexBuffer = vertexStaging.asFloatBuffer();
     }
     vertexBuffer.rewind();
     vertexBuffer.limit(numVertices * COORDS_PER_VERTEX);
@@ -169,10 +172,9 @@ public class PlaneRenderer {
       while (size < numIndices) {
         size *= 2;
       }
-      indexBuffer =
-          ByteBuffer.allocateDirect(BYTES_PER_INT * size)
-              .order(ByteOrder.nativeOrder())
-              .asIntBuffer();
+      DirectBufferPool.release(indexStaging);
+      indexStaging = DirectBufferPool.acquire(BYTES_PER_INT * size);
+      indexBuffer = indexStaging.asIntBuffer();
     }
     indexBuffer.rewind();
     indexBuffer.limit(numIndices);
@@ -215,28 +217,42 @@ public class PlaneRenderer {
   }
 
   /**
-   * Draws the collection of tracked planes, with closer planes hiding more distant ones.
+   * Draws the collection of tracked planes, with closer planes hiding more distant ones. Planes
+   * facing away from the camera or outside the view frustum are skipped.
+   *
+   * <p>The camera matrices and the frustum are read from {@link SampleRender#getFrameUniforms()},
+   * which must have been set for the current frame.
    *
    * @param allPlanes The collection of planes to draw.
    * @param cameraPose The pose of the camera, as returned by {@link Camera#getPose()}
-   * @param cameraProjection The projection matrix, as returned by {@link
-   *     Camera#getProjectionMatrix(float[], int, float, float)}
    */
-  public void drawPlanes(
-      SampleRender render, Collection<Plane> allPlanes, Pose cameraPose, float[] cameraProjection) {
+  public void drawPlanes(SampleRender render, Collection<Plane> allPlanes, Pose cameraPose) {
     // Planes must be sorted by distance from camera so that we draw closer planes first, and
     // they occlude the farther planes.
     List<SortablePlane> sortedPlanes = new ArrayList<>();
+    Frustum frustum = render.getFrameUniforms().getFrustum();
+    culledPlaneCount = 0;
 
     for (Plane plane : allPlanes) {
       if (plane.getTrackingState() != TrackingState.TRACKING || plane.getSubsumedBy() != null) {
         continue;
       }
 
-      float distance = calculateDistanceToPlane(plane.getCenterPose(), cameraPose);
+      Pose centerPose = plane.getCenterPose();
+      float distance = calculateDistanceToPlane(centerPose, cameraPose);
       if (distance < 0) { // Plane is back-facing.
         continue;
       }
+      // The polygon lies within the extents around the center pose.
+      centerPose.toMatrix(modelMatrix, 0);
+      planeBounds[0] = -plane.getExtentX() / 2;
+      planeBounds[2] = -plane.getExtentZ() / 2;
+      planeBounds[3] = plane.getExtentX() / 2;
+      planeBounds[5] = plane.getExtentZ() / 2;
+      if (!frustum.intersectsBox(modelMatrix, 0, planeBounds)) {
+        culledPlaneCount++;
+        continue;
+      }
       sortedPlanes.add(new SortablePlane(distance, plane));
     }
     Collections.sort(
@@ -248,18 +264,14 @@ public class PlaneRenderer {
           }
         });
 
-    cameraPose.inverse().toMatrix(viewMatrix, 0);
-
     for (SortablePlane sortedPlane : sortedPlanes) {
       Plane plane = sortedPlane.plane;
-      float[] planeMatrix = new float[16];
-      plane.getCenterPose().toMatrix(planeMatrix, 0);
+      plane.getCenterPose().toMatrix(modelMatrix, 0);
 
       // Get transformed Y axis of plane's coordinate system.
       plane.getCenterPose().getTransformedAxis(1, 1.0f, normalVector, 0);
 
-      updatePlaneParameters(
-          planeMatrix, plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
+      updatePlaneParameters(plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
 
       // Get plane index. Keep a map to assign same indices to same planes.
       Integer planeIndex = planeIndexMap.get(plane);
@@ -278,16 +290,10 @@ public class PlaneRenderer {
       planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
       planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
 
-      // Build the ModelView and ModelViewProjection matrices
-      // for calculating cube position and light.
-      Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-      Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraProjection, 0, modelViewMatrix, 0);
-
       // Populate the shader uniforms for this frame.
-      shader.setMat4("u_Model", modelMatrix);
-      shader.setMat4("u_ModelViewProjection", modelViewProjectionMatrix);
-      shader.setMat2("u_PlaneUvMatrix", planeAngleUvMatrix);
-      shader.setVec3("u_Normal", normalVector);
+      modelUniform.set(modelMatrix);
+      planeUvMatrixUniform.set(planeAngleUvMatrix);
+      normalUniform.set(normalVector);
 
       // Set the position of the plane
       vertexBufferObject.set(vertexBuffer);
@@ -297,6 +303,25 @@ public class PlaneRenderer {
     }
   }
 
+  /** Returns the number of planes skipped by the last draw because they were not in view. */
+  public int getCulledPlaneCount() {
+    return culledPlaneCount;
+  }
+
+  /** Frees the OpenGL objects of the renderer and returns its staging buffers to the pool. */
+  @Override
+  public void close() {
+    mesh.close();
+    indexBufferObject.close();
+    vertexBufferObject.close();
+    shader.close();
+    texture.close();
+    DirectBufferPool.release(vertexStaging);
+    DirectBufferPool.release(indexStaging);
+    vertexStaging = null;
+    indexStaging = null;
+  }
+
   private static class SortablePlane {
     final float distance;
     final Plane plane;
@@ -23,6 +23,9 @@ import android.util.Log;
 import com.google.ar.core.ArImage;
 import com.google.ar.core.ImageFormat;
 import com.google.ar.core.examples.java.common.samplerender.GLError;
+import com.google.ar.core.examples.java.common.samplerender.GlBackend;
+import com.google.ar.core.examples.java.common.samplerender.GlState;
+import com.google.ar.core.examples.java.common.samplerender.GpuResourceRegistry;
 import com.google.ar.core.examples.java.common.samplerender.Mesh;
 import com.google.ar.core.examples.java.common.samplerender.SampleRender;
 import com.google.ar.core.examples.java.common.samplerender.Shader;
@@ -145,6 +148,8 @@ public class SpecularCubemapFilter implements Closeable {
     public float level;
   }
 
+  private final GlState glState;
+  private final GpuResourceRegistry resourceRegistry;
   private final int resolution;
   private final int numberOfImportanceSamples;
   private final int numberOfMipmapLevels;
@@ -153,6 +158,8 @@ public class SpecularCubemapFilter implements Closeable {
   private final Texture ldCubemap;
   // Indexed by attachment chunk.
   private final Shader[] shaders;
+  private final Shader.IntUniform[] roughnessLevelUniforms;
+  private final VertexBuffer coordsBuffer;
   private final Mesh mesh;
 
   // Using OpenGL directly here since cubemap framebuffers are very involved. Indexed by
@@ -173,6 +180,8 @@ public class SpecularCubemapFilter implements Closeable {
    */
   public SpecularCubemapFilter(SampleRender render, int resolution, int numberOfImportanceSamples)
       throws IOException {
+    this.glState = render.getGlState();
+    this.resourceRegistry = render.getResourceRegistry();
     this.resolution = resolution;
     this.numberOfImportanceSamples = numberOfImportanceSamples;
     this.numberOfMipmapLevels = log2(resolution) + 1;
@@ -186,10 +195,14 @@ public class SpecularCubemapFilter implements Closeable {
       ChunkIterable chunks = new ChunkIterable(getMaxColorAttachments());
       initializeLdCubemap();
       shaders = createShaders(render, chunks);
+      roughnessLevelUniforms = new Shader.IntUniform[shaders.length];
+      for (int i = 0; i < shaders.length; ++i) {
+        roughnessLevelUniforms[i] = shaders[i].getUniformInt("u_RoughnessLevel");
+      }
       framebuffers = createFramebuffers(chunks);
 
       // Create the quad mesh that encompasses the entire view.
-      VertexBuffer coordsBuffer = new VertexBuffer(render, COMPONENTS_PER_VERTEX, COORDS_BUFFER);
+      coordsBuffer = new VertexBuffer(render, COMPONENTS_PER_VERTEX, COORDS_BUFFER);
       mesh =
           new Mesh(
               render,
@@ -206,11 +219,20 @@ public class SpecularCubemapFilter implements Closeable {
   public void close() {
     if (framebuffers != null) {
       for (int[] framebufferChunks : framebuffers) {
-        GLES30.glDeleteFramebuffers(framebufferChunks.length, framebufferChunks, 0);
+        for (int framebuffer : framebufferChunks) {
+          glState.onFramebufferDeleted(framebuffer);
+        }
+        GlBackend.get().glDeleteFramebuffers(framebufferChunks.length, framebufferChunks, 0);
         GLError.maybeLogGLError(
             Log.WARN, TAG, "Failed to free framebuffers", "glDeleteFramebuffers");
       }
     }
+    if (mesh != null) {
+      mesh.close();
+    }
+    if (coordsBuffer != null) {
+      coordsBuffer.close();
+    }
     if (radianceCubemap != null) {
       radianceCubemap.close();
     }
@@ -235,8 +257,7 @@ public class SpecularCubemapFilter implements Closeable {
    */
   public void update(ArImage[] images) {
     try {
-      GLES30.glBindTexture(GLES30.GL_TEXTURE_CUBE_MAP, radianceCubemap.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind radiance cubemap texture", "glBindTexture");
+      glState.bindTextureForUpdate(GLES30.GL_TEXTURE_CUBE_MAP, radianceCubemap.getTextureId());
 
       if (images.length != NUMBER_OF_CUBE_FACES) {
         throw new IllegalArgumentException(
@@ -262,7 +283,7 @@ public class SpecularCubemapFilter implements Closeable {
                   + ").");
         }
 
-        GLES30.glTexImage2D(
+        GlBackend.get().glTexImage2D(
             GLES30.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i,
             /*level=*/ 0,
             GLES30.GL_RGBA16F,
@@ -275,19 +296,22 @@ public class SpecularCubemapFilter implements Closeable {
         GLError.maybeThrowGLException("Failed to populate cubemap face", "glTexImage2D");
       }
 
-      GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_CUBE_MAP);
+      GlBackend.get().glGenerateMipmap(GLES30.GL_TEXTURE_CUBE_MAP);
       GLError.maybeThrowGLException("Failed to generate cubemap mipmaps", "glGenerateMipmap");
+      resourceRegistry.setBytes(
+          radianceCubemap,
+          NUMBER_OF_CUBE_FACES
+              * GpuResourceRegistry.estimateTextureBytes(
+                  GLES30.GL_RGBA16F, resolution, resolution, /*mipmapped=*/ true));
 
       // Do the filtering operation, filling the mipmaps of ldTexture with the roughness filtered
       // cubemap.
       for (int level = 0; level < numberOfMipmapLevels; ++level) {
         int mipmapResolution = resolution >> level;
-        GLES30.glViewport(0, 0, mipmapResolution, mipmapResolution);
-        GLError.maybeThrowGLException("Failed to set viewport dimensions", "glViewport");
+        glState.setViewport(0, 0, mipmapResolution, mipmapResolution);
         for (int chunkIndex = 0; chunkIndex < shaders.length; ++chunkIndex) {
-          GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebuffers[level][chunkIndex]);
-          GLError.maybeThrowGLException("Failed to bind cubemap framebuffer", "glBindFramebuffer");
-          shaders[chunkIndex].setInt("u_RoughnessLevel", level);
+          glState.bindFramebuffer(framebuffers[level][chunkIndex]);
+          roughnessLevelUniforms[chunkIndex].set(level);
           shaders[chunkIndex].lowLevelUse();
           mesh.lowLevelDraw();
         }
@@ -314,12 +338,11 @@ public class SpecularCubemapFilter implements Closeable {
 
   private void initializeLdCubemap() {
     // Initialize mipmap levels of LD cubemap.
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_CUBE_MAP, ldCubemap.getTextureId());
-    GLError.maybeThrowGLException("Could not bind LD cubemap texture", "glBindTexture");
+    glState.bindTextureForUpdate(GLES30.GL_TEXTURE_CUBE_MAP, ldCubemap.getTextureId());
     for (int level = 0; level < numberOfMipmapLevels; ++level) {
       int mipmapResolution = resolution >> level;
       for (int face = 0; face < NUMBER_OF_CUBE_FACES; ++face) {
-        GLES30.glTexImage2D(
+        GlBackend.get().glTexImage2D(
             GLES30.GL_TEXTURE_CUBE_MAP_POSITIVE_X + face,
             level,
             GLES30.GL_RGB16F,
@@ -332,6 +355,11 @@ public class SpecularCubemapFilter implements Closeable {
         GLError.maybeThrowGLException("Could not initialize LD cubemap mipmap", "glTexImage2D");
       }
     }
+    resourceRegistry.setBytes(
+        ldCubemap,
+        NUMBER_OF_CUBE_FACES
+            * GpuResourceRegistry.estimateTextureBytes(
+                GLES30.GL_RGB16F, resolution, resolution, /*mipmapped=*/ true));
   }
 
   private Shader[] createShaders(SampleRender render, ChunkIterable chunks) throws IOException {
@@ -383,18 +411,17 @@ public class SpecularCubemapFilter implements Closeable {
     int[][] framebuffers = new int[numberOfMipmapLevels][];
     for (int level = 0; level < numberOfMipmapLevels; ++level) {
       int[] framebufferChunks = new int[chunks.numberOfChunks];
-      GLES30.glGenFramebuffers(framebufferChunks.length, framebufferChunks, 0);
+      GlBackend.get().glGenFramebuffers(framebufferChunks.length, framebufferChunks, 0);
       GLError.maybeThrowGLException("Could not create cubemap framebuffers", "glGenFramebuffers");
       for (Chunk chunk : chunks) {
         // Set the drawbuffers
-        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferChunks[chunk.chunkIndex]);
-        GLError.maybeThrowGLException("Could not bind framebuffer", "glBindFramebuffer");
-        GLES30.glDrawBuffers(chunk.chunkSize, ATTACHMENT_ENUMS, 0);
+        glState.bindFramebuffer(framebufferChunks[chunk.chunkIndex]);
+        GlBackend.get().glDrawBuffers(chunk.chunkSize, ATTACHMENT_ENUMS, 0);
         GLError.maybeThrowGLException("Could not bind draw buffers", "glDrawBuffers");
         // Since GLES doesn't support glFramebufferTexture, we will use each cubemap face as a
         // different color attachment.
         for (int attachment = 0; attachment < chunk.chunkSize; ++attachment) {
-          GLES30.glFramebufferTexture2D(
+          GlBackend.get().glFramebufferTexture2D(
               GLES30.GL_FRAMEBUFFER,
               GLES30.GL_COLOR_ATTACHMENT0 + attachment,
               GLES30.GL_TEXTURE_CUBE_MAP_POSITIVE_X + chunk.firstFaceIndex + attachment,
@@ -459,7 +486,7 @@ public class SpecularCubemapFilter implements Closeable {
 
   private static int getMaxColorAttachments() {
     int[] result = new int[1];
-    GLES30.glGetIntegerv(GLES30.GL_MAX_COLOR_ATTACHMENTS, result, 0);
+    GlBackend.get().glGetIntegerv(GLES30.GL_MAX_COLOR_ATTACHMENTS, result, 0);
     GLError.maybeThrowGLException("Failed to get max color attachments", "glGetIntegerv");
     return result[0];
   }
@@ -16,12 +16,13 @@
 
 package com.google.ar.core.examples.java.helloar;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.Resources;
 import android.media.Image;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MenuItem;
@@ -55,12 +56,27 @@ import com.google.ar.core.examples.java.common.helpers.DepthSettings;
 import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
 import com.google.ar.core.examples.java.common.helpers.InstantPlacementSettings;
+import com.google.ar.core.examples.java.common.helpers.ProfilerOverlay;
 import com.google.ar.core.examples.java.common.helpers.SnackbarHelper;
 import com.google.ar.core.examples.java.common.helpers.TapHelper;
 import com.google.ar.core.examples.java.common.helpers.TrackingStateHelper;
+import com.google.ar.core.examples.java.common.samplerender.AssetLoader;
+import com.google.ar.core.examples.java.common.samplerender.DirectBufferPool;
+import com.google.ar.core.examples.java.common.samplerender.DynamicResolution;
+import com.google.ar.core.examples.java.common.samplerender.FrameProfiler;
+import com.google.ar.core.examples.java.common.samplerender.FrameUniforms;
 import com.google.ar.core.examples.java.common.samplerender.Framebuffer;
 import com.google.ar.core.examples.java.common.samplerender.GLError;
+import com.google.ar.core.examples.java.common.samplerender.GlBackend;
+import com.google.ar.core.examples.java.common.samplerender.GpuResourceRegistry;
+import com.google.ar.core.examples.java.common.samplerender.LevelsOfDetail;
+import com.google.ar.core.examples.java.common.samplerender.MatrixMath;
 import com.google.ar.core.examples.java.common.samplerender.Mesh;
+import com.google.ar.core.examples.java.common.samplerender.RenderGraph;
+import com.google.ar.core.examples.java.common.samplerender.RenderPass;
+import com.google.ar.core.examples.java.common.samplerender.RenderPass.LoadAction;
+import com.google.ar.core.examples.java.common.samplerender.RenderPass.StoreAction;
+import com.google.ar.core.examples.java.common.samplerender.RenderQueue;
 import com.google.ar.core.examples.java.common.samplerender.SampleRender;
 import com.google.ar.core.examples.java.common.samplerender.Shader;
 import com.google.ar.core.examples.java.common.samplerender.Texture;
@@ -75,12 +91,14 @@ import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableDeviceNotCompatibleException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationException;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This is a simple example that shows how to create an augmented reality (AR) application using the
@@ -114,6 +132,18 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
   private static final int CUBEMAP_RESOLUTION = 16;
   private static final int CUBEMAP_NUMBER_OF_IMPORTANCE_SAMPLES = 32;
 
+  // Time spent uploading loaded assets per frame, a quarter of a frame at 60 Hz.
+  private static final long UPLOAD_BUDGET_NANOS = 4_000_000;
+
+  // The virtual scene is drawn at a lower resolution while the GPU takes longer than this per
+  // frame, down to half the surface size in each dimension.
+  private static final long TARGET_GPU_FRAME_NANOS = 12_000_000;
+  private static final float MIN_VIRTUAL_SCENE_SCALE = 0.5f;
+
+  // Anchors are drawn instanced, so their count is bounded by the tracking cost in ARCore rather
+  // than by draw calls. Past this count, each new anchor replaces the oldest one.
+  private static final int MAX_ANCHORS = 500;
+
   // Rendering. The Renderers are created here, and initialized when the GL surface is created.
   private GLSurfaceView surfaceView;
 
@@ -125,12 +155,63 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
   private final TrackingStateHelper trackingStateHelper = new TrackingStateHelper(this);
   private TapHelper tapHelper;
   private SampleRender render;
+  private AssetLoader assetLoader;
+  private ProfilerOverlay profilerOverlay;
 
   private PlaneRenderer planeRenderer;
   private BackgroundRenderer backgroundRenderer;
-  private Framebuffer virtualSceneFramebuffer;
+  private RenderGraph<Frame> renderGraph;
+  private int surfaceWidth;
+  private int surfaceHeight;
   private boolean hasSetTextureNames = false;
 
+  // Render passes, with what they load and store. Once the camera has produced an image, the
+  // background covers the whole surface, so its previous contents are not needed. Depth is only
+  // used within a pass, except for the virtual scene depth read by the occlusion pass.
+  private final RenderPass clearPass =
+      new RenderPass(
+          /*framebuffer=*/ null,
+          LoadAction.CLEAR,
+          StoreAction.STORE,
+          LoadAction.CLEAR,
+          StoreAction.DISCARD);
+  private final RenderPass backgroundPass =
+      new RenderPass(
+          /*framebuffer=*/ null,
+          LoadAction.DONT_CARE,
+          StoreAction.STORE,
+          LoadAction.CLEAR,
+          StoreAction.DISCARD);
+  private final RenderPass occlusionPass =
+      new RenderPass(
+          /*framebuffer=*/ null,
+          LoadAction.LOAD,
+          StoreAction.STORE,
+          LoadAction.DONT_CARE,
+          StoreAction.DISCARD);
+  // The virtual scene is a transient target of the render graph, which sets its framebuffer.
+  private final RenderPass virtualScenePass =
+      new RenderPass(
+              /*framebuffer=*/ null,
+              LoadAction.CLEAR,
+              StoreAction.STORE,
+              LoadAction.CLEAR,
+              StoreAction.DISCARD)
+          .setClearColor(0f, 0f, 0f, 0f);
+  // Occlusion compares the depth of the virtual scene with the camera depth.
+  private final RenderPass virtualSceneWithDepthPass =
+      new RenderPass(
+              /*framebuffer=*/ null,
+              LoadAction.CLEAR,
+              StoreAction.STORE,
+              LoadAction.CLEAR,
+              StoreAction.STORE)
+          .setClearColor(0f, 0f, 0f, 0f);
+
+  // Dynamic resolution of the virtual scene, which stays at full size without GPU timer support.
+  private final DynamicResolution dynamicResolution =
+      new DynamicResolution(MIN_VIRTUAL_SCENE_SCALE, /*maxScale=*/ 1f, TARGET_GPU_FRAME_NANOS);
+
   private final DepthSettings depthSettings = new DepthSettings();
   private boolean[] depthSettingsMenuDialogCheckboxes = new boolean[2];
 
@@ -156,8 +237,14 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
   // Virtual object (ARCore pawn)
   private Mesh virtualObjectMesh;
   private Shader virtualObjectShader;
+  private Shader.TextureUniform virtualObjectAlbedoUniform;
   private Texture virtualObjectAlbedoTexture;
   private Texture virtualObjectAlbedoInstantPlacementTexture;
+  private Texture virtualObjectPbrTexture;
+  private VertexBuffer virtualObjectInstanceBuffer;
+  // Set when the virtual object was unloaded to free GPU memory, until an anchor needs it again.
+  private boolean virtualObjectEvicted;
+  private final RenderQueue virtualObjectQueue = new RenderQueue();
 
   private final List<WrappedAnchor> wrappedAnchors = new ArrayList<>();
 
@@ -169,10 +256,7 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
   private final float[] modelMatrix = new float[16];
   private final float[] viewMatrix = new float[16];
   private final float[] projectionMatrix = new float[16];
-  private final float[] modelViewMatrix = new float[16]; // view x model
-  private final float[] modelViewProjectionMatrix = new float[16]; // projection x view x model
   private final float[] sphericalHarmonicsCoefficients = new float[9 * 3];
-  private final float[] viewInverseMatrix = new float[16];
   private final float[] worldLightDirection = {0.0f, 0.0f, 0.0f, 0.0f};
   private final float[] viewLightDirection = new float[4]; // view x world light direction
 
@@ -189,6 +273,19 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
 
     // Set up renderer.
     render = new SampleRender(surfaceView, this, getAssets());
+    // Reuse the shader programs linked by previous runs.
+    render.setProgramBinaryCacheDirectory(new File(getCacheDir(), "programs"));
+    // Show the time each render pass takes in debug builds.
+    if (BuildConfig.DEBUG) {
+      profilerOverlay =
+          new ProfilerOverlay(findViewById(R.id.profiler_overlay), render.getProfiler());
+    }
+    // Let reloadable assets hold a quarter of the memory the system grants the app, and evict the
+    // least recently drawn beyond that.
+    ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+    render
+        .getResourceRegistry()
+        .setEvictableBudget(activityManager.getMemoryClass() * (1L << 20) / 4);
 
     installRequested = false;
 
@@ -229,6 +326,9 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
       session.close();
       session = null;
     }
+    if (assetLoader != null) {
+      assetLoader.shutdown();
+    }
 
     super.onDestroy();
   }
@@ -301,11 +401,21 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
 
     surfaceView.onResume();
     displayRotationHelper.onResume();
+    if (profilerOverlay != null) {
+      profilerOverlay.start();
+    }
   }
 
   @Override
   public void onPause() {
     super.onPause();
+    if (profilerOverlay != null) {
+      profilerOverlay.stop();
+    }
+    if (isFinishing()) {
+      // Close the GPU objects while the surface is still there, and report those left open.
+      render.destroySurface();
+    }
     if (session != null) {
       // Note that the order matters - GLSurfaceView is paused first so that it does not try
       // to query the session. If Session is paused before GLSurfaceView, GLSurfaceView may
@@ -316,6 +426,13 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     }
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    // Pooled staging buffers are only needed while loading, so give their memory back.
+    DirectBufferPool.trim();
+  }
+
   @Override
   public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] results) {
     super.onRequestPermissionsResult(requestCode, permissions, results);
@@ -339,47 +456,35 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
 
   @Override
   public void onSurfaceCreated(SampleRender render) {
+    // Check every GL call in debug builds. Release builds only check once every 60 frames, since
+    // glGetError can make the CPU wait for the GPU.
+    GLError.setCheckMode(
+        BuildConfig.DEBUG ? GLError.CheckMode.FULL : GLError.CheckMode.SAMPLED,
+        /*samplingInterval=*/ 60);
+
+    // Objects of a lost GL context are gone, so drop what the previous loader has not uploaded yet.
+    if (assetLoader != null) {
+      assetLoader.shutdown();
+    }
+    // The objects of the previous context were deleted with it, so forget them without closing.
+    virtualObjectShader = null;
+    virtualObjectMesh = null;
+    virtualObjectInstanceBuffer = null;
+    virtualObjectAlbedoTexture = null;
+    virtualObjectAlbedoInstantPlacementTexture = null;
+    virtualObjectPbrTexture = null;
+    dfgTexture = null;
+
     // Prepare the rendering objects. This involves reading shaders and 3D model files, so may throw
     // an IOException.
     try {
       planeRenderer = new PlaneRenderer(render);
       backgroundRenderer = new BackgroundRenderer(render);
-      virtualSceneFramebuffer = new Framebuffer(render, /*width=*/ 1, /*height=*/ 1);
+      renderGraph = createRenderGraph(render);
 
       cubemapFilter =
           new SpecularCubemapFilter(
               render, CUBEMAP_RESOLUTION, CUBEMAP_NUMBER_OF_IMPORTANCE_SAMPLES);
-      // Load DFG lookup table for environmental lighting
-      dfgTexture =
-          new Texture(
-              render,
-              Texture.Target.TEXTURE_2D,
-              Texture.WrapMode.CLAMP_TO_EDGE,
-              /*useMipmaps=*/ false);
-      // The dfg.raw file is a raw half-float texture with two channels.
-      final int dfgResolution = 64;
-      final int dfgChannels = 2;
-      final int halfFloatSize = 2;
-
-      ByteBuffer buffer =
-          ByteBuffer.allocateDirect(dfgResolution * dfgResolution * dfgChannels * halfFloatSize);
-      try (InputStream is = getAssets().open("models/dfg.raw")) {
-        is.read(buffer.array());
-      }
-      // SampleRender abstraction leaks here.
-      GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, dfgTexture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind DFG texture", "glBindTexture");
-      GLES30.glTexImage2D(
-          GLES30.GL_TEXTURE_2D,
-          /*level=*/ 0,
-          GLES30.GL_RG16F,
-          /*width=*/ dfgResolution,
-          /*height=*/ dfgResolution,
-          /*border=*/ 0,
-          GLES30.GL_RG,
-          GLES30.GL_HALF_FLOAT,
-          buffer);
-      GLError.maybeThrowGLException("Failed to populate DFG texture", "glTexImage2D");
 
       // Point cloud
       pointCloudShader =
@@ -388,66 +493,219 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
               .setVec4(
                   "u_Color", new float[] {31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f})
               .setFloat("u_PointSize", 5.0f);
-      // four entries per vertex: X, Y, Z, confidence
+      // four entries per vertex: X, Y, Z, confidence. The points change most frames, so they are
+      // streamed without waiting for the GPU to finish drawing the previous ones.
       pointCloudVertexBuffer =
-          new VertexBuffer(render, /*numberOfEntriesPerVertex=*/ 4, /*entries=*/ null);
+          VertexBuffer.createStreaming(render, /*numberOfEntriesPerVertex=*/ 4);
       final VertexBuffer[] pointCloudVertexBuffers = {pointCloudVertexBuffer};
       pointCloudMesh =
           new Mesh(
               render, Mesh.PrimitiveMode.POINTS, /*indexBuffer=*/ null, pointCloudVertexBuffers);
 
-      // Virtual object to render (ARCore pawn)
-      virtualObjectAlbedoTexture =
-          Texture.createFromAsset(
-              render,
-              "models/pawn_albedo.png",
-              Texture.WrapMode.CLAMP_TO_EDGE,
-              Texture.ColorFormat.SRGB);
-      virtualObjectAlbedoInstantPlacementTexture =
-          Texture.createFromAsset(
-              render,
-              "models/pawn_albedo_instant_placement.png",
-              Texture.WrapMode.CLAMP_TO_EDGE,
-              Texture.ColorFormat.SRGB);
-      Texture virtualObjectPbrTexture =
-          Texture.createFromAsset(
-              render,
-              "models/pawn_roughness_metallic_ao.png",
-              Texture.WrapMode.CLAMP_TO_EDGE,
-              Texture.ColorFormat.LINEAR);
-
-      virtualObjectMesh = Mesh.createFromAsset(render, "models/cube.obj");
-      virtualObjectShader =
-          Shader.createFromAssets(
-                  render,
-                  "shaders/environmental_hdr.vert",
-                  "shaders/environmental_hdr.frag",
-                  /*defines=*/ new HashMap<String, String>() {
-                    {
-                      put(
-                          "NUMBER_OF_MIPMAP_LEVELS",
-                          Integer.toString(cubemapFilter.getNumberOfMipmapLevels()));
-                    }
-                  })
-              .setTexture("u_AlbedoTexture", virtualObjectAlbedoTexture)
-              .setTexture("u_RoughnessMetallicAmbientOcclusionTexture", virtualObjectPbrTexture)
-              .setTexture("u_Cubemap", cubemapFilter.getFilteredCubemapTexture())
-              .setTexture("u_DfgTexture", dfgTexture);
+      // The textures, model and shader of the virtual object are read and decoded in the
+      // background, and uploaded over the following frames, so that the camera image shows without
+      // waiting for them. Anchors are drawn once everything is uploaded.
+      assetLoader = new AssetLoader(render);
+      // Compile the variants of the depth settings now, so that toggling them does not stall.
+      backgroundRenderer.prewarmShaders(assetLoader);
+      loadVirtualObject(render);
     } catch (IOException e) {
       Log.e(TAG, "Failed to read a required asset file", e);
       messageSnackbarHelper.showError(this, "Failed to read a required asset file: " + e);
     }
   }
 
+  /**
+   * Loads the textures, model and shader of the virtual object with the {@link AssetLoader}. Its
+   * textures may be evicted to stay within the GPU memory budget while no anchor is drawn, in which
+   * case the whole object is unloaded, and loaded again once there are anchors to draw.
+   */
+  private void loadVirtualObject(SampleRender render) {
+    virtualObjectEvicted = false;
+    CompletableFuture<Texture> albedoTexture =
+        assetLoader.loadTexture(
+            "models/pawn_albedo.png", Texture.WrapMode.CLAMP_TO_EDGE, Texture.ColorFormat.SRGB);
+    CompletableFuture<Texture> albedoInstantPlacementTexture =
+        assetLoader.loadTexture(
+            "models/pawn_albedo_instant_placement.png",
+            Texture.WrapMode.CLAMP_TO_EDGE,
+            Texture.ColorFormat.SRGB);
+    CompletableFuture<Texture> pbrTexture =
+        assetLoader.loadTexture(
+            "models/pawn_roughness_metallic_ao.png",
+            Texture.WrapMode.CLAMP_TO_EDGE,
+            Texture.ColorFormat.LINEAR);
+    // Load DFG lookup table for environmental lighting
+    CompletableFuture<Texture> dfg =
+        assetLoader.uploadOnGlThread(
+            assetLoader.loadBuffer("models/dfg.raw"), buffer -> createDfgTexture(render, buffer));
+
+    // Anchors are drawn as instances of one mesh, with their model matrices in a per-instance
+    // vertex buffer filled by the render queue. Distant anchors draw simplified levels of it.
+    virtualObjectInstanceBuffer =
+        new VertexBuffer(render, 16, /*entries=*/ null, /*divisor=*/ 1);
+    CompletableFuture<Mesh> mesh =
+        assetLoader.loadMesh(
+            "models/cube.obj",
+            new VertexBuffer[] {virtualObjectInstanceBuffer},
+            new LevelsOfDetail()
+                .addLevel(/*triangleRatio=*/ 0.5f, /*screenSize=*/ 0.1f)
+                .addLevel(/*triangleRatio=*/ 0.2f, /*screenSize=*/ 0.04f));
+    CompletableFuture<Shader> shader =
+        assetLoader.loadShader(
+            "shaders/environmental_hdr.vert",
+            "shaders/environmental_hdr.frag",
+            /*defines=*/ new HashMap<String, String>() {
+              {
+                put(
+                    "NUMBER_OF_MIPMAP_LEVELS",
+                    Integer.toString(cubemapFilter.getNumberOfMipmapLevels()));
+              }
+            });
+
+    // Upload futures complete on the GL thread, so this runs there after the last upload.
+    CompletableFuture.allOf(
+            albedoTexture, albedoInstantPlacementTexture, pbrTexture, dfg, mesh, shader)
+        .thenRun(
+            () -> {
+              virtualObjectAlbedoTexture = albedoTexture.join();
+              virtualObjectAlbedoInstantPlacementTexture = albedoInstantPlacementTexture.join();
+              virtualObjectPbrTexture = pbrTexture.join();
+              dfgTexture = dfg.join();
+              virtualObjectMesh = mesh.join();
+              virtualObjectShader =
+                  shader
+                      .join()
+                      .setTexture("u_AlbedoTexture", virtualObjectAlbedoTexture)
+                      .setTexture(
+                          "u_RoughnessMetallicAmbientOcclusionTexture", virtualObjectPbrTexture)
+                      .setTexture("u_Cubemap", cubemapFilter.getFilteredCubemapTexture())
+                      .setTexture("u_DfgTexture", dfgTexture);
+              // Resolved once, so that the per-anchor loop does no name lookups or allocations.
+              virtualObjectAlbedoUniform =
+                  virtualObjectShader.getUniformTexture("u_AlbedoTexture");
+
+              // The textures are read from assets, so they can be loaded again if evicted.
+              GpuResourceRegistry registry = render.getResourceRegistry();
+              Runnable onEvicted =
+                  () -> {
+                    unloadVirtualObject();
+                    virtualObjectEvicted = true;
+                  };
+              registry.setEvictable(virtualObjectAlbedoTexture, onEvicted);
+              registry.setEvictable(virtualObjectAlbedoInstantPlacementTexture, onEvicted);
+              registry.setEvictable(virtualObjectPbrTexture, onEvicted);
+            })
+        .exceptionally(
+            t -> {
+              Log.e(TAG, "Failed to load the virtual object", t);
+              messageSnackbarHelper.showError(
+                  this, "Failed to read a required asset file: " + t.getCause());
+              return null;
+            });
+  }
+
+  /** Closes the objects of the virtual object, which stops drawing anchors until it is loaded. */
+  private void unloadVirtualObject() {
+    virtualObjectShader = closeIfLoaded(virtualObjectShader);
+    virtualObjectMesh = closeIfLoaded(virtualObjectMesh);
+    virtualObjectInstanceBuffer = closeIfLoaded(virtualObjectInstanceBuffer);
+    virtualObjectAlbedoTexture = closeIfLoaded(virtualObjectAlbedoTexture);
+    virtualObjectAlbedoInstantPlacementTexture =
+        closeIfLoaded(virtualObjectAlbedoInstantPlacementTexture);
+    virtualObjectPbrTexture = closeIfLoaded(virtualObjectPbrTexture);
+    dfgTexture = closeIfLoaded(dfgTexture);
+  }
+
+  /** Closes {@code object} unless it is null, and returns null for clearing its field. */
+  private static <T extends Closeable> T closeIfLoaded(T object) {
+    if (object != null) {
+      try {
+        object.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to close " + object, e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates the DFG lookup texture from the contents of dfg.raw, and releases the buffer. Must run
+   * on the GL thread.
+   */
+  private static Texture createDfgTexture(SampleRender render, ByteBuffer buffer) {
+    Texture texture =
+        new Texture(
+            render,
+            Texture.Target.TEXTURE_2D,
+            Texture.WrapMode.CLAMP_TO_EDGE,
+            /*useMipmaps=*/ false);
+    // The dfg.raw file is a raw half-float texture with two channels.
+    final int dfgResolution = 64;
+    // SampleRender abstraction leaks here.
+    render.getGlState().bindTextureForUpdate(GLES30.GL_TEXTURE_2D, texture.getTextureId());
+    GlBackend.get().glTexImage2D(
+        GLES30.GL_TEXTURE_2D,
+        /*level=*/ 0,
+        GLES30.GL_RG16F,
+        /*width=*/ dfgResolution,
+        /*height=*/ dfgResolution,
+        /*border=*/ 0,
+        GLES30.GL_RG,
+        GLES30.GL_HALF_FLOAT,
+        buffer);
+    GLError.maybeThrowGLException("Failed to populate DFG texture", "glTexImage2D");
+    DirectBufferPool.release(buffer);
+    return texture;
+  }
+
+  @Override
+  public void onSurfaceDestroyed(SampleRender render) {
+    if (assetLoader != null) {
+      assetLoader.shutdown();
+    }
+    unloadVirtualObject();
+    planeRenderer = closeIfLoaded(planeRenderer);
+    backgroundRenderer = closeIfLoaded(backgroundRenderer);
+    renderGraph = closeIfLoaded(renderGraph);
+    cubemapFilter = closeIfLoaded(cubemapFilter);
+    pointCloudShader = closeIfLoaded(pointCloudShader);
+    pointCloudMesh = closeIfLoaded(pointCloudMesh);
+    pointCloudVertexBuffer = closeIfLoaded(pointCloudVertexBuffer);
+  }
+
   @Override
   public void onSurfaceChanged(SampleRender render, int width, int height) {
     displayRotationHelper.onSurfaceChanged(width, height);
-    virtualSceneFramebuffer.resize(width, height);
+    surfaceWidth = width;
+    surfaceHeight = height;
+    resizeRenderTargets();
+  }
+
+  /** Sizes the virtual scene and other render targets to the surface at the current resolution. */
+  private void resizeRenderTargets() {
+    renderGraph.setTargetSize(
+        dynamicResolution.scale(surfaceWidth), dynamicResolution.scale(surfaceHeight));
   }
 
   @Override
   public void onDrawFrame(SampleRender render) {
+    FrameProfiler profiler = render.getProfiler();
+    // Adjust the virtual scene resolution to the GPU time of the passes of a recent frame. The work
+    // of ARCore in session.update() does not depend on the resolution, so it is not a pass.
+    if (dynamicResolution.update(profiler.getGpuFrameNanos())) {
+      resizeRenderTargets();
+    }
+
+    // Upload assets loaded in the background, a few at a time so that frames keep their pace.
+    if (assetLoader != null) {
+      profiler.beginPass("uploads");
+      assetLoader.runUploads(UPLOAD_BUDGET_NANOS);
+      profiler.endPass();
+    }
+
     if (session == null) {
+      clearSurface(render);
       return;
     }
 
@@ -475,7 +733,11 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     } catch (CameraNotAvailableException e) {
       Log.e(TAG, "Camera not available during onDrawFrame", e);
       messageSnackbarHelper.showError(this, "Camera not available. Try restarting the app.");
+      clearSurface(render);
       return;
+    } finally {
+      // Updating the camera texture binds it behind the back of the state cache.
+      render.getGlState().invalidateTextureBindings();
     }
     Camera camera = frame.getCamera();
 
@@ -487,6 +749,7 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     } catch (IOException e) {
       Log.e(TAG, "Failed to read a required asset file", e);
       messageSnackbarHelper.showError(this, "Failed to read a required asset file: " + e);
+      clearSurface(render);
       return;
     }
     // BackgroundRenderer.updateDisplayGeometry must be called every frame to update the coordinates
@@ -532,54 +795,129 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
       messageSnackbarHelper.showMessage(this, message);
     }
 
-    // -- Draw background
-
-    if (frame.getTimestamp() != 0) {
-      // Suppress rendering if the camera did not produce the first frame yet. This is to avoid
-      // drawing possible leftover data from previous sessions if the texture is reused.
-      backgroundRenderer.drawBackground(render);
+    // Load the virtual object again if it was evicted while there was nothing to draw.
+    if (virtualObjectEvicted && !wrappedAnchors.isEmpty()) {
+      loadVirtualObject(render);
     }
 
-    // If not tracking, don't draw 3D objects.
-    if (camera.getTrackingState() == TrackingState.PAUSED) {
-      return;
-    }
+    // -- Draw the passes of the frame that have something to draw
+    renderGraph.execute(frame, render);
+    profiler.setCounter("culled passes", renderGraph.getCulledPassCount());
+  }
 
-    // -- Draw non-occluded virtual objects (planes, point cloud)
+  /**
+   * Describes the passes of a frame and what they read and write, so that a frame without placed
+   * objects skips the lighting, virtual scene and occlusion passes, and costs no more than the
+   * camera background with the planes and points.
+   */
+  private RenderGraph<Frame> createRenderGraph(SampleRender render) {
+    RenderGraph<Frame> graph =
+        new RenderGraph<>((width, height) -> new Framebuffer(render, width, height));
+    RenderGraph.Resource surface = graph.createResource("surface");
+    RenderGraph.Resource cameraUniforms = graph.createResource("camera");
+    RenderGraph.Resource lightingUniforms = graph.createResource("lighting");
+    RenderGraph.Resource virtualScene = graph.createTransientTarget("virtualScene");
+    graph.markOutput(surface);
+
+    // Share the camera matrices with every shader through the per-frame uniform block. If not
+    // tracking, don't draw 3D objects.
+    graph
+        .addPass(
+            "camera",
+            frame -> {
+              Camera camera = frame.getCamera();
+              camera.getProjectionMatrix(projectionMatrix, 0, Z_NEAR, Z_FAR);
+              camera.getViewMatrix(viewMatrix, 0);
+              render.getFrameUniforms().setCamera(viewMatrix, projectionMatrix);
+            })
+        .onlyIf(frame -> frame.getCamera().getTrackingState() != TrackingState.PAUSED)
+        .writes(cameraUniforms);
+
+    // -- Draw background
 
-    // Get projection matrix.
-    camera.getProjectionMatrix(projectionMatrix, 0, Z_NEAR, Z_FAR);
+    // Suppress rendering if the camera did not produce the first frame yet. This is to avoid
+    // drawing possible leftover data from previous sessions if the texture is reused.
+    graph
+        .addPass(
+            "background",
+            frame -> {
+              if (frame.getTimestamp() != 0) {
+                backgroundRenderer.drawBackground(render);
+              }
+            })
+        .renderTo(surface, frame -> frame.getTimestamp() != 0 ? backgroundPass : clearPass);
 
-    // Get camera matrix and draw.
-    camera.getViewMatrix(viewMatrix, 0);
+    // -- Draw non-occluded virtual objects (planes, point cloud)
 
     // Visualize tracked points.
     // Use try-with-resources to automatically release the point cloud.
-    try (PointCloud pointCloud = frame.acquirePointCloud()) {
-      if (pointCloud.getTimestamp() > lastPointCloudTimestamp) {
-        pointCloudVertexBuffer.set(pointCloud.getPoints());
-        lastPointCloudTimestamp = pointCloud.getTimestamp();
-      }
-      Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
-      pointCloudShader.setMat4("u_ModelViewProjection", modelViewProjectionMatrix);
-      render.draw(pointCloudMesh, pointCloudShader);
-    }
+    graph
+        .addPass(
+            "points",
+            frame -> {
+              try (PointCloud pointCloud = frame.acquirePointCloud()) {
+                if (pointCloud.getTimestamp() > lastPointCloudTimestamp) {
+                  pointCloudVertexBuffer.set(pointCloud.getPoints());
+                  lastPointCloudTimestamp = pointCloud.getTimestamp();
+                }
+                render.draw(pointCloudMesh, pointCloudShader);
+              }
+            })
+        .reads(cameraUniforms)
+        .writes(surface);
 
     // Visualize planes.
-    planeRenderer.drawPlanes(
-        render,
-        session.getAllTrackables(Plane.class),
-        camera.getDisplayOrientedPose(),
-        projectionMatrix);
+    graph
+        .addPass(
+            "planes",
+            frame -> {
+              planeRenderer.drawPlanes(
+                  render,
+                  session.getAllTrackables(Plane.class),
+                  frame.getCamera().getDisplayOrientedPose());
+              render.getProfiler().setCounter("culled planes", planeRenderer.getCulledPlaneCount());
+            })
+        .onlyIf(frame -> hasTrackingPlane())
+        .reads(cameraUniforms)
+        .writes(surface);
 
     // -- Draw occluded virtual objects
 
-    // Update lighting parameters in the shader
-    updateLightEstimation(frame.getLightEstimate(), viewMatrix);
+    // Update lighting parameters in the shader, including the filtered cubemap.
+    graph
+        .addPass("lighting", frame -> updateLightEstimation(frame.getLightEstimate(), viewMatrix))
+        .reads(cameraUniforms)
+        .writes(lightingUniforms);
+
+    // Visualize anchors created by touch, once the virtual object has been loaded.
+    graph
+        .addPass("objects", frame -> drawAnchors(virtualScene.getFramebuffer()))
+        .onlyIf(frame -> virtualObjectShader != null && hasTrackingAnchor())
+        .reads(cameraUniforms)
+        .reads(lightingUniforms)
+        .renderTo(
+            virtualScene,
+            frame ->
+                depthSettings.useDepthForOcclusion()
+                    ? virtualSceneWithDepthPass
+                    : virtualScenePass);
+
+    // Compose the virtual scene with the background.
+    graph
+        .addPass(
+            "occlusion",
+            frame ->
+                backgroundRenderer.drawVirtualScene(
+                    render, virtualScene.getFramebuffer(), Z_NEAR, Z_FAR))
+        .reads(virtualScene)
+        .renderTo(surface, occlusionPass);
+    return graph;
+  }
 
-    // Visualize anchors created by touch.
-    render.clear(virtualSceneFramebuffer, 0f, 0f, 0f, 0f);
-    for (WrappedAnchor wrappedAnchor : wrappedAnchors) {
+  /** Draws the tracking anchors into {@code framebuffer}. */
+  private void drawAnchors(Framebuffer framebuffer) {
+    for (int i = 0; i < wrappedAnchors.size(); ++i) {
+      WrappedAnchor wrappedAnchor = wrappedAnchors.get(i);
       Anchor anchor = wrappedAnchor.getAnchor();
       Trackable trackable = wrappedAnchor.getTrackable();
       if (anchor.getTrackingState() != TrackingState.TRACKING) {
@@ -590,28 +928,34 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
       // during calls to session.update() as ARCore refines its estimate of the world.
       anchor.getPose().toMatrix(modelMatrix, 0);
 
-      // Calculate model/view/projection matrices
-      Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-      Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0);
-
-      // Update shader properties and draw
-      virtualObjectShader.setMat4("u_ModelView", modelViewMatrix);
-      virtualObjectShader.setMat4("u_ModelViewProjection", modelViewProjectionMatrix);
-
+      // Queue the draw with its own model matrix and albedo texture. The view and projection
+      // matrices come from the per-frame uniform block.
+      Texture albedoTexture;
       if (trackable instanceof InstantPlacementPoint
           && ((InstantPlacementPoint) trackable).getTrackingMethod()
               == InstantPlacementPoint.TrackingMethod.SCREENSPACE_WITH_APPROXIMATE_DISTANCE) {
-        virtualObjectShader.setTexture(
-            "u_AlbedoTexture", virtualObjectAlbedoInstantPlacementTexture);
+        albedoTexture = virtualObjectAlbedoInstantPlacementTexture;
       } else {
-        virtualObjectShader.setTexture("u_AlbedoTexture", virtualObjectAlbedoTexture);
+        albedoTexture = virtualObjectAlbedoTexture;
       }
-
-      render.draw(virtualObjectMesh, virtualObjectShader, virtualSceneFramebuffer);
+      virtualObjectQueue.submit(
+          virtualObjectMesh,
+          virtualObjectShader,
+          framebuffer,
+          modelMatrix,
+          virtualObjectAlbedoUniform,
+          albedoTexture,
+          wrappedAnchor.getLevelState());
     }
+    // Draw the anchors in view with one instanced draw call per albedo texture.
+    virtualObjectQueue.flush(render);
+    render.getProfiler().setCounter("culled objects", virtualObjectQueue.getCulledCount());
+  }
 
-    // Compose the virtual scene with the background.
-    backgroundRenderer.drawVirtualScene(render, virtualSceneFramebuffer, Z_NEAR, Z_FAR);
+  /** Clears the surface, for frames that draw nothing else. */
+  private void clearSurface(SampleRender render) {
+    render.beginRenderPass(clearPass);
+    render.endRenderPass();
   }
 
   // Handle only one tap per frame, as taps are usually low frequency compared to frame rate.
@@ -638,9 +982,8 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
                     == OrientationMode.ESTIMATED_SURFACE_NORMAL)
             || (trackable instanceof InstantPlacementPoint)
             || (trackable instanceof DepthPoint)) {
-          // Cap the number of objects created. This avoids overloading both the
-          // rendering system and ARCore.
-          if (wrappedAnchors.size() >= 20) {
+          // Cap the number of objects created. This avoids overloading ARCore.
+          if (wrappedAnchors.size() >= MAX_ANCHORS) {
             wrappedAnchors.get(0).getAnchor().detach();
             wrappedAnchors.remove(0);
           }
@@ -766,16 +1109,24 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     return false;
   }
 
+  /** Checks if at least one placed anchor is tracking. */
+  private boolean hasTrackingAnchor() {
+    for (int i = 0; i < wrappedAnchors.size(); ++i) {
+      if (wrappedAnchors.get(i).getAnchor().getTrackingState() == TrackingState.TRACKING) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Update state based on the current frame's light estimation. */
   private void updateLightEstimation(LightEstimate lightEstimate, float[] viewMatrix) {
+    FrameUniforms frameUniforms = render.getFrameUniforms();
     if (lightEstimate.getState() != LightEstimate.State.VALID) {
-      virtualObjectShader.setBool("u_LightEstimateIsValid", false);
+      frameUniforms.setLightEstimateIsValid(false);
       return;
     }
-    virtualObjectShader.setBool("u_LightEstimateIsValid", true);
-
-    Matrix.invertM(viewInverseMatrix, 0, viewMatrix, 0);
-    virtualObjectShader.setMat4("u_ViewInverse", viewInverseMatrix);
+    frameUniforms.setLightEstimateIsValid(true);
 
     updateMainLight(
         lightEstimate.getEnvironmentalHdrMainLightDirection(),
@@ -791,9 +1142,8 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     worldLightDirection[0] = direction[0];
     worldLightDirection[1] = direction[1];
     worldLightDirection[2] = direction[2];
-    Matrix.multiplyMV(viewLightDirection, 0, viewMatrix, 0, worldLightDirection, 0);
-    virtualObjectShader.setVec4("u_ViewLightDirection", viewLightDirection);
-    virtualObjectShader.setVec3("u_LightIntensity", intensity);
+    MatrixMath.multiplyMV(viewLightDirection, 0, viewMatrix, 0, worldLightDirection, 0);
+    render.getFrameUniforms().setMainLight(viewLightDirection, intensity);
   }
 
   private void updateSphericalHarmonicsCoefficients(float[] coefficients) {
@@ -820,8 +1170,7 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
     for (int i = 0; i < 9 * 3; ++i) {
       sphericalHarmonicsCoefficients[i] = coefficients[i] * sphericalHarmonicFactors[i / 3];
     }
-    virtualObjectShader.setVec3Array(
-        "u_SphericalHarmonicsCoefficients", sphericalHarmonicsCoefficients);
+    render.getFrameUniforms().setSphericalHarmonicsCoefficients(sphericalHarmonicsCoefficients);
   }
 
   /** Configures the session with feature settings. */
@@ -849,6 +1198,7 @@ public class HelloArActivity extends AppCompatActivity implements SampleRender.R
 class WrappedAnchor {
   private Anchor anchor;
   private Trackable trackable;
+  private final LevelsOfDetail.State levelState = new LevelsOfDetail.State();
 
   public WrappedAnchor(Anchor anchor, Trackable trackable) {
     this.anchor = anchor;
@@ -862,4 +1212,8 @@ class WrappedAnchor {
   public Trackable getTrackable() {
     return trackable;
   }
+
+  public LevelsOfDetail.State getLevelState() {
+    return levelState;
+  }
 }
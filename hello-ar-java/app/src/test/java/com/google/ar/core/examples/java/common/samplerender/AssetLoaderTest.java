@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link AssetLoader}. */
+@RunWith(JUnit4.class)
+public class AssetLoaderTest {
+  private final AssetLoader loader =
+      new AssetLoader(
+          /*render=*/ null, /*assets=*/ null, /*astcSupported=*/ false, Runnable::run);
+
+  @Test
+  public void uploadOnGlThread_waitsForRunUploads() {
+    CompletableFuture<String> data = new CompletableFuture<>();
+    CompletableFuture<Integer> uploaded = loader.uploadOnGlThread(data, String::length);
+
+    data.complete("pawn");
+    assertFalse(uploaded.isDone());
+    assertEquals(1, loader.getPendingUploadCount());
+
+    loader.runUploads(Long.MAX_VALUE);
+    assertEquals(4, (int) uploaded.join());
+    assertEquals(0, loader.getPendingUploadCount());
+  }
+
+  @Test
+  public void runUploads_runsInOrderOfAvailability() {
+    List<String> order = new ArrayList<>();
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> second = new CompletableFuture<>();
+    loader.uploadOnGlThread(first, order::add);
+    loader.uploadOnGlThread(second, order::add);
+
+    second.complete("second");
+    first.complete("first");
+    loader.runUploads(Long.MAX_VALUE);
+
+    assertEquals(2, order.size());
+    assertEquals("second", order.get(0));
+    assertEquals("first", order.get(1));
+  }
+
+  @Test
+  public void runUploads_withExhaustedBudget_runsOneUpload() {
+    for (int i = 0; i < 3; ++i) {
+      loader.uploadOnGlThread(CompletableFuture.completedFuture(i), value -> value);
+    }
+
+    loader.runUploads(/*budgetNanos=*/ 0);
+    assertEquals(2, loader.getPendingUploadCount());
+    loader.runUploads(/*budgetNanos=*/ 0);
+    assertEquals(1, loader.getPendingUploadCount());
+  }
+
+  @Test
+  public void uploadOnGlThread_propagatesLoadFailures() {
+    CompletableFuture<String> data = new CompletableFuture<>();
+    CompletableFuture<Integer> uploaded = loader.uploadOnGlThread(data, String::length);
+
+    data.completeExceptionally(new IOException("missing"));
+
+    assertTrue(uploaded.isCompletedExceptionally());
+    assertEquals(0, loader.getPendingUploadCount());
+  }
+
+  @Test
+  public void uploadOnGlThread_propagatesUploadFailures() {
+    CompletableFuture<Object> uploaded =
+        loader.uploadOnGlThread(
+            CompletableFuture.completedFuture("pawn"),
+            value -> {
+              throw new IllegalStateException("GL error");
+            });
+
+    loader.runUploads(Long.MAX_VALUE);
+
+    assertTrue(uploaded.isCompletedExceptionally());
+  }
+
+  @Test
+  public void shutdown_dropsQueuedUploads() {
+    CompletableFuture<Integer> uploaded =
+        loader.uploadOnGlThread(CompletableFuture.completedFuture("pawn"), String::length);
+
+    loader.shutdown();
+    loader.runUploads(Long.MAX_VALUE);
+
+    assertFalse(uploaded.isDone());
+    assertEquals(0, loader.getPendingUploadCount());
+  }
+}
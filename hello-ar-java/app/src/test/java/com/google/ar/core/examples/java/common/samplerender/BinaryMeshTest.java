@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES30;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the parsing of {@code .mesh} files by {@link BinaryMesh}. */
+@RunWith(JUnit4.class)
+public class BinaryMeshTest {
+  private static final int VERTEX_DATA_OFFSET = 96;
+  private static final int INDEX_DATA_OFFSET = VERTEX_DATA_OFFSET + 3 * 16;
+
+  @Test
+  public void parse_returnsViewsOfTheData() throws IOException {
+    ByteBuffer file = createTriangle();
+
+    BinaryMesh mesh = BinaryMesh.parse(file, "triangle.mesh");
+
+    assertEquals(3, mesh.numberOfVertices);
+    assertEquals(3, mesh.numberOfIndices);
+    assertEquals(GLES30.GL_UNSIGNED_BYTE, mesh.indexType);
+    assertEquals(16, mesh.layout.getStride());
+    assertEquals(3, mesh.layout.getAttributeCount());
+    assertEquals(VertexLayout.Format.SNORM8, mesh.layout.getFormat(2));
+    assertArrayEquals(new float[] {0, 0, 0, 1, 1, 0}, mesh.bounds, 0f);
+    assertEquals(3 * 16, mesh.vertexData.remaining());
+    assertEquals(0x7F, mesh.vertexData.get(14));
+    assertEquals(3, mesh.indexData.remaining());
+    assertEquals(2, mesh.indexData.get(2));
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsWrongMagic() throws IOException {
+    ByteBuffer file = createTriangle();
+    file.putInt(0, 0x4A424F23); // "#OBJ"
+
+    BinaryMesh.parse(file, "triangle.mesh");
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsUnknownVersion() throws IOException {
+    ByteBuffer file = createTriangle();
+    file.putInt(4, BinaryMesh.VERSION + 1);
+
+    BinaryMesh.parse(file, "triangle.mesh");
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsTruncatedData() throws IOException {
+    ByteBuffer file = createTriangle();
+    file.limit(INDEX_DATA_OFFSET + 2);
+
+    BinaryMesh.parse(file, "triangle.mesh");
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsLayoutOffsetsOfOtherAlignment() throws IOException {
+    ByteBuffer file = createTriangle();
+    // Offset of the texture coordinates as if positions were not padded to 4 bytes.
+    file.putInt(BinaryMesh.ATTRIBUTES_OFFSET + 4 + 12 + 8, 6);
+
+    BinaryMesh.parse(file, "triangle.mesh");
+  }
+
+  /** Returns a triangle in the layout written by the {@code convertMeshes} task. */
+  private static ByteBuffer createTriangle() {
+    ByteBuffer file =
+        ByteBuffer.allocateDirect(INDEX_DATA_OFFSET + 3).order(ByteOrder.LITTLE_ENDIAN);
+    file.putInt(BinaryMesh.MAGIC).putInt(BinaryMesh.VERSION);
+    file.putInt(3).putInt(3).putInt(GLES30.GL_UNSIGNED_BYTE).putInt(16);
+    file.putInt(VERTEX_DATA_OFFSET).putInt(INDEX_DATA_OFFSET);
+    file.putFloat(0).putFloat(0).putFloat(0).putFloat(1).putFloat(1).putFloat(0);
+    file.putInt(3);
+    file.putInt(GLES30.GL_HALF_FLOAT).putInt(3).putInt(0);
+    file.putInt(GLES30.GL_HALF_FLOAT).putInt(2).putInt(8);
+    file.putInt(GLES30.GL_BYTE).putInt(3).putInt(12);
+    for (int vertex = 0; vertex < 3; ++vertex) {
+      // Normal (0, 0, 1) of each vertex.
+      file.put(VERTEX_DATA_OFFSET + vertex * 16 + 14, (byte) 0x7F);
+    }
+    file.position(INDEX_DATA_OFFSET);
+    file.put((byte) 0).put((byte) 1).put((byte) 2);
+    file.rewind();
+    return file;
+  }
+}
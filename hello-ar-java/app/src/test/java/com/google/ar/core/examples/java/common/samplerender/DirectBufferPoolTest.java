@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link DirectBufferPool}. */
+@RunWith(JUnit4.class)
+public class DirectBufferPoolTest {
+  @Before
+  public void setUp() {
+    // The pool is shared by the whole process, so start each test without pooled buffers.
+    DirectBufferPool.trim();
+  }
+
+  @Test
+  public void acquire_roundsUpToSizeClass() {
+    ByteBuffer buffer = DirectBufferPool.acquire(1000);
+
+    assertTrue(buffer.isDirect());
+    assertEquals(ByteOrder.nativeOrder(), buffer.order());
+    assertEquals(0, buffer.position());
+    assertEquals(1000, buffer.limit());
+    assertEquals(1024, buffer.capacity());
+    DirectBufferPool.release(buffer);
+  }
+
+  @Test
+  public void release_letsSameClassReuseBuffer() {
+    ByteBuffer buffer = DirectBufferPool.acquire(600);
+    buffer.position(100);
+    DirectBufferPool.release(buffer);
+    int reuseCount = DirectBufferPool.getReuseCount();
+
+    ByteBuffer reused = DirectBufferPool.acquire(1000);
+    ByteBuffer other = DirectBufferPool.acquire(600);
+
+    assertSame(buffer, reused);
+    assertNotSame(buffer, other);
+    assertEquals(reuseCount + 1, DirectBufferPool.getReuseCount());
+    assertEquals(0, reused.position());
+    assertEquals(1000, reused.limit());
+    DirectBufferPool.release(reused);
+    DirectBufferPool.release(other);
+  }
+
+  @Test
+  public void release_tracksInUseAndPooledBytes() {
+    long inUseBytes = DirectBufferPool.getInUseBytes();
+
+    ByteBuffer buffer = DirectBufferPool.acquire(4096);
+    assertEquals(inUseBytes + 4096, DirectBufferPool.getInUseBytes());
+    assertTrue(DirectBufferPool.getHighWaterBytes() >= inUseBytes + 4096);
+
+    DirectBufferPool.release(buffer);
+    assertEquals(inUseBytes, DirectBufferPool.getInUseBytes());
+    assertEquals(4096, DirectBufferPool.getPooledBytes());
+
+    DirectBufferPool.trim();
+    assertEquals(0, DirectBufferPool.getPooledBytes());
+  }
+
+  @Test
+  public void release_twice_throwsAndPoolsBufferOnce() {
+    ByteBuffer buffer = DirectBufferPool.acquire(512);
+    DirectBufferPool.release(buffer);
+
+    try {
+      DirectBufferPool.release(buffer);
+      fail("Released twice");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    assertEquals(512, DirectBufferPool.getPooledBytes());
+    ByteBuffer first = DirectBufferPool.acquire(512);
+    ByteBuffer second = DirectBufferPool.acquire(512);
+    assertSame(buffer, first);
+    assertNotSame(first, second);
+    DirectBufferPool.release(first);
+    DirectBufferPool.release(second);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void release_bufferFromElsewhere_throws() {
+    DirectBufferPool.release(ByteBuffer.allocateDirect(1024));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void release_sliceOfPooledBuffer_throws() {
+    ByteBuffer buffer = DirectBufferPool.acquire(1024);
+    try {
+      DirectBufferPool.release(buffer.slice());
+    } finally {
+      DirectBufferPool.release(buffer);
+    }
+  }
+
+  @Test
+  public void release_ignoresReadOnlyAndOversizedBuffers() {
+    long inUseBytes = DirectBufferPool.getInUseBytes();
+
+    DirectBufferPool.release(ByteBuffer.allocateDirect(1024).asReadOnlyBuffer());
+    ByteBuffer oversized = DirectBufferPool.acquire((1 << 24) + 1);
+    assertEquals((1 << 24) + 1, oversized.capacity());
+    DirectBufferPool.release(oversized);
+
+    assertEquals(inUseBytes, DirectBufferPool.getInUseBytes());
+    assertEquals(0, DirectBufferPool.getPooledBytes());
+  }
+}
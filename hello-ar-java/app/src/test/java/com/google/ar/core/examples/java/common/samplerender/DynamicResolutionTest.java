@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link DynamicResolution}. */
+@RunWith(JUnit4.class)
+public class DynamicResolutionTest {
+  private static final long TARGET_NANOS = 10_000_000;
+
+  private final DynamicResolution dynamicResolution =
+      new DynamicResolution(/*minScale=*/ 0.25f, /*maxScale=*/ 1f, TARGET_NANOS);
+
+  @Test
+  public void update_withoutMeasurements_keepsMaxScale() {
+    for (int i = 0; i < 100; ++i) {
+      assertFalse(dynamicResolution.update(-1));
+    }
+
+    assertEquals(1f, dynamicResolution.getScale(), 0f);
+  }
+
+  @Test
+  public void update_overTarget_shrinksBySquareRootOnceSettled() {
+    assertFalse(settle(4 * TARGET_NANOS));
+
+    assertTrue(dynamicResolution.update(4 * TARGET_NANOS));
+    assertEquals(0.5f, dynamicResolution.getScale(), 1e-6f);
+    // Measurements at the new scale settle again before the next change.
+    assertFalse(dynamicResolution.update(4 * TARGET_NANOS));
+  }
+
+  @Test
+  public void update_farOverTarget_stopsAtMinScale() {
+    settle(100 * TARGET_NANOS);
+
+    dynamicResolution.update(100 * TARGET_NANOS);
+
+    assertEquals(0.25f, dynamicResolution.getScale(), 1e-6f);
+  }
+
+  @Test
+  public void update_wellUnderTarget_growsByBoundedSteps() {
+    settle(4 * TARGET_NANOS);
+    dynamicResolution.update(4 * TARGET_NANOS);
+    settle(TARGET_NANOS / 10);
+
+    assertTrue(dynamicResolution.update(TARGET_NANOS / 10));
+    assertEquals(0.6f, dynamicResolution.getScale(), 1e-6f);
+  }
+
+  @Test
+  public void update_nearTarget_keepsScale() {
+    settle(TARGET_NANOS * 9 / 10);
+
+    assertFalse(dynamicResolution.update(TARGET_NANOS * 9 / 10));
+    assertEquals(1f, dynamicResolution.getScale(), 0f);
+  }
+
+  @Test
+  public void scale_roundsToAtLeastOnePixel() {
+    settle(4 * TARGET_NANOS);
+    dynamicResolution.update(4 * TARGET_NANOS);
+
+    assertEquals(541, dynamicResolution.scale(1081));
+    assertEquals(1, dynamicResolution.scale(1));
+  }
+
+  /** Feeds the measurements taken before the scale may change, returning whether it did. */
+  private boolean settle(long nanos) {
+    boolean changed = false;
+    for (int i = 0; i < DynamicResolution.SETTLE_FRAMES; ++i) {
+      changed |= dynamicResolution.update(nanos);
+    }
+    return changed;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link FrameProfiler}. */
+@RunWith(JUnit4.class)
+public class FrameProfilerTest {
+  // Without a context, timer queries are unsupported and only CPU times are measured.
+  private final FrameProfiler profiler = new FrameProfiler();
+
+  @Test
+  public void passStats_withoutSamples_returnsMinusOne() {
+    FrameProfiler.PassStats stats = new FrameProfiler.PassStats(10);
+
+    assertEquals(-1, stats.getCpuNanos(50));
+    assertEquals(-1, stats.getGpuNanos(50));
+  }
+
+  @Test
+  public void passStats_returnsPercentiles() {
+    FrameProfiler.PassStats stats = new FrameProfiler.PassStats(10);
+    for (long nanos : new long[] {50, 10, 40, 20, 30}) {
+      stats.addCpu(nanos);
+    }
+
+    assertEquals(10, stats.getCpuNanos(0));
+    assertEquals(30, stats.getCpuNanos(50));
+    assertEquals(50, stats.getCpuNanos(100));
+  }
+
+  @Test
+  public void passStats_keepsOnlyLatestWindow() {
+    FrameProfiler.PassStats stats = new FrameProfiler.PassStats(3);
+    for (long nanos : new long[] {1000, 1000, 1000, 1, 2, 3}) {
+      stats.addGpu(nanos);
+    }
+
+    assertEquals(1, stats.getGpuNanos(0));
+    assertEquals(3, stats.getGpuNanos(100));
+  }
+
+  @Test
+  public void beginPass_recordsCpuTimeOnly() {
+    profiler.beginFrame();
+    profiler.beginPass("background");
+    profiler.beginPass("planes");
+    profiler.endFrame();
+
+    assertFalse(profiler.isGpuSupported());
+    assertEquals(Arrays.asList("background", "planes"), profiler.getPassNames());
+    assertTrue(profiler.getStats("background").getCpuNanos(50) >= 0);
+    assertTrue(profiler.getStats("planes").getCpuNanos(50) >= 0);
+    assertEquals(-1, profiler.getStats("planes").getGpuNanos(50));
+    assertNull(profiler.getStats("objects"));
+
+    profiler.beginFrame();
+    assertEquals(-1, profiler.getGpuFrameNanos());
+  }
+
+  @Test
+  public void endPass_withoutPass_doesNothing() {
+    profiler.endPass();
+
+    assertTrue(profiler.getPassNames().isEmpty());
+  }
+
+  @Test
+  public void beginFrame_resetsCounters() {
+    profiler.beginFrame();
+    profiler.setCounter("culled", 7);
+    assertEquals(7, profiler.getCounter("culled"));
+    profiler.endFrame();
+
+    profiler.beginFrame();
+
+    assertEquals(0, profiler.getCounter("culled"));
+    assertEquals(0, profiler.getCounter("unknown"));
+  }
+
+  @Test
+  public void endFrame_refreshesSummaryEveryInterval() {
+    for (int i = 0; i < FrameProfiler.SUMMARY_INTERVAL_FRAMES - 1; ++i) {
+      profiler.beginFrame();
+      profiler.beginPass("points");
+      profiler.endFrame();
+    }
+    assertEquals("", profiler.getSummary());
+
+    profiler.beginFrame();
+    profiler.beginPass("points");
+    profiler.setCounter("culled", 3);
+    profiler.endFrame();
+
+    String summary = profiler.getSummary();
+    assertTrue(summary, summary.contains("\npoints"));
+    assertTrue(summary, summary.endsWith("\nculled: 3"));
+  }
+}
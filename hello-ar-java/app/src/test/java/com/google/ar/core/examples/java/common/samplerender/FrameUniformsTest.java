@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that {@link FrameUniforms} writes the {@code std140} layout of the shader block. */
+@RunWith(JUnit4.class)
+public class FrameUniformsTest {
+  private final FrameUniforms frameUniforms = new FrameUniforms(new GpuResourceRegistry());
+  private final ByteBuffer data = frameUniforms.getUniformBuffer().getData();
+
+  @Test
+  public void setCamera_writesViewAndProjectionMatrices() {
+    float[] view = sequence(16, 1f);
+    float[] projection = sequence(16, 100f);
+
+    frameUniforms.setCamera(view, projection);
+
+    for (int i = 0; i < 16; ++i) {
+      assertEquals(view[i], data.getFloat(FrameUniforms.VIEW_OFFSET + 4 * i), 0f);
+      assertEquals(projection[i], data.getFloat(FrameUniforms.PROJECTION_OFFSET + 4 * i), 0f);
+    }
+  }
+
+  @Test
+  public void setMainLight_packsIntensityBeforeValidFlag() {
+    frameUniforms
+        .setMainLight(new float[] {1f, 2f, 3f, 0f}, new float[] {4f, 5f, 6f})
+        .setLightEstimateIsValid(true);
+
+    assertEquals(1f, data.getFloat(256), 0f);
+    assertEquals(3f, data.getFloat(264), 0f);
+    assertEquals(0f, data.getFloat(268), 0f);
+    assertEquals(4f, data.getFloat(272), 0f);
+    assertEquals(6f, data.getFloat(280), 0f);
+    // A bool following a vec3 shares its 16-byte slot.
+    assertEquals(1, data.getInt(284));
+
+    frameUniforms.setLightEstimateIsValid(false);
+
+    assertEquals(0, data.getInt(284));
+    assertEquals(6f, data.getFloat(280), 0f);
+  }
+
+  @Test
+  public void setSphericalHarmonicsCoefficients_padsVec3ArrayToVec4Stride() {
+    frameUniforms.setSphericalHarmonicsCoefficients(sequence(27, 1f));
+
+    for (int i = 0; i < 9; ++i) {
+      int offset = FrameUniforms.SPHERICAL_HARMONICS_COEFFICIENTS_OFFSET + 16 * i;
+      assertEquals(1f + 3 * i, data.getFloat(offset), 0f);
+      assertEquals(2f + 3 * i, data.getFloat(offset + 4), 0f);
+      assertEquals(3f + 3 * i, data.getFloat(offset + 8), 0f);
+    }
+    assertEquals(
+        FrameUniforms.SIZE, FrameUniforms.SPHERICAL_HARMONICS_COEFFICIENTS_OFFSET + 9 * 16);
+    assertEquals(FrameUniforms.SIZE, data.capacity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setSphericalHarmonicsCoefficients_rejectsWrongLength() {
+    frameUniforms.setSphericalHarmonicsCoefficients(new float[9]);
+  }
+
+  private static float[] sequence(int length, float first) {
+    float[] values = new float[length];
+    for (int i = 0; i < length; ++i) {
+      values[i] = first + i;
+    }
+    return values;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link Frustum}. */
+@RunWith(JUnit4.class)
+public class FrustumTest {
+  private static final float NEAR = 0.1f;
+  private static final float FAR = 100f;
+  // Column-major perspective projection with a 90 degree field of view and a square aspect ratio,
+  // looking down -z from the origin: at z = -5, x and y range from -5 to 5.
+  private static final float[] PROJECTION = {
+    1, 0, 0, 0, //
+    0, 1, 0, 0, //
+    0, 0, -(FAR + NEAR) / (FAR - NEAR), -1, //
+    0, 0, -2 * FAR * NEAR / (FAR - NEAR), 0
+  };
+  private static final float[] UNIT_BOX = {-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f};
+
+  private final Frustum frustum = new Frustum();
+
+  public FrustumTest() {
+    frustum.update(PROJECTION);
+  }
+
+  @Test
+  public void intersectsBox_inFront_returnsTrue() {
+    assertTrue(frustum.intersectsBox(translation(0, 0, -5), 0, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_behindCamera_returnsFalse() {
+    assertFalse(frustum.intersectsBox(translation(0, 0, 5), 0, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_beyondFarPlane_returnsFalse() {
+    assertFalse(frustum.intersectsBox(translation(0, 0, -FAR - 1), 0, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_besideView_returnsFalse() {
+    assertFalse(frustum.intersectsBox(translation(7, 0, -5), 0, UNIT_BOX));
+    assertFalse(frustum.intersectsBox(translation(0, -7, -5), 0, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_acrossEdge_returnsTrue() {
+    // The box spans x from 4.5 to 5.5, across the edge at x = 5.
+    assertTrue(frustum.intersectsBox(translation(5, 0, -5), 0, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_offCenterBounds_usesTransformedBox() {
+    float[] bounds = {-4f, -0.5f, -0.5f, -3f, 0.5f, 0.5f};
+    float[] model = translation(8, 0, -5);
+
+    // World x from 4 to 5.
+    assertTrue(frustum.intersectsBox(model, 0, bounds));
+
+    // Turned half a turn around y, world x from 11 to 12.
+    model[0] = -1;
+    model[10] = -1;
+    assertFalse(frustum.intersectsBox(model, 0, bounds));
+  }
+
+  @Test
+  public void intersectsBox_readsMatrixAtOffset() {
+    float[] matrices = new float[32];
+    System.arraycopy(translation(0, 0, 5), 0, matrices, 0, 16);
+    System.arraycopy(translation(0, 0, -5), 0, matrices, 16, 16);
+
+    assertFalse(frustum.intersectsBox(matrices, 0, UNIT_BOX));
+    assertTrue(frustum.intersectsBox(matrices, 16, UNIT_BOX));
+  }
+
+  @Test
+  public void intersectsBox_beforeUpdate_returnsTrue() {
+    assertTrue(new Frustum().intersectsBox(translation(0, 0, 5), 0, UNIT_BOX));
+  }
+
+  private static float[] translation(float x, float y, float z) {
+    return new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, x, y, z, 1};
+  }
+}
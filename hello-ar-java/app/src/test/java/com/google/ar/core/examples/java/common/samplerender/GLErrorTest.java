@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests which frames the {@link GLError} check modes check. */
+@RunWith(JUnit4.class)
+public class GLErrorTest {
+  @After
+  public void restoreDefaultMode() {
+    GLError.setCheckMode(GLError.CheckMode.FULL, /*samplingInterval=*/ 1);
+  }
+
+  @Test
+  public void full_checksEveryFrame() {
+    GLError.setCheckMode(GLError.CheckMode.FULL, /*samplingInterval=*/ 60);
+
+    for (int frame = 0; frame < 5; ++frame) {
+      GLError.onFrameStarted();
+      assertTrue(GLError.isCheckingThisFrame());
+    }
+  }
+
+  @Test
+  public void sampled_checksEveryNthFrame() {
+    GLError.setCheckMode(GLError.CheckMode.SAMPLED, /*samplingInterval=*/ 4);
+
+    int checkedFrames = 0;
+    for (int frame = 0; frame < 40; ++frame) {
+      GLError.onFrameStarted();
+      if (GLError.isCheckingThisFrame()) {
+        checkedFrames++;
+      }
+    }
+
+    assertEquals(10, checkedFrames);
+  }
+
+  @Test
+  public void off_neverChecks() {
+    GLError.setCheckMode(GLError.CheckMode.OFF, /*samplingInterval=*/ 1);
+
+    for (int frame = 0; frame < 5; ++frame) {
+      GLError.onFrameStarted();
+      assertFalse(GLError.isCheckingThisFrame());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setCheckMode_rejectsNonPositiveInterval() {
+    GLError.setCheckMode(GLError.CheckMode.SAMPLED, /*samplingInterval=*/ 0);
+  }
+}
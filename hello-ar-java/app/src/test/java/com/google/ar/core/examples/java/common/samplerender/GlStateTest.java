@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES30;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests which state changes {@link GlState} forwards and which it skips. */
+@RunWith(JUnit4.class)
+public class GlStateTest {
+  private final GlState glState = new GlState();
+
+  @Test
+  public void repeatedStateChanges_areSkipped() {
+    for (int draw = 0; draw < 3; ++draw) {
+      glState.useProgram(1);
+      glState.setDepthTest(true);
+      glState.setDepthMask(false);
+      glState.setBlendFuncSeparate(GLES30.GL_ONE, GLES30.GL_ZERO, GLES30.GL_ONE, GLES30.GL_ZERO);
+      glState.setViewport(0, 0, 640, 480);
+      glState.bindFramebuffer(0);
+    }
+
+    assertEquals(6, glState.getIssuedCallCount());
+    assertEquals(12, glState.getSkippedCallCount());
+  }
+
+  @Test
+  public void changedState_isIssued() {
+    glState.useProgram(1);
+    glState.useProgram(2);
+    glState.setViewport(0, 0, 640, 480);
+    glState.setViewport(0, 0, 320, 240);
+
+    assertEquals(4, glState.getIssuedCallCount());
+    assertEquals(0, glState.getSkippedCallCount());
+  }
+
+  @Test
+  public void bindTexture_tracksUnitsAndTargetsSeparately() {
+    glState.bindTexture(0, GLES30.GL_TEXTURE_2D, 5);
+    glState.bindTexture(1, GLES30.GL_TEXTURE_2D, 6);
+    glState.bindTexture(0, GLES30.GL_TEXTURE_CUBE_MAP, 7);
+    glState.resetCallCounts();
+
+    glState.bindTexture(0, GLES30.GL_TEXTURE_2D, 5);
+    glState.bindTexture(1, GLES30.GL_TEXTURE_2D, 6);
+    glState.bindTexture(0, GLES30.GL_TEXTURE_CUBE_MAP, 7);
+
+    assertEquals(0, glState.getIssuedCallCount());
+    assertEquals(3, glState.getSkippedCallCount());
+  }
+
+  @Test
+  public void bindTextureForUpdate_keepsActiveUnit() {
+    glState.bindTexture(2, GLES30.GL_TEXTURE_2D, 5);
+    glState.resetCallCounts();
+
+    // Unit 2 is still active, so only the bind is issued.
+    glState.bindTextureForUpdate(GLES30.GL_TEXTURE_2D, 6);
+    assertEquals(1, glState.getIssuedCallCount());
+
+    // The update replaced the texture bound to unit 2.
+    glState.bindTexture(2, GLES30.GL_TEXTURE_2D, 5);
+    assertEquals(2, glState.getIssuedCallCount());
+  }
+
+  @Test
+  public void deletedObjects_areForgotten() {
+    glState.useProgram(1);
+    glState.bindFramebuffer(2);
+    glState.bindTexture(0, GLES30.GL_TEXTURE_2D, 3);
+    glState.bindUniformBufferBase(0, 4);
+    glState.onProgramDeleted(1);
+    glState.onFramebufferDeleted(2);
+    glState.onTextureDeleted(3);
+    glState.onBufferDeleted(4);
+    glState.resetCallCounts();
+
+    // Names of deleted objects may be reused by new ones, which must be bound again.
+    glState.useProgram(1);
+    glState.bindFramebuffer(2);
+    glState.bindTexture(0, GLES30.GL_TEXTURE_2D, 3);
+    glState.bindUniformBufferBase(0, 4);
+
+    assertEquals(4, glState.getIssuedCallCount());
+  }
+
+  @Test
+  public void invalidate_issuesEverythingAgain() {
+    glState.useProgram(1);
+    glState.bindUniformBufferBase(0, 4);
+    glState.invalidate();
+    glState.resetCallCounts();
+
+    glState.useProgram(1);
+    glState.bindUniformBufferBase(0, 4);
+
+    assertEquals(2, glState.getIssuedCallCount());
+    assertEquals(0, glState.getSkippedCallCount());
+  }
+}
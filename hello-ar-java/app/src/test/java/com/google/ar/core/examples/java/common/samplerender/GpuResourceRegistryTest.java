@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES30;
+import com.google.ar.core.examples.java.common.samplerender.GpuResourceRegistry.Category;
+import java.io.Closeable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link GpuResourceRegistry}. */
+@RunWith(JUnit4.class)
+public class GpuResourceRegistryTest {
+  /** An object that unregisters itself when closed, like the samplerender objects. */
+  private static final class FakeResource implements Closeable {
+    private final GpuResourceRegistry registry;
+    boolean closed;
+
+    FakeResource(GpuResourceRegistry registry, Category category, long bytes) {
+      this.registry = registry;
+      registry.register(this, category, bytes);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      registry.unregister(this);
+    }
+  }
+
+  private final GpuResourceRegistry registry = new GpuResourceRegistry();
+
+  @Test
+  public void register_sumsBytesPerCategory() {
+    new FakeResource(registry, Category.TEXTURE, 100);
+    FakeResource buffer = new FakeResource(registry, Category.BUFFER, 30);
+    new FakeResource(registry, Category.TEXTURE, 50);
+
+    registry.setBytes(buffer, 40);
+
+    assertEquals(150, registry.getBytes(Category.TEXTURE));
+    assertEquals(40, registry.getBytes(Category.BUFFER));
+    assertEquals(190, registry.getTotalBytes());
+    assertEquals(3, registry.getResourceCount());
+
+    buffer.close();
+    assertEquals(0, registry.getBytes(Category.BUFFER));
+    assertEquals(2, registry.getResourceCount());
+  }
+
+  @Test
+  public void beginFrame_evictsLeastRecentlyUsedOverBudget() {
+    FakeResource older = new FakeResource(registry, Category.TEXTURE, 100);
+    registry.beginFrame();
+    FakeResource newer = new FakeResource(registry, Category.TEXTURE, 100);
+    FakeResource resident = new FakeResource(registry, Category.TEXTURE, 1000);
+    int[] evictedCount = {0};
+    registry.setEvictable(older, () -> evictedCount[0]++);
+    registry.setEvictable(newer, () -> evictedCount[0]++);
+    registry.setEvictableBudget(150);
+    registry.beginFrame();
+
+    registry.beginFrame();
+
+    assertTrue(older.closed);
+    assertFalse(newer.closed);
+    assertFalse(resident.closed);
+    assertEquals(1, evictedCount[0]);
+    assertEquals(1, registry.getEvictionCount());
+    assertEquals(100, registry.getEvictableBytes());
+  }
+
+  @Test
+  public void beginFrame_keepsObjectsUsedInPreviousFrame() {
+    FakeResource texture = new FakeResource(registry, Category.TEXTURE, 100);
+    registry.setEvictable(texture, () -> {});
+    registry.setEvictableBudget(50);
+    registry.touch(texture);
+
+    registry.beginFrame();
+
+    assertFalse(texture.closed);
+    registry.beginFrame();
+    assertTrue(texture.closed);
+  }
+
+  @Test
+  public void onContextLost_forgetsObjectsWithoutClosing() {
+    FakeResource texture = new FakeResource(registry, Category.TEXTURE, 100);
+
+    registry.onContextLost();
+
+    assertFalse(texture.closed);
+    assertEquals(0, registry.getResourceCount());
+    assertEquals(0, registry.getTotalBytes());
+  }
+
+  @Test
+  public void reportLeaks_countsAndForgetsOpenObjects() {
+    new FakeResource(registry, Category.TEXTURE, 100);
+    new FakeResource(registry, Category.BUFFER, 10);
+    new FakeResource(registry, Category.BUFFER, 10).close();
+
+    assertEquals(2, registry.reportLeaks());
+    assertEquals(0, registry.getResourceCount());
+    assertEquals(0, registry.reportLeaks());
+  }
+
+  @Test
+  public void estimateTextureBytes_includesMipLevels() {
+    assertEquals(64, GpuResourceRegistry.estimateTextureBytes(GLES30.GL_RGBA8, 4, 4, false));
+    // 4x4, 2x2 and 1x1 levels.
+    assertEquals(84, GpuResourceRegistry.estimateTextureBytes(GLES30.GL_RGBA8, 4, 4, true));
+    // 4x1, 2x1 and 1x1 levels of two bytes per pixel.
+    assertEquals(14, GpuResourceRegistry.estimateTextureBytes(GLES30.GL_RG8, 4, 1, true));
+  }
+}
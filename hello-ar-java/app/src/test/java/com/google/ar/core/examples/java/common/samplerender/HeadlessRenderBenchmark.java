@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Measures the CPU time {@link SampleRender} takes to issue the OpenGL calls of a frame of {@link
+ * HeadlessRenderTest.AnchorScene}, without a driver. Run manually, as timings of the JVM unit test
+ * runner are only indicative of those on a device.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(JUnit4.class)
+public class HeadlessRenderBenchmark {
+  private static final int WARMUP_RUNS = 100;
+  private static final int MEASURED_RUNS = 200;
+
+  @After
+  public void tearDown() {
+    GlBackend.set(new AndroidGl());
+  }
+
+  @Test
+  public void anchors() {
+    RecordingGl gl = new RecordingGl();
+    // Only the counters are kept, so that recording does not dominate the time of a frame.
+    gl.setRecordCommands(false);
+    GlBackend.set(gl);
+
+    for (int anchorCount : new int[] {1, 50, 500}) {
+      SampleRender render = new HeadlessRenderTest.AnchorScene(anchorCount).createRender();
+      report(anchorCount + " anchors", render, gl);
+    }
+  }
+
+  private static void report(String name, SampleRender render, RecordingGl gl) {
+    for (int i = 0; i < WARMUP_RUNS; ++i) {
+      render.onDrawFrame();
+    }
+    gl.reset();
+    double[] micros = new double[MEASURED_RUNS];
+    for (int i = 0; i < MEASURED_RUNS; ++i) {
+      long startNanos = System.nanoTime();
+      render.onDrawFrame();
+      micros[i] = (System.nanoTime() - startNanos) / 1e3;
+    }
+    Arrays.sort(micros);
+    System.out.println(
+        String.format(
+            "%s: median %.1f us, min %.1f us, %d GL calls per frame",
+            name, micros[MEASURED_RUNS / 2], micros[0], gl.getCallCount() / MEASURED_RUNS));
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Renders frames of a scene of anchors through a {@link SampleRender} without a surface, whose
+ * OpenGL calls are counted by a {@link RecordingGl}.
+ */
+@RunWith(JUnit4.class)
+public class HeadlessRenderTest {
+  private static final int ANCHOR_COUNT = 50;
+  private static final int POINT_COUNT = 100;
+  // Budget of one frame of the scene, covering the calls of the draw and the error checks after
+  // each call. It does not grow with the number of anchors.
+  private static final int MAX_CALLS_PER_FRAME = 40;
+
+  private RecordingGl gl;
+
+  @Before
+  public void setUp() {
+    gl = new RecordingGl();
+    GlBackend.set(gl);
+  }
+
+  @After
+  public void tearDown() {
+    GlBackend.set(new AndroidGl());
+  }
+
+  @Test
+  public void onDrawFrame_anchors_drawsOneInstancedBatch() {
+    AnchorScene scene = new AnchorScene(ANCHOR_COUNT);
+    SampleRender render = scene.createRender();
+    // The first frame uploads the vertex buffers and the instance buffer for the first time.
+    render.onDrawFrame();
+    gl.reset();
+
+    render.onDrawFrame();
+
+    assertEquals(1, gl.getCallCount("glDrawArraysInstanced"));
+    assertEquals(1, gl.getCallCount("glDrawArrays"));
+    assertTrue(
+        "GL calls per frame: " + gl.getCallCount(), gl.getCallCount() <= MAX_CALLS_PER_FRAME);
+    // The model matrices, the streamed points and the frame uniforms.
+    assertTrue(
+        "Uploaded bytes: " + gl.getUploadedBytes(),
+        gl.getUploadedBytes() >= (ANCHOR_COUNT * 16 + POINT_COUNT * 4) * Float.BYTES);
+  }
+
+  @Test
+  public void onDrawFrame_moreAnchors_keepsCallCount() {
+    SampleRender few = new AnchorScene(1).createRender();
+    few.onDrawFrame();
+    gl.reset();
+    few.onDrawFrame();
+    long fewCalls = gl.getCallCount();
+
+    SampleRender many = new AnchorScene(ANCHOR_COUNT).createRender();
+    many.onDrawFrame();
+    gl.reset();
+    many.onDrawFrame();
+
+    assertEquals(fewCalls, gl.getCallCount());
+  }
+
+  @Test
+  public void flush_meshOutOfView_isCulled() throws IOException {
+    SampleRender render = new AnchorScene(0).createRender();
+    byte[] obj = "v -1 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n".getBytes(StandardCharsets.US_ASCII);
+    Mesh triangle =
+        Mesh.createFromObj(
+            render,
+            (ByteBuffer) ByteBuffer.allocateDirect(obj.length).put(obj).flip(),
+            "triangle",
+            /*instanceBuffers=*/ new VertexBuffer[0]);
+    Shader shader =
+        new Shader(
+            render, AnchorScene.VERTEX_SHADER, AnchorScene.FRAGMENT_SHADER, /*defines=*/ null);
+    // Looking down -z with a 90 degree field of view.
+    float[] projection = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, -1, 0, 0, -0.2f, 0};
+    render.getFrameUniforms().setCamera(AnchorScene.IDENTITY, projection);
+    RenderQueue queue = new RenderQueue();
+    queue.submit(triangle, shader, /*framebuffer=*/ null, translation(0, 0, -5));
+    queue.submit(triangle, shader, /*framebuffer=*/ null, translation(0, 0, 5));
+    queue.submit(triangle, shader, /*framebuffer=*/ null, translation(20, 0, -5));
+    gl.reset();
+
+    queue.flush(render);
+
+    assertEquals(2, queue.getCulledCount());
+    assertEquals(1, gl.getDrawCallCount());
+    assertEquals(0, queue.getSize());
+  }
+
+  @Test
+  public void flush_distantMesh_drawsCoarserLevel() throws IOException {
+    SampleRender render = new AnchorScene(0).createRender();
+    StringBuilder obj = new StringBuilder();
+    int gridSize = 8;
+    for (int y = 0; y <= gridSize; ++y) {
+      for (int x = 0; x <= gridSize; ++x) {
+        obj.append("v ").append(x).append(' ').append(y).append(" 0\n");
+      }
+    }
+    for (int y = 0; y < gridSize; ++y) {
+      for (int x = 0; x < gridSize; ++x) {
+        int v = y * (gridSize + 1) + x + 1;
+        obj.append(String.format("f %d %d %d\n", v, v + 1, v + gridSize + 1));
+        obj.append(String.format("f %d %d %d\n", v + gridSize + 1, v + 1, v + gridSize + 2));
+      }
+    }
+    byte[] objBytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+    Mesh.Geometry geometry =
+        Mesh.generateLevelsOfDetail(
+            Mesh.parseObj(
+                (ByteBuffer) ByteBuffer.allocateDirect(objBytes.length).put(objBytes).flip(),
+                "grid"),
+            new LevelsOfDetail().addLevel(/*triangleRatio=*/ 0.25f, /*screenSize=*/ 0.5f),
+            "grid");
+    Mesh grid = Mesh.create(render, geometry, /*instanceBuffers=*/ new VertexBuffer[0]);
+    Shader shader =
+        new Shader(
+            render, AnchorScene.VERTEX_SHADER, AnchorScene.FRAGMENT_SHADER, /*defines=*/ null);
+    float[] projection = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, -1, 0, 0, -0.2f, 0};
+    render.getFrameUniforms().setCamera(AnchorScene.IDENTITY, projection);
+    RenderQueue queue = new RenderQueue();
+    LevelsOfDetail.State farState = new LevelsOfDetail.State();
+    queue.submit(
+        grid,
+        shader,
+        /*framebuffer=*/ null,
+        translation(0, 0, -100),
+        /*textureUniform=*/ null,
+        /*texture=*/ null,
+        farState);
+    queue.submit(grid, shader, /*framebuffer=*/ null, translation(0, 0, -10));
+    gl.reset();
+
+    queue.flush(render);
+
+    assertEquals(2, grid.getLevelCount());
+    assertEquals(1, farState.getLevel());
+    List<Integer> indexCounts = new ArrayList<>();
+    for (RecordingGl.Command command : gl.getCommands()) {
+      if (command.getName().equals("glDrawElements")) {
+        indexCounts.add((Integer) command.getArgs()[1]);
+      }
+    }
+    assertEquals(2, indexCounts.size());
+    assertEquals(gridSize * gridSize * 6, (int) indexCounts.get(0));
+    assertTrue("Indices: " + indexCounts, indexCounts.get(1) <= indexCounts.get(0) / 2);
+  }
+
+  @Test
+  public void getModelUniform_isResolvedOnce() {
+    SampleRender render = new AnchorScene(0).createRender();
+    Shader shader =
+        new Shader(
+            render, AnchorScene.VERTEX_SHADER, AnchorScene.FRAGMENT_SHADER, /*defines=*/ null);
+    gl.reset();
+
+    Shader.FloatUniform modelUniform = shader.getModelUniform();
+
+    assertSame(modelUniform, shader.getModelUniform());
+    assertSame(modelUniform, shader.getUniformMat4(RenderQueue.MODEL_UNIFORM_NAME));
+    assertEquals(1, gl.getCallCount("glGetUniformLocation"));
+  }
+
+  @Test
+  public void indexBuffer_returnsStagingBuffersToPool() {
+    SampleRender render = new AnchorScene(0).createRender();
+    long inUseBytes = DirectBufferPool.getInUseBytes();
+    gl.reset();
+
+    IndexBuffer indexBuffer = new IndexBuffer(render, IntBuffer.wrap(new int[] {0, 1, 300}));
+    indexBuffer.set(IntBuffer.wrap(new int[] {0, 1, 2, 70000}));
+
+    assertEquals(inUseBytes, DirectBufferPool.getInUseBytes());
+    // Three shorts, then four ints, whatever the capacity of the pooled buffers.
+    assertEquals(3 * 2 + 4 * 4, gl.getUploadedBytes());
+    indexBuffer.close();
+  }
+
+  @Test
+  public void onSurfaceDestroyed_closesScene() {
+    SampleRender render = new AnchorScene(ANCHOR_COUNT).createRender();
+    render.onDrawFrame();
+    gl.reset();
+
+    render.onSurfaceDestroyed();
+
+    assertTrue(gl.getCallCount("glDeleteBuffers") > 0);
+    assertEquals(1, gl.getCallCount("glDeleteProgram"));
+  }
+
+  private static float[] translation(float x, float y, float z) {
+    return new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, x, y, z, 1};
+  }
+
+  /**
+   * A scene of {@code anchorCount} instances of a quad drawn through a {@link RenderQueue}, over a
+   * point cloud streamed every frame.
+   */
+  /* package-private */
+  static class AnchorScene implements SampleRender.Renderer {
+    private static final String VERTEX_SHADER =
+        "#version 300 es\n"
+            + "layout(std140) uniform FrameUniforms { mat4 u_ViewProjection; };\n"
+            + "layout(location = 0) in vec4 a_Position;\n"
+            + "layout(location = 1) in mat4 a_Model;\n"
+            + "void main() { gl_Position = u_ViewProjection * a_Model * a_Position; }\n";
+    private static final String FRAGMENT_SHADER =
+        "#version 300 es\n"
+            + "precision mediump float;\n"
+            + "out vec4 o_FragColor;\n"
+            + "void main() { o_FragColor = vec4(1.0); }\n";
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    private final int anchorCount;
+    private final float[] modelMatrix = IDENTITY.clone();
+    private final FloatBuffer points = createFloatBuffer(new float[POINT_COUNT * 4]);
+    private final RenderQueue queue = new RenderQueue();
+    private final RenderPass pass =
+        new RenderPass(
+            /*framebuffer=*/ null,
+            RenderPass.LoadAction.CLEAR,
+            RenderPass.StoreAction.STORE,
+            RenderPass.LoadAction.CLEAR,
+            RenderPass.StoreAction.DISCARD);
+    private Shader shader;
+    private Mesh quad;
+    private VertexBuffer pointBuffer;
+    private Mesh pointCloud;
+
+    /* package-private */
+    AnchorScene(int anchorCount) {
+      this.anchorCount = anchorCount;
+    }
+
+    /** Creates a {@link SampleRender} drawing this scene, whose surface is already created. */
+    /* package-private */
+    SampleRender createRender() {
+      SampleRender render = new SampleRender(this, /*assetManager=*/ null);
+      render.onSurfaceCreated();
+      render.onSurfaceChanged(1920, 1080);
+      return render;
+    }
+
+    @Override
+    public void onSurfaceCreated(SampleRender render) {
+      shader = new Shader(render, VERTEX_SHADER, FRAGMENT_SHADER, /*defines=*/ null);
+      FloatBuffer positions =
+          createFloatBuffer(
+              new float[] {
+                -1, -1, 0, 1, //
+                1, -1, 0, 1, //
+                -1, 1, 0, 1, //
+                1, 1, 0, 1
+              });
+      quad =
+          new Mesh(
+              render,
+              Mesh.PrimitiveMode.TRIANGLE_STRIP,
+              /*indexBuffer=*/ null,
+              new VertexBuffer[] {
+                new VertexBuffer(render, 4, positions),
+                new VertexBuffer(render, 16, /*entries=*/ null, /*divisor=*/ 1)
+              });
+      pointBuffer = VertexBuffer.createStreaming(render, 4);
+      pointCloud =
+          new Mesh(
+              render,
+              Mesh.PrimitiveMode.POINTS,
+              /*indexBuffer=*/ null,
+              new VertexBuffer[] {pointBuffer});
+    }
+
+    @Override
+    public void onSurfaceChanged(SampleRender render, int width, int height) {}
+
+    @Override
+    public void onDrawFrame(SampleRender render) {
+      render.getFrameUniforms().setCamera(IDENTITY, IDENTITY);
+      render.beginRenderPass(pass);
+      pointBuffer.set(points);
+      render.draw(pointCloud, shader);
+      for (int i = 0; i < anchorCount; ++i) {
+        modelMatrix[12] = i;
+        queue.submit(quad, shader, /*framebuffer=*/ null, modelMatrix);
+      }
+      queue.flush(render);
+      render.endRenderPass();
+    }
+
+    @Override
+    public void onSurfaceDestroyed(SampleRender render) {
+      pointCloud.close();
+      quad.close();
+      shader.close();
+    }
+
+    private static FloatBuffer createFloatBuffer(float[] values) {
+      FloatBuffer buffer =
+          ByteBuffer.allocateDirect(values.length * Float.BYTES)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+      buffer.put(values).rewind();
+      return buffer;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES30;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the index type selection and packing of {@link IndexType}. */
+@RunWith(JUnit4.class)
+public class IndexTypeTest {
+  @Test
+  public void forMaxIndex_picksNarrowestType() {
+    assertEquals(GLES30.GL_UNSIGNED_BYTE, IndexType.forMaxIndex(-1));
+    assertEquals(GLES30.GL_UNSIGNED_BYTE, IndexType.forMaxIndex(255));
+    assertEquals(GLES30.GL_UNSIGNED_SHORT, IndexType.forMaxIndex(256));
+    assertEquals(GLES30.GL_UNSIGNED_SHORT, IndexType.forMaxIndex(65535));
+    assertEquals(GLES30.GL_UNSIGNED_INT, IndexType.forMaxIndex(65536));
+  }
+
+  @Test
+  public void sizeOf_matchesType() {
+    assertEquals(1, IndexType.sizeOf(GLES30.GL_UNSIGNED_BYTE));
+    assertEquals(2, IndexType.sizeOf(GLES30.GL_UNSIGNED_SHORT));
+    assertEquals(4, IndexType.sizeOf(GLES30.GL_UNSIGNED_INT));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sizeOf_rejectsOtherTypes() {
+    IndexType.sizeOf(GLES30.GL_FLOAT);
+  }
+
+  @Test
+  public void maxIndex_readsUpToLimit() {
+    IntBuffer indices = IntBuffer.wrap(new int[] {3, 70000, 9});
+    indices.limit(1);
+
+    assertEquals(3, IndexType.maxIndex(indices));
+    assertEquals(-1, IndexType.maxIndex(IntBuffer.allocate(0)));
+  }
+
+  @Test
+  public void put_keepsIndicesAboveSignedRange() {
+    IntBuffer indices = IntBuffer.wrap(new int[] {0, 200, 255});
+    ByteBuffer bytes = ByteBuffer.allocate(3);
+    IndexType.put(bytes, GLES30.GL_UNSIGNED_BYTE, indices);
+    assertEquals(200, bytes.get(1) & 0xFF);
+    assertEquals(255, bytes.get(2) & 0xFF);
+
+    indices = IntBuffer.wrap(new int[] {40000, 65535});
+    ByteBuffer shorts = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+    IndexType.put(shorts, GLES30.GL_UNSIGNED_SHORT, indices);
+    assertEquals(40000, shorts.getShort(0) & 0xFFFF);
+    assertEquals(65535, shorts.getShort(2) & 0xFFFF);
+  }
+
+  @Test
+  public void get_readsWhatPutWrote() {
+    int[] values = {0, 255, 40000, 70000};
+    for (int type :
+        new int[] {GLES30.GL_UNSIGNED_BYTE, GLES30.GL_UNSIGNED_SHORT, GLES30.GL_UNSIGNED_INT}) {
+      int count = type == GLES30.GL_UNSIGNED_INT ? 4 : type == GLES30.GL_UNSIGNED_SHORT ? 3 : 2;
+      ByteBuffer bytes =
+          ByteBuffer.allocate(count * IndexType.sizeOf(type)).order(ByteOrder.nativeOrder());
+      IndexType.put(bytes, type, IntBuffer.wrap(values, 0, count));
+
+      for (int i = 0; i < count; ++i) {
+        assertEquals(values[i], IndexType.get(bytes, type, i));
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES30;
+import android.opengl.GLES32;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link Ktx}. */
+@RunWith(JUnit4.class)
+public class KtxTest {
+  private static final byte[] IDENTIFIER = {
+    (byte) 0xab, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xbb, '\r', '\n', 0x1a, '\n'
+  };
+
+  @Test
+  public void parse_splitsPaddedLevels() throws IOException {
+    ByteBuffer file =
+        createKtx(
+            ByteOrder.LITTLE_ENDIAN,
+            GLES30.GL_COMPRESSED_RGB8_ETC2,
+            /*keyValueBytes=*/ 8,
+            new int[] {16, 3, 1});
+
+    Texture.Image image = Ktx.parse(file, "test.etc2.ktx");
+
+    assertTrue(image.isCompressed());
+    assertEquals(8, image.width);
+    assertEquals(4, image.height);
+    assertEquals(GLES30.GL_COMPRESSED_RGB8_ETC2, image.compressedFormat);
+    assertEquals(3, image.levels.size());
+    for (int level = 0; level < 3; ++level) {
+      ByteBuffer data = image.levels.get(level);
+      assertEquals(new int[] {16, 3, 1}[level], data.remaining());
+      assertEquals(level + 1, data.get(0));
+    }
+  }
+
+  @Test
+  public void parse_readsBigEndianFiles() throws IOException {
+    ByteBuffer file =
+        createKtx(
+            ByteOrder.BIG_ENDIAN,
+            GLES32.GL_COMPRESSED_RGBA_ASTC_4x4,
+            /*keyValueBytes=*/ 0,
+            new int[] {16});
+
+    Texture.Image image = Ktx.parse(file, "test.astc.ktx");
+
+    assertEquals(GLES32.GL_COMPRESSED_RGBA_ASTC_4x4, image.compressedFormat);
+    assertEquals(16, image.levels.get(0).remaining());
+  }
+
+  @Test
+  public void parse_rejectsTruncatedAndForeignFiles() {
+    ByteBuffer file =
+        createKtx(
+            ByteOrder.LITTLE_ENDIAN,
+            GLES30.GL_COMPRESSED_RGB8_ETC2,
+            /*keyValueBytes=*/ 0,
+            new int[] {16, 4});
+    ByteBuffer truncated = file.duplicate();
+    truncated.limit(file.limit() - 2);
+    ByteBuffer png = file.duplicate();
+    png.put(1, (byte) 'P');
+
+    assertThrows(IOException.class, () -> Ktx.parse(truncated, "truncated.ktx"));
+    assertThrows(IOException.class, () -> Ktx.parse(png, "image.png"));
+  }
+
+  @Test
+  public void toSrgb_mapsCompressedFormats() {
+    assertEquals(
+        GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC,
+        Ktx.toSrgb(GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC));
+    assertEquals(
+        GLES32.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4,
+        Ktx.toSrgb(GLES32.GL_COMPRESSED_RGBA_ASTC_4x4));
+    assertEquals(
+        GLES32.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_12x12,
+        Ktx.toSrgb(GLES32.GL_COMPRESSED_RGBA_ASTC_12x12));
+    assertEquals(
+        GLES30.GL_COMPRESSED_SRGB8_ETC2, Ktx.toSrgb(GLES30.GL_COMPRESSED_SRGB8_ETC2));
+  }
+
+  /** Writes an 8x4 KTX file whose level {@code i} is filled with the byte {@code i + 1}. */
+  private static ByteBuffer createKtx(
+      ByteOrder order, int internalFormat, int keyValueBytes, int[] levelSizes) {
+    ByteBuffer file = ByteBuffer.allocate(256).order(order);
+    file.put(IDENTIFIER);
+    file.putInt(0x04030201);
+    file.putInt(0); // glType
+    file.putInt(1); // glTypeSize
+    file.putInt(0); // glFormat
+    file.putInt(internalFormat);
+    file.putInt(GLES30.GL_RGBA); // glBaseInternalFormat
+    file.putInt(8); // pixelWidth
+    file.putInt(4); // pixelHeight
+    file.putInt(0); // pixelDepth
+    file.putInt(0); // numberOfArrayElements
+    file.putInt(1); // numberOfFaces
+    file.putInt(levelSizes.length);
+    file.putInt(keyValueBytes);
+    file.position(file.position() + keyValueBytes);
+    for (int level = 0; level < levelSizes.length; ++level) {
+      file.putInt(levelSizes[level]);
+      for (int i = 0; i < levelSizes[level]; ++i) {
+        file.put((byte) (level + 1));
+      }
+      file.position((file.position() + 3) & ~3);
+    }
+    file.flip();
+    return file;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the level selection of {@link LevelsOfDetail}. */
+@RunWith(JUnit4.class)
+public class LevelsOfDetailTest {
+  private static final float[] UNIT_BOX = {-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f};
+  private static final float[] IDENTITY = {
+    1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1,
+  };
+  // Only the vertical scale of the projection matters for the screen size.
+  private static final float[] PROJECTION = {
+    1, 0, 0, 0, 0, 2, 0, 0, 0, 0, -1, -1, 0, 0, -0.2f, 0,
+  };
+
+  private final LevelsOfDetail levelsOfDetail =
+      new LevelsOfDetail()
+          .addLevel(/*triangleRatio=*/ 0.5f, /*screenSize=*/ 0.1f)
+          .addLevel(/*triangleRatio=*/ 0.2f, /*screenSize=*/ 0.04f);
+
+  @Test
+  public void getLevelCount_includesFullMesh() {
+    assertEquals(1, new LevelsOfDetail().getLevelCount());
+    assertEquals(3, levelsOfDetail.getLevelCount());
+    assertEquals(1f, levelsOfDetail.getTriangleRatio(0), 0f);
+    assertEquals(0.2f, levelsOfDetail.getTriangleRatio(2), 0f);
+  }
+
+  @Test
+  public void selectLevel_withoutPreviousLevel_usesThresholds() {
+    assertEquals(0, levelsOfDetail.selectLevel(0.5f, /*previousLevel=*/ -1, 3));
+    assertEquals(1, levelsOfDetail.selectLevel(0.05f, /*previousLevel=*/ -1, 3));
+    assertEquals(2, levelsOfDetail.selectLevel(0.01f, /*previousLevel=*/ -1, 3));
+    assertEquals(0, levelsOfDetail.selectLevel(Float.POSITIVE_INFINITY, /*previousLevel=*/ -1, 3));
+  }
+
+  @Test
+  public void selectLevel_clampsToGeneratedLevels() {
+    assertEquals(1, levelsOfDetail.selectLevel(0.01f, /*previousLevel=*/ -1, /*levelCount=*/ 2));
+    assertEquals(0, levelsOfDetail.selectLevel(0.01f, /*previousLevel=*/ -1, /*levelCount=*/ 1));
+  }
+
+  @Test
+  public void selectLevel_keepsPreviousLevelNearThreshold() {
+    assertEquals(0, levelsOfDetail.selectLevel(0.095f, /*previousLevel=*/ 0, 3));
+    assertEquals(1, levelsOfDetail.selectLevel(0.08f, /*previousLevel=*/ 0, 3));
+    assertEquals(1, levelsOfDetail.selectLevel(0.105f, /*previousLevel=*/ 1, 3));
+    assertEquals(0, levelsOfDetail.selectLevel(0.12f, /*previousLevel=*/ 1, 3));
+  }
+
+  @Test
+  public void selectLevel_farFromPreviousLevel_jumpsLevels() {
+    assertEquals(2, levelsOfDetail.selectLevel(0.01f, /*previousLevel=*/ 0, 3));
+    assertEquals(0, levelsOfDetail.selectLevel(0.5f, /*previousLevel=*/ 2, 3));
+  }
+
+  @Test
+  public void computeScreenSize_isInverselyProportionalToDistance() {
+    float near = screenSize(/*scale=*/ 1f, /*distance=*/ 10f);
+    float far = screenSize(/*scale=*/ 1f, /*distance=*/ 20f);
+
+    // The bounding sphere of the unit box has a radius of sqrt(3) / 2.
+    assertEquals((float) Math.sqrt(3) / 2 * 2 / 10, near, 1e-6f);
+    assertEquals(near / 2, far, 1e-6f);
+  }
+
+  @Test
+  public void computeScreenSize_followsModelScale() {
+    assertEquals(
+        2 * screenSize(/*scale=*/ 1f, /*distance=*/ 10f),
+        screenSize(/*scale=*/ 2f, /*distance=*/ 10f),
+        1e-6f);
+  }
+
+  @Test
+  public void computeScreenSize_cameraInsideSphere_isInfinite() {
+    assertEquals(Float.POSITIVE_INFINITY, screenSize(/*scale=*/ 1f, /*distance=*/ 0.5f), 0f);
+    assertEquals(Float.POSITIVE_INFINITY, screenSize(/*scale=*/ 1f, /*distance=*/ -5f), 0f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addLevel_rejectsIncreasingTriangleRatio() {
+    levelsOfDetail.addLevel(/*triangleRatio=*/ 0.3f, /*screenSize=*/ 0.01f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addLevel_rejectsIncreasingScreenSize() {
+    levelsOfDetail.addLevel(/*triangleRatio=*/ 0.1f, /*screenSize=*/ 0.05f);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void addLevel_rejectsTooManyLevels() {
+    LevelsOfDetail many = new LevelsOfDetail();
+    for (int level = 1; level <= LevelsOfDetail.MAX_LEVELS; ++level) {
+      many.addLevel(1f / (level + 1), 1f / (level + 1));
+    }
+  }
+
+  /** Returns the screen size of the unit box scaled and placed in front of an identity camera. */
+  private static float screenSize(float scale, float distance) {
+    float[] model = IDENTITY.clone();
+    model[0] = scale;
+    model[5] = scale;
+    model[10] = scale;
+    model[14] = -distance;
+    return LevelsOfDetail.computeScreenSize(UNIT_BOX, model, 0, IDENTITY, PROJECTION);
+  }
+}
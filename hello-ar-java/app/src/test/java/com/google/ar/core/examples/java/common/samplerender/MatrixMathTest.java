@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link MatrixMath}. */
+@RunWith(JUnit4.class)
+public class MatrixMathTest {
+  private static final float EPSILON = 1e-5f;
+
+  // Column-major: a rotation of 90 degrees around z followed by a translation of (1, 2, 3).
+  private static final float[] TRANSFORM = {
+    0, 1, 0, 0, //
+    -1, 0, 0, 0, //
+    0, 0, 1, 0, //
+    1, 2, 3, 1
+  };
+
+  @Test
+  public void multiplyMV_appliesRotationThenTranslation() {
+    float[] result = new float[4];
+
+    MatrixMath.multiplyMV(result, 0, TRANSFORM, 0, new float[] {1, 0, 0, 1}, 0);
+
+    assertArrayEquals(new float[] {1, 3, 3, 1}, result, EPSILON);
+  }
+
+  @Test
+  public void multiplyMM_composesRightToLeft() {
+    float[] scale = {
+      2, 0, 0, 0, //
+      0, 2, 0, 0, //
+      0, 0, 2, 0, //
+      0, 0, 0, 1
+    };
+    float[] composed = new float[16];
+    float[] result = new float[4];
+
+    // Scales first, then transforms.
+    MatrixMath.multiplyMM(composed, 0, TRANSFORM, 0, scale, 0);
+    MatrixMath.multiplyMV(result, 0, composed, 0, new float[] {1, 0, 0, 1}, 0);
+
+    assertArrayEquals(new float[] {1, 4, 3, 1}, result, EPSILON);
+  }
+
+  @Test
+  public void invertM_undoesTransform() {
+    float[] inverse = new float[16];
+    float[] product = new float[16];
+
+    assertTrue(MatrixMath.invertM(inverse, 0, TRANSFORM, 0));
+    MatrixMath.multiplyMM(product, 0, inverse, 0, TRANSFORM, 0);
+
+    assertArrayEquals(
+        new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1}, product, EPSILON);
+  }
+
+  @Test
+  public void invertM_singular_returnsFalseAndKeepsResult() {
+    float[] inverse = new float[16];
+
+    assertFalse(MatrixMath.invertM(inverse, 0, new float[16], 0));
+    assertArrayEquals(new float[16], inverse, 0f);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the triangle and vertex reordering of {@link MeshOptimizer}. */
+@RunWith(JUnit4.class)
+public class MeshOptimizerTest {
+  private static final int GRID_SIZE = 32;
+
+  @Test
+  public void computeAcmr_countsEveryVertexOfDisjointTriangles() {
+    int[] indices = {0, 1, 2, 3, 4, 5};
+
+    assertEquals(3f, MeshOptimizer.computeAcmr(indices, /*vertexCount=*/ 6, 16), 0f);
+  }
+
+  @Test
+  public void computeAcmr_reusesCachedVertices() {
+    // Two triangles of a quad share an edge, so the second one misses only once.
+    int[] indices = {0, 1, 2, 2, 1, 3};
+
+    assertEquals(2f, MeshOptimizer.computeAcmr(indices, /*vertexCount=*/ 4, 16), 0f);
+  }
+
+  @Test
+  public void optimizeTriangleOrder_improvesAcmrOfScrambledGrid() {
+    int[] indices = scramble(createGridIndices());
+    int vertexCount = (GRID_SIZE + 1) * (GRID_SIZE + 1);
+    float before = MeshOptimizer.computeAcmr(indices, vertexCount, MeshOptimizer.CACHE_SIZE);
+
+    int[] optimized =
+        MeshOptimizer.optimizeTriangleOrder(indices, createGridPositions(), vertexCount);
+    float after = MeshOptimizer.computeAcmr(optimized, vertexCount, MeshOptimizer.CACHE_SIZE);
+
+    assertTrue("ACMR " + before + " -> " + after, after < 0.8f * before);
+    assertTrue("ACMR " + after, after < 1f);
+  }
+
+  @Test
+  public void optimizeTriangleOrder_keepsEveryTriangle() {
+    int[] indices = scramble(createGridIndices());
+    int vertexCount = (GRID_SIZE + 1) * (GRID_SIZE + 1);
+
+    int[] optimized =
+        MeshOptimizer.optimizeTriangleOrder(indices, createGridPositions(), vertexCount);
+
+    assertArrayEquals(sortedTriangles(indices), sortedTriangles(optimized));
+  }
+
+  @Test
+  public void optimizeVertexFetch_numbersVerticesInOrderOfFirstUse() {
+    int[] indices = {7, 3, 5, 5, 3, 0};
+
+    int[] remap = MeshOptimizer.optimizeVertexFetch(indices, /*vertexCount=*/ 8);
+
+    assertArrayEquals(new int[] {0, 1, 2, 2, 1, 3}, indices);
+    assertEquals(0, remap[7]);
+    assertEquals(3, remap[0]);
+    assertEquals(-1, remap[6]);
+  }
+
+  @Test
+  public void remapVertices_movesAttributesAndDropsUnused() {
+    FloatBuffer uvs = FloatBuffer.wrap(new float[] {0f, 0f, 1f, 1f, 2f, 2f});
+    int[] remap = {1, -1, 0};
+
+    FloatBuffer remapped = MeshOptimizer.remapVertices(uvs, 2, remap);
+
+    assertEquals(4, remapped.limit());
+    assertEquals(2f, remapped.get(0), 0f);
+    assertEquals(0f, remapped.get(2), 0f);
+  }
+
+  private static int[] createGridIndices() {
+    int[] indices = new int[GRID_SIZE * GRID_SIZE * 6];
+    int i = 0;
+    for (int y = 0; y < GRID_SIZE; ++y) {
+      for (int x = 0; x < GRID_SIZE; ++x) {
+        int v = y * (GRID_SIZE + 1) + x;
+        int[] quad = {v, v + 1, v + GRID_SIZE + 1, v + GRID_SIZE + 1, v + 1, v + GRID_SIZE + 2};
+        System.arraycopy(quad, 0, indices, i, 6);
+        i += 6;
+      }
+    }
+    return indices;
+  }
+
+  private static FloatBuffer createGridPositions() {
+    FloatBuffer positions = FloatBuffer.allocate((GRID_SIZE + 1) * (GRID_SIZE + 1) * 3);
+    for (int y = 0; y <= GRID_SIZE; ++y) {
+      for (int x = 0; x <= GRID_SIZE; ++x) {
+        positions.put(x).put(y).put(0f);
+      }
+    }
+    return positions;
+  }
+
+  /** Shuffles the triangles with a fixed permutation, as a poorly ordered exporter would. */
+  private static int[] scramble(int[] indices) {
+    int triangleCount = indices.length / 3;
+    int[] scrambled = new int[indices.length];
+    for (int t = 0; t < triangleCount; ++t) {
+      // 7919 is prime and does not divide the triangle count, so this is a permutation.
+      int source = (int) ((long) t * 7919 % triangleCount);
+      System.arraycopy(indices, source * 3, scrambled, t * 3, 3);
+    }
+    return scrambled;
+  }
+
+  private static long[] sortedTriangles(int[] indices) {
+    long[] triangles = new long[indices.length / 3];
+    for (int t = 0; t < triangles.length; ++t) {
+      int[] corners = Arrays.copyOfRange(indices, t * 3, t * 3 + 3);
+      Arrays.sort(corners);
+      triangles[t] = ((long) corners[0] << 40) | ((long) corners[1] << 20) | corners[2];
+    }
+    Arrays.sort(triangles);
+    return triangles;
+  }
+}
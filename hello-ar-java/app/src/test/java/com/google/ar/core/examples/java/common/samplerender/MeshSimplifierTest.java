@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the edge collapses of {@link MeshSimplifier}. */
+@RunWith(JUnit4.class)
+public class MeshSimplifierTest {
+  private static final int GRID_SIZE = 16;
+  private static final int VERTEX_COUNT = (GRID_SIZE + 1) * (GRID_SIZE + 1);
+  private static final int TRIANGLE_COUNT = GRID_SIZE * GRID_SIZE * 2;
+
+  @Test
+  public void simplify_reducesPlanarGrid() {
+    int[] simplified =
+        MeshSimplifier.simplify(
+            createGridIndices(), createGridPositions(), VERTEX_COUNT, TRIANGLE_COUNT / 4);
+
+    assertTrue("Triangles: " + simplified.length / 3, simplified.length / 3 <= TRIANGLE_COUNT / 2);
+    assertTrue(simplified.length % 3 == 0);
+  }
+
+  @Test
+  public void simplify_keepsBorderVertices() {
+    int[] simplified =
+        MeshSimplifier.simplify(
+            createGridIndices(), createGridPositions(), VERTEX_COUNT, /*targetTriangleCount=*/ 0);
+
+    boolean[] used = new boolean[VERTEX_COUNT];
+    for (int index : simplified) {
+      used[index] = true;
+    }
+    for (int i = 0; i <= GRID_SIZE; ++i) {
+      assertTrue("Bottom " + i, used[vertex(i, 0)]);
+      assertTrue("Top " + i, used[vertex(i, GRID_SIZE)]);
+      assertTrue("Left " + i, used[vertex(0, i)]);
+      assertTrue("Right " + i, used[vertex(GRID_SIZE, i)]);
+    }
+  }
+
+  @Test
+  public void simplify_doesNotFlipTriangles() {
+    FloatBuffer positions = createGridPositions();
+
+    int[] simplified =
+        MeshSimplifier.simplify(
+            createGridIndices(), positions, VERTEX_COUNT, /*targetTriangleCount=*/ 0);
+
+    for (int t = 0; t < simplified.length; t += 3) {
+      int a = simplified[t] * 3;
+      int b = simplified[t + 1] * 3;
+      int c = simplified[t + 2] * 3;
+      // z of the cross product of the edges, twice the signed area of the triangle.
+      float area =
+          (positions.get(b) - positions.get(a)) * (positions.get(c + 1) - positions.get(a + 1))
+              - (positions.get(b + 1) - positions.get(a + 1))
+                  * (positions.get(c) - positions.get(a));
+      assertTrue("Triangle " + t / 3 + " area " + area, area > 0f);
+    }
+  }
+
+  @Test
+  public void simplify_targetNotBelowTriangleCount_returnsSameTriangles() {
+    int[] indices = createGridIndices();
+
+    int[] simplified =
+        MeshSimplifier.simplify(indices, createGridPositions(), VERTEX_COUNT, TRIANGLE_COUNT);
+
+    assertArrayEquals(indices, simplified);
+  }
+
+  private static int vertex(int x, int y) {
+    return y * (GRID_SIZE + 1) + x;
+  }
+
+  /** Returns the triangles of a square grid in the z = 0 plane, facing +z. */
+  private static int[] createGridIndices() {
+    int[] indices = new int[TRIANGLE_COUNT * 3];
+    int i = 0;
+    for (int y = 0; y < GRID_SIZE; ++y) {
+      for (int x = 0; x < GRID_SIZE; ++x) {
+        int v = vertex(x, y);
+        int[] quad = {v, v + 1, v + GRID_SIZE + 1, v + GRID_SIZE + 1, v + 1, v + GRID_SIZE + 2};
+        System.arraycopy(quad, 0, indices, i, 6);
+        i += 6;
+      }
+    }
+    return indices;
+  }
+
+  private static FloatBuffer createGridPositions() {
+    FloatBuffer positions = FloatBuffer.allocate(VERTEX_COUNT * 3);
+    for (int y = 0; y <= GRID_SIZE; ++y) {
+      for (int x = 0; x <= GRID_SIZE; ++x) {
+        positions.put(x).put(y).put(0f);
+      }
+    }
+    positions.flip();
+    return positions;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the bounds computed by {@link Mesh}. */
+@RunWith(JUnit4.class)
+public class MeshTest {
+  @Test
+  public void computeBounds_returnsMinAndMaxPerAxis() {
+    FloatBuffer positions =
+        FloatBuffer.wrap(
+            new float[] {
+              1, -2, 3, //
+              -4, 5, 0, //
+              2, 0, -6
+            });
+
+    assertArrayEquals(new float[] {-4, -2, -6, 2, 5, 3}, Mesh.computeBounds(positions), 0f);
+  }
+
+  @Test
+  public void computeBounds_readsUpToLimit() {
+    FloatBuffer positions = FloatBuffer.wrap(new float[] {1, 1, 1, 9, 9, 9});
+    positions.limit(3);
+
+    assertArrayEquals(new float[] {1, 1, 1, 1, 1, 1}, Mesh.computeBounds(positions), 0f);
+  }
+
+  @Test
+  public void computeBounds_noPositions_returnsEmptyBox() {
+    assertArrayEquals(new float[6], Mesh.computeBounds(FloatBuffer.allocate(0)), 0f);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares the time {@link ObjParser} and the previous {@code ObjReader} path take to turn {@code
+ * pawn.obj} into direct buffers ready for a {@link Mesh}. Run manually, as timings of the JVM unit
+ * test runner are only indicative of those on a device.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(JUnit4.class)
+public class ObjParserBenchmark {
+  private static final int WARMUP_RUNS = 10;
+  private static final int MEASURED_RUNS = 20;
+
+  @Test
+  public void pawn() throws IOException {
+    byte[] bytes;
+    try (FileInputStream input = new FileInputStream(ObjParserTest.PAWN_PATH)) {
+      bytes = new byte[(int) input.getChannel().size()];
+      int offset = 0;
+      while (offset < bytes.length) {
+        offset += input.read(bytes, offset, bytes.length - offset);
+      }
+    }
+    ByteBuffer data = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+    ForkJoinPool singleThread = new ForkJoinPool(1);
+
+    report(
+        "ObjReader + convertToRenderable",
+        () -> {
+          Obj obj = ObjUtils.convertToRenderable(ObjReader.read(new ByteArrayInputStream(bytes)));
+          ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 3);
+          ObjData.getVertices(obj);
+          ObjData.getTexCoords(obj, /*dimensions=*/ 2);
+          ObjData.getNormals(obj);
+        });
+    report("ObjParser, 1 thread", () -> ObjParser.parse((ByteBuffer) data.rewind(), singleThread));
+    report(
+        "ObjParser, " + ForkJoinPool.commonPool().getParallelism() + " threads",
+        () -> ObjParser.parse((ByteBuffer) data.rewind()));
+  }
+
+  private interface Run {
+    void run() throws IOException;
+  }
+
+  private static void report(String name, Run run) throws IOException {
+    for (int i = 0; i < WARMUP_RUNS; ++i) {
+      run.run();
+    }
+    double[] millis = new double[MEASURED_RUNS];
+    for (int i = 0; i < MEASURED_RUNS; ++i) {
+      long startNanos = System.nanoTime();
+      run.run();
+      millis[i] = (System.nanoTime() - startNanos) / 1e6;
+    }
+    Arrays.sort(millis);
+    System.out.println(
+        String.format(
+            "%s: median %.1f ms, min %.1f ms", name, millis[MEASURED_RUNS / 2], millis[0]));
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ObjParser}. */
+@RunWith(JUnit4.class)
+public class ObjParserTest {
+  /* package-private */ static final String PAWN_PATH = "src/main/assets/models/pawn.obj";
+
+  @Test
+  public void parse_triangulatesPolygonsAsFans() throws IOException {
+    ObjParser.Result result =
+        parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nf 1 2 3 4\n");
+
+    assertEquals(4, result.numberOfVertices);
+    assertArrayEquals(new int[] {0, 1, 2, 0, 2, 3}, toArray(result.indices));
+  }
+
+  @Test
+  public void parse_sharesVerticesWithTheSameIndices() throws IOException {
+    ObjParser.Result result =
+        parse(
+            "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nvt 0 0\nvt 1 1\n"
+                + "f 1/1 2/1 3/1\nf 1/1 3/1 4/1\nf 1/2 3/1 4/1\n");
+
+    // The first vertex is used with two different texture coordinates.
+    assertEquals(5, result.numberOfVertices);
+    assertArrayEquals(new int[] {0, 1, 2, 0, 2, 3, 4, 2, 3}, toArray(result.indices));
+    assertEquals(1f, result.texCoords.get(2 * 4), 0f);
+  }
+
+  @Test
+  public void parse_resolvesRelativeIndices() throws IOException {
+    ObjParser.Result result =
+        parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nvn 0 0 1\nf -3//-1 -2//-1 -1//-1\n");
+
+    assertArrayEquals(new float[] {0, 0, 0, 1, 0, 0, 1, 1, 0}, toArray(result.positions), 0f);
+    assertArrayEquals(new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1}, toArray(result.normals), 0f);
+  }
+
+  @Test
+  public void parse_readsNumberFormats() throws IOException {
+    ObjParser.Result result = parse("v -1.5 +2e-3 .25E2 # comment\r\nf 1 1 1\r\n");
+
+    assertArrayEquals(new float[] {-1.5f, 0.002f, 25f}, firstVertex(result), 1e-7f);
+  }
+
+  @Test
+  public void parse_zeroesMissingAttributes() throws IOException {
+    ObjParser.Result result = parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nf 1 2 3\n");
+
+    assertArrayEquals(new float[6], toArray(result.texCoords), 0f);
+    assertArrayEquals(new float[9], toArray(result.normals), 0f);
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsIndicesOutOfRange() throws IOException {
+    parse("v 0 0 0\nv 1 0 0\nf 1 2 3\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_rejectsDegenerateFaces() throws IOException {
+    parse("v 0 0 0\nv 1 0 0\nf 1 2\n");
+  }
+
+  @Test
+  public void parse_inChunks_matchesTheSingleThreadedResult() throws IOException {
+    // Large enough for several chunks, with faces referring to vertices of earlier chunks.
+    StringBuilder obj = new StringBuilder();
+    for (int i = 0; i < 20000; ++i) {
+      obj.append("v ").append(i).append(" 0.5 -").append(i % 7).append('\n');
+      obj.append("vn 0 1 0\n");
+      if (i >= 2) {
+        obj.append("f 1//1 ").append(i).append("//").append(i).append(" -1//-1\n");
+      }
+    }
+    ByteBuffer data = ByteBuffer.wrap(obj.toString().getBytes(StandardCharsets.US_ASCII));
+
+    ObjParser.Result single = ObjParser.parse(data.duplicate(), new ForkJoinPool(1));
+    ObjParser.Result chunked = ObjParser.parse(data.duplicate(), new ForkJoinPool(4));
+
+    assertEquals(single.numberOfVertices, chunked.numberOfVertices);
+    assertArrayEquals(toArray(single.indices), toArray(chunked.indices));
+    assertArrayEquals(toArray(single.positions), toArray(chunked.positions), 0f);
+    assertArrayEquals(toArray(single.normals), toArray(chunked.normals), 0f);
+  }
+
+  @Test
+  public void parse_pawn_matchesObjReader() throws IOException {
+    Obj obj;
+    try (InputStream input = new FileInputStream(PAWN_PATH)) {
+      obj = ObjUtils.convertToRenderable(ObjReader.read(input));
+    }
+    ObjParser.Result result;
+    try (FileInputStream input = new FileInputStream(PAWN_PATH)) {
+      result = ObjParser.parse(Assets.readFully(input, (int) input.getChannel().size()));
+    }
+
+    // ObjReader keeps some identical corners apart, so compare the corners of every triangle
+    // through their attributes rather than their indices.
+    IntBuffer expectedIndices = ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 3);
+    FloatBuffer expectedPositions = ObjData.getVertices(obj);
+    FloatBuffer expectedTexCoords = ObjData.getTexCoords(obj, /*dimensions=*/ 2);
+    FloatBuffer expectedNormals = ObjData.getNormals(obj);
+    assertEquals(expectedIndices.limit(), result.indices.limit());
+    assertTrue(result.numberOfVertices <= obj.getNumVertices());
+    for (int i = 0; i < expectedIndices.limit(); ++i) {
+      int expected = expectedIndices.get(i);
+      int actual = result.indices.get(i);
+      for (int c = 0; c < 3; ++c) {
+        assertEquals(
+            expectedPositions.get(3 * expected + c), result.positions.get(3 * actual + c), 0f);
+        assertEquals(
+            expectedNormals.get(3 * expected + c), result.normals.get(3 * actual + c), 0f);
+      }
+      for (int c = 0; c < 2; ++c) {
+        assertEquals(
+            expectedTexCoords.get(2 * expected + c), result.texCoords.get(2 * actual + c), 0f);
+      }
+    }
+  }
+
+  private static ObjParser.Result parse(String obj) throws IOException {
+    return ObjParser.parse(ByteBuffer.wrap(obj.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static float[] firstVertex(ObjParser.Result result) {
+    return new float[] {result.positions.get(0), result.positions.get(1), result.positions.get(2)};
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] array = new int[buffer.limit()];
+    buffer.duplicate().get(array);
+    return array;
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    float[] array = new float[buffer.limit()];
+    buffer.duplicate().get(array);
+    return array;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ProgramBinaryCache}. */
+@RunWith(JUnit4.class)
+public class ProgramBinaryCacheTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void keyOf_distinguishesDefineVariants() {
+    String vertex = "#version 300 es\n#define USE_DEPTH 1\nvoid main() {}\n";
+    String otherVertex = "#version 300 es\n#define USE_DEPTH 0\nvoid main() {}\n";
+    String fragment = "#version 300 es\nvoid main() {}\n";
+
+    assertEquals(
+        ProgramBinaryCache.keyOf(vertex, fragment), ProgramBinaryCache.keyOf(vertex, fragment));
+    assertNotEquals(
+        ProgramBinaryCache.keyOf(vertex, fragment),
+        ProgramBinaryCache.keyOf(otherVertex, fragment));
+    // Moving text from one shader to the other is a different program.
+    assertNotEquals(ProgramBinaryCache.keyOf("ab", "c"), ProgramBinaryCache.keyOf("a", "bc"));
+  }
+
+  @Test
+  public void selectDriverDirectory_deletesOtherDrivers() throws IOException {
+    File root = folder.getRoot();
+    File staleBinary = new File(folder.newFolder("old-driver"), "program.bin");
+    assertTrue(staleBinary.createNewFile());
+
+    File driverDirectory = ProgramBinaryCache.selectDriverDirectory(root, "new-driver");
+
+    assertEquals(new File(root, "new-driver"), driverDirectory);
+    assertTrue(driverDirectory.isDirectory());
+    assertFalse(staleBinary.getParentFile().exists());
+  }
+
+  @Test
+  public void writeBinaryFile_roundTripsThroughReadBinaryFile() {
+    File binaryFile = new File(folder.getRoot(), "program.bin");
+    ByteBuffer binary = ByteBuffer.allocate(12);
+    for (int i = 0; i < binary.capacity(); ++i) {
+      binary.put((byte) i);
+    }
+    binary.flip();
+
+    ProgramBinaryCache.writeBinaryFile(binaryFile, binary);
+    ByteBuffer read = ProgramBinaryCache.readBinaryFile(binaryFile);
+
+    assertTrue(read.isDirect());
+    assertEquals(12, read.remaining());
+    for (int i = 0; i < 12; ++i) {
+      assertEquals(i, read.get(i));
+    }
+    assertFalse(new File(binaryFile.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void readBinaryFile_ignoresMissingAndTruncatedFiles() throws IOException {
+    File truncatedFile = folder.newFile("truncated.bin");
+    try (FileOutputStream output = new FileOutputStream(truncatedFile)) {
+      output.write(new byte[] {1, 2, 3, 4});
+    }
+
+    assertNull(ProgramBinaryCache.readBinaryFile(new File(folder.getRoot(), "missing.bin")));
+    assertNull(ProgramBinaryCache.readBinaryFile(truncatedFile));
+  }
+}
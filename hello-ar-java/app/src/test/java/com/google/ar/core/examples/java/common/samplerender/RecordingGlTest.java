@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import android.opengl.GLES30;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link RecordingGl}. */
+@RunWith(JUnit4.class)
+public class RecordingGlTest {
+  private final RecordingGl gl = new RecordingGl();
+
+  @Test
+  public void counters_countDrawsStateChangesAndCalls() {
+    gl.glBindBuffer(GLES30.GL_ARRAY_BUFFER, 1);
+    gl.glUseProgram(2);
+    gl.glUniform1i(0, 1);
+    gl.glDrawArrays(GLES30.GL_TRIANGLES, 0, 3);
+    gl.glDrawElementsInstanced(GLES30.GL_TRIANGLES, 6, GLES30.GL_UNSIGNED_SHORT, 0, 50);
+
+    assertEquals(2, gl.getDrawCallCount());
+    assertEquals(2, gl.getStateChangeCount());
+    assertEquals(5, gl.getCallCount());
+    assertEquals(1, gl.getCallCount("glUniform1i"));
+
+    gl.reset();
+
+    assertEquals(0, gl.getCallCount());
+    assertEquals(0, gl.getDrawCallCount());
+    assertEquals(0, gl.getCommands().size());
+  }
+
+  @Test
+  public void glBufferData_recordsCopyOfData() {
+    FloatBuffer data = FloatBuffer.wrap(new float[] {1f, 2f, 3f});
+
+    gl.glBufferData(GLES30.GL_ARRAY_BUFFER, 12, data, GLES30.GL_STATIC_DRAW);
+    data.put(0, 9f);
+
+    assertEquals(12, gl.getUploadedBytes());
+    Object[] args = gl.getCommands().get(0).getArgs();
+    assertArrayEquals(new float[] {1f, 2f, 3f}, (float[]) args[2], 0f);
+  }
+
+  @Test
+  public void glUnmapBuffer_recordsWrittenRange() {
+    ByteBuffer range =
+        ((ByteBuffer) gl.glMapBufferRange(GLES30.GL_ARRAY_BUFFER, 64, 8, GLES30.GL_MAP_WRITE_BIT))
+            .order(ByteOrder.nativeOrder());
+    range.putFloat(1f).putFloat(2f);
+    // Nothing is uploaded until the range is unmapped.
+    assertEquals(0, gl.getUploadedBytes());
+
+    gl.glUnmapBuffer(GLES30.GL_ARRAY_BUFFER);
+
+    assertEquals(8, gl.getUploadedBytes());
+    List<RecordingGl.Command> commands = gl.getCommands();
+    RecordingGl.Command unmap = commands.get(commands.size() - 1);
+    assertEquals("glUnmapBuffer", unmap.getName());
+    ByteBuffer expected = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+    expected.putFloat(1f).putFloat(2f);
+    assertArrayEquals(expected.array(), (byte[]) unmap.getArgs()[1]);
+  }
+
+  @Test
+  public void glUnmapBuffer_withoutMap_returnsFalse() {
+    assertFalse(gl.glUnmapBuffer(GLES30.GL_ARRAY_BUFFER));
+    assertEquals(0, gl.getUploadedBytes());
+  }
+
+  @Test
+  public void glGenBuffers_handsOutDistinctNames() {
+    int[] names = new int[2];
+
+    gl.glGenBuffers(2, names, 0);
+
+    assertNotEquals(0, names[0]);
+    assertNotEquals(names[0], names[1]);
+  }
+
+  @Test
+  public void setRecordCommands_false_keepsCounting() {
+    gl.setRecordCommands(false);
+
+    gl.glDrawArrays(GLES30.GL_POINTS, 0, 1);
+
+    assertEquals(0, gl.getCommands().size());
+    assertEquals(1L, gl.getDrawCallCount());
+  }
+}
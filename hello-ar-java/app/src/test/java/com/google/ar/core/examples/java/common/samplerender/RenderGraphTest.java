@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link RenderGraph}. */
+@RunWith(JUnit4.class)
+public class RenderGraphTest {
+  // Culling never creates framebuffers; only execute does.
+  private final RenderGraph<Boolean> graph =
+      new RenderGraph<>(
+          (width, height) -> {
+            throw new AssertionError("Framebuffer created while culling");
+          });
+  private final RenderGraph.Resource surface = graph.createResource("surface");
+
+  public RenderGraphTest() {
+    graph.markOutput(surface);
+  }
+
+  @Test
+  public void cull_falseCondition_cullsPassAndItsConsumers() {
+    RenderGraph.Resource uniforms = graph.createResource("uniforms");
+    RenderGraph.Pass<Boolean> upload =
+        graph.addPass("upload", frame -> {}).onlyIf(frame -> frame).writes(uniforms);
+    RenderGraph.Pass<Boolean> draw = graph.addPass("draw", frame -> {}).reads(uniforms);
+    draw.writes(surface);
+
+    graph.cull(false);
+
+    assertFalse(upload.isLive());
+    assertFalse(draw.isLive());
+    assertEquals(2, graph.getCulledPassCount());
+
+    graph.cull(true);
+
+    assertTrue(upload.isLive());
+    assertTrue(draw.isLive());
+    assertEquals(0, graph.getCulledPassCount());
+  }
+
+  @Test
+  public void cull_unreadWrites_cullsPass() {
+    RenderGraph.Resource unused = graph.createResource("unused");
+    RenderGraph.Pass<Boolean> background = graph.addPass("background", frame -> {}).writes(surface);
+    RenderGraph.Pass<Boolean> producer = graph.addPass("producer", frame -> {}).writes(unused);
+
+    graph.cull(true);
+
+    assertTrue(background.isLive());
+    assertFalse(producer.isLive());
+    assertEquals(1, graph.getCulledPassCount());
+  }
+
+  @Test
+  public void cull_sideEffects_keepsPass() {
+    RenderGraph.Pass<Boolean> uploads = graph.addPass("uploads", frame -> {}).hasSideEffects();
+
+    graph.cull(true);
+
+    assertTrue(uploads.isLive());
+  }
+
+  @Test
+  public void cull_sameConditions_reusesCompiledPasses() {
+    graph.addPass("background", frame -> {}).writes(surface);
+    graph.addPass("objects", frame -> {}).onlyIf(frame -> frame).writes(surface);
+
+    graph.cull(true);
+    graph.cull(true);
+    assertEquals(1, graph.getCompileCount());
+
+    graph.cull(false);
+    assertEquals(2, graph.getCompileCount());
+
+    graph.addPass("occlusion", frame -> {}).writes(surface);
+    graph.cull(false);
+    assertEquals(3, graph.getCompileCount());
+  }
+
+  @Test
+  public void cull_disjointTransientTargets_shareFramebuffer() {
+    RenderGraph.Resource first = graph.createTransientTarget("first");
+    RenderGraph.Resource second = graph.createTransientTarget("second");
+    graph.addPass("drawFirst", frame -> {}).writes(first);
+    graph.addPass("composeFirst", frame -> {}).reads(first).writes(surface);
+    graph.addPass("drawSecond", frame -> {}).writes(second);
+    graph.addPass("composeSecond", frame -> {}).reads(second).writes(surface);
+
+    graph.cull(true);
+
+    assertEquals(1, graph.getTargetCount());
+    assertEquals(0, RenderGraph.getTargetIndex(first));
+    assertEquals(0, RenderGraph.getTargetIndex(second));
+  }
+
+  @Test
+  public void cull_overlappingTransientTargets_useSeparateFramebuffers() {
+    RenderGraph.Resource first = graph.createTransientTarget("first");
+    RenderGraph.Resource second = graph.createTransientTarget("second");
+    graph.addPass("drawFirst", frame -> {}).writes(first);
+    graph.addPass("drawSecond", frame -> {}).writes(second);
+    graph.addPass("compose", frame -> {}).reads(first).reads(second).writes(surface);
+
+    graph.cull(true);
+
+    assertEquals(2, graph.getTargetCount());
+    assertNotEquals(RenderGraph.getTargetIndex(first), RenderGraph.getTargetIndex(second));
+  }
+
+  @Test
+  public void cull_culledTransientTarget_usesNoFramebuffer() {
+    RenderGraph.Resource virtualScene = graph.createTransientTarget("virtualScene");
+    graph.addPass("background", frame -> {}).writes(surface);
+    RenderGraph.Pass<Boolean> objects =
+        graph.addPass("objects", frame -> {}).onlyIf(frame -> frame).writes(virtualScene);
+    RenderGraph.Pass<Boolean> occlusion =
+        graph.addPass("occlusion", frame -> {}).reads(virtualScene).writes(surface);
+
+    graph.cull(false);
+
+    assertFalse(objects.isLive());
+    assertFalse(occlusion.isLive());
+    assertEquals(0, graph.getTargetCount());
+    assertEquals(-1, RenderGraph.getTargetIndex(virtualScene));
+  }
+}
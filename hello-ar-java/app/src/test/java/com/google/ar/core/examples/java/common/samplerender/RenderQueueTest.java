@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the sort keys of {@link RenderQueue}. */
+@RunWith(JUnit4.class)
+public class RenderQueueTest {
+  @Test
+  public void opaque_sortsFrontToBack() {
+    long near = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 0.5f, /*item=*/ 1);
+    long far = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 4f, /*item=*/ 0);
+
+    assertTrue(near < far);
+  }
+
+  @Test
+  public void opaque_groupsByStateBeforeDepth() {
+    long farFirstProgram = opaqueKey(/*program=*/ 1, /*texture=*/ 2, /*depth=*/ 10f, /*item=*/ 0);
+    long nearSecondProgram = opaqueKey(/*program=*/ 2, /*texture=*/ 1, /*depth=*/ 1f, /*item=*/ 1);
+    long farFirstTexture = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 10f, /*item=*/ 2);
+
+    assertTrue(farFirstProgram < nearSecondProgram);
+    assertTrue(farFirstTexture < farFirstProgram);
+  }
+
+  @Test
+  public void blended_sortsBackToFrontAfterOpaque() {
+    long opaque = opaqueKey(/*program=*/ 255, /*texture=*/ 255, /*depth=*/ 100f, /*item=*/ 0);
+    long blendedNear = blendedKey(/*program=*/ 1, /*depth=*/ 0.5f, /*item=*/ 1);
+    long blendedFar = blendedKey(/*program=*/ 2, /*depth=*/ 4f, /*item=*/ 2);
+
+    assertTrue(opaque < blendedFar);
+    assertTrue(blendedFar < blendedNear);
+  }
+
+  @Test
+  public void equalKeys_keepSubmissionOrder() {
+    long first = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 2f, /*item=*/ 3);
+    long second = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 2f, /*item=*/ 4);
+
+    assertTrue(first < second);
+  }
+
+  @Test
+  public void negativeDepth_sortsAsNearest() {
+    long behind = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ -3f, /*item=*/ 1);
+    long zero = opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 0f, /*item=*/ 0);
+
+    assertEquals(zero, behind - 1);
+  }
+
+  @Test
+  public void item_isRecoveredFromKey() {
+    for (int item : new int[] {0, 1, 1234, RenderQueue.MAX_ITEMS - 1}) {
+      assertEquals(item, RenderQueue.getItem(opaqueKey(7, 9, 3f, item)));
+      assertEquals(item, RenderQueue.getItem(blendedKey(7, 3f, item)));
+    }
+  }
+
+  @Test
+  public void largeNames_doNotSpillIntoOtherFields() {
+    long key =
+        RenderQueue.computeKey(
+            /*blended=*/ false,
+            /*framebuffer=*/ 0xFFFF,
+            /*program=*/ 0xFFFF,
+            /*texture=*/ 0xFFFF,
+            /*mesh=*/ 0xFFFF,
+            /*level=*/ 0xFFFF,
+            /*depth=*/ 1f,
+            /*item=*/ 5);
+
+    assertTrue(key >= 0);
+    assertEquals(0, key & RenderQueue.BLENDED_BIT);
+    assertEquals(5, RenderQueue.getItem(key));
+  }
+
+  @Test
+  public void opaque_groupsByLevelBeforeDepth() {
+    long farFullMesh = levelKey(/*level=*/ 0, /*depth=*/ 10f, /*item=*/ 0);
+    long nearCoarseLevel = levelKey(/*level=*/ 1, /*depth=*/ 1f, /*item=*/ 1);
+    long farCoarseLevel = levelKey(/*level=*/ 1, /*depth=*/ 10f, /*item=*/ 2);
+
+    assertTrue(farFullMesh < nearCoarseLevel);
+    assertTrue(nearCoarseLevel < farCoarseLevel);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void computeKey_rejectsItemOverflow() {
+    opaqueKey(/*program=*/ 1, /*texture=*/ 1, /*depth=*/ 1f, RenderQueue.MAX_ITEMS);
+  }
+
+  private static long opaqueKey(int program, int texture, float depth, int item) {
+    return RenderQueue.computeKey(
+        /*blended=*/ false,
+        /*framebuffer=*/ 1,
+        program,
+        texture,
+        /*mesh=*/ 1,
+        /*level=*/ 0,
+        depth,
+        item);
+  }
+
+  private static long blendedKey(int program, float depth, int item) {
+    return RenderQueue.computeKey(
+        /*blended=*/ true,
+        /*framebuffer=*/ 1,
+        program,
+        /*texture=*/ 1,
+        /*mesh=*/ 1,
+        /*level=*/ 0,
+        depth,
+        item);
+  }
+
+  private static long levelKey(int level, float depth, int item) {
+    return RenderQueue.computeKey(
+        /*blended=*/ false,
+        /*framebuffer=*/ 1,
+        /*program=*/ 1,
+        /*texture=*/ 1,
+        /*mesh=*/ 1,
+        level,
+        depth,
+        item);
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ShaderCache}. */
+@RunWith(JUnit4.class)
+public class ShaderCacheTest {
+  @Test
+  public void keyOf_ignoresDefineOrder() {
+    Map<String, String> defines = new LinkedHashMap<>();
+    defines.put("A", "1");
+    defines.put("B", "2");
+    Map<String, String> reversed = new LinkedHashMap<>();
+    reversed.put("B", "2");
+    reversed.put("A", "1");
+
+    assertEquals(
+        ShaderCache.keyOf("a.vert", "a.frag", defines),
+        ShaderCache.keyOf("a.vert", "a.frag", reversed));
+  }
+
+  @Test
+  public void keyOf_treatsNullDefinesAsEmpty() {
+    assertEquals(
+        ShaderCache.keyOf("a.vert", "a.frag", null),
+        ShaderCache.keyOf("a.vert", "a.frag", new HashMap<>()));
+  }
+
+  @Test
+  public void keyOf_distinguishesAssetsAndDefineValues() {
+    Map<String, String> on = Collections.singletonMap("USE_OCCLUSION", "1");
+    Map<String, String> off = Collections.singletonMap("USE_OCCLUSION", "0");
+
+    assertNotEquals(
+        ShaderCache.keyOf("a.vert", "a.frag", on), ShaderCache.keyOf("a.vert", "a.frag", off));
+    assertNotEquals(
+        ShaderCache.keyOf("a.vert", "a.frag", on), ShaderCache.keyOf("a.vert", "b.frag", on));
+  }
+}
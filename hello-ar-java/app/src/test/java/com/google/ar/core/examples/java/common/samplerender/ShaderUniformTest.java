@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the typed uniform handles of {@link Shader}. */
+@RunWith(JUnit4.class)
+public class ShaderUniformTest {
+  @Test
+  public void floatUniform_copiesIntoPreallocatedStorage() {
+    Shader.FloatUniform uniform =
+        new Shader.FloatUniform("u_Model", /*location=*/ 0, Shader.FloatUniform.Type.MAT4);
+    float[] storage = uniform.getValues();
+    float[] matrix = new float[16];
+
+    for (int frame = 0; frame < 3; ++frame) {
+      matrix[12] = frame;
+      uniform.set(matrix);
+      assertSame(storage, uniform.getValues());
+    }
+    matrix[12] = -1f;
+
+    assertEquals(2f, uniform.getValues()[12], 0f);
+  }
+
+  @Test
+  public void floatUniform_reallocatesOnlyWhenArrayLengthChanges() {
+    Shader.FloatUniform uniform =
+        new Shader.FloatUniform("u_Coefficients", /*location=*/ 0, Shader.FloatUniform.Type.VEC3);
+
+    uniform.set(new float[27]);
+    float[] storage = uniform.getValues();
+    uniform.set(new float[27]);
+    assertSame(storage, uniform.getValues());
+
+    uniform.set(new float[3]);
+    assertNotSame(storage, uniform.getValues());
+    assertEquals(3, uniform.getValues().length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void floatUniform_rejectsPartialElements() {
+    new Shader.FloatUniform("u_Normal", /*location=*/ 0, Shader.FloatUniform.Type.VEC3)
+        .set(new float[4]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void floatUniform_rejectsScalarForVector() {
+    new Shader.FloatUniform("u_Normal", /*location=*/ 0, Shader.FloatUniform.Type.VEC3).set(1f);
+  }
+
+  @Test
+  public void uniform_isUploadedOnlyAfterBeingSet() {
+    Shader.FloatUniform uniform =
+        new Shader.FloatUniform("u_PointSize", /*location=*/ 0, Shader.FloatUniform.Type.FLOAT);
+    assertFalse(uniform.dirty);
+
+    uniform.set(5f);
+    assertTrue(uniform.dirty);
+
+    uniform.use();
+    assertFalse(uniform.dirty);
+  }
+
+  @Test
+  public void intUniform_storesBoolsAsInts() {
+    Shader.IntUniform uniform = new Shader.IntUniform("u_Flags", /*location=*/ 0);
+
+    uniform.set(new boolean[] {true, false, true});
+
+    assertArrayEquals(new int[] {1, 0, 1}, uniform.getValues());
+  }
+}
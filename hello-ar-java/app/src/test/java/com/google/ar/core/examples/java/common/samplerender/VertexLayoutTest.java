@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the packing and conversions of {@link VertexLayout}. */
+@RunWith(JUnit4.class)
+public class VertexLayoutTest {
+  @Test
+  public void toHalf_convertsExactValues() {
+    assertEquals(0x0000, VertexLayout.toHalf(0f));
+    assertEquals((short) 0x8000, VertexLayout.toHalf(-0f));
+    assertEquals(0x3C00, VertexLayout.toHalf(1f));
+    assertEquals((short) 0xC000, VertexLayout.toHalf(-2f));
+    assertEquals(0x3800, VertexLayout.toHalf(0.5f));
+    assertEquals(0x4D00, VertexLayout.toHalf(20f));
+    assertEquals(0x7BFF, VertexLayout.toHalf(65504f));
+  }
+
+  @Test
+  public void toHalf_roundsToNearest() {
+    // 1 + 2^-11 is halfway between 1 and the next half, 1 + 2^-10; slightly above rounds up.
+    assertEquals(0x3C01, VertexLayout.toHalf(1f + 0.00075f));
+    assertEquals(0x3C00, VertexLayout.toHalf(1f + 0.0004f));
+  }
+
+  @Test
+  public void toHalf_handlesOutOfRangeValues() {
+    assertEquals(0x7C00, VertexLayout.toHalf(1e6f));
+    assertEquals((short) 0xFC00, VertexLayout.toHalf(Float.NEGATIVE_INFINITY));
+    assertEquals(0x7E00, VertexLayout.toHalf(Float.NaN));
+    // The smallest subnormal half is 2^-24.
+    assertEquals(0x0001, VertexLayout.toHalf((float) Math.pow(2, -24)));
+    assertEquals(0x0000, VertexLayout.toHalf(1e-10f));
+  }
+
+  @Test
+  public void toSnorm8_clampsAndScales() {
+    assertEquals(127, VertexLayout.toSnorm8(1f));
+    assertEquals(-127, VertexLayout.toSnorm8(-1f));
+    assertEquals(0, VertexLayout.toSnorm8(0f));
+    assertEquals(127, VertexLayout.toSnorm8(3f));
+    assertEquals(64, VertexLayout.toSnorm8(0.5f));
+  }
+
+  @Test
+  public void stride_alignsEachAttributeToFourBytes() {
+    VertexLayout layout =
+        new VertexLayout()
+            .addAttribute(VertexLayout.Format.HALF_FLOAT, 3)
+            .addAttribute(VertexLayout.Format.HALF_FLOAT, 2)
+            .addAttribute(VertexLayout.Format.SNORM8, 3);
+
+    assertEquals(0, layout.getOffset(0));
+    assertEquals(8, layout.getOffset(1));
+    assertEquals(12, layout.getOffset(2));
+    assertEquals(16, layout.getStride());
+  }
+
+  @Test
+  public void pack_interleavesConvertedAttributes() {
+    VertexLayout layout =
+        new VertexLayout()
+            .addAttribute(VertexLayout.Format.FLOAT, 2)
+            .addAttribute(VertexLayout.Format.SNORM8, 1);
+    FloatBuffer positions = FloatBuffer.wrap(new float[] {1f, 2f, 3f, 4f});
+    FloatBuffer weights = FloatBuffer.wrap(new float[] {1f, -1f});
+
+    ByteBuffer packed = layout.pack(positions, weights);
+
+    assertEquals(2 * 12, packed.limit());
+    assertEquals(3f, packed.getFloat(12), 0f);
+    assertEquals(4f, packed.getFloat(16), 0f);
+    assertEquals(127, packed.get(8));
+    assertEquals(-127, packed.get(20));
+  }
+
+  @Test
+  public void fromHalf_invertsToHalf() {
+    for (float value : new float[] {0f, -0f, 1f, -2f, 0.5f, 20f, 65504f, 0.1f, 6e-8f}) {
+      short half = VertexLayout.toHalf(value);
+      assertEquals(half, VertexLayout.toHalf(VertexLayout.fromHalf(half)));
+    }
+    assertEquals(1f, VertexLayout.fromHalf((short) 0x3C00), 0f);
+    assertEquals(Float.NEGATIVE_INFINITY, VertexLayout.fromHalf((short) 0xFC00), 0f);
+    assertEquals((float) Math.pow(2, -24), VertexLayout.fromHalf((short) 0x0001), 0f);
+    assertTrue(Float.isNaN(VertexLayout.fromHalf((short) 0x7E00)));
+  }
+
+  @Test
+  public void unpack_convertsOneAttribute() {
+    VertexLayout layout =
+        new VertexLayout()
+            .addAttribute(VertexLayout.Format.HALF_FLOAT, 3)
+            .addAttribute(VertexLayout.Format.SNORM8, 1);
+    FloatBuffer positions = FloatBuffer.wrap(new float[] {1f, 2f, 3f, -0.5f, 20f, 0f});
+    FloatBuffer weights = FloatBuffer.wrap(new float[] {1f, -1f});
+
+    ByteBuffer packed = layout.pack(positions, weights);
+
+    assertArrayEquals(positions.array(), layout.unpack(packed, 0), 0f);
+    assertArrayEquals(new float[] {1f, -1f}, layout.unpack(packed, 1), 0f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void pack_rejectsMismatchingVertexCounts() {
+    new VertexLayout()
+        .addAttribute(VertexLayout.Format.FLOAT, 3)
+        .addAttribute(VertexLayout.Format.FLOAT, 2)
+        .pack(FloatBuffer.wrap(new float[6]), FloatBuffer.wrap(new float[2]));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildtools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Compresses every {@code .png} file of a directory to {@code .etc2.ktx} and {@code .astc.ktx}
+ * files with a full mip chain, read by {@code Texture.createFromAsset} instead of the PNG file.
+ *
+ * <p>The encoding is done by PVRTexToolCLI from the PowerVR SDK tools. When the tool cannot be
+ * found, no textures are compressed and the app falls back to the PNG files.
+ */
+public abstract class CompressTexturesTask extends DefaultTask {
+  // Encoded without color space conversion; Texture picks the sRGB format for sRGB textures.
+  private static final String ETC2_RGB_FORMAT = "ETC2_RGB,UBN,lRGB";
+  private static final String ETC2_RGBA_FORMAT = "ETC2_RGBA,UBN,lRGB";
+  private static final String ASTC_FORMAT = "ASTC_4x4,UBN,lRGB";
+
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getSourceDir();
+
+  /** The PVRTexToolCLI executable, either a path or a name to look up on the {@code PATH}. */
+  @Input
+  public abstract Property<String> getTool();
+
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDir();
+
+  @TaskAction
+  public void compress() throws IOException {
+    File outputDir = getOutputDir().get().getAsFile();
+    // Drop textures whose PNG file was removed since the last run.
+    File[] staleFiles = outputDir.listFiles((dir, name) -> name.endsWith(".ktx"));
+    if (staleFiles != null) {
+      for (File staleFile : staleFiles) {
+        if (!staleFile.delete()) {
+          throw new IOException("Cannot delete " + staleFile);
+        }
+      }
+    }
+
+    File tool = findExecutable(getTool().get());
+    if (tool == null) {
+      getLogger()
+          .warn(
+              "{} not found, textures are not compressed. Install the PowerVR SDK tools or set "
+                  + "the pvrTexToolCli property to its path.",
+              getTool().get());
+      return;
+    }
+
+    File sourceDir = getSourceDir().get().getAsFile();
+    File[] pngFiles = sourceDir.listFiles((dir, name) -> name.endsWith(".png"));
+    if (pngFiles == null) {
+      return;
+    }
+    for (File pngFile : pngFiles) {
+      String baseName = pngFile.getName().substring(0, pngFile.getName().length() - 4);
+      BufferedImage image = ImageIO.read(pngFile);
+      if (image == null) {
+        throw new IOException("Cannot read " + pngFile);
+      }
+      // Opaque textures fit in half the space of ETC2 with alpha.
+      String etc2Format = image.getColorModel().hasAlpha() ? ETC2_RGBA_FORMAT : ETC2_RGB_FORMAT;
+      encode(tool, pngFile, new File(outputDir, baseName + ".etc2.ktx"), etc2Format, "etcslow");
+      encode(
+          tool, pngFile, new File(outputDir, baseName + ".astc.ktx"), ASTC_FORMAT, "astcthorough");
+    }
+  }
+
+  private void encode(File tool, File pngFile, File ktxFile, String format, String quality) {
+    getProject()
+        .exec(
+            spec ->
+                spec.commandLine(
+                    tool.getPath(),
+                    "-i",
+                    pngFile.getPath(),
+                    "-o",
+                    ktxFile.getPath(),
+                    "-m",
+                    "-f",
+                    format,
+                    "-q",
+                    quality));
+    getLogger()
+        .info("{}: {} -> {} bytes", ktxFile.getName(), pngFile.length(), ktxFile.length());
+  }
+
+  private static File findExecutable(String tool) {
+    File file = new File(tool);
+    if (file.isAbsolute() || tool.contains(File.separator)) {
+      return file.canExecute() ? file : null;
+    }
+    String path = System.getenv("PATH");
+    if (path == null) {
+      return null;
+    }
+    for (String dir : path.split(File.pathSeparator)) {
+      for (String name : new String[] {tool, tool + ".exe"}) {
+        File candidate = new File(dir, name);
+        if (candidate.isFile() && candidate.canExecute()) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+}
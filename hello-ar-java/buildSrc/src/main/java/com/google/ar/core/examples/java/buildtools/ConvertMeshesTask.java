@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildtools;
+
+import java.io.File;
+import java.io.IOException;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Converts every {@code .obj} file of a directory to a binary {@code .mesh} file of the same name,
+ * read by {@code Mesh.createFromAsset} instead of parsing the OBJ text at startup.
+ */
+public abstract class ConvertMeshesTask extends DefaultTask {
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getSourceDir();
+
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDir();
+
+  @TaskAction
+  public void convert() throws IOException {
+    File outputDir = getOutputDir().get().getAsFile();
+    // Drop meshes whose OBJ file was removed since the last run.
+    File[] staleFiles = outputDir.listFiles((dir, name) -> name.endsWith(".mesh"));
+    if (staleFiles != null) {
+      for (File staleFile : staleFiles) {
+        if (!staleFile.delete()) {
+          throw new IOException("Cannot delete " + staleFile);
+        }
+      }
+    }
+
+    File sourceDir = getSourceDir().get().getAsFile();
+    File[] objFiles = sourceDir.listFiles((dir, name) -> name.endsWith(".obj"));
+    if (objFiles == null) {
+      return;
+    }
+    for (File objFile : objFiles) {
+      String baseName = objFile.getName().substring(0, objFile.getName().length() - 4);
+      MeshWriter.Stats stats = MeshWriter.convert(objFile, new File(outputDir, baseName + ".mesh"));
+      getLogger()
+          .info(
+              "{}: {} vertices, {} triangles, ACMR {} -> {}, {} bytes",
+              objFile.getName(),
+              stats.numberOfVertices,
+              stats.numberOfTriangles,
+              stats.acmrBefore,
+              stats.acmrAfter,
+              stats.bytes);
+    }
+  }
+}
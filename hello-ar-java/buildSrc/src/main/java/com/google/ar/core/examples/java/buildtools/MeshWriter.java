@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildtools;
+
+import com.google.ar.core.examples.java.common.samplerender.MeshOptimizer;
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Converts an OBJ model to the binary mesh format read by {@code BinaryMesh}. See that class for
+ * the file layout.
+ */
+final class MeshWriter {
+  private static final int MAGIC = 0x4853454D; // "MESH" read as a little-endian int
+  private static final int VERSION = 1;
+  private static final int DATA_ALIGNMENT = 16;
+
+  // GL enums, as this code does not run on Android.
+  private static final int GL_BYTE = 0x1400;
+  private static final int GL_UNSIGNED_BYTE = 0x1401;
+  private static final int GL_UNSIGNED_SHORT = 0x1403;
+  private static final int GL_UNSIGNED_INT = 0x1405;
+  private static final int GL_HALF_FLOAT = 0x140B;
+
+  // The compact layout of Mesh.createFromAsset: half float positions and texture coordinates, and
+  // normalized signed byte normals, each attribute aligned to 4 bytes.
+  private static final int[][] ATTRIBUTES = {
+    // Component type, number of components, offset.
+    {GL_HALF_FLOAT, 3, 0}, {GL_HALF_FLOAT, 2, 8}, {GL_BYTE, 3, 12}
+  };
+  private static final int STRIDE = 16;
+  private static final int HEADER_SIZE = 60 + ATTRIBUTES.length * 12;
+
+  /** Result of a conversion, for logging. */
+  static final class Stats {
+    int numberOfVertices;
+    int numberOfTriangles;
+    float acmrBefore;
+    float acmrAfter;
+    long bytes;
+  }
+
+  static Stats convert(File objFile, File meshFile) throws IOException {
+    Obj obj;
+    try (InputStream input = new FileInputStream(objFile)) {
+      obj = ObjUtils.convertToRenderable(ObjReader.read(input));
+    }
+    IntBuffer vertexIndices = ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 3);
+    FloatBuffer positions = ObjData.getVertices(obj);
+    int numberOfVertices = positions.limit() / 3;
+    FloatBuffer texCoords =
+        orZeros(ObjData.getTexCoords(obj, /*dimensions=*/ 2), numberOfVertices * 2);
+    FloatBuffer normals = orZeros(ObjData.getNormals(obj), numberOfVertices * 3);
+
+    Stats stats = new Stats();
+    int[] indices = new int[vertexIndices.limit()];
+    vertexIndices.get(indices);
+    stats.acmrBefore =
+        MeshOptimizer.computeAcmr(indices, numberOfVertices, MeshOptimizer.CACHE_SIZE);
+    indices = MeshOptimizer.optimizeTriangleOrder(indices, positions, numberOfVertices);
+    int[] remap = MeshOptimizer.optimizeVertexFetch(indices, numberOfVertices);
+    stats.acmrAfter =
+        MeshOptimizer.computeAcmr(indices, numberOfVertices, MeshOptimizer.CACHE_SIZE);
+    positions = MeshOptimizer.remapVertices(positions, 3, remap);
+    texCoords = MeshOptimizer.remapVertices(texCoords, 2, remap);
+    normals = MeshOptimizer.remapVertices(normals, 3, remap);
+    numberOfVertices = positions.limit() / 3;
+
+    int maxIndex = -1;
+    for (int index : indices) {
+      maxIndex = Math.max(maxIndex, index);
+    }
+    int indexType =
+        maxIndex <= 0xFF
+            ? GL_UNSIGNED_BYTE
+            : maxIndex <= 0xFFFF ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    int indexSize = indexType == GL_UNSIGNED_BYTE ? 1 : indexType == GL_UNSIGNED_SHORT ? 2 : 4;
+
+    int vertexDataOffset = align(HEADER_SIZE);
+    int indexDataOffset = align(vertexDataOffset + numberOfVertices * STRIDE);
+    int fileSize = indexDataOffset + indices.length * indexSize;
+    ByteBuffer out = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putInt(numberOfVertices);
+    out.putInt(indices.length);
+    out.putInt(indexType);
+    out.putInt(STRIDE);
+    out.putInt(vertexDataOffset);
+    out.putInt(indexDataOffset);
+    putBounds(out, positions, numberOfVertices);
+    out.putInt(ATTRIBUTES.length);
+    for (int[] attribute : ATTRIBUTES) {
+      for (int value : attribute) {
+        out.putInt(value);
+      }
+    }
+
+    for (int v = 0; v < numberOfVertices; ++v) {
+      int base = vertexDataOffset + v * STRIDE;
+      for (int c = 0; c < 3; ++c) {
+        out.putShort(base + ATTRIBUTES[0][2] + 2 * c, toHalf(positions.get(v * 3 + c)));
+      }
+      for (int c = 0; c < 2; ++c) {
+        out.putShort(base + ATTRIBUTES[1][2] + 2 * c, toHalf(texCoords.get(v * 2 + c)));
+      }
+      for (int c = 0; c < 3; ++c) {
+        float n = Math.max(-1f, Math.min(1f, normals.get(v * 3 + c)));
+        out.put(base + ATTRIBUTES[2][2] + c, (byte) Math.round(n * 127f));
+      }
+    }
+
+    out.position(indexDataOffset);
+    for (int index : indices) {
+      if (indexType == GL_UNSIGNED_BYTE) {
+        out.put((byte) index);
+      } else if (indexType == GL_UNSIGNED_SHORT) {
+        out.putShort((short) index);
+      } else {
+        out.putInt(index);
+      }
+    }
+
+    try (OutputStream output = new FileOutputStream(meshFile)) {
+      output.write(out.array());
+    }
+    stats.numberOfVertices = numberOfVertices;
+    stats.numberOfTriangles = indices.length / 3;
+    stats.bytes = fileSize;
+    return stats;
+  }
+
+  private static void putBounds(ByteBuffer out, FloatBuffer positions, int numberOfVertices) {
+    float[] min = new float[3];
+    float[] max = new float[3];
+    for (int v = 0; v < numberOfVertices; ++v) {
+      for (int c = 0; c < 3; ++c) {
+        float value = positions.get(v * 3 + c);
+        min[c] = v == 0 ? value : Math.min(min[c], value);
+        max[c] = v == 0 ? value : Math.max(max[c], value);
+      }
+    }
+    for (float value : min) {
+      out.putFloat(value);
+    }
+    for (float value : max) {
+      out.putFloat(value);
+    }
+  }
+
+  private static FloatBuffer orZeros(FloatBuffer buffer, int size) {
+    return buffer.limit() == size ? buffer : FloatBuffer.allocate(size);
+  }
+
+  /** Same conversion as {@code VertexLayout.toHalf}, so that both paths produce the same data. */
+  private static short toHalf(float value) {
+    int bits = Float.floatToIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+    int mantissa = bits & 0x7FFFFF;
+
+    if (exponent >= 0x1F) {
+      boolean isNaN = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+      return (short) (sign | 0x7C00 | (isNaN ? 0x200 : 0));
+    }
+    if (exponent <= 0) {
+      if (exponent < -10) {
+        return (short) sign;
+      }
+      mantissa |= 0x800000;
+      int shift = 14 - exponent;
+      int half = mantissa >> shift;
+      if (((mantissa >> (shift - 1)) & 1) != 0) {
+        half++;
+      }
+      return (short) (sign | half);
+    }
+    int half = sign | (exponent << 10) | (mantissa >> 13);
+    if ((mantissa & 0x1000) != 0) {
+      half++;
+    }
+    return (short) half;
+  }
+
+  private static int align(int bytes) {
+    return (bytes + DATA_ALIGNMENT - 1) / DATA_ALIGNMENT * DATA_ALIGNMENT;
+  }
+
+  private MeshWriter() {}
+}